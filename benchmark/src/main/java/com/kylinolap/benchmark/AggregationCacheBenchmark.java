@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.Cell;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.storage.hbase.RegionScannerAdapter;
+import com.kylinolap.storage.hbase.observer.AggregationScanner;
+import com.kylinolap.storage.hbase.observer.SRowAggregators;
+import com.kylinolap.storage.hbase.observer.SRowFilter;
+import com.kylinolap.storage.hbase.observer.SRowProjector;
+import com.kylinolap.storage.hbase.observer.SRowType;
+
+/**
+ * Coprocessor side aggregation of all synthetic rows, grouped by the first
+ * few base cuboid columns, the same path AggregateRegionObserver takes in a
+ * region server. One invocation aggregates and drains the whole region.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregationCacheBenchmark {
+
+    @Param({ "1", "3", "100" })
+    public int groupByColumns;
+
+    private SyntheticCube cube;
+    private SRowType type;
+    private SRowProjector projector;
+    private SRowAggregators aggregators;
+
+    @Setup
+    public void setup() throws Exception {
+        cube = SyntheticCube.getInstance();
+        List<TblColRef> columns = cube.baseCuboid.getColumns();
+        List<TblColRef> groupBy = new ArrayList<TblColRef>(columns.subList(0, Math.min(groupByColumns, columns.size())));
+
+        type = SRowType.fromCuboid(cube.segment, cube.baseCuboid);
+        projector = SRowProjector.fromColumns(cube.segment, cube.baseCuboid, groupBy);
+        aggregators = SRowAggregators.fromValuDecoders(cube.rowValueDecoders);
+    }
+
+    @Benchmark
+    public int aggregate() throws IOException {
+        AggregationScanner scanner = new AggregationScanner(type, SRowFilter.deserialize(null), projector, aggregators, new RegionScannerAdapter(new ListResultScanner(cube.results)));
+        int cells = 0;
+        List<Cell> results = new ArrayList<Cell>();
+        boolean hasMore = true;
+        while (hasMore) {
+            results.clear();
+            hasMore = scanner.nextRaw(results);
+            cells += results.size();
+        }
+        scanner.close();
+        return cells;
+    }
+}
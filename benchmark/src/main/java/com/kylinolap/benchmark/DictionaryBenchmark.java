@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kylinolap.cube.CubeManager;
+import com.kylinolap.dict.TrieDictionary;
+import com.kylinolap.metadata.model.cube.TblColRef;
+
+/**
+ * Value to id and id to value lookups on the biggest trie dictionary of the
+ * cube, with and without the per dictionary lookup cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DictionaryBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean cache;
+
+    private TrieDictionary<String> dict;
+    private List<String> values;
+    private int[] ids;
+    private int row;
+
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setup() throws Exception {
+        SyntheticCube cube = SyntheticCube.getInstance();
+        CubeManager cubeMgr = CubeManager.getInstance(cube.cube.getConfig());
+
+        for (TblColRef col : cube.baseCuboid.getColumns()) {
+            if (cube.cubeDesc.getRowkey().isUseDictionary(col) == false)
+                continue;
+            Object d = cubeMgr.getDictionary(cube.segment, col);
+            if (d instanceof TrieDictionary && (dict == null || ((TrieDictionary<?>) d).getMaxId() > dict.getMaxId())) {
+                dict = (TrieDictionary<String>) d;
+            }
+        }
+        if (dict == null)
+            throw new IllegalStateException("No trie dictionary in cube " + cube.cube.getName());
+        dict.setCacheEnabled(cache);
+
+        values = new ArrayList<String>();
+        for (int id = dict.getMinId(); id <= dict.getMaxId(); id++) {
+            values.add(dict.getValueFromId(id));
+        }
+        ids = new int[values.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = dict.getIdFromValue(values.get(i));
+        }
+    }
+
+    private int nextRow() {
+        if (++row >= ids.length)
+            row = 0;
+        return row;
+    }
+
+    @Benchmark
+    public int valueToId() {
+        return dict.getIdFromValue(values.get(nextRow()));
+    }
+
+    @Benchmark
+    public String idToValue() {
+        return dict.getValueFromId(ids[nextRow()]);
+    }
+}
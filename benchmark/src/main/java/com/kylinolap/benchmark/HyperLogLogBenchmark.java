@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kylinolap.common.hll.HyperLogLogPlusCounter;
+
+/**
+ * HyperLogLog counter operations behind count distinct measures, on counters
+ * of the supported precisions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HyperLogLogBenchmark {
+
+    private static final int DISTINCT_VALUES = 100000;
+
+    @Param({ "10", "14", "16" })
+    public int precision;
+
+    private String[] values;
+    private HyperLogLogPlusCounter counter;
+    private HyperLogLogPlusCounter other;
+    private ByteBuffer serialized;
+    private ByteBuffer buf;
+    private int row;
+
+    @Setup
+    public void setup() throws IOException {
+        Random rand = new Random(SyntheticCube.RANDOM_SEED);
+        values = new String[DISTINCT_VALUES];
+        counter = new HyperLogLogPlusCounter(precision);
+        other = new HyperLogLogPlusCounter(precision);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Long.toHexString(rand.nextLong());
+            (i % 2 == 0 ? counter : other).add(values[i]);
+        }
+
+        buf = ByteBuffer.allocate(counter.getMemBytes() + 16);
+        counter.writeRegisters(buf);
+        buf.flip();
+        serialized = ByteBuffer.allocate(buf.remaining());
+        serialized.put(buf);
+        serialized.flip();
+    }
+
+    @Benchmark
+    public HyperLogLogPlusCounter add() {
+        if (++row >= values.length)
+            row = 0;
+        counter.add(values[row]);
+        return counter;
+    }
+
+    @Benchmark
+    public HyperLogLogPlusCounter merge() {
+        counter.merge(other);
+        return counter;
+    }
+
+    @Benchmark
+    public int writeRegisters() throws IOException {
+        buf.clear();
+        counter.writeRegisters(buf);
+        return buf.position();
+    }
+
+    @Benchmark
+    public HyperLogLogPlusCounter readRegisters() throws IOException {
+        serialized.rewind();
+        other.readRegisters(serialized);
+        return other;
+    }
+}
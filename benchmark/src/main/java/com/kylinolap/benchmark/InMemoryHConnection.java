@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * An HConnection to in-memory tables, so the client side of a storage scan
+ * can be measured without a cluster. Unknown tables are empty, methods other
+ * than getTable() do nothing.
+ */
+public class InMemoryHConnection {
+
+    public static HConnection create(final Map<String, InMemoryHTable> tables) {
+        return proxy(HConnection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getTable")) {
+                    String name = tableName(args[0]);
+                    InMemoryHTable table = tables.get(name);
+                    if (table == null) {
+                        table = new InMemoryHTable(name, new TreeMap<byte[], Result>(Bytes.BYTES_COMPARATOR));
+                    }
+                    return proxy(HTableInterface.class, table);
+                }
+                if (method.getName().equals("toString")) {
+                    return "InMemoryHConnection" + tables.keySet();
+                }
+                return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    public static HConnection create(String tableName, NavigableMap<byte[], Result> rows) {
+        return create(Collections.singletonMap(tableName, new InMemoryHTable(tableName, rows)));
+    }
+
+    private static String tableName(Object arg) {
+        if (arg instanceof byte[])
+            return Bytes.toString((byte[]) arg);
+        if (arg instanceof TableName)
+            return ((TableName) arg).getNameAsString();
+        return String.valueOf(arg);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> clz, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(InMemoryHConnection.class.getClassLoader(), new Class<?>[] { clz }, handler);
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (type == boolean.class)
+            return false;
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+        if (type == short.class)
+            return (short) 0;
+        if (type == byte.class)
+            return (byte) 0;
+        if (type == char.class)
+            return (char) 0;
+        if (type == float.class)
+            return 0f;
+        if (type == double.class)
+            return 0d;
+        return null;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.kylinolap.storage.hbase.RegionScannerAdapter;
+import com.kylinolap.storage.hbase.ResultScannerAdapter;
+import com.kylinolap.storage.hbase.observer.AggregateRegionObserver;
+
+/**
+ * Answers scans of an HTableInterface from rows held in memory, as a single
+ * region would: rows between start and stop key, passed through the row
+ * filter of the scan, then through Kylin's coprocessor if the scan asks for
+ * it. Other table methods do nothing.
+ */
+public class InMemoryHTable implements InvocationHandler {
+
+    private final String name;
+    private final NavigableMap<byte[], Result> rows;
+
+    public InMemoryHTable(String name, NavigableMap<byte[], Result> rows) {
+        this.name = name;
+        this.rows = rows;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String m = method.getName();
+        if (m.equals("getScanner") && args.length == 1 && args[0] instanceof Scan) {
+            return getScanner((Scan) args[0]);
+        }
+        if (m.equals("getTableName")) {
+            return Bytes.toBytes(name);
+        }
+        if (m.equals("toString")) {
+            return "InMemoryHTable(" + name + ")";
+        }
+        return InMemoryHConnection.defaultValue(method.getReturnType());
+    }
+
+    public ResultScanner getScanner(Scan scan) throws IOException {
+        NavigableMap<byte[], Result> range = rows;
+        byte[] start = scan.getStartRow();
+        byte[] stop = scan.getStopRow();
+        if (Bytes.equals(start, HConstants.EMPTY_START_ROW) == false) {
+            range = range.tailMap(start, true);
+        }
+        if (Bytes.equals(stop, HConstants.EMPTY_END_ROW) == false) {
+            range = range.headMap(stop, false);
+        }
+
+        List<Result> results = new ArrayList<Result>();
+        Filter filter = scan.getFilter();
+        for (Result result : range.values()) {
+            if (filter == null || accept(filter, result)) {
+                results.add(result);
+            } else if (filter.filterAllRemaining()) {
+                break;
+            }
+        }
+
+        RegionScanner inner = new RegionScannerAdapter(new ListResultScanner(results));
+        RegionScanner outer = AggregateRegionObserver.wrapScanner(scan, inner);
+        return outer == inner ? new ListResultScanner(results) : new ResultScannerAdapter(outer);
+    }
+
+    private boolean accept(Filter filter, Result result) throws IOException {
+        filter.reset();
+        byte[] row = result.getRow();
+        if (filter.filterAllRemaining() || filter.filterRowKey(row, 0, row.length)) {
+            return false;
+        }
+        Cell first = result.rawCells()[0];
+        ReturnCode code = filter.filterKeyValue(first);
+        return code == ReturnCode.INCLUDE || code == ReturnCode.INCLUDE_AND_NEXT_COL;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+/**
+ * A ResultScanner over results held in memory.
+ */
+public class ListResultScanner implements ResultScanner {
+
+    private final Iterator<Result> iterator;
+
+    public ListResultScanner(List<Result> results) {
+        this.iterator = results.iterator();
+    }
+
+    @Override
+    public Result next() throws IOException {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @Override
+    public Result[] next(int nbRows) throws IOException {
+        Result[] batch = new Result[nbRows];
+        int i = 0;
+        while (i < nbRows && iterator.hasNext()) {
+            batch[i++] = iterator.next();
+        }
+        if (i < nbRows) {
+            Result[] shorter = new Result[i];
+            System.arraycopy(batch, 0, shorter, 0, i);
+            return shorter;
+        }
+        return batch;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Iterator<Result> iterator() {
+        return iterator;
+    }
+}
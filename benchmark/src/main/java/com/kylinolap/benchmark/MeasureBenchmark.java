@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kylinolap.cube.kv.RowConstants;
+import com.kylinolap.cube.measure.MeasureAggregators;
+import com.kylinolap.cube.measure.MeasureCodec;
+
+/**
+ * Measure encoding, decoding and aggregation of one row of all cube
+ * measures. The aggregators are reset every 1000 rows, roughly the group size
+ * of a typical aggregated query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasureBenchmark {
+
+    private static final int ROWS_PER_GROUP = 1000;
+
+    private SyntheticCube cube;
+    private MeasureCodec codec;
+    private MeasureAggregators aggregators;
+    private ByteBuffer buf;
+    private Object[] decoded;
+    private int row;
+
+    @Setup
+    public void setup() throws Exception {
+        cube = SyntheticCube.getInstance();
+        codec = new MeasureCodec(cube.cubeDesc.getMeasures());
+        aggregators = new MeasureAggregators(cube.cubeDesc.getMeasures());
+        buf = ByteBuffer.allocate(RowConstants.ROWVALUE_BUFFER_SIZE);
+        decoded = new Object[cube.cubeDesc.getMeasures().size()];
+    }
+
+    private int nextRow() {
+        if (++row >= cube.getRowCount())
+            row = 0;
+        return row;
+    }
+
+    @Benchmark
+    public int encode() {
+        buf.clear();
+        codec.encode(cube.measureValues.get(nextRow()), buf);
+        return buf.position();
+    }
+
+    @Benchmark
+    public Object[] decode() {
+        codec.decode(ByteBuffer.wrap(cube.encodedMeasures.get(nextRow())), decoded);
+        return decoded;
+    }
+
+    @Benchmark
+    public MeasureAggregators aggregate() {
+        int r = nextRow();
+        if (r % ROWS_PER_GROUP == 0)
+            aggregators.reset();
+        aggregators.aggregate(cube.measureValues.get(r));
+        return aggregators;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.hadoop.hbase.client.Result;
+
+import com.kylinolap.common.KylinConfig;
+import com.kylinolap.common.persistence.HBaseConnection;
+import com.kylinolap.common.util.LatencyHistogram;
+import com.kylinolap.cube.CubeInstance;
+import com.kylinolap.cube.CubeManager;
+import com.kylinolap.cube.CubeStatusEnum;
+import com.kylinolap.cube.project.ProjectInstance;
+import com.kylinolap.dict.TrieDictionary;
+import com.kylinolap.job.tools.OptionsHelper;
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.query.relnode.OLAPContext;
+import com.kylinolap.query.schema.OLAPSchemaFactory;
+
+/**
+ * End-to-end query benchmark. Loads every cuboid of the synthetic cube into
+ * an in-memory stand-in of HBase, then runs the {@link QueryCatalog} through
+ * the query engine at each concurrency level and storage setting given, and
+ * reports throughput, latency percentiles, rows scanned and allocation rate.
+ */
+@SuppressWarnings("static-access")
+public class QueryBenchmark {
+
+    private static final Option OPTION_THREADS = OptionBuilder.withArgName("n,..").hasArg().withDescription("Concurrency levels, default 1,4,16").create("threads");
+    private static final Option OPTION_SECONDS = OptionBuilder.withArgName("seconds").hasArg().withDescription("Measured seconds per run, default 10").create("seconds");
+    private static final Option OPTION_WARMUP = OptionBuilder.withArgName("seconds").hasArg().withDescription("Warm up seconds per run, default 5").create("warmup");
+    private static final Option OPTION_QUERIES = OptionBuilder.withArgName("name,..").hasArg().withDescription("Queries of the catalog to run, default all").create("queries");
+    private static final Option OPTION_COPROCESSOR = OptionBuilder.withArgName("on|off,..").hasArg().withDescription("Coprocessor settings, default on,off").create("coprocessor");
+    private static final Option OPTION_ITERATOR = OptionBuilder.withArgName("serial|concurrent,..").hasArg().withDescription("Storage iterators, default serial").create("iterator");
+    private static final Option OPTION_DICT_CACHE = OptionBuilder.withArgName("on|off,..").hasArg().withDescription("Dictionary cache settings, default on").create("dictcache");
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption(OPTION_THREADS);
+        options.addOption(OPTION_SECONDS);
+        options.addOption(OPTION_WARMUP);
+        options.addOption(OPTION_QUERIES);
+        options.addOption(OPTION_COPROCESSOR);
+        options.addOption(OPTION_ITERATOR);
+        options.addOption(OPTION_DICT_CACHE);
+
+        OptionsHelper optionsHelper = new OptionsHelper();
+        try {
+            optionsHelper.parseOptions(options, args);
+        } catch (Exception e) {
+            optionsHelper.printUsage(QueryBenchmark.class.getSimpleName(), options);
+            throw e;
+        }
+
+        QueryBenchmark benchmark = new QueryBenchmark();
+        benchmark.measureSeconds = Integer.parseInt(get(optionsHelper, OPTION_SECONDS, "10"));
+        benchmark.warmupSeconds = Integer.parseInt(get(optionsHelper, OPTION_WARMUP, "5"));
+        List<String> threads = split(get(optionsHelper, OPTION_THREADS, "1,4,16"));
+        List<String> coprocessors = split(get(optionsHelper, OPTION_COPROCESSOR, "on,off"));
+        List<String> iterators = split(get(optionsHelper, OPTION_ITERATOR, "serial"));
+        List<String> dictCaches = split(get(optionsHelper, OPTION_DICT_CACHE, "on"));
+
+        benchmark.setup();
+        List<String> queries = optionsHelper.hasOption(OPTION_QUERIES) ? split(optionsHelper.getOptionValue(OPTION_QUERIES)) : new ArrayList<String>(benchmark.catalog.keySet());
+
+        System.out.println(String.format("%-16s %-8s %-11s %-9s %7s %9s %9s %9s %9s %12s %10s", //
+                "query", "copr", "iterator", "dictcache", "threads", "qps", "p50(ms)", "p95(ms)", "p99(ms)", "rows/query", "alloc MB/s"));
+        for (String coprocessor : coprocessors) {
+            for (String iterator : iterators) {
+                for (String dictCache : dictCaches) {
+                    benchmark.configure(coprocessor, iterator, dictCache);
+                    for (String query : queries) {
+                        for (String t : threads) {
+                            RunResult r = benchmark.run(query, Integer.parseInt(t));
+                            System.out.println(String.format("%-16s %-8s %-11s %-9s %7s %9.1f %9.2f %9.2f %9.2f %12d %10.1f", //
+                                    query, coprocessor, iterator, dictCache, t, r.qps, r.p50 / 1000.0, r.p95 / 1000.0, r.p99 / 1000.0, r.rowsPerQuery, r.allocMBPerSecond));
+                        }
+                    }
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    private static String get(OptionsHelper optionsHelper, Option option, String dft) {
+        return optionsHelper.hasOption(option) ? optionsHelper.getOptionValue(option) : dft;
+    }
+
+    private static List<String> split(String list) {
+        return Arrays.asList(list.trim().split("\\s*,\\s*"));
+    }
+
+    // ============================================================================
+
+    private int measureSeconds;
+    private int warmupSeconds;
+    private SyntheticCube cube;
+    private KylinConfig config;
+    private String modelUrl;
+    private Map<String, String> catalog;
+
+    private void setup() throws Exception {
+        // the synthetic cube also sets up the test metadata
+        cube = SyntheticCube.getInstance();
+        config = KylinConfig.getInstanceFromEnv();
+
+        NavigableMap<byte[], Result> rows = cube.buildAllCuboids();
+        System.out.println("Loaded " + rows.size() + " rows of all cuboids into " + cube.segment.getStorageLocationIdentifier());
+        HBaseConnection.register(config.getStorageUrl(), InMemoryHConnection.create(cube.segment.getStorageLocationIdentifier(), rows));
+
+        // only the synthetic cube answers queries, other test cubes have no
+        // data in the stand-in
+        for (CubeInstance other : CubeManager.getInstance(config).listAllCubes()) {
+            if (other != cube.cube) {
+                other.setStatus(CubeStatusEnum.DISABLED);
+            }
+        }
+
+        Class.forName("net.hydromatic.optiq.jdbc.Driver");
+        File model = OLAPSchemaFactory.createTempOLAPJson(ProjectInstance.DEFAULT_PROJECT_NAME, config);
+        modelUrl = "jdbc:calcite:model=" + model.getAbsolutePath();
+        catalog = QueryCatalog.build(cube);
+    }
+
+    private void configure(String coprocessor, String iterator, String dictCache) {
+        System.setProperty("forceCoprocessor", String.valueOf("on".equals(coprocessor)));
+        config.setProperty("kylin.query.scan.concurrent.iterator", String.valueOf("concurrent".equals(iterator)));
+
+        CubeManager cubeMgr = CubeManager.getInstance(config);
+        for (TblColRef col : cube.baseCuboid.getColumns()) {
+            if (cube.cubeDesc.getRowkey().isUseDictionary(col)) {
+                Object dict = cubeMgr.getDictionary(cube.segment, col);
+                if (dict instanceof TrieDictionary) {
+                    ((TrieDictionary<?>) dict).setCacheEnabled("on".equals(dictCache));
+                }
+            }
+        }
+    }
+
+    private static class RunResult {
+        double qps;
+        long p50, p95, p99;
+        long rowsPerQuery;
+        double allocMBPerSecond;
+    }
+
+    private RunResult run(String query, int threads) throws Exception {
+        String sql = catalog.get(query);
+        if (sql == null)
+            throw new IllegalArgumentException("Unknown query " + query + ", the catalog has " + catalog.keySet());
+
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(sql);
+            workers[i].start();
+        }
+
+        Thread.sleep(warmupSeconds * 1000L);
+        for (Worker w : workers) {
+            w.startMeasure();
+        }
+        long start = System.nanoTime();
+        Thread.sleep(measureSeconds * 1000L);
+        for (Worker w : workers) {
+            w.stopMeasure();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        for (Worker w : workers) {
+            w.join();
+            if (w.error != null)
+                throw new IllegalStateException("Query " + query + " failed: " + sql, w.error);
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long rows = 0;
+        long allocated = 0;
+        for (Worker w : workers) {
+            for (long l : w.latencies) {
+                latency.record(l);
+            }
+            rows += w.rowsScanned;
+            allocated += w.bytesAllocated;
+        }
+
+        RunResult r = new RunResult();
+        r.qps = latency.getCount() / elapsedSeconds;
+        r.p50 = latency.getPercentile(50);
+        r.p95 = latency.getPercentile(95);
+        r.p99 = latency.getPercentile(99);
+        r.rowsPerQuery = latency.getCount() == 0 ? 0 : rows / latency.getCount();
+        r.allocMBPerSecond = allocated / elapsedSeconds / 1024 / 1024;
+        return r;
+    }
+
+    /**
+     * Runs one query over and over on its own connection, warming up until
+     * told to measure, and stops after the measured period.
+     */
+    private class Worker extends Thread {
+
+        final String sql;
+        volatile boolean measuring = false;
+        volatile boolean stopped = false;
+
+        // latencies in micro seconds
+        final List<Long> latencies = new ArrayList<Long>();
+        long rowsScanned;
+        long bytesAllocated;
+        Throwable error;
+
+        Worker(String sql) {
+            super("QueryBenchmark");
+            this.sql = sql;
+            setDaemon(true);
+        }
+
+        void startMeasure() {
+            measuring = true;
+        }
+
+        void stopMeasure() {
+            stopped = true;
+        }
+
+        @Override
+        public void run() {
+            Connection conn = null;
+            try {
+                conn = DriverManager.getConnection(modelUrl);
+
+                long allocStart = -1;
+                while (stopped == false) {
+                    boolean measured = measuring;
+                    if (measured && allocStart < 0)
+                        allocStart = allocatedBytes();
+
+                    long begin = System.nanoTime();
+                    long scanned = execute(conn);
+                    long micros = (System.nanoTime() - begin) / 1000;
+
+                    if (measured && stopped == false) {
+                        latencies.add(micros);
+                        rowsScanned += scanned;
+                    }
+                }
+                if (allocStart >= 0)
+                    bytesAllocated = allocatedBytes() - allocStart;
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                if (conn != null) {
+                    try {
+                        conn.close();
+                    } catch (SQLException e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+
+        private long execute(Connection conn) throws SQLException {
+            Statement stmt = conn.createStatement();
+            try {
+                ResultSet rs = stmt.executeQuery(sql);
+                int columns = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    for (int i = 1; i <= columns; i++) {
+                        rs.getObject(i);
+                    }
+                }
+                rs.close();
+            } finally {
+                stmt.close();
+            }
+
+            long scanned = 0;
+            Collection<OLAPContext> contexts = OLAPContext.getThreadLocalContexts();
+            if (contexts != null) {
+                for (OLAPContext ctx : contexts) {
+                    scanned += ctx.storageContext.getTotalScanCount();
+                }
+            }
+            return scanned;
+        }
+
+        private long allocatedBytes() {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(getId());
+            }
+            return 0;
+        }
+    }
+}
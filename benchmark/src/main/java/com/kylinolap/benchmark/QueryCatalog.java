@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.kylinolap.metadata.model.cube.TblColRef;
+
+/**
+ * Representative SQL shapes over the synthetic cube. Constants are picked
+ * from the generated rows, so every query hits data.
+ */
+public class QueryCatalog {
+
+    private static final int LARGE_IN_SIZE = 200;
+
+    private static final String JOIN_CAL_DT = " inner join test_cal_dt on test_kylin_fact.cal_dt = test_cal_dt.cal_dt ";
+    private static final String JOIN_SITES = " inner join test_sites on test_kylin_fact.lstg_site_id = test_sites.site_id ";
+
+    public static Map<String, String> build(SyntheticCube cube) {
+        int mid = cube.getRowCount() / 2;
+        String sellerId = value(cube, "SELLER_ID", mid);
+        String calDt = value(cube, "CAL_DT", mid);
+        String format = value(cube, "LSTG_FORMAT_NAME", mid);
+
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+
+        queries.put("point_lookup", "select sum(price), count(*) from test_kylin_fact" //
+                + " where seller_id = " + sellerId + " and cal_dt = date '" + calDt + "' and lstg_format_name = '" + format + "'");
+
+        queries.put("wide_group_by", "select seller_id, cal_dt, leaf_categ_id, lstg_format_name, lstg_site_id, slr_segment_cd," //
+                + " sum(price), min(price), max(price), count(*) from test_kylin_fact" //
+                + " group by seller_id, cal_dt, leaf_categ_id, lstg_format_name, lstg_site_id, slr_segment_cd");
+
+        queries.put("derived_filter", "select test_sites.site_name, sum(price), count(*) from test_kylin_fact" + JOIN_CAL_DT + JOIN_SITES //
+                + " where test_cal_dt.week_beg_dt >= date '" + calDt + "'" //
+                + " group by test_sites.site_name");
+
+        queries.put("count_distinct", "select lstg_format_name, count(distinct seller_id) from test_kylin_fact" //
+                + " group by lstg_format_name");
+
+        StringBuilder in = new StringBuilder();
+        for (String v : distinctValues(cube, "SELLER_ID", LARGE_IN_SIZE)) {
+            in.append(in.length() == 0 ? "" : ", ").append(v);
+        }
+        queries.put("large_in", "select cal_dt, sum(price), count(*) from test_kylin_fact" //
+                + " where seller_id in (" + in + ")" //
+                + " group by cal_dt");
+
+        return queries;
+    }
+
+    private static int columnIndex(SyntheticCube cube, String column) {
+        List<TblColRef> columns = cube.baseCuboid.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equalsIgnoreCase(column))
+                return i;
+        }
+        throw new IllegalArgumentException("Column " + column + " not in base cuboid of " + cube.cube.getName());
+    }
+
+    private static String value(SyntheticCube cube, String column, int row) {
+        return cube.dimensionValues.get(row)[columnIndex(cube, column)];
+    }
+
+    private static List<String> distinctValues(SyntheticCube cube, String column, int max) {
+        int idx = columnIndex(cube, column);
+        Set<String> values = new LinkedHashSet<String>();
+        for (int r = 0; r < cube.getRowCount() && values.size() < max; r++) {
+            values.add(cube.dimensionValues.get(r)[idx]);
+        }
+        return new ArrayList<String>(values);
+    }
+}
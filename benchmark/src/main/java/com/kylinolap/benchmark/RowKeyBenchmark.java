@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kylinolap.cube.kv.AbstractRowKeyEncoder;
+import com.kylinolap.cube.kv.RowKeyDecoder;
+
+/**
+ * Rowkey encoding and decoding of base cuboid rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowKeyBenchmark {
+
+    private SyntheticCube cube;
+    private AbstractRowKeyEncoder encoder;
+    private RowKeyDecoder decoder;
+    private byte[][][] keyValues;
+    private int row;
+
+    @Setup
+    public void setup() throws Exception {
+        cube = SyntheticCube.getInstance();
+        encoder = AbstractRowKeyEncoder.createInstance(cube.segment, cube.baseCuboid);
+        decoder = new RowKeyDecoder(cube.segment);
+
+        keyValues = new byte[cube.getRowCount()][][];
+        for (int i = 0; i < keyValues.length; i++) {
+            String[] dims = cube.dimensionValues.get(i);
+            keyValues[i] = new byte[dims.length][];
+            for (int j = 0; j < dims.length; j++) {
+                keyValues[i][j] = dims[j] == null ? null : dims[j].getBytes("UTF-8");
+            }
+        }
+    }
+
+    private int nextRow() {
+        if (++row >= keyValues.length)
+            row = 0;
+        return row;
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.encode(keyValues[nextRow()]);
+    }
+
+    @Benchmark
+    public List<String> decode() throws IOException {
+        decoder.decode(cube.rowKeys.get(nextRow()));
+        return decoder.getValues();
+    }
+}
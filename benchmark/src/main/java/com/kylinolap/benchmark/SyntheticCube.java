@@ -0,0 +1,336 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.kylinolap.common.KylinConfig;
+import com.kylinolap.common.persistence.ResourceStore;
+import com.kylinolap.common.util.Array;
+import com.kylinolap.common.util.LocalFileMetadataTestCase;
+import com.kylinolap.cube.CubeInstance;
+import com.kylinolap.cube.CubeManager;
+import com.kylinolap.cube.CubeSegment;
+import com.kylinolap.cube.cuboid.Cuboid;
+import com.kylinolap.cube.cuboid.CuboidScheduler;
+import com.kylinolap.cube.dataGen.FactTableGenerator;
+import com.kylinolap.cube.kv.AbstractRowKeyEncoder;
+import com.kylinolap.cube.kv.RowConstants;
+import com.kylinolap.cube.kv.RowValueDecoder;
+import com.kylinolap.cube.measure.MeasureAggregators;
+import com.kylinolap.cube.measure.MeasureCodec;
+import com.kylinolap.dict.lookup.LookupStringTable;
+import com.kylinolap.job.hadoop.hive.JoinedFlatTableDesc;
+import com.kylinolap.job.hadoop.hive.JoinedFlatTableDesc.IntermediateColumnDesc;
+import com.kylinolap.metadata.MetadataManager;
+import com.kylinolap.metadata.model.cube.CubeDesc;
+import com.kylinolap.metadata.model.cube.DimensionDesc;
+import com.kylinolap.metadata.model.cube.FunctionDesc;
+import com.kylinolap.metadata.model.cube.HBaseColumnDesc;
+import com.kylinolap.metadata.model.cube.HBaseColumnFamilyDesc;
+import com.kylinolap.metadata.model.cube.MeasureDesc;
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.metadata.model.schema.TableDesc;
+
+/**
+ * Synthetic rows of the test cube, shared by all benchmarks of a JVM. The
+ * fact table is generated by {@link FactTableGenerator} with a fixed seed,
+ * joined with the lookup snapshots of the ready segment, and encoded into
+ * base cuboid rows the way BaseCuboidMapper and the HFile conversion do, so
+ * every run works on the same data.
+ */
+public class SyntheticCube {
+
+    public static final String CUBE_NAME = "test_kylin_cube_with_slr_ready";
+    public static final int ROW_COUNT = 10000;
+    public static final long RANDOM_SEED = 20141201L;
+
+    private static SyntheticCube instance;
+
+    public static synchronized SyntheticCube getInstance() throws Exception {
+        if (instance == null) {
+            instance = new SyntheticCube();
+        }
+        return instance;
+    }
+
+    public final CubeInstance cube;
+    public final CubeDesc cubeDesc;
+    public final CubeSegment segment;
+    public final Cuboid baseCuboid;
+
+    // the hbase columns and a value decoder projecting all measures of each
+    public final List<HBaseColumnDesc> hbaseColumns = new ArrayList<HBaseColumnDesc>();
+    public final List<RowValueDecoder> rowValueDecoders = new ArrayList<RowValueDecoder>();
+
+    // per row: dimension values of the base cuboid, in rowkey order
+    public final List<String[]> dimensionValues = new ArrayList<String[]>();
+    // per row: the encoded rowkey
+    public final List<byte[]> rowKeys = new ArrayList<byte[]>();
+    // per row: measure values, in the order of cube desc measures
+    public final List<Object[]> measureValues = new ArrayList<Object[]>();
+    // per row: all measures encoded by one MeasureCodec
+    public final List<byte[]> encodedMeasures = new ArrayList<byte[]>();
+    // per row: the hbase row, one cell per hbase column
+    public final List<Result> results = new ArrayList<Result>();
+
+    private final CubeManager cubeMgr;
+    private final JoinedFlatTableDesc flatTableDesc;
+    private final TableDesc factTableDesc;
+
+    private SyntheticCube() throws Exception {
+        new LocalFileMetadataTestCase().createTestMetadata();
+        // all rows linkable, so inner and left join see the same rows
+        FactTableGenerator.generate(CUBE_NAME, String.valueOf(ROW_COUNT), "1", String.valueOf(RANDOM_SEED), "inner");
+
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        cubeMgr = CubeManager.getInstance(config);
+        cube = cubeMgr.getCube(CUBE_NAME);
+        cubeDesc = cube.getDescriptor();
+        segment = cube.getLatestReadySegment();
+        baseCuboid = Cuboid.findById(cubeDesc, Cuboid.getBaseCuboidId(cubeDesc));
+        flatTableDesc = new JoinedFlatTableDesc(cubeDesc, segment);
+        factTableDesc = MetadataManager.getInstance(config).getTableDesc(cubeDesc.getFactTable());
+
+        for (HBaseColumnFamilyDesc family : cubeDesc.getHBaseMapping().getColumnFamily()) {
+            for (HBaseColumnDesc hbaseColumn : family.getColumns()) {
+                RowValueDecoder decoder = new RowValueDecoder(hbaseColumn);
+                for (int i = 0; i < hbaseColumn.getMeasures().length; i++) {
+                    decoder.setIndex(i);
+                }
+                hbaseColumns.add(hbaseColumn);
+                rowValueDecoders.add(decoder);
+            }
+        }
+
+        int skipped = 0;
+        for (String[] factRow : readFactTable(config)) {
+            try {
+                addRow(join(factRow));
+            } catch (IllegalArgumentException e) {
+                // value missing in the dictionaries of the ready segment
+                skipped++;
+            }
+        }
+        System.out.println("Synthetic cube " + CUBE_NAME + ": " + rowKeys.size() + " rows, " + skipped + " skipped");
+    }
+
+    private List<String[]> readFactTable(KylinConfig config) throws Exception {
+        List<String[]> rows = new ArrayList<String[]>();
+        InputStream in = ResourceStore.getStore(config).getResource("/data/" + cubeDesc.getFactTable() + ".csv");
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                rows.add(line.split(",", -1));
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return rows;
+    }
+
+    /**
+     * join a fact row with the lookup tables, into a row of the flat table
+     */
+    private String[] join(String[] factRow) {
+        List<IntermediateColumnDesc> columns = flatTableDesc.getColumnList();
+        String[] flatRow = new String[columns.size()];
+        Map<String, String[]> lookupRows = new HashMap<String, String[]>();
+
+        for (int i = 0; i < columns.size(); i++) {
+            IntermediateColumnDesc column = columns.get(i);
+            String table = column.getTableName();
+            if (table.equalsIgnoreCase(factTableDesc.getName())) {
+                flatRow[i] = factRow[factTableDesc.findColumnByName(column.getColumnName()).getZeroBasedIndex()];
+                continue;
+            }
+
+            if (lookupRows.containsKey(table) == false) {
+                lookupRows.put(table, lookup(table, factRow));
+            }
+            String[] lookupRow = lookupRows.get(table);
+            if (lookupRow != null) {
+                TableDesc lookupTableDesc = MetadataManager.getInstance(cube.getConfig()).getTableDesc(table);
+                flatRow[i] = lookupRow[lookupTableDesc.findColumnByName(column.getColumnName()).getZeroBasedIndex()];
+            }
+        }
+        return flatRow;
+    }
+
+    private String[] lookup(String table, String[] factRow) {
+        for (DimensionDesc dim : cubeDesc.getDimensions()) {
+            if (dim.getJoin() == null || dim.getTable().equalsIgnoreCase(table) == false) {
+                continue;
+            }
+            LookupStringTable lookupTable = cubeMgr.getLookupTable(segment, dim);
+            TblColRef[] fkCols = dim.getJoin().getForeignKeyColumns();
+            String[] key = new String[fkCols.length];
+            for (int i = 0; i < fkCols.length; i++) {
+                key[i] = factRow[fkCols[i].getColumn().getZeroBasedIndex()];
+            }
+            return lookupTable.getRow(new Array<String>(key));
+        }
+        return null;
+    }
+
+    private void addRow(String[] flatRow) {
+        AbstractRowKeyEncoder rowKeyEncoder = AbstractRowKeyEncoder.createInstance(segment, baseCuboid);
+        MeasureCodec measureCodec = new MeasureCodec(cubeDesc.getMeasures());
+        ByteBuffer buf = ByteBuffer.allocate(RowConstants.ROWVALUE_BUFFER_SIZE);
+
+        // key
+        int[] rowKeyColumnIndexes = flatTableDesc.getRowKeyColumnIndexes();
+        String[] dims = new String[rowKeyColumnIndexes.length];
+        byte[][] keyBytes = new byte[rowKeyColumnIndexes.length][];
+        for (int i = 0; i < rowKeyColumnIndexes.length; i++) {
+            dims[i] = flatRow[rowKeyColumnIndexes[i]];
+            keyBytes[i] = dims[i] == null ? null : Bytes.toBytes(dims[i]);
+        }
+        byte[] rowKey = rowKeyEncoder.encode(keyBytes);
+
+        // measures
+        List<MeasureDesc> measures = cubeDesc.getMeasures();
+        int[][] measureColumnIndexes = flatTableDesc.getMeasureColumnIndexes();
+        Object[] values = new Object[measures.size()];
+        for (int i = 0; i < values.length; i++) {
+            FunctionDesc func = measures.get(i).getFunction();
+            String value;
+            if (func.isCount() || func.isHolisticCountDistinct()) {
+                value = "1";
+            } else if (measureColumnIndexes[i] == null) {
+                value = func.getParameter().getValue();
+            } else {
+                StringBuilder joined = new StringBuilder();
+                for (int idx : measureColumnIndexes[i]) {
+                    joined.append(flatRow[idx]);
+                }
+                value = joined.toString();
+            }
+            values[i] = measureCodec.getSerializer(i).valueOf(Bytes.toBytes(value));
+        }
+        buf.clear();
+        measureCodec.encode(values, buf);
+        byte[] encoded = Arrays.copyOf(buf.array(), buf.position());
+
+        dimensionValues.add(dims);
+        rowKeys.add(rowKey);
+        measureValues.add(values);
+        encodedMeasures.add(encoded);
+        results.add(toResult(rowKey, values));
+    }
+
+    /**
+     * encode measure values of a row into an hbase row, one cell per hbase
+     * column, the way the HFile conversion does
+     */
+    public Result toResult(byte[] rowKey, Object[] values) {
+        ByteBuffer buf = ByteBuffer.allocate(RowConstants.ROWVALUE_BUFFER_SIZE);
+        List<MeasureDesc> measures = cubeDesc.getMeasures();
+        List<Cell> cells = new ArrayList<Cell>(hbaseColumns.size());
+        for (HBaseColumnDesc hbaseColumn : hbaseColumns) {
+            MeasureDesc[] columnMeasures = hbaseColumn.getMeasures();
+            Object[] columnValues = new Object[columnMeasures.length];
+            for (int i = 0; i < columnMeasures.length; i++) {
+                columnValues[i] = values[measures.indexOf(columnMeasures[i])];
+            }
+            buf.clear();
+            new MeasureCodec(columnMeasures).encode(columnValues, buf);
+            cells.add(new KeyValue(rowKey, Bytes.toBytes(hbaseColumn.getColumnFamilyName()), Bytes.toBytes(hbaseColumn.getQualifier()), Arrays.copyOf(buf.array(), buf.position())));
+        }
+        Collections.sort(cells, KeyValue.COMPARATOR);
+        return Result.create(cells);
+    }
+
+    /**
+     * Aggregate the rows into every cuboid of the cube, like the cuboid
+     * build steps do, and return all hbase rows of the segment in key order.
+     */
+    public NavigableMap<byte[], Result> buildAllCuboids() {
+        NavigableMap<byte[], Result> rows = new TreeMap<byte[], Result>(Bytes.BYTES_COMPARATOR);
+        List<TblColRef> baseColumns = baseCuboid.getColumns();
+        CuboidScheduler scheduler = new CuboidScheduler(cubeDesc);
+
+        LinkedList<Long> toBuild = new LinkedList<Long>();
+        toBuild.add(baseCuboid.getId());
+        while (toBuild.isEmpty() == false) {
+            Cuboid cuboid = Cuboid.findById(cubeDesc, toBuild.removeFirst());
+            toBuild.addAll(scheduler.getSpanningCuboid(cuboid.getId()));
+
+            List<TblColRef> columns = cuboid.getColumns();
+            int[] baseIndexes = new int[columns.size()];
+            for (int i = 0; i < baseIndexes.length; i++) {
+                baseIndexes[i] = baseColumns.indexOf(columns.get(i));
+            }
+
+            // group by cuboid columns, keep first seen order
+            Map<List<String>, MeasureAggregators> groups = new LinkedHashMap<List<String>, MeasureAggregators>();
+            for (int r = 0; r < getRowCount(); r++) {
+                String[] dims = dimensionValues.get(r);
+                String[] key = new String[baseIndexes.length];
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = dims[baseIndexes[i]];
+                }
+                List<String> groupKey = Arrays.asList(key);
+                MeasureAggregators aggrs = groups.get(groupKey);
+                if (aggrs == null) {
+                    aggrs = new MeasureAggregators(cubeDesc.getMeasures());
+                    groups.put(groupKey, aggrs);
+                }
+                aggrs.aggregate(measureValues.get(r));
+            }
+
+            AbstractRowKeyEncoder rowKeyEncoder = AbstractRowKeyEncoder.createInstance(segment, cuboid);
+            for (Map.Entry<List<String>, MeasureAggregators> group : groups.entrySet()) {
+                List<String> key = group.getKey();
+                byte[][] keyBytes = new byte[key.size()][];
+                for (int i = 0; i < keyBytes.length; i++) {
+                    keyBytes[i] = key.get(i) == null ? null : Bytes.toBytes(key.get(i));
+                }
+                Object[] values = new Object[cubeDesc.getMeasures().size()];
+                group.getValue().collectStates(values);
+
+                byte[] rowKey = rowKeyEncoder.encode(keyBytes);
+                rows.put(rowKey, toResult(rowKey, values));
+            }
+        }
+        return rows;
+    }
+
+    public int getRowCount() {
+        return rowKeys.size();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.storage.filter.ColumnTupleFilter;
+import com.kylinolap.storage.filter.CompareTupleFilter;
+import com.kylinolap.storage.filter.ConstantTupleFilter;
+import com.kylinolap.storage.filter.LogicalTupleFilter;
+import com.kylinolap.storage.filter.TupleFilter;
+import com.kylinolap.storage.filter.TupleFilter.FilterOperatorEnum;
+import com.kylinolap.storage.tuple.Tuple;
+import com.kylinolap.storage.tuple.TupleInfo;
+
+/**
+ * Evaluation of typical query filters on tuples of the base cuboid, the
+ * per row filtering done on the query server after a scan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TupleFilterBenchmark {
+
+    private Tuple[] tuples;
+    private TupleFilter eq;
+    private TupleFilter in;
+    private TupleFilter and;
+    private TupleFilter or;
+    private int row;
+
+    @Setup
+    public void setup() throws Exception {
+        SyntheticCube cube = SyntheticCube.getInstance();
+        List<TblColRef> columns = cube.baseCuboid.getColumns();
+
+        TupleInfo info = new TupleInfo();
+        for (int i = 0; i < columns.size(); i++) {
+            TblColRef col = columns.get(i);
+            info.setField(col.getName(), col, col.getDatatype(), i);
+        }
+        tuples = new Tuple[cube.getRowCount()];
+        for (int r = 0; r < tuples.length; r++) {
+            String[] dims = cube.dimensionValues.get(r);
+            tuples[r] = new Tuple(info);
+            for (int i = 0; i < columns.size(); i++) {
+                tuples[r].setDimensionValue(columns.get(i).getName(), dims[i]);
+            }
+        }
+
+        // constants picked from rows spread over the data, so filters both
+        // pass and fail
+        TblColRef col0 = columns.get(0);
+        TblColRef col1 = columns.get(Math.min(1, columns.size() - 1));
+        int step = tuples.length / 5;
+        String[] values0 = new String[5];
+        for (int i = 0; i < values0.length; i++) {
+            values0[i] = cube.dimensionValues.get(i * step)[0];
+        }
+        String value1 = cube.dimensionValues.get(0)[Math.min(1, columns.size() - 1)];
+
+        eq = compare(col0, FilterOperatorEnum.EQ, values0[0]);
+        in = compare(col0, FilterOperatorEnum.IN, values0);
+        and = logical(FilterOperatorEnum.AND, compare(col0, FilterOperatorEnum.EQ, values0[0]), compare(col1, FilterOperatorEnum.EQ, value1));
+        or = logical(FilterOperatorEnum.OR, compare(col0, FilterOperatorEnum.EQ, values0[0]), compare(col1, FilterOperatorEnum.EQ, value1));
+    }
+
+    private static TupleFilter compare(TblColRef col, FilterOperatorEnum op, String... values) {
+        CompareTupleFilter filter = new CompareTupleFilter(op);
+        filter.addChild(new ColumnTupleFilter(col));
+        filter.addChild(new ConstantTupleFilter(Arrays.asList(values)));
+        return filter;
+    }
+
+    private static TupleFilter logical(FilterOperatorEnum op, TupleFilter... children) {
+        LogicalTupleFilter filter = new LogicalTupleFilter(op);
+        filter.addChildren(Arrays.asList(children));
+        return filter;
+    }
+
+    private Tuple nextTuple() {
+        if (++row >= tuples.length)
+            row = 0;
+        return tuples[row];
+    }
+
+    @Benchmark
+    public boolean eq() {
+        return eq.evaluate(nextTuple());
+    }
+
+    @Benchmark
+    public boolean in() {
+        return in.evaluate(nextTuple());
+    }
+
+    @Benchmark
+    public boolean and() {
+        return and.evaluate(nextTuple());
+    }
+
+    @Benchmark
+    public boolean or() {
+        return or.evaluate(nextTuple());
+    }
+}
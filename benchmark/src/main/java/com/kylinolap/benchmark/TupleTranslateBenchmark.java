@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.benchmark;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.storage.StorageContext;
+import com.kylinolap.storage.hbase.ColumnValueRange;
+import com.kylinolap.storage.hbase.CubeSegmentTupleIterator;
+import com.kylinolap.storage.hbase.HBaseKeyRange;
+import com.kylinolap.storage.tuple.ITuple;
+
+/**
+ * Client side translation of HBase results into tuples. A whole segment scan
+ * runs through CubeSegmentTupleIterator against in-memory results, so the
+ * cost measured is rowkey and measure decoding plus tuple filling, without
+ * any RPC.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TupleTranslateBenchmark {
+
+    private SyntheticCube cube;
+    private HConnection conn;
+    private List<TblColRef> dimensions;
+    private byte[] startKey;
+    private byte[] stopKey;
+
+    @Setup
+    public void setup() throws Exception {
+        cube = SyntheticCube.getInstance();
+        NavigableMap<byte[], Result> rows = new TreeMap<byte[], Result>(Bytes.BYTES_COMPARATOR);
+        for (int i = 0; i < cube.getRowCount(); i++) {
+            rows.put(cube.rowKeys.get(i), cube.results.get(i));
+        }
+        conn = InMemoryHConnection.create(cube.segment.getStorageLocationIdentifier(), rows);
+        dimensions = cube.baseCuboid.getColumns();
+
+        // stop key is exclusive
+        startKey = rows.firstKey();
+        stopKey = Arrays.copyOf(rows.lastKey(), rows.lastKey().length + 1);
+    }
+
+    @Benchmark
+    public int translate(Blackhole bh) {
+        HBaseKeyRange keyRange = new HBaseKeyRange(cube.segment, cube.baseCuboid, startKey, stopKey, //
+                Collections.<Pair<byte[], byte[]>> emptyList(), //
+                Collections.<Collection<ColumnValueRange>> emptyList(), Long.MIN_VALUE, Long.MAX_VALUE);
+        CubeSegmentTupleIterator iterator = new CubeSegmentTupleIterator(cube.segment, Collections.singletonList(keyRange), conn, dimensions, null, dimensions, cube.rowValueDecoders, new StorageContext());
+        int count = 0;
+        try {
+            while (iterator.hasNext()) {
+                ITuple tuple = iterator.next();
+                bh.consume(tuple);
+                count++;
+            }
+        } finally {
+            iterator.close();
+        }
+        return count;
+    }
+}
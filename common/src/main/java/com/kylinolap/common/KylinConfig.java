@@ -431,6 +431,18 @@ public class KylinConfig {
         return Long.parseLong(getOptional("kylin.job.step.timeout", String.valueOf(2 * 60 * 60)));
     }
 
+    public boolean isMetadataCacheEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.metadata.cache.enabled", "true"));
+    }
+
+    public int getJobOutputMaxLength() {
+        return Integer.parseInt(getOptional("kylin.job.output.max.length", String.valueOf(1024 * 1024)));
+    }
+
+    public long getJobOutputFlushIntervalMs() {
+        return Long.parseLong(getOptional("kylin.job.output.flush.interval.ms", "2000"));
+    }
+
     public String getServerMode() {
         return this.getOptional("kylin.server.mode", "all");
     }
@@ -451,6 +463,151 @@ public class KylinConfig {
         return Integer.parseInt(this.getOptional("kylin.query.scan.thread.count", "40"));
     }
 
+    /**
+     * threads scanning the shards of a cube segment in parallel, shared by all
+     * queries of the process and sized once when the first query starts
+     */
+    public int getShardScanThreadCount() {
+        return Integer.parseInt(this.getOptional("kylin.query.shard.scan.thread.count", "20"));
+    }
+
+    /**
+     * threads calling the inverted index endpoint, shared by all queries of
+     * the process and sized once when the first query starts
+     */
+    public int getEndpointThreadCount() {
+        return Integer.parseInt(this.getOptional("kylin.query.endpoint.thread.count", "20"));
+    }
+
+    /**
+     * scan all key ranges of a query at once on the scan thread pool, instead
+     * of one after another on the query thread
+     */
+    public boolean isConcurrentScanIteratorEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.query.scan.concurrent.iterator", "false"));
+    }
+
+    /**
+     * the largest LIMIT of an ORDER BY measure query whose TopN is pushed
+     * down to the coprocessor, 0 to disable the pushdown
+     */
+    public int getCoprocessorTopNMaxLimit() {
+        return Integer.parseInt(this.getOptional("kylin.query.coprocessor.topn.max.limit", "10000"));
+    }
+
+    /**
+     * whether the coprocessor packs aggregated rows into compressed blocks,
+     * instead of returning one KeyValue per row and column
+     */
+    public boolean isCoprocessorCompactResponseEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.query.coprocessor.compact.response", "true"));
+    }
+
+    /**
+     * number of shards the rowkeys of a new segment are salted into, 0 (the
+     * default) keeps the plain cuboid-first layout
+     */
+    public int getRowkeyShardNum() {
+        return Integer.parseInt(this.getOptional("kylin.storage.rowkey.shard.num", "0"));
+    }
+
+    /**
+     * how long ACLs stay cached in a query server, changes made on other
+     * nodes normally arrive earlier through cache broadcast; 0 disables the
+     * cache
+     */
+    public int getAclCacheTTLSeconds() {
+        return Integer.parseInt(this.getOptional("kylin.rest.acl.cache.ttl.seconds", "300"));
+    }
+
+    public int getQueryProfileBufferSize() {
+        return Integer.parseInt(this.getOptional("kylin.query.profile.buffer.size", "200"));
+    }
+
+    /**
+     * queries one user may have running on a query server at a time, more
+     * are rejected at admission; 0 means no limit
+     */
+    public int getQueryMaxConcurrentPerUser() {
+        return Integer.parseInt(this.getOptional("kylin.query.max.concurrent.per.user", "0"));
+    }
+
+    /**
+     * queries one project may have running on a query server at a time, 0
+     * means no limit
+     */
+    public int getQueryMaxConcurrentPerProject() {
+        return Integer.parseInt(this.getOptional("kylin.query.max.concurrent.per.project", "0"));
+    }
+
+    public int getQueryAsyncThreadCount() {
+        return Integer.parseInt(this.getOptional("kylin.query.async.thread.count", "10"));
+    }
+
+    /**
+     * how long the result of an asynchronous query is kept for polling after
+     * it finishes
+     */
+    public int getQueryAsyncResultRetentionSeconds() {
+        return Integer.parseInt(this.getOptional("kylin.query.async.result.retention.seconds", "600"));
+    }
+
+    /**
+     * interactive queries running on a query server at a time, more wait in
+     * queue up to the admission timeout; 0 means no limit
+     */
+    public int getQueryMaxConcurrent() {
+        return Integer.parseInt(this.getOptional("kylin.query.max.concurrent", "0"));
+    }
+
+    /**
+     * export queries (async submissions and result downloads) running on a
+     * query server at a time, 0 means no limit
+     */
+    public int getQueryMaxConcurrentExport() {
+        return Integer.parseInt(this.getOptional("kylin.query.max.concurrent.export", "0"));
+    }
+
+    /**
+     * how long a query waits for a concurrency slot or memory budget before it
+     * is rejected
+     */
+    public int getQueryAdmissionTimeoutSeconds() {
+        return Integer.parseInt(this.getOptional("kylin.query.admission.timeout.seconds", "30"));
+    }
+
+    /**
+     * how long the coprocessor of a region server may aggregate for one scan
+     * before it gives up, 0 means the hbase rpc timeout of the query server,
+     * after which nobody waits for the result anyway
+     */
+    public int getQueryCoprocessorTimeoutSeconds() {
+        return Integer.parseInt(this.getOptional("kylin.query.coprocessor.timeout.seconds", "0"));
+    }
+
+    /**
+     * bytes all running queries of a query server may reserve for scanned
+     * rows, default half of the max heap
+     */
+    public long getQueryMemBudget() {
+        return Long.parseLong(this.getOptional("kylin.query.mem.budget", String.valueOf(Runtime.getRuntime().maxMemory() / 2)));
+    }
+
+    /**
+     * the most bytes a single query reserves
+     */
+    public long getQueryMemBudgetPerQuery() {
+        return Long.parseLong(this.getOptional("kylin.query.mem.budget.per.query", String.valueOf(3L * 1024 * 1024 * 1024)));
+    }
+
+    /**
+     * share of the memory budget export queries may take together, the rest
+     * is kept for interactive queries
+     */
+    public double getQueryMemBudgetExportRatio() {
+        return Double.parseDouble(this.getOptional("kylin.query.mem.budget.export.ratio", "0.5"));
+    }
+
     public boolean isQueryCacheEnabled() {
         return Boolean.parseBoolean(this.getOptional("kylin.query.cache.enabled", "true"));
     }
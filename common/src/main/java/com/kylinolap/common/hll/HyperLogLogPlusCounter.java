@@ -289,6 +289,23 @@ public class HyperLogLogPlusCounter implements Comparable<HyperLogLogPlusCounter
         }
     }
 
+    /**
+     * move the buffer past registers written by writeRegisters(), without
+     * decompressing or reading them
+     */
+    public void skipRegisters(ByteBuffer in) {
+        byte scheme = in.get();
+        if ((scheme & COMPRESSION_FLAG) > 0) {
+            int compressedLen = BytesUtil.readVInt(in);
+            in.position(in.position() + compressedLen);
+        } else if (scheme == 0) { // map scheme
+            int size = BytesUtil.readVInt(in);
+            in.position(in.position() + size * (getRegisterIndexSize() + 1));
+        } else { // array scheme
+            in.position(in.position() + m);
+        }
+    }
+
     private int getRegisterIndexSize() {
         return (p - 1) / 8 + 1; // 2 when p=16, 3 when p=17
     }
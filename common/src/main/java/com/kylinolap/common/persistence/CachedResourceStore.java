@@ -0,0 +1,261 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.common.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kylinolap.common.KylinConfig;
+
+/**
+ * A read-through cache in front of another ResourceStore. Resource bytes and
+ * timestamps are kept locally; the first listing of a folder loads the whole
+ * folder in one batch. Writes through this store update the cache, changes
+ * made by other Kylin nodes are picked up on broadcast cache wipe events, which
+ * call {@link #invalidate(String)} or {@link #revalidate()}.
+ *
+ * Jobs, job outputs, dictionaries and snapshots are not cached, they are
+ * either big or change too often, and have their own caches where needed.
+ */
+public class CachedResourceStore extends ResourceStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachedResourceStore.class);
+
+    private static final String[] UNCACHED_ROOTS = { JOB_PATH_ROOT, JOB_OUTPUT_PATH_ROOT, DICT_RESOURCE_ROOT, SNAPSHOT_RESOURCE_ROOT };
+
+    final ResourceStore delegate;
+
+    // resource path ==> content & timestamp
+    private final ConcurrentHashMap<String, RawResource> resources = new ConcurrentHashMap<String, RawResource>();
+    // folders whose resources have all been loaded
+    private final Set<String> loadedFolders = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public CachedResourceStore(KylinConfig kylinConfig, ResourceStore delegate) {
+        super(kylinConfig);
+        this.delegate = delegate;
+    }
+
+    public ResourceStore getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * drop cached resources whose path starts with given prefix
+     */
+    public void invalidate(String pathPrefix) {
+        logger.debug("Invalidate cached resources under " + pathPrefix);
+        for (Iterator<String> it = resources.keySet().iterator(); it.hasNext();) {
+            if (it.next().startsWith(pathPrefix))
+                it.remove();
+        }
+        for (Iterator<String> it = loadedFolders.iterator(); it.hasNext();) {
+            String folder = it.next();
+            if (folder.startsWith(pathPrefix) || pathPrefix.startsWith(folder + "/"))
+                it.remove();
+        }
+    }
+
+    public void invalidateAll() {
+        resources.clear();
+        loadedFolders.clear();
+    }
+
+    /**
+     * check all cached resources against their timestamps in the underlying
+     * store, one batch per folder, and drop those changed or deleted
+     */
+    public void revalidate() throws IOException {
+        revalidate("/");
+    }
+
+    /**
+     * like {@link #revalidate()}, but only for cached resources whose path
+     * starts with given prefix
+     */
+    public void revalidate(String pathPrefix) throws IOException {
+        Set<String> folders = new HashSet<String>();
+        for (String path : resources.keySet()) {
+            if (path.startsWith(pathPrefix))
+                folders.add(path.substring(0, Math.max(1, path.lastIndexOf('/'))));
+        }
+
+        int dropped = 0;
+        for (String folder : folders) {
+            dropped += revalidateFolder(folder);
+        }
+        logger.debug("Revalidated cached resources under " + pathPrefix + ", " + dropped + " dropped, " + resources.size() + " remain");
+    }
+
+    private int revalidateFolder(String folder) throws IOException {
+        Map<String, Long> timestamps = delegate.getResourceTimestampsImpl(folder);
+        String prefix = folder.endsWith("/") ? folder : folder + "/";
+        int dropped = 0;
+        for (Iterator<Entry<String, RawResource>> it = resources.entrySet().iterator(); it.hasNext();) {
+            Entry<String, RawResource> entry = it.next();
+            String path = entry.getKey();
+            if (path.startsWith(prefix) == false || path.indexOf('/', prefix.length()) >= 0)
+                continue;
+
+            Long ts = timestamps.get(path);
+            if (ts == null || ts.longValue() != entry.getValue().timestamp) {
+                it.remove();
+                dropped++;
+            }
+        }
+        // resources newly created under the folder are always listed from the
+        // underlying store, and read through on first access
+        return dropped;
+    }
+
+    private boolean isCacheable(String resPath) {
+        for (String root : UNCACHED_ROOTS) {
+            if (resPath.equals(root) || resPath.startsWith(root + "/"))
+                return false;
+        }
+        return true;
+    }
+
+    private void loadFolder(String folder) throws IOException {
+        if (folder.equals("/") || isCacheable(folder) == false || loadedFolders.contains(folder))
+            return;
+
+        Map<String, RawResource> all = delegate.getAllResourcesImpl(folder);
+        resources.putAll(all);
+        loadedFolders.add(folder);
+        logger.debug("Loaded " + all.size() + " resources under " + folder + " in one batch");
+    }
+
+    private RawResource getCached(String resPath) throws IOException {
+        if (isCacheable(resPath) == false)
+            return null;
+
+        RawResource r = resources.get(resPath);
+        if (r != null)
+            return r;
+
+        InputStream in = delegate.getResourceImpl(resPath);
+        if (in == null)
+            return null;
+        try {
+            r = new RawResource(IOUtils.toByteArray(in), delegate.getResourceTimestampImpl(resPath));
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        // never overwrite what a concurrent write has put meanwhile
+        RawResource existing = resources.putIfAbsent(resPath, r);
+        return existing == null ? r : existing;
+    }
+
+    // ============================================================================
+
+    @Override
+    protected ArrayList<String> listResourcesImpl(String resPath) throws IOException {
+        // a cached resource has no children in Kylin's layout, no need to ask
+        if (resources.containsKey(resPath))
+            return null;
+
+        ArrayList<String> result = delegate.listResourcesImpl(resPath);
+        if (result != null)
+            loadFolder(resPath);
+        return result;
+    }
+
+    @Override
+    protected boolean existsImpl(String resPath) throws IOException {
+        if (isCacheable(resPath) && resources.get(resPath) != null)
+            return true;
+        return delegate.existsImpl(resPath);
+    }
+
+    @Override
+    protected InputStream getResourceImpl(String resPath) throws IOException {
+        if (isCacheable(resPath) == false)
+            return delegate.getResourceImpl(resPath);
+
+        RawResource r = getCached(resPath);
+        return r == null ? null : new ByteArrayInputStream(r.content);
+    }
+
+    @Override
+    protected long getResourceTimestampImpl(String resPath) throws IOException {
+        if (isCacheable(resPath) == false)
+            return delegate.getResourceTimestampImpl(resPath);
+
+        RawResource r = resources.get(resPath);
+        if (r != null)
+            return r.timestamp;
+        return delegate.getResourceTimestampImpl(resPath);
+    }
+
+    @Override
+    protected Map<String, Long> getResourceTimestampsImpl(String folderPath) throws IOException {
+        return delegate.getResourceTimestampsImpl(folderPath);
+    }
+
+    @Override
+    protected Map<String, RawResource> getAllResourcesImpl(String folderPath) throws IOException {
+        Map<String, RawResource> result = delegate.getAllResourcesImpl(folderPath);
+        if (folderPath.equals("/") == false && isCacheable(folderPath)) {
+            resources.putAll(result);
+            loadedFolders.add(folderPath);
+        }
+        return result;
+    }
+
+    @Override
+    protected void putResourceImpl(String resPath, InputStream content, long ts) throws IOException {
+        byte[] bytes = IOUtils.toByteArray(content);
+        resources.remove(resPath);
+        delegate.putResourceImpl(resPath, new ByteArrayInputStream(bytes), ts);
+        if (isCacheable(resPath))
+            resources.put(resPath, new RawResource(bytes, delegate.getResourceTimestampImpl(resPath)));
+    }
+
+    @Override
+    protected long checkAndPutResourceImpl(String resPath, byte[] content, long oldTS, long newTS) throws IOException, IllegalStateException {
+        resources.remove(resPath);
+        long confirmedTS = delegate.checkAndPutResourceImpl(resPath, content, oldTS, newTS);
+        if (isCacheable(resPath))
+            resources.put(resPath, new RawResource(content, confirmedTS));
+        return confirmedTS;
+    }
+
+    @Override
+    protected void deleteResourceImpl(String resPath) throws IOException {
+        resources.remove(resPath);
+        delegate.deleteResourceImpl(resPath);
+    }
+
+    @Override
+    protected String getReadableResourcePathImpl(String resPath) {
+        return delegate.getReadableResourcePathImpl(resPath);
+    }
+
+}
@@ -81,6 +81,15 @@ public class HBaseConnection {
         return connection;
     }
 
+    /**
+     * Use the given connection for the url from now on, instead of one
+     * created from the HBase configuration. Lets tests and benchmarks run
+     * queries against an in-process stand-in of HBase.
+     */
+    public static void register(String url, HConnection connection) {
+        ConnPool.put(url, connection);
+    }
+
     public static void createHTableIfNeeded(String hbaseUrl, String tableName, String... families) throws IOException {
         createHTableIfNeeded(HBaseConnection.get(hbaseUrl), tableName, families);
     }
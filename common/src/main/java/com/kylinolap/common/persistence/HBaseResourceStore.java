@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.Map.Entry;
 
 import org.apache.commons.io.IOUtils;
@@ -159,7 +160,10 @@ public class HBaseResourceStore extends ResourceStore {
         if (r == null)
             return null;
 
-        byte[] value = r.getValue(B_FAMILY, B_COLUMN);
+        return getInputStream(resPath, r.getValue(B_FAMILY, B_COLUMN));
+    }
+
+    private InputStream getInputStream(String resPath, byte[] value) throws IOException {
         if (value.length == 0) {
             Path redirectPath = bigCellHDFSPath(resPath);
             Configuration hconf = HadoopUtil.getCurrentConfiguration();
@@ -180,6 +184,81 @@ public class HBaseResourceStore extends ResourceStore {
             return Bytes.toLong(r.getValue(B_FAMILY, B_COLUMN_TS));
     }
 
+    @Override
+    protected Map<String, Long> getResourceTimestampsImpl(String folderPath) throws IOException {
+        String lookForPrefix = folderPath.endsWith("/") ? folderPath : folderPath + "/";
+        byte[] startRow = Bytes.toBytes(lookForPrefix);
+        byte[] endRow = Bytes.toBytes(lookForPrefix);
+        endRow[endRow.length - 1]++;
+
+        // one scan over the timestamp column only, instead of a scan per resource
+        Map<String, Long> result = new TreeMap<String, Long>();
+        HTableInterface table = getConnection().getTable(getTableName(lookForPrefix));
+        Scan scan = new Scan(startRow, endRow);
+        scan.addColumn(B_FAMILY, B_COLUMN_TS);
+        scan.setCaching(1000);
+        try {
+            ResultScanner scanner = table.getScanner(scan);
+            try {
+                for (Result r : scanner) {
+                    String path = Bytes.toString(r.getRow());
+                    if (path.indexOf('/', lookForPrefix.length()) >= 0)
+                        continue; // in a sub-folder
+                    byte[] ts = r.getValue(B_FAMILY, B_COLUMN_TS);
+                    if (ts != null)
+                        result.put(path, Bytes.toLong(ts));
+                }
+            } finally {
+                scanner.close();
+            }
+        } finally {
+            IOUtils.closeQuietly(table);
+        }
+        return result;
+    }
+
+    @Override
+    protected Map<String, RawResource> getAllResourcesImpl(String folderPath) throws IOException {
+        String lookForPrefix = folderPath.endsWith("/") ? folderPath : folderPath + "/";
+        byte[] startRow = Bytes.toBytes(lookForPrefix);
+        byte[] endRow = Bytes.toBytes(lookForPrefix);
+        endRow[endRow.length - 1]++;
+
+        // one scan for the whole folder, instead of a scan per resource
+        Map<String, RawResource> result = new TreeMap<String, RawResource>();
+        HTableInterface table = getConnection().getTable(getTableName(lookForPrefix));
+        Scan scan = new Scan(startRow, endRow);
+        scan.addColumn(B_FAMILY, B_COLUMN);
+        scan.addColumn(B_FAMILY, B_COLUMN_TS);
+        scan.setCaching(100);
+        try {
+            ResultScanner scanner = table.getScanner(scan);
+            try {
+                for (Result r : scanner) {
+                    String path = Bytes.toString(r.getRow());
+                    if (path.indexOf('/', lookForPrefix.length()) >= 0)
+                        continue; // in a sub-folder
+                    byte[] value = r.getValue(B_FAMILY, B_COLUMN);
+                    byte[] ts = r.getValue(B_FAMILY, B_COLUMN_TS);
+                    if (value == null || ts == null)
+                        continue;
+
+                    InputStream in = getInputStream(path, value);
+                    try {
+                        result.put(path, new RawResource(IOUtils.toByteArray(in), Bytes.toLong(ts)));
+                    } finally {
+                        IOUtils.closeQuietly(in);
+                    }
+                }
+            } finally {
+                scanner.close();
+            }
+        } finally {
+            IOUtils.closeQuietly(table);
+        }
+        return result;
+    }
+
     @Override
     protected void putResourceImpl(String resPath, InputStream content, long ts) throws IOException {
         ByteArrayOutputStream bout = new ByteArrayOutputStream();
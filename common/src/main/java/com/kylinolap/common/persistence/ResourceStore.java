@@ -21,7 +21,9 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.IOUtils;
@@ -81,6 +83,11 @@ abstract public class ResourceStore {
                 throw new IllegalArgumentException("Failed to find metadata store by url: " + kylinConfig.getMetadataUrl());
             }
 
+            // local files are cheap to read, only remote stores are worth caching
+            if (kylinConfig.isMetadataCacheEnabled() && !(r instanceof FileResourceStore)) {
+                r = new CachedResourceStore(kylinConfig, r);
+            }
+
             CACHE.put(kylinConfig, r);
         }
         return r;
@@ -147,6 +154,63 @@ abstract public class ResourceStore {
 
     abstract protected long getResourceTimestampImpl(String resPath) throws IOException;
 
+    /**
+     * return the timestamps of all resources directly under given folder,
+     * sub-folders are not included; return an empty map if given path is not a
+     * folder
+     */
+    final public Map<String, Long> getResourceTimestamps(String folderPath) throws IOException {
+        return getResourceTimestampsImpl(norm(folderPath));
+    }
+
+    /**
+     * default implementation checks resources one by one, stores that can do
+     * better in one batch should override
+     */
+    protected Map<String, Long> getResourceTimestampsImpl(String folderPath) throws IOException {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        ArrayList<String> children = listResourcesImpl(folderPath);
+        if (children == null)
+            return result;
+
+        for (String child : children) {
+            if (existsImpl(child))
+                result.put(child, getResourceTimestampImpl(child));
+        }
+        return result;
+    }
+
+    /**
+     * read all resources directly under given folder in one batch, sub-folders
+     * are not included; return an empty map if given path is not a folder
+     */
+    final public Map<String, RawResource> getAllResources(String folderPath) throws IOException {
+        return getAllResourcesImpl(norm(folderPath));
+    }
+
+    /**
+     * default implementation reads resources one by one, stores that can do
+     * better in one batch should override
+     */
+    protected Map<String, RawResource> getAllResourcesImpl(String folderPath) throws IOException {
+        Map<String, RawResource> result = new LinkedHashMap<String, RawResource>();
+        ArrayList<String> children = listResourcesImpl(folderPath);
+        if (children == null)
+            return result;
+
+        for (String child : children) {
+            InputStream in = getResourceImpl(child);
+            if (in == null)
+                continue;
+            try {
+                result.put(child, new RawResource(IOUtils.toByteArray(in), getResourceTimestampImpl(child)));
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        return result;
+    }
+
     /**
      * overwrite a resource without write conflict check
      */
@@ -225,6 +289,16 @@ abstract public class ResourceStore {
 
     // ============================================================================
 
+    public static class RawResource {
+        public final byte[] content;
+        public final long timestamp;
+
+        public RawResource(byte[] content, long timestamp) {
+            this.content = content;
+            this.timestamp = timestamp;
+        }
+    }
+
     public static interface Visitor {
         void visit(String path) throws IOException;
     }
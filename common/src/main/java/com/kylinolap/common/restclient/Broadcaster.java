@@ -18,10 +18,16 @@ package com.kylinolap.common.restclient;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +37,11 @@ import com.kylinolap.common.KylinConfig;
 /**
  * Broadcast kylin event out
  * 
+ * Events are coalesced per (type, name), only the latest action of a key is
+ * kept. A single dispatcher thread hands them to every REST node in batches,
+ * reusing one client per node, and keeps undelivered events of a failing node
+ * for retry with exponential backoff.
+ * 
  * @author jianliu
  * 
  */
@@ -38,24 +49,50 @@ public class Broadcaster {
 
     private static final Logger logger = LoggerFactory.getLogger(Broadcaster.class);
 
-    private static List<BroadcastEvent> broadcaseEvents = new ArrayList<BroadcastEvent>();
+    private static final long DISPATCH_INTERVAL_MS = 1000;
+    private static final long RETRY_MIN_INTERVAL_MS = 1000;
+    private static final long RETRY_MAX_INTERVAL_MS = 60 * 1000;
+    private static final int MAX_BATCH_SIZE = 100;
+
+    // (type, name) ==> latest event, not yet handed to nodes
+    private static LinkedHashMap<String, BroadcastEvent> broadcaseEvents = new LinkedHashMap<String, BroadcastEvent>();
 
     static class BroadcasterHolder {
         static final Broadcaster INSTANCE = new Broadcaster();
     }
 
-    private Broadcaster() {
-        Timer timer = new Timer();
-        TimerTask task = new TimerTask() {
-            public void run() {
-                Broadcaster.flush();
+    // below are accessed by the dispatcher thread only, except for the metrics
+    private final ScheduledExecutorService dispatcher;
+    private final Map<String, NodeQueue> nodeQueues = new LinkedHashMap<String, NodeQueue>();
+    private final Runnable dispatchTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                dispatch();
+            } catch (Throwable t) {
+                logger.error("Broadcast dispatch failed", t);
             }
-        };
+        }
+    };
 
-        timer.schedule(task, new Date(), 10 * 1000);
+    private volatile int pendingDeliveries = 0;
+    private volatile long oldestPendingTime = 0;
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private Broadcaster() {
+        dispatcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Broadcaster");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        dispatcher.scheduleWithFixedDelay(dispatchTask, DISPATCH_INTERVAL_MS, DISPATCH_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
-    public Broadcaster getInstance() {
+    public static Broadcaster getInstance() {
         return BroadcasterHolder.INSTANCE;
     }
 
@@ -70,27 +107,122 @@ public class Broadcaster {
      *            event action
      */
     public static synchronized void queue(String type, String action, String key) {
-        BroadcastEvent event = BroadcasterHolder.INSTANCE.new BroadcastEvent(type, action, key);
+        BroadcastEvent event = getInstance().new BroadcastEvent(type, action, key);
+
+        // the latest action wins, but lag is measured from the first queued
+        BroadcastEvent previous = broadcaseEvents.remove(event.getKey());
+        if (previous != null) {
+            event.queueTime = previous.queueTime;
+        }
+        broadcaseEvents.put(event.getKey(), event);
+    }
+
+    /**
+     * Ask the dispatcher to send queued events now, instead of waiting for the
+     * next round. Returns immediately.
+     */
+    public static void flush() {
+        Broadcaster broadcaster = getInstance();
+        broadcaster.dispatcher.execute(broadcaster.dispatchTask);
+    }
 
-        if (!broadcaseEvents.contains(event)) {
-            broadcaseEvents.add(event);
+    private static synchronized List<BroadcastEvent> drainQueue() {
+        if (broadcaseEvents.isEmpty())
+            return null;
+
+        List<BroadcastEvent> events = new ArrayList<BroadcastEvent>(broadcaseEvents.values());
+        broadcaseEvents.clear();
+        return events;
+    }
+
+    private static synchronized long oldestQueueTime() {
+        Iterator<BroadcastEvent> it = broadcaseEvents.values().iterator();
+        long oldest = 0;
+        while (it.hasNext()) {
+            long t = it.next().queueTime;
+            if (oldest == 0 || t < oldest)
+                oldest = t;
         }
+        return oldest;
     }
 
-    public static synchronized void flush() {
+    private static synchronized int queuedCount() {
+        return broadcaseEvents.size();
+    }
+
+    private void dispatch() {
+        List<BroadcastEvent> events = drainQueue();
+        if (events == null && pendingDeliveries == 0)
+            return;
+
         String[] nodes = KylinConfig.getInstanceFromEnv().getRestServers();
-        if (nodes == null)
+        if (nodes == null) {
+            nodeQueues.clear();
+            updateMetrics();
             return;
+        }
 
-        for (BroadcastEvent event : broadcaseEvents) {
-            for (String nodeUri : nodes) {
-                logger.debug("Broadcast nodeUri: " + nodeUri + ", type: " + event.getType() + ", action: " + event.getAction() + ", name: " + event.getName());
-                WipeCacheThread thread = BroadcasterHolder.INSTANCE.new WipeCacheThread(nodeUri, event.getType(), event.getAction(), event.getName());
-                thread.start();
+        // forget nodes no longer configured
+        nodeQueues.keySet().retainAll(Arrays.asList(nodes));
+        for (String nodeUri : nodes) {
+            NodeQueue nodeQueue = nodeQueues.get(nodeUri);
+            if (nodeQueue == null) {
+                nodeQueue = new NodeQueue(nodeUri);
+                nodeQueues.put(nodeUri, nodeQueue);
             }
+            if (events != null)
+                nodeQueue.offer(events);
         }
 
-        broadcaseEvents.clear();
+        long now = System.currentTimeMillis();
+        for (NodeQueue nodeQueue : nodeQueues.values()) {
+            if (nodeQueue.pending.isEmpty() == false && nodeQueue.nextAttemptTime <= now) {
+                nodeQueue.send();
+            }
+        }
+        updateMetrics();
+    }
+
+    private void updateMetrics() {
+        int pending = 0;
+        long oldest = 0;
+        for (NodeQueue nodeQueue : nodeQueues.values()) {
+            pending += nodeQueue.pending.size();
+            for (BroadcastEvent event : nodeQueue.pending.values()) {
+                if (oldest == 0 || event.queueTime < oldest)
+                    oldest = event.queueTime;
+            }
+        }
+        pendingDeliveries = pending;
+        oldestPendingTime = oldest;
+    }
+
+    /**
+     * @return number of events queued but not yet dispatched, plus undelivered
+     *         (event, node) pairs
+     */
+    public static int getQueueDepth() {
+        return queuedCount() + getInstance().pendingDeliveries;
+    }
+
+    /**
+     * @return milliseconds since the oldest undelivered event was queued, 0 if
+     *         every event has been delivered
+     */
+    public static long getLagMillis() {
+        long oldest = oldestQueueTime();
+        long pending = getInstance().oldestPendingTime;
+        if (oldest == 0 || (pending != 0 && pending < oldest))
+            oldest = pending;
+        return oldest == 0 ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    public static long getDeliveredCount() {
+        return getInstance().deliveredCount.get();
+    }
+
+    public static long getFailedCount() {
+        return getInstance().failedCount.get();
     }
 
     public static String genEventkey(String type, String action, String name) {
@@ -98,32 +230,58 @@ public class Broadcaster {
         return time + "_" + type + "_" + action + "_" + name;
     }
 
-    protected class WipeCacheThread extends Thread {
-        private String nodeUri;
-        private String type;
-        private String action;
-        private String name;
-
-        public WipeCacheThread(String nodeUri, String type, String action, String name) {
+    /**
+     * Undelivered events of one REST node, coalesced the same way as the
+     * queue, with the state of its retry backoff.
+     */
+    private class NodeQueue {
+        private final String nodeUri;
+        private final RestClient restClient;
+        private final LinkedHashMap<String, BroadcastEvent> pending = new LinkedHashMap<String, BroadcastEvent>();
+        private int failures = 0;
+        private long nextAttemptTime = 0;
+
+        NodeQueue(String nodeUri) {
             this.nodeUri = nodeUri;
-            this.type = type;
-            this.action = action;
-            this.name = name;
+            this.restClient = new RestClient(nodeUri);
         }
 
-        /*
-         * (non-Javadoc)
-         * 
-         * @see java.lang.Thread#run()
-         */
-        @Override
-        public void run() {
-            RestClient restClient = new RestClient(nodeUri);
+        void offer(List<BroadcastEvent> events) {
+            for (BroadcastEvent event : events) {
+                BroadcastEvent previous = pending.remove(event.getKey());
+                if (previous != null && previous.queueTime < event.queueTime) {
+                    event.queueTime = previous.queueTime;
+                }
+                pending.put(event.getKey(), event);
+            }
+        }
+
+        void send() {
+            List<BroadcastEvent> batch = new ArrayList<BroadcastEvent>(Math.min(pending.size(), MAX_BATCH_SIZE));
+            for (BroadcastEvent event : pending.values()) {
+                batch.add(event);
+                if (batch.size() >= MAX_BATCH_SIZE)
+                    break;
+            }
+
+            logger.debug("Broadcast " + batch.size() + " events to nodeUri: " + nodeUri);
             try {
-                restClient.wipeCache(this.type, this.action, this.name);
+                restClient.wipeCache(batch);
             } catch (IOException e) {
-                logger.warn("Thread failed during wipe cache at " + type + "." + action + "." + name + ", " + e.toString());
+                failures++;
+                failedCount.incrementAndGet();
+                long delay = Math.min(RETRY_MAX_INTERVAL_MS, RETRY_MIN_INTERVAL_MS << Math.min(failures - 1, 16));
+                nextAttemptTime = System.currentTimeMillis() + delay;
+                logger.warn("Broadcast to " + nodeUri + " failed " + failures + " times, retry in " + delay + " ms, " + e.toString());
+                return;
             }
+
+            for (BroadcastEvent event : batch) {
+                pending.remove(event.getKey());
+            }
+            deliveredCount.addAndGet(batch.size());
+            failures = 0;
+            nextAttemptTime = 0;
         }
     }
 
@@ -151,7 +309,7 @@ public class Broadcaster {
     }
 
     public enum TYPE {
-        CUBE("cube"), METADATA("metadata"), PROJECT("project");
+        CUBE("cube"), METADATA("metadata"), PROJECT("project"), TABLE("table"), CUBE_DESC("cube_desc"), ACL("acl");
         private String text;
 
         private TYPE(String text) {
@@ -181,6 +339,7 @@ public class Broadcaster {
         private String type;
         private String action;
         private String name;
+        private long queueTime = System.currentTimeMillis();
 
         public BroadcastEvent(String type, String action, String name) {
             super();
@@ -213,6 +372,10 @@ public class Broadcaster {
             this.name = name;
         }
 
+        String getKey() {
+            return type + "/" + name;
+        }
+
         @Override
         public int hashCode() {
             final int prime = 31;
@@ -17,6 +17,7 @@
 package com.kylinolap.common.restclient;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,7 +29,9 @@ import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 
@@ -37,6 +40,9 @@ import org.codehaus.jettison.json.JSONObject;
  */
 public class RestClient {
 
+    static final int CONNECT_TIMEOUT_MS = 10 * 1000;
+    static final int SOCKET_TIMEOUT_MS = 120 * 1000;
+
     String host;
     int port;
     String baseUrl;
@@ -77,6 +83,8 @@ public class RestClient {
         this.baseUrl = "http://" + host + ":" + port + "/kylin/api";
 
         client = new HttpClient();
+        client.getHttpConnectionManager().getParams().setConnectionTimeout(CONNECT_TIMEOUT_MS);
+        client.getHttpConnectionManager().getParams().setSoTimeout(SOCKET_TIMEOUT_MS);
 
         if (userName != null && password != null) {
             client.getParams().setAuthenticationPreemptive(true);
@@ -103,6 +111,34 @@ public class RestClient {
         }
     }
 
+    /**
+     * Send a batch of cache wipe events in one request, each encoded as
+     * "type/name/action"
+     */
+    public void wipeCache(List<Broadcaster.BroadcastEvent> events) throws IOException {
+        String url = baseUrl + "/cache/batch";
+        PutMethod put = new PutMethod(url);
+
+        JSONArray array = new JSONArray();
+        for (Broadcaster.BroadcastEvent event : events) {
+            array.put(event.getType() + "/" + event.getName() + "/" + event.getAction());
+        }
+
+        try {
+            put.setRequestEntity(new StringRequestEntity(array.toString(), "application/json", "UTF-8"));
+            int code = client.executeMethod(put);
+            String msg = Bytes.toString(put.getResponseBody());
+
+            if (code != 200)
+                throw new IOException("Invalid response " + code + " with cache wipe url " + url + "\n" + msg);
+
+        } catch (HttpException ex) {
+            throw new IOException(ex);
+        } finally {
+            put.releaseConnection();
+        }
+    }
+
     public String getKylinProperties() throws IOException {
         String url = baseUrl + "/admin/config";
         HttpMethod get = new GetMethod(url);
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.common.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram in the HDR style: values are counted in log
+ * linear buckets, 16 per power of 2, so any recorded value is reported within
+ * 4% of itself while the histogram stays a fixed 1K of counters.
+ * Recording is a couple of atomic adds, percentiles are computed on read.
+ * <p>
+ * A histogram created with a window reports min, max, mean and percentiles
+ * over the recent window only, kept as a ring of slots that are cleared as
+ * they come round again; count and sum always cover all recorded values.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKET_COUNT = SUB_COUNT * (64 - SUB_BITS + 1);
+
+    private static final int WINDOW_SLOTS = 6;
+
+    private static class Slot {
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        final AtomicLong count = new AtomicLong(0);
+        final AtomicLong sum = new AtomicLong(0);
+        final AtomicLong max = new AtomicLong(0);
+        volatile long epoch;
+
+        void clear(long newEpoch) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+            epoch = newEpoch;
+        }
+    }
+
+    private final long slotMillis; // 0 for a histogram without window
+    private final Slot[] slots;
+    private final StripedCounter count = new StripedCounter();
+    private final StripedCounter sum = new StripedCounter();
+
+    /**
+     * A histogram of all values recorded since creation or the last reset.
+     */
+    public LatencyHistogram() {
+        this(0);
+    }
+
+    /**
+     * @param windowMillis
+     *            report on values recorded within about this many milliseconds
+     *            only, 0 or less to report on all values
+     */
+    public LatencyHistogram(long windowMillis) {
+        this.slotMillis = windowMillis > 0 ? Math.max(1, windowMillis / WINDOW_SLOTS) : 0;
+        this.slots = new Slot[slotMillis > 0 ? WINDOW_SLOTS : 1];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * @param value
+     *            non-negative, usually milliseconds; negative values count as
+     *            0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        count.increment();
+        sum.add(value);
+
+        Slot slot = currentSlot();
+        slot.buckets.incrementAndGet(bucketIndex(value));
+        slot.count.incrementAndGet();
+        slot.sum.addAndGet(value);
+        long m = slot.max.get();
+        while (value > m && slot.max.compareAndSet(m, value) == false) {
+            m = slot.max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        long m = 0;
+        for (Slot slot : liveSlots()) {
+            m = Math.max(m, slot.max.get());
+        }
+        return m;
+    }
+
+    public double getMean() {
+        long n = 0, s = 0;
+        for (Slot slot : liveSlots()) {
+            n += slot.count.get();
+            s += slot.sum.get();
+        }
+        return n == 0 ? 0 : (double) s / n;
+    }
+
+    /**
+     * @param percentile
+     *            between 0 and 100
+     * @return the value below which the given percent of recorded values
+     *         fall, 0 if nothing recorded
+     */
+    public long getPercentile(double percentile) {
+        Slot[] live = liveSlots();
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        long max = 0;
+        for (Slot slot : live) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long n = slot.buckets.get(i);
+                snapshot[i] += n;
+                total += n;
+            }
+            max = Math.max(max, slot.max.get());
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getMin() {
+        Slot[] live = liveSlots();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            for (Slot slot : live) {
+                if (slot.buckets.get(i) > 0) {
+                    return bucketValue(i);
+                }
+            }
+        }
+        return 0;
+    }
+
+    public void reset() {
+        for (Slot slot : slots) {
+            synchronized (slot) {
+                slot.clear(slot.epoch);
+            }
+        }
+        count.reset();
+        sum.reset();
+    }
+
+    /**
+     * @return current time in milliseconds, the clock the window moves by
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private long currentEpoch() {
+        return slotMillis > 0 ? now() / slotMillis : 0;
+    }
+
+    private Slot currentSlot() {
+        long epoch = currentEpoch();
+        Slot slot = slots[(int) (epoch % slots.length)];
+        if (slot.epoch != epoch) {
+            // first value of a new slot period, drop what the slot held from
+            // a full window ago
+            synchronized (slot) {
+                if (slot.epoch != epoch) {
+                    slot.clear(epoch);
+                }
+            }
+        }
+        return slot;
+    }
+
+    private Slot[] liveSlots() {
+        long epoch = currentEpoch();
+        Slot[] live = new Slot[slots.length];
+        int n = 0;
+        for (Slot slot : slots) {
+            if (epoch - slot.epoch < slots.length) {
+                live[n++] = slot;
+            }
+        }
+        if (n == live.length) {
+            return live;
+        }
+        Slot[] result = new Slot[n];
+        System.arraycopy(live, 0, result, 0, n);
+        return result;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BITS
+        int shift = exp - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_COUNT;
+        return SUB_COUNT + shift * SUB_COUNT + sub;
+    }
+
+    /**
+     * @return the middle of the value range of the bucket
+     */
+    static long bucketValue(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_COUNT) / SUB_COUNT;
+        int sub = (index - SUB_COUNT) % SUB_COUNT;
+        long lower = (long) (SUB_COUNT + sub) << shift;
+        return lower + ((1L << shift) >>> 1);
+    }
+}
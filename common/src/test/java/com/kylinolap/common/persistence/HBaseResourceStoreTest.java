@@ -71,7 +71,8 @@ public class HBaseResourceStoreTest extends HBaseMetadataTestCase {
             StringEntity t = store.getResource(path, StringEntity.class, StringEntity.serializer);
             assertEquals(content, t);
 
-            Path redirectPath = ((HBaseResourceStore) store).bigCellHDFSPath(path);
+            ResourceStore hbaseStore = store instanceof CachedResourceStore ? ((CachedResourceStore) store).getDelegate() : store;
+            Path redirectPath = ((HBaseResourceStore) hbaseStore).bigCellHDFSPath(path);
             Configuration hconf = HadoopUtil.getCurrentConfiguration();
             FileSystem fileSystem = FileSystem.get(hconf);
             assertTrue(fileSystem.exists(redirectPath));
@@ -21,6 +21,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.junit.After;
@@ -47,6 +48,46 @@ public class LocalFileResourceStoreTest extends LocalFileMetadataTestCase {
         testAStore(ResourceStore.getStore(KylinConfig.getInstanceFromEnv()));
     }
 
+    @Test
+    public void testCachedStore() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        testAStore(new CachedResourceStore(config, ResourceStore.getStore(config)));
+    }
+
+    @Test
+    public void testCachedStoreRevalidate() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        ResourceStore fileStore = ResourceStore.getStore(config);
+        CachedResourceStore store = new CachedResourceStore(config, fileStore);
+        String path = "/cube/_test_cached.json";
+
+        try {
+            store.putResource(path, new StringEntity("v1"), StringEntity.serializer);
+            assertTrue(store.listResources("/cube").contains(path));
+            assertEquals("v1", store.getResource(path, StringEntity.class, StringEntity.serializer).str);
+
+            // changed behind the cache, e.g. by another Kylin node
+            StringEntity t = fileStore.getResource(path, StringEntity.class, StringEntity.serializer);
+            t.str = "v2";
+            Thread.sleep(1000); // some FS keep timestamps in seconds
+            fileStore.putResource(path, t, StringEntity.serializer);
+            assertEquals("v1", store.getResource(path, StringEntity.class, StringEntity.serializer).str);
+
+            // revalidation of another root leaves it alone
+            store.revalidate("/table/");
+            assertEquals("v1", store.getResource(path, StringEntity.class, StringEntity.serializer).str);
+
+            store.revalidate("/cube/");
+            assertEquals("v2", store.getResource(path, StringEntity.class, StringEntity.serializer).str);
+
+            fileStore.deleteResource(path);
+            store.invalidate("/cube/");
+            assertTrue(store.exists(path) == false);
+        } finally {
+            store.deleteResource(path);
+        }
+    }
+
     void testAStore(ResourceStore store) throws IOException {
         String dir1 = "/cube";
         String path1 = "/cube/_test.json";
@@ -107,6 +148,12 @@ public class LocalFileResourceStoreTest extends LocalFileMetadataTestCase {
         list = store.listResources(path2);
         assertNull(list);
 
+        // timestamps in batch
+        Map<String, Long> timestamps = store.getResourceTimestamps(dir1);
+        assertEquals(store.getResourceTimestamp(path1), timestamps.get(path1).longValue());
+        assertTrue(timestamps.containsKey(path2) == false);
+        assertTrue(store.getResourceTimestamps("/").containsKey(path1) == false);
+
         // delete/exist
         store.deleteResource(path1);
         assertTrue(store.exists(path1) == false);
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.common.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        long[] values = { 0, 1, 15, 16, 17, 100, 1000, 12345, 1L << 40, Long.MAX_VALUE };
+        for (long v : values) {
+            long reported = LatencyHistogram.bucketValue(LatencyHistogram.bucketIndex(v));
+            assertTrue(v + " reported as " + reported, Math.abs(reported - v) <= v * 0.04);
+        }
+        for (long v = 1; v < 100000; v = v * 3 + 1) {
+            assertTrue(LatencyHistogram.bucketIndex(v) <= LatencyHistogram.bucketIndex(v + 1));
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getPercentile(99));
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(500500, h.getSum());
+        assertEquals(1000, h.getMax());
+        assertEquals(500, h.getPercentile(50), 20);
+        assertEquals(950, h.getPercentile(95), 40);
+        assertEquals(990, h.getPercentile(99), 40);
+        assertEquals(1, h.getMin());
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+    }
+
+    @Test
+    public void testWindow() {
+        final long[] clock = { 1000000 };
+        LatencyHistogram h = new LatencyHistogram(60000) {
+            @Override
+            long now() {
+                return clock[0];
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            h.record(1000);
+        }
+        clock[0] += 30000;
+        for (int i = 0; i < 100; i++) {
+            h.record(10);
+        }
+        assertEquals(1000, h.getMax());
+        assertEquals(505, h.getMean(), 0.001);
+
+        // the slow values fall out of the window, the fast ones are still in
+        clock[0] += 40000;
+        assertEquals(10, h.getMax());
+        assertEquals(10, h.getPercentile(99));
+        assertEquals(10, h.getMin());
+        assertEquals(200, h.getCount());
+
+        clock[0] += 60000;
+        assertEquals(0, h.getPercentile(50));
+        assertEquals(0, h.getMax());
+        assertEquals(200, h.getCount());
+    }
+
+    @Test
+    public void testConcurrentRecord() throws InterruptedException {
+        final LatencyHistogram h = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        h.record(i % 100);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(80000, h.getCount());
+        assertEquals(99, h.getMax());
+    }
+}
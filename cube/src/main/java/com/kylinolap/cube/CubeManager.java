@@ -32,6 +32,7 @@ import com.kylinolap.common.persistence.Serializer;
 import com.kylinolap.common.restclient.Broadcaster;
 import com.kylinolap.common.restclient.SingleValueCache;
 import com.kylinolap.cube.exception.CubeIntegrityException;
+import com.kylinolap.cube.kv.RowConstants;
 import com.kylinolap.cube.project.ProjectInstance;
 import com.kylinolap.cube.project.ProjectManager;
 import com.kylinolap.dict.Dictionary;
@@ -405,6 +406,20 @@ public class CubeManager {
         }
     }
 
+    /**
+     * Load a cube not yet in cache, e.g. created on another node
+     *
+     * @param cubeName
+     */
+    public CubeInstance reloadCubeLocal(String cubeName) {
+        try {
+            return loadCubeInstance(CubeInstance.concatResourcePath(cubeName));
+        } catch (IOException e) {
+            logger.error(e.getLocalizedMessage(), e);
+            return null;
+        }
+    }
+
     /**
      * After cube deletion, remove cube related cache
      *
@@ -418,6 +433,20 @@ public class CubeManager {
         }
     }
 
+    /**
+     * Drop cached lookup tables built on given table, e.g. after a new
+     * snapshot of it has been taken
+     *
+     * @param tableName
+     */
+    public void removeLookupTableCache(String tableName) {
+        String prefix = tableName.toUpperCase() + "#";
+        for (String key : new ArrayList<String>(lookupTables.keySet())) {
+            if (key.toUpperCase().startsWith(prefix))
+                lookupTables.removeLocal(key);
+        }
+    }
+
     public LookupStringTable getLookupTable(CubeSegment cubeSegment, DimensionDesc dim) {
 
         String tableName = dim.getTable();
@@ -561,6 +590,7 @@ public class CubeManager {
         segment.setDateRangeEnd(endDate);
         segment.setStatus(CubeSegmentStatusEnum.NEW);
         segment.setStorageLocationIdentifier(generateStorageLocation());
+        segment.setRowkeyShardNum(Math.max(0, Math.min(config.getRowkeyShardNum(), RowConstants.ROWKEY_MAX_SHARD_NUM)));
 
         segment.setCubeInstance(cubeInstance);
 
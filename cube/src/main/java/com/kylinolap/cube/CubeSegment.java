@@ -26,6 +26,7 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Objects;
+import com.kylinolap.cube.kv.RowConstants;
 import com.kylinolap.metadata.model.cube.CubeDesc;
 import com.kylinolap.metadata.model.cube.TblColRef;
 
@@ -63,6 +64,9 @@ public class CubeSegment implements Comparable<CubeSegment> {
     private String binarySignature; // a hash of cube schema and dictionary ID,
                                     // used for sanity check
 
+    @JsonProperty("rowkey_shard_num")
+    private int rowkeyShardNum; // 0 means rowkeys have no shard prefix
+
     @JsonProperty("dictionaries")
     private ConcurrentHashMap<String, String> dictionaries; // table/column ==> dictionary resource path
     @JsonProperty("snapshots")
@@ -249,6 +253,22 @@ public class CubeSegment implements Comparable<CubeSegment> {
         this.storageLocationIdentifier = storageLocationIdentifier;
     }
 
+    public int getRowkeyShardNum() {
+        return rowkeyShardNum;
+    }
+
+    public void setRowkeyShardNum(int rowkeyShardNum) {
+        this.rowkeyShardNum = rowkeyShardNum;
+    }
+
+    /**
+     * @return length of the shard prefix of rowkeys in this segment, 0 if not
+     *         sharded
+     */
+    public int getRowkeyShardLength() {
+        return rowkeyShardNum > 0 ? RowConstants.ROWKEY_SHARD_LEN : 0;
+    }
+
     @Override
     public int compareTo(CubeSegment other) {
         if (this.dateRangeEnd < other.dateRangeEnd) {
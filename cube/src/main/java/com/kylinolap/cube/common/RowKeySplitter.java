@@ -32,6 +32,7 @@ public class RowKeySplitter {
 
     private CubeDesc cubeDesc;
     private RowKeyColumnIO colIO;
+    private int shardLength;
 
     private SplittedBytes[] splitBuffers;
     private int bufferSize;
@@ -47,6 +48,7 @@ public class RowKeySplitter {
     public RowKeySplitter(CubeSegment cubeSeg, int splitLen, int bytesLen) {
         this.cubeDesc = cubeSeg.getCubeDesc();
         this.colIO = new RowKeyColumnIO(cubeSeg);
+        this.shardLength = cubeSeg.getRowkeyShardLength();
 
         this.splitBuffers = new SplittedBytes[splitLen];
         for (int i = 0; i < splitLen; i++) {
@@ -62,7 +64,7 @@ public class RowKeySplitter {
      */
     public long split(byte[] bytes, int byteLen) {
         this.bufferSize = 0;
-        int offset = 0;
+        int offset = shardLength; // shard is not split out, it's derived
 
         // extract cuboid id
         SplittedBytes cuboidIdSplit = this.splitBuffers[this.bufferSize++];
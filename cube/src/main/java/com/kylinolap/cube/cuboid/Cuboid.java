@@ -59,6 +59,14 @@ public class Cuboid implements Comparable<Cuboid> {
         return cuboid;
     }
 
+    public static void reloadCache(String cubeDescName) {
+        CUBOID_CACHE.remove(cubeDescName);
+    }
+
+    public static void clearCache() {
+        CUBOID_CACHE.clear();
+    }
+
     public static boolean isValid(CubeDesc cube, long cuboidID) {
         RowKeyDesc rowkey = cube.getRowkey();
 
@@ -17,6 +17,7 @@
 package com.kylinolap.cube.invertedindex;
 
 import it.uniroma3.mat.extendedset.intset.ConciseSet;
+import it.uniroma3.mat.extendedset.intset.IntSet.IntIterator;
 
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
@@ -33,7 +34,7 @@ import com.kylinolap.dict.Dictionary;
  * @author yangli9
  * 
  */
-public class BitMapContainer implements ColumnValueContainer {
+public class BitMapContainer implements ColumnValueContainer, BitMapIndex {
 
     int valueLen;
     int nValues;
@@ -85,6 +86,33 @@ public class BitMapContainer implements ColumnValueContainer {
         return Dictionary.NULL_ID[valueLen];
     }
 
+    @Override
+    public void getValueIds(int[] ids) {
+        // every record is in exactly one of the sets
+        for (int v = 0; v <= nValues; v++) {
+            int id = v == nValues ? Dictionary.NULL_ID[valueLen] : v;
+            IntIterator it = sets[v].iterator();
+            while (it.hasNext()) {
+                ids[it.next()] = id;
+            }
+        }
+    }
+
+    @Override
+    public ConciseSet getBitMap(int valueId) {
+        if (valueId == Dictionary.NULL_ID[valueLen]) {
+            valueId = nValues;
+        } else if (valueId < 0 || valueId >= nValues) {
+            return new ConciseSet();
+        }
+        return sets[valueId];
+    }
+
+    @Override
+    public int getMaxValueId() {
+        return nValues - 1;
+    }
+
     private void checkUpdateMode() {
         if (isClosedForChange()) {
             throw new IllegalStateException();
@@ -122,12 +150,16 @@ public class BitMapContainer implements ColumnValueContainer {
         return r;
     }
 
+    /**
+     * @param bytes
+     *            bitmaps by value ID, trailing empty ones could be omitted
+     */
     public void fromBytes(List<ImmutableBytesWritable> bytes) {
-        assert nValues + 1 == bytes.size();
+        assert nValues + 1 >= bytes.size();
         sets = new ConciseSet[nValues + 1];
         size = 0;
         for (int i = 0; i <= nValues; i++) {
-            sets[i] = bytesToSet(bytes.get(i));
+            sets[i] = i < bytes.size() ? bytesToSet(bytes.get(i)) : new ConciseSet();
             size += sets[i].size();
         }
         closedForChange = true;
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.cube.invertedindex;
+
+import it.uniroma3.mat.extendedset.intset.ConciseSet;
+
+/**
+ * A column container that gives the rows of a value as a bitmap, so filters
+ * on the column are answered by bitmap operations rather than row by row.
+ */
+public interface BitMapIndex {
+
+    /**
+     * @return records having the given value ID, NULL_ID for nulls; the
+     *         returned set is shared, do not modify
+     */
+    ConciseSet getBitMap(int valueId);
+
+    int getMaxValueId();
+
+}
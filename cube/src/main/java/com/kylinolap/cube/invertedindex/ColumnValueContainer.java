@@ -33,4 +33,8 @@ public interface ColumnValueContainer {
     // works only after closeForChange()
     void getValueAt(int i, ImmutableBytesWritable valueBytes);
 
+    // works only after closeForChange(), decodes all values as unsigned int
+    // (dictionary ID) into ids[0..size-1], value length must be at most 4
+    void getValueIds(int[] ids);
+
 }
@@ -54,9 +54,40 @@ public class CompressedValueContainer implements ColumnValueContainer {
 
     @Override
     public void getValueAt(int i, ImmutableBytesWritable valueBytes) {
+        checkDecoded();
         valueBytes.set(uncompressed, valueLen * i, valueLen);
     }
 
+    @Override
+    public void getValueIds(int[] ids) {
+        checkDecoded();
+        for (int i = 0, o = 0; i < size; i++, o += valueLen) {
+            ids[i] = BytesUtil.readUnsigned(uncompressed, o, valueLen);
+        }
+    }
+
+    /**
+     * decodes all values as long into values[0..size-1], value length must be
+     * at most 8
+     */
+    public void getValueLongs(long[] values) {
+        checkDecoded();
+        for (int i = 0, o = 0; i < size; i++, o += valueLen) {
+            values[i] = BytesUtil.readLong(uncompressed, o, valueLen);
+        }
+    }
+
+    // columns not read by a query are never decompressed
+    private void checkDecoded() {
+        if (uncompressed != null || compressed == null)
+            return;
+        try {
+            uncompressed = LZFDecoder.decode(compressed, 0, compressed.length);
+        } catch (IOException e) {
+            throw new RuntimeException("LZF decode failure", e);
+        }
+    }
+
     private void checkUpdateMode() {
         if (isClosedForChange()) {
             throw new IllegalArgumentException();
@@ -91,18 +122,41 @@ public class CompressedValueContainer implements ColumnValueContainer {
         return new ImmutableBytesWritable(compressed);
     }
 
+    /**
+     * Decompression is deferred till the first value access, only the LZF
+     * chunk headers are read to get the size.
+     */
     public void fromBytes(ImmutableBytesWritable bytes) {
-        try {
-            uncompressed = LZFDecoder.decode(bytes.get(), bytes.getOffset(), bytes.getLength());
-        } catch (IOException e) {
-            throw new RuntimeException("LZF decode failure", e);
+        // make a copy, the bytes from caller is typically reused through iteration
+        compressed = Arrays.copyOfRange(bytes.get(), bytes.getOffset(), bytes.getOffset() + bytes.getLength());
+        uncompressed = null;
+        size = cap = uncompressedLength(compressed) / valueLen;
+    }
+
+    // LZF chunk header: 'Z', 'V', type, then 2 bytes chunk length if not
+    // compressed (type 0), or 2 bytes compressed length + 2 bytes
+    // uncompressed length if compressed (type 1)
+    private static int uncompressedLength(byte[] data) {
+        int total = 0;
+        int i = 0;
+        while (i < data.length) {
+            if (data[i] != 'Z' || data[i + 1] != 'V')
+                throw new RuntimeException("LZF decode failure, bad chunk header at " + i);
+            int len = ((data[i + 3] & 0xff) << 8) | (data[i + 4] & 0xff);
+            if (data[i + 2] == 0) {
+                total += len;
+                i += 5 + len;
+            } else {
+                total += ((data[i + 5] & 0xff) << 8) | (data[i + 6] & 0xff);
+                i += 7 + len;
+            }
         }
-        size = cap = uncompressed.length / valueLen;
-        compressed = BytesUtil.EMPTY_BYTE_ARRAY; // mark closed
+        return total;
     }
 
     @Override
     public int hashCode() {
+        checkDecoded();
         final int prime = 31;
         int result = 1;
         result = prime * result + size;
@@ -120,6 +174,8 @@ public class CompressedValueContainer implements ColumnValueContainer {
         if (getClass() != obj.getClass())
             return false;
         CompressedValueContainer other = (CompressedValueContainer) obj;
+        checkDecoded();
+        other.checkDecoded();
         if (size != other.size)
             return false;
         if (valueLen != other.valueLen)
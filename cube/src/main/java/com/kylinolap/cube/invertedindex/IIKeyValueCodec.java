@@ -16,6 +16,7 @@
 
 package com.kylinolap.cube.invertedindex;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -28,6 +29,10 @@ import com.google.common.collect.Lists;
 import com.kylinolap.common.util.BytesUtil;
 
 /**
+ * Each slice goes into a stats cell keyed by shard and timestamp, followed by
+ * one cell per column, or per distinct value of a bitmap column. A column in
+ * one cell holds either LZF compressed values or runs of values.
+ * 
  * @author yangli9
  */
 public class IIKeyValueCodec {
@@ -44,12 +49,15 @@ public class IIKeyValueCodec {
 
     public Collection<Pair<ImmutableBytesWritable, ImmutableBytesWritable>> encodeKeyValue(Slice slice) {
         ArrayList<Pair<ImmutableBytesWritable, ImmutableBytesWritable>> result = Lists.newArrayList();
+        collectStats(slice, result);
         ColumnValueContainer[] containers = slice.containers;
         for (int col = 0; col < containers.length; col++) {
             if (containers[col] instanceof BitMapContainer) {
                 collectKeyValues(slice, col, (BitMapContainer) containers[col], result);
             } else if (containers[col] instanceof CompressedValueContainer) {
-                collectKeyValues(slice, col, (CompressedValueContainer) containers[col], result);
+                collectKeyValues(slice, col, ((CompressedValueContainer) containers[col]).toBytes(), result);
+            } else if (containers[col] instanceof RunLengthValueContainer) {
+                collectKeyValues(slice, col, ((RunLengthValueContainer) containers[col]).toBytes(), result);
             } else {
                 throw new IllegalArgumentException("Unkown container class " + containers[col].getClass());
             }
@@ -57,10 +65,20 @@ public class IIKeyValueCodec {
         return result;
     }
 
-    private void collectKeyValues(Slice slice, int col, CompressedValueContainer container, //
+    private void collectStats(Slice slice, ArrayList<Pair<ImmutableBytesWritable, ImmutableBytesWritable>> result) {
+        // the shard and timestamp alone sort before all columns of the slice
+        byte[] key = new byte[SHARD_LEN + TIMEPART_LEN];
+        BytesUtil.writeUnsigned(slice.getShard(), key, 0, SHARD_LEN);
+        BytesUtil.writeLong(slice.getTimestamp(), key, SHARD_LEN, TIMEPART_LEN);
+        byte[] value = SliceStats.serialize(SliceStats.compute(infoDigest, slice));
+        result.add(new Pair<ImmutableBytesWritable, ImmutableBytesWritable>(new ImmutableBytesWritable(key), new ImmutableBytesWritable(value)));
+    }
+
+    // a column in a single cell, compressed or run length values, told apart
+    // by the first byte of the value
+    private void collectKeyValues(Slice slice, int col, ImmutableBytesWritable value, //
             ArrayList<Pair<ImmutableBytesWritable, ImmutableBytesWritable>> result) {
         ImmutableBytesWritable key = encodeKey(slice.getShard(), slice.getTimestamp(), col, -1);
-        ImmutableBytesWritable value = container.toBytes();
         result.add(new Pair<ImmutableBytesWritable, ImmutableBytesWritable>(key, value));
     }
 
@@ -68,6 +86,10 @@ public class IIKeyValueCodec {
             ArrayList<Pair<ImmutableBytesWritable, ImmutableBytesWritable>> result) {
         List<ImmutableBytesWritable> values = container.toBytes();
         for (int v = 0; v < values.size(); v++) {
+            // values absent from the slice take no cell, high cardinality
+            // columns would otherwise write every dictionary ID per slice
+            if (values.get(v).getLength() == 0)
+                continue;
             ImmutableBytesWritable key = encodeKey(slice.getShard(), slice.getTimestamp(), col, v);
             result.add(new Pair<ImmutableBytesWritable, ImmutableBytesWritable>(key, values.get(v)));
         }
@@ -100,13 +122,23 @@ public class IIKeyValueCodec {
     }
 
     public Iterable<Slice> decodeKeyValue(Iterable<Pair<ImmutableBytesWritable, ImmutableBytesWritable>> kvs) {
-        return new Decoder(infoDigest, kvs);
+        return new Decoder(infoDigest, kvs, null);
+    }
+
+    /**
+     * Decode slices, skipping those ruled out by the checker according to
+     * their stats before any container is decoded. Slices written without
+     * stats are never skipped.
+     */
+    public Iterable<Slice> decodeKeyValue(Iterable<Pair<ImmutableBytesWritable, ImmutableBytesWritable>> kvs, SliceStats.Checker checker) {
+        return new Decoder(infoDigest, kvs, checker);
     }
 
     private static class Decoder implements Iterable<Slice> {
 
         TableRecordInfoDigest info;
         Iterator<Pair<ImmutableBytesWritable, ImmutableBytesWritable>> iterator;
+        SliceStats.Checker checker;
 
         Slice next = null;
         short curShard = Short.MIN_VALUE;
@@ -118,10 +150,13 @@ public class IIKeyValueCodec {
         int lastCol = -1;
         ColumnValueContainer[] containers = null;
         List<ImmutableBytesWritable> bitMapValues = Lists.newArrayList();
+        SliceStats stats = null;
+        boolean skipping = false;
 
-        Decoder(TableRecordInfoDigest info, Iterable<Pair<ImmutableBytesWritable, ImmutableBytesWritable>> kvs) {
+        Decoder(TableRecordInfoDigest info, Iterable<Pair<ImmutableBytesWritable, ImmutableBytesWritable>> kvs, SliceStats.Checker checker) {
             this.info = info;
             this.iterator = kvs.iterator();
+            this.checker = checker;
         }
 
         private void goToNext() {
@@ -139,6 +174,15 @@ public class IIKeyValueCodec {
                 if (curShard != lastShard || curSliceTimestamp != lastSliceTimestamp) {
                     makeNext();
                 }
+                if (curCol < 0) {
+                    stats = SliceStats.deserialize(ByteBuffer.wrap(v.get(), v.getOffset(), v.getLength()));
+                    skipping = checker != null && checker.mayMatch(stats) == false;
+                }
+                if (curCol < 0 || skipping) {
+                    lastShard = curShard;
+                    lastSliceTimestamp = curSliceTimestamp;
+                    continue;
+                }
                 consumeCurrent(v);
             }
             if (next == null) {
@@ -155,6 +199,13 @@ public class IIKeyValueCodec {
             curSliceTimestamp = BytesUtil.readLong(buf, i, TIMEPART_LEN);
             i += TIMEPART_LEN;
 
+            if (i - k.getOffset() == k.getLength()) {
+                // stats of the slice
+                curCol = -1;
+                curColValue = -1;
+                return;
+            }
+
             curCol = BytesUtil.readUnsigned(buf, i, COLNO_LEN);
             i += COLNO_LEN;
 
@@ -173,12 +224,19 @@ public class IIKeyValueCodec {
             if (curCol != lastCol && bitMapValues.size() > 0) { // end of a bitmap container
                 addBitMapContainer(lastCol);
             }
-            if (curColValue < 0) {
+            if (curColValue < 0 && RunLengthValueContainer.isRunLength(v)) {
+                RunLengthValueContainer c = new RunLengthValueContainer(info, curCol);
+                c.fromBytes(v);
+                addContainer(curCol, c);
+            } else if (curColValue < 0) {
                 CompressedValueContainer c = new CompressedValueContainer(info, curCol, 0);
                 c.fromBytes(v);
                 addContainer(curCol, c);
             } else {
-                assert curColValue == bitMapValues.size();
+                // fill the values absent from the slice
+                while (bitMapValues.size() < curColValue) {
+                    bitMapValues.add(new ImmutableBytesWritable(BytesUtil.EMPTY_BYTE_ARRAY));
+                }
                 // make a copy, the value object from caller is typically reused through iteration
                 bitMapValues.add(new ImmutableBytesWritable(v));
             }
@@ -194,7 +252,10 @@ public class IIKeyValueCodec {
             }
             if (containers != null) {
                 next = new Slice(info, lastShard, lastSliceTimestamp, containers);
+                next.stats = stats;
             }
+            stats = null;
+            skipping = false;
             lastSliceTimestamp = Long.MIN_VALUE;
             lastCol = -1;
             containers = null;
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.cube.invertedindex;
+
+import it.uniroma3.mat.extendedset.intset.ConciseSet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+import com.kylinolap.common.util.BytesUtil;
+
+/**
+ * Keeps a column of a slice as runs of equal value IDs, for columns whose
+ * values come clustered, like the timestamp of records in time order. A few
+ * runs take much less room than a bitmap per value, and the rows of a value
+ * are still given as a bitmap, built from its runs when first asked for.
+ */
+public class RunLengthValueContainer implements ColumnValueContainer, BitMapIndex {
+
+    // first byte of the serialized form, tells it from the LZF data of a
+    // CompressedValueContainer, which starts with 'Z'
+    static final byte MAGIC = 'R';
+
+    int valueLen;
+    int nValues;
+    int size;
+    int nRuns;
+    int[] runValues; // value ID of each run, NULL_ID for nulls
+    int[] runEnds; // end of each run, exclusive
+    boolean closedForChange;
+
+    transient Map<Integer, ConciseSet> bitmaps = new HashMap<Integer, ConciseSet>();
+    transient byte[] temp;
+
+    public RunLengthValueContainer(TableRecordInfoDigest info, int col) {
+        this.valueLen = info.length(col);
+        this.nValues = info.getMaxID(col) + 1;
+        this.size = 0;
+        this.nRuns = 0;
+        this.runValues = new int[16];
+        this.runEnds = new int[16];
+        this.closedForChange = false;
+
+        this.temp = new byte[valueLen];
+    }
+
+    /**
+     * @return true if the bytes are the serialized form of a run length
+     *         container
+     */
+    public static boolean isRunLength(ImmutableBytesWritable bytes) {
+        return bytes.getLength() > 0 && bytes.get()[bytes.getOffset()] == MAGIC;
+    }
+
+    @Override
+    public void append(ImmutableBytesWritable valueBytes) {
+        append(BytesUtil.readUnsigned(valueBytes.get(), valueBytes.getOffset(), valueLen));
+    }
+
+    public void append(int value) {
+        if (closedForChange) {
+            throw new IllegalStateException();
+        }
+        if (nRuns > 0 && runValues[nRuns - 1] == value) {
+            runEnds[nRuns - 1]++;
+        } else {
+            if (nRuns == runValues.length) {
+                runValues = Arrays.copyOf(runValues, nRuns * 2);
+                runEnds = Arrays.copyOf(runEnds, nRuns * 2);
+            }
+            runValues[nRuns] = value;
+            runEnds[nRuns] = size + 1;
+            nRuns++;
+        }
+        size++;
+    }
+
+    @Override
+    public void getValueAt(int i, ImmutableBytesWritable valueBytes) {
+        BytesUtil.writeUnsigned(getValueIntAt(i), temp, 0, valueLen);
+        valueBytes.set(temp, 0, valueLen);
+    }
+
+    public int getValueIntAt(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Row " + i + " of " + size);
+        }
+        // the first run ending after i
+        int lo = 0;
+        int hi = nRuns - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (runEnds[mid] <= i)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return runValues[lo];
+    }
+
+    @Override
+    public void getValueIds(int[] ids) {
+        int start = 0;
+        for (int r = 0; r < nRuns; r++) {
+            Arrays.fill(ids, start, runEnds[r], runValues[r]);
+            start = runEnds[r];
+        }
+    }
+
+    @Override
+    public ConciseSet getBitMap(int valueId) {
+        ConciseSet set = bitmaps.get(valueId);
+        if (set == null) {
+            set = new ConciseSet();
+            int start = 0;
+            for (int r = 0; r < nRuns; r++) {
+                if (runValues[r] == valueId) {
+                    for (int i = start; i < runEnds[r]; i++) {
+                        set.add(i);
+                    }
+                }
+                start = runEnds[r];
+            }
+            bitmaps.put(valueId, set);
+        }
+        return set;
+    }
+
+    @Override
+    public int getMaxValueId() {
+        return nValues - 1;
+    }
+
+    public int getRunCount() {
+        return nRuns;
+    }
+
+    @Override
+    public void closeForChange() {
+        closedForChange = true;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    public ImmutableBytesWritable toBytes() {
+        if (closedForChange == false)
+            closeForChange();
+
+        ByteBuffer buf = ByteBuffer.allocate(1 + 5 + nRuns * (valueLen + 5));
+        buf.put(MAGIC);
+        BytesUtil.writeVInt(nRuns, buf);
+        int start = 0;
+        for (int r = 0; r < nRuns; r++) {
+            BytesUtil.writeUnsigned(runValues[r], valueLen, buf);
+            BytesUtil.writeVInt(runEnds[r] - start, buf);
+            start = runEnds[r];
+        }
+        return new ImmutableBytesWritable(buf.array(), 0, buf.position());
+    }
+
+    public void fromBytes(ImmutableBytesWritable bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes.get(), bytes.getOffset(), bytes.getLength());
+        if (buf.get() != MAGIC) {
+            throw new IllegalArgumentException("Not a run length container");
+        }
+        nRuns = BytesUtil.readVInt(buf);
+        runValues = new int[Math.max(1, nRuns)];
+        runEnds = new int[Math.max(1, nRuns)];
+        size = 0;
+        for (int r = 0; r < nRuns; r++) {
+            runValues[r] = BytesUtil.readUnsigned(buf, valueLen);
+            size += BytesUtil.readVInt(buf);
+            runEnds[r] = size;
+        }
+        bitmaps.clear();
+        closedForChange = true;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + nRuns;
+        for (int r = 0; r < nRuns; r++) {
+            result = prime * result + runValues[r];
+            result = prime * result + runEnds[r];
+        }
+        result = prime * result + size;
+        result = prime * result + valueLen;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        RunLengthValueContainer other = (RunLengthValueContainer) obj;
+        if (size != other.size || nRuns != other.nRuns || valueLen != other.valueLen)
+            return false;
+        for (int r = 0; r < nRuns; r++) {
+            if (runValues[r] != other.runValues[r] || runEnds[r] != other.runEnds[r])
+                return false;
+        }
+        return true;
+    }
+
+}
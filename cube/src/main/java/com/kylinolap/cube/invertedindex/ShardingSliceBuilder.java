@@ -15,6 +15,16 @@ public class ShardingSliceBuilder {
             builders[i] = new SliceBuilder(info, i);
         }
     }
+
+    // for streaming ingestion, continue after the last existing slice of each
+    // shard, and accept late records
+    public ShardingSliceBuilder(TableRecordInfo info, long[] lastSliceTimestamps) {
+        int sharding = info.getDescriptor().getSharding();
+        builders = new SliceBuilder[sharding];
+        for (short i = 0; i < sharding; i++) {
+            builders[i] = new SliceBuilder(info, i, lastSliceTimestamps[i], true);
+        }
+    }
     
     // NOTE: record must be appended in time order
     public Slice append(TableRecord rec) {
@@ -22,6 +32,17 @@ public class ShardingSliceBuilder {
         return builders[shard].append(rec);
     }
     
+    // finish partial slices, appending may go on
+    public List<Slice> flush() {
+        List<Slice> result = Lists.newArrayList();
+        for (SliceBuilder builder : builders) {
+            Slice slice = builder.flush();
+            if (slice != null)
+                result.add(slice);
+        }
+        return result;
+    }
+
     public List<Slice> close() {
         List<Slice> result = Lists.newArrayList();
         for (SliceBuilder builder : builders) {
@@ -18,8 +18,6 @@ package com.kylinolap.cube.invertedindex;
 
 import java.util.Iterator;
 
-import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
-
 /**
  * Within a partition (per timestampGranularity), records are further sliced
  * (per sliceLength) to fit into HBASE cell.
@@ -35,6 +33,7 @@ public class Slice implements Iterable<TableRecordBytes>, Comparable<Slice> {
     long timestamp;
     int nRecords;
     ColumnValueContainer[] containers;
+    SliceStats stats; // null if written without stats
 
     Slice(TableRecordInfoDigest info, short shard, long timestamp, ColumnValueContainer[] containers) {
         this.info = info;
@@ -59,6 +58,18 @@ public class Slice implements Iterable<TableRecordBytes>, Comparable<Slice> {
         return timestamp;
     }
 
+    public int getRecordCount() {
+        return nRecords;
+    }
+
+    public ColumnValueContainer getColumnValueContainer(int col) {
+        return containers[col];
+    }
+
+    public SliceStats getStats() {
+        return stats;
+    }
+
     /**
      * Standard iterator of Slice will return a iterator of TableRecordBytes,
      * which cannot be printed/formated to readable text.
@@ -97,10 +108,16 @@ public class Slice implements Iterable<TableRecordBytes>, Comparable<Slice> {
 
     @Override
     public Iterator<TableRecordBytes> iterator() {
+        final int[] allColumns = new int[nColumns];
+        for (int col = 0; col < nColumns; col++) {
+            allColumns[col] = col;
+        }
+        final SliceColumnReader reader = new SliceColumnReader(info);
+        reader.reset(this);
+
         return new Iterator<TableRecordBytes>() {
             int i = 0;
             TableRecord rec = new TableRecord(info);
-            ImmutableBytesWritable temp = new ImmutableBytesWritable();
 
             @Override
             public boolean hasNext() {
@@ -109,10 +126,7 @@ public class Slice implements Iterable<TableRecordBytes>, Comparable<Slice> {
 
             @Override
             public TableRecordBytes next() {
-                for (int col = 0; col < nColumns; col++) {
-                    containers[col].getValueAt(i, temp);
-                    rec.setValueBytes(col, temp);
-                }
+                reader.readRecord(i, allColumns, rec);
                 i++;
                 return rec;
             }
@@ -16,6 +16,8 @@
 
 package com.kylinolap.cube.invertedindex;
 
+import java.util.BitSet;
+
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 
@@ -25,6 +27,18 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
  */
 public class SliceBuilder {
 
+    // A dimension column is stored as runs of values in a slice if its runs
+    // are long enough on average, like the timestamp of records in time order;
+    // runs are small and still give bitmaps. Otherwise it is stored as bitmaps
+    // if each of its distinct values covers enough rows on average, or else as
+    // compressed values. A bitmap costs one HBase cell per distinct value, the
+    // threshold is lower for columns declared as bitmap dimensions. Columns
+    // with an appendable dictionary never take bitmaps, their bitmaps would
+    // grow with every value appended.
+    static final int MIN_ROWS_PER_RUN = 8;
+    static final int MIN_ROWS_PER_BITMAP = 2;
+    static final int MIN_ROWS_PER_BITMAP_UNDECLARED = 16;
+
     TableRecordInfo info;
     private int nColumns;
     int nRecordsCap;
@@ -36,13 +50,26 @@ public class SliceBuilder {
     
     transient ImmutableBytesWritable temp = new ImmutableBytesWritable();
 
+    boolean acceptLateRecords;
+
     public SliceBuilder(TableRecordInfo info, short shard) {
+        this(info, shard, Long.MIN_VALUE, false);
+    }
+
+    /**
+     * For streaming ingestion, continue after an existing slice of given
+     * timestamp. Records arriving later than the slice they belong to are
+     * accepted if acceptLateRecords, they go to a slice timestamped after the
+     * last one.
+     */
+    public SliceBuilder(TableRecordInfo info, short shard, long lastSliceTimestamp, boolean acceptLateRecords) {
         this.info = info;
         this.nColumns = info.getColumnCount();
         this.nRecordsCap = Math.max(1, info.getDescriptor().getSliceSize());
 
         this.shard = shard;
-        this.sliceTimestamp = Long.MIN_VALUE;
+        this.sliceTimestamp = lastSliceTimestamp;
+        this.acceptLateRecords = acceptLateRecords;
         this.nRecords = 0;
         this.containers = null;
         
@@ -52,22 +79,23 @@ public class SliceBuilder {
     private Slice doneSlice() {
         Slice r = null;
         if (nRecords > 0) {
+            for (int i : info.getDescriptor().getBitmapColumns()) {
+                containers[i] = chooseEncoding(i, MIN_ROWS_PER_BITMAP);
+            }
+            for (int i : info.getDescriptor().getValueColumns()) {
+                containers[i] = chooseEncoding(i, MIN_ROWS_PER_BITMAP_UNDECLARED);
+            }
             for (int i = 0; i < nColumns; i++) {
                 containers[i].closeForChange();
             }
             r = new Slice(info, shard, sliceTimestamp, containers);
         }
 
-        // reset for next slice
+        // reset for next slice, values are collected uncompressed and the
+        // encoding of dimension columns is chosen when the slice is done
         nRecords = 0;
         containers = new ColumnValueContainer[nColumns];
-        for (int i : info.getDescriptor().getBitmapColumns()) {
-            containers[i] = new BitMapContainer(info, i);
-        }
-        for (int i : info.getDescriptor().getValueColumns()) {
-            containers[i] = new CompressedValueContainer(info, i, nRecordsCap);
-        }
-        for (int i : info.getDescriptor().getMetricsColumns()) {
+        for (int i = 0; i < nColumns; i++) {
             containers[i] = new CompressedValueContainer(info, i, nRecordsCap);
         }
 
@@ -75,6 +103,53 @@ public class SliceBuilder {
 
     }
 
+    private ColumnValueContainer chooseEncoding(int col, int minRowsPerBitmap) {
+        ColumnValueContainer values = containers[col];
+        int[] ids = new int[nRecords];
+        values.getValueIds(ids);
+
+        int nRuns = 1;
+        for (int i = 1; i < nRecords; i++) {
+            if (ids[i] != ids[i - 1])
+                nRuns++;
+        }
+        if (nRuns <= nRecords / MIN_ROWS_PER_RUN) {
+            RunLengthValueContainer runs = new RunLengthValueContainer(info, col);
+            for (int i = 0; i < nRecords; i++) {
+                runs.append(ids[i]);
+            }
+            return runs;
+        }
+
+        if (info.isAppendable(col))
+            return values;
+
+        int maxDistinct = nRecords / minRowsPerBitmap;
+        BitSet distinct = new BitSet();
+        boolean hasNull = false;
+        int nDistinct = 0;
+        for (int i = 0; i < nRecords && nDistinct <= maxDistinct; i++) {
+            int id = ids[i];
+            if (id < 0 || id > info.getMaxID(col)) { // NULL
+                if (hasNull == false) {
+                    hasNull = true;
+                    nDistinct++;
+                }
+            } else if (distinct.get(id) == false) {
+                distinct.set(id);
+                nDistinct++;
+            }
+        }
+        if (nDistinct > maxDistinct)
+            return values;
+
+        BitMapContainer bitmaps = new BitMapContainer(info, col);
+        for (int i = 0; i < nRecords; i++) {
+            bitmaps.append(ids[i]);
+        }
+        return bitmaps;
+    }
+
     // NOTE: record must be appended in time order
     public Slice append(TableRecord rec) {
         if (rec.getShard() != shard)
@@ -100,8 +175,11 @@ public class SliceBuilder {
     }
 
     private long increaseSliceTimestamp(long timestamp) {
-        if (timestamp < sliceTimestamp)
-            throw new IllegalStateException();
+        if (timestamp < sliceTimestamp) {
+            if (acceptLateRecords == false)
+                throw new IllegalStateException();
+            timestamp = sliceTimestamp;
+        }
         
         if (timestamp == sliceTimestamp)
             return ++timestamp; // ensure slice timestamp increases
@@ -109,6 +187,14 @@ public class SliceBuilder {
             return timestamp;
     }
 
+    /**
+     * Finish the current slice even if not full, the next slice continues in
+     * time order after it.
+     */
+    public Slice flush() {
+        return doneSlice();
+    }
+
     public Slice close() {
         Slice doneSlice = doneSlice();
         this.sliceTimestamp = Long.MIN_VALUE;
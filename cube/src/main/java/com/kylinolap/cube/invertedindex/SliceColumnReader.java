@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.cube.invertedindex;
+
+import java.util.BitSet;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+/**
+ * Reads a slice column by column. A column is decoded only when asked for,
+ * into primitive arrays reused across slices: dictionary IDs as int, metrics
+ * as long. Records are materialized only for output, see readRecord().
+ */
+public class SliceColumnReader {
+
+    final TableRecordInfoDigest info;
+    final int[][] ids;
+    final long[][] longs;
+    final BitSet idsDecoded = new BitSet();
+    final BitSet longsDecoded = new BitSet();
+    final ImmutableBytesWritable temp = new ImmutableBytesWritable();
+
+    Slice slice;
+
+    public SliceColumnReader(TableRecordInfoDigest info) {
+        this.info = info;
+        this.ids = new int[info.getColumnCount()][];
+        this.longs = new long[info.getColumnCount()][];
+    }
+
+    public void reset(Slice slice) {
+        this.slice = slice;
+        this.idsDecoded.clear();
+        this.longsDecoded.clear();
+    }
+
+    public Slice getSlice() {
+        return slice;
+    }
+
+    public int getRecordCount() {
+        return slice.getRecordCount();
+    }
+
+    /**
+     * @return dictionary IDs of the column, valid in [0, getRecordCount()); the
+     *         array is reused, do not keep it beyond the current slice
+     */
+    public int[] getIds(int col) {
+        int[] r = ids[col] = ensureCapacity(ids[col]);
+        if (idsDecoded.get(col) == false) {
+            slice.getColumnValueContainer(col).getValueIds(r);
+            idsDecoded.set(col);
+        }
+        return r;
+    }
+
+    /**
+     * @return values of a metrics column (or IDs of a dimension column) as
+     *         long, valid in [0, getRecordCount()); the array is reused, do not
+     *         keep it beyond the current slice
+     */
+    public long[] getLongs(int col) {
+        long[] r = longs[col] = ensureCapacity(longs[col]);
+        if (longsDecoded.get(col) == false) {
+            ColumnValueContainer container = slice.getColumnValueContainer(col);
+            if (container instanceof CompressedValueContainer) {
+                ((CompressedValueContainer) container).getValueLongs(r);
+            } else {
+                int[] colIds = getIds(col);
+                for (int i = 0, n = getRecordCount(); i < n; i++) {
+                    r[i] = colIds[i];
+                }
+            }
+            longsDecoded.set(col);
+        }
+        return r;
+    }
+
+    /**
+     * copy the given columns of a row into record, other columns are left as
+     * they are
+     */
+    public void readRecord(int row, int[] columns, TableRecordBytes record) {
+        for (int col : columns) {
+            ColumnValueContainer container = slice.getColumnValueContainer(col);
+            if (container instanceof BitMapContainer) {
+                // looking up a row in bitmaps is slow, decode the column once
+                record.setValueID(col, getIds(col)[row]);
+            } else {
+                container.getValueAt(row, temp);
+                record.setValueBytes(col, temp);
+            }
+        }
+    }
+
+    private int[] ensureCapacity(int[] array) {
+        int n = getRecordCount();
+        return array != null && array.length >= n ? array : new int[n];
+    }
+
+    private long[] ensureCapacity(long[] array) {
+        int n = getRecordCount();
+        return array != null && array.length >= n ? array : new long[n];
+    }
+}
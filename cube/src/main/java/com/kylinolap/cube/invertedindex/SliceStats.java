@@ -0,0 +1,249 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.cube.invertedindex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.kylinolap.common.util.BytesSerializer;
+import com.kylinolap.common.util.BytesUtil;
+import com.kylinolap.dict.Dictionary;
+
+/**
+ * Summary of the dimension columns of a slice, stored in its own cell ahead of
+ * the column cells, such that a filter can rule out a slice before any of its
+ * containers is decoded. Per dimension column: min and max of the non-null
+ * dictionary IDs, number of nulls, and for compressed or run length columns of
+ * modest cardinality a bloom filter of the IDs. Bitmap columns need no bloom
+ * filter, absent values take no cell.
+ */
+public class SliceStats {
+
+    /**
+     * Tells if a slice could have matching rows judging by its stats.
+     */
+    public static interface Checker {
+        boolean mayMatch(SliceStats stats);
+    }
+
+    // 8 bits and 5 hashes per distinct ID give about 2% false positives
+    static final int BLOOM_BITS_PER_VALUE = 8;
+    static final int BLOOM_HASHES = 5;
+    static final int BLOOM_MAX_BITS = 4096;
+
+    int nRecords;
+    boolean[] hasStats;
+    int[] minIds;
+    int[] maxIds;
+    int[] nullCounts;
+    long[][] blooms;
+
+    private SliceStats(int nColumns) {
+        hasStats = new boolean[nColumns];
+        minIds = new int[nColumns];
+        maxIds = new int[nColumns];
+        nullCounts = new int[nColumns];
+        blooms = new long[nColumns][];
+    }
+
+    public static SliceStats compute(TableRecordInfoDigest info, Slice slice) {
+        int nColumns = info.getColumnCount();
+        SliceStats r = new SliceStats(nColumns);
+        r.nRecords = slice.getRecordCount();
+
+        int[] ids = new int[r.nRecords];
+        for (int col = 0; col < nColumns; col++) {
+            if (info.isMetrics(col))
+                continue;
+
+            ColumnValueContainer container = slice.getColumnValueContainer(col);
+            container.getValueIds(ids);
+            int nullId = Dictionary.NULL_ID[info.length(col)];
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            int nulls = 0;
+            for (int id : ids) {
+                if (id == nullId) {
+                    nulls++;
+                } else {
+                    min = Math.min(min, id);
+                    max = Math.max(max, id);
+                }
+            }
+            r.hasStats[col] = true;
+            r.minIds[col] = min;
+            r.maxIds[col] = max;
+            r.nullCounts[col] = nulls;
+
+            if ((container instanceof BitMapContainer) == false && nulls < ids.length)
+                r.blooms[col] = buildBloom(ids, nullId);
+        }
+        return r;
+    }
+
+    private static long[] buildBloom(int[] ids, int nullId) {
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int nDistinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] != nullId && (i == 0 || sorted[i] != sorted[i - 1]))
+                nDistinct++;
+        }
+
+        int nBits = nDistinct * BLOOM_BITS_PER_VALUE;
+        if (nBits > BLOOM_MAX_BITS)
+            return null; // too many false positives within the size limit
+        long[] bloom = new long[(nBits + 63) / 64];
+        nBits = bloom.length * 64;
+        for (int id : sorted) {
+            if (id != nullId)
+                addToBloom(bloom, nBits, id);
+        }
+        return bloom;
+    }
+
+    private static void addToBloom(long[] bloom, int nBits, int id) {
+        int h1 = hash1(id);
+        int h2 = hash2(id);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % nBits;
+            bloom[bit >>> 6] |= 1L << (bit & 63);
+        }
+    }
+
+    private static boolean bloomContains(long[] bloom, int id) {
+        int nBits = bloom.length * 64;
+        int h1 = hash1(id);
+        int h2 = hash2(id);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % nBits;
+            if ((bloom[bit >>> 6] & (1L << (bit & 63))) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static int hash1(int id) {
+        int h = id * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash2(int id) {
+        int h = (id ^ 0x5bd1e995) * 0x85EBCA6B;
+        return (h ^ (h >>> 13)) | 1;
+    }
+
+    public int getRecordCount() {
+        return nRecords;
+    }
+
+    public boolean hasStats(int col) {
+        return col >= 0 && col < hasStats.length && hasStats[col];
+    }
+
+    public int getNullCount(int col) {
+        return nullCounts[col];
+    }
+
+    /**
+     * @return false if no row of the column has the given ID
+     */
+    public boolean mayContain(int col, int id, int nullId) {
+        if (hasStats(col) == false)
+            return true;
+        if (id == nullId)
+            return nullCounts[col] > 0;
+        if (id < minIds[col] || id > maxIds[col])
+            return false;
+        return blooms[col] == null || bloomContains(blooms[col], id);
+    }
+
+    /**
+     * @return false if no row of the column has a non-null ID within [from, to]
+     */
+    public boolean mayContainRange(int col, int from, int to) {
+        if (hasStats(col) == false)
+            return true;
+        return from <= to && from <= maxIds[col] && to >= minIds[col];
+    }
+
+    public static byte[] serialize(SliceStats o) {
+        ByteBuffer buf = ByteBuffer.allocate(BytesSerializer.SERIALIZE_BUFFER_SIZE);
+        serializer.serialize(o, buf);
+        byte[] result = new byte[buf.position()];
+        System.arraycopy(buf.array(), 0, result, 0, buf.position());
+        return result;
+    }
+
+    public static SliceStats deserialize(ByteBuffer in) {
+        return serializer.deserialize(in);
+    }
+
+    private static final Serializer serializer = new Serializer();
+
+    private static class Serializer implements BytesSerializer<SliceStats> {
+
+        @Override
+        public void serialize(SliceStats value, ByteBuffer out) {
+            int nColumns = value.hasStats.length;
+            BytesUtil.writeVInt(nColumns, out);
+            BytesUtil.writeVInt(value.nRecords, out);
+            for (int col = 0; col < nColumns; col++) {
+                if (value.hasStats[col] == false) {
+                    out.put((byte) 0);
+                    continue;
+                }
+                long[] bloom = value.blooms[col];
+                out.put((byte) (bloom == null ? 1 : 2));
+                out.putInt(value.minIds[col]);
+                out.putInt(value.maxIds[col]);
+                BytesUtil.writeVInt(value.nullCounts[col], out);
+                if (bloom != null) {
+                    BytesUtil.writeVInt(bloom.length, out);
+                    for (long l : bloom) {
+                        out.putLong(l);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public SliceStats deserialize(ByteBuffer in) {
+            int nColumns = BytesUtil.readVInt(in);
+            SliceStats r = new SliceStats(nColumns);
+            r.nRecords = BytesUtil.readVInt(in);
+            for (int col = 0; col < nColumns; col++) {
+                byte flag = in.get();
+                if (flag == 0)
+                    continue;
+                r.hasStats[col] = true;
+                r.minIds[col] = in.getInt();
+                r.maxIds[col] = in.getInt();
+                r.nullCounts[col] = BytesUtil.readVInt(in);
+                if (flag == 2) {
+                    long[] bloom = new long[BytesUtil.readVInt(in)];
+                    for (int i = 0; i < bloom.length; i++) {
+                        bloom[i] = in.getLong();
+                    }
+                    r.blooms[col] = bloom;
+                }
+            }
+            return r;
+        }
+    }
+
+}
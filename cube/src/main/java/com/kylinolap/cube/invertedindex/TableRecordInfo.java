@@ -22,6 +22,7 @@ import org.apache.hadoop.io.LongWritable;
 
 import com.kylinolap.cube.CubeSegment;
 import com.kylinolap.cube.measure.fixedlen.FixedLenMeasureCodec;
+import com.kylinolap.dict.AppendableDictionary;
 import com.kylinolap.dict.Dictionary;
 import com.kylinolap.dict.DictionaryManager;
 import com.kylinolap.metadata.model.cube.TblColRef;
@@ -120,6 +121,39 @@ public class TableRecordInfo extends TableRecordInfoDigest {
         return (Dictionary<String>) dictionaries[col];
     }
 
+    // a segment under streaming ingestion has appendable dictionaries, whose
+    // IDs do not preserve value order
+    public boolean isAppendable(int col) {
+        return dictionaries[col] instanceof AppendableDictionary;
+    }
+
+    /**
+     * Reloads the appendable dictionary of a column, if it does not cover an
+     * ID appended after the dictionary was loaded.
+     * 
+     * @return whether the dictionary covers the ID
+     */
+    public boolean refreshDictionary(int col, int id) throws IOException {
+        if (id <= dictMaxIds[col])
+            return true;
+        if (isAppendable(col) == false)
+            return false;
+
+        DictionaryManager dictMgr = DictionaryManager.getInstance(desc.getConfig());
+        String dictPath = seg.getDictResPath(new TblColRef(getColumns()[col]));
+        dictionaries[col] = dictMgr.getDictionary(dictPath, id);
+        dictMaxIds[col] = dictionaries[col].getMaxId();
+        return id <= dictMaxIds[col];
+    }
+
+    public boolean hasAppendableDictionary() {
+        for (int i = 0; i < nColumns; i++) {
+            if (isAppendable(i))
+                return true;
+        }
+        return false;
+    }
+
     // metrics go with fixed-len codec
     @SuppressWarnings("unchecked")
     public FixedLenMeasureCodec<LongWritable> codec(int col) {
@@ -62,25 +62,48 @@ public class TableRecordInfoDigest implements TableRecordFactory {
 
     private static final Serializer serializer = new Serializer();
 
+    // the layout before versioning starts with the column count, which is
+    // never negative, so a leading -1 marks a versioned layout
+    private static final byte VERSION_MARKER = -1;
+    private static final byte VERSION = 1; // adds metric flags
+
     private static class Serializer implements BytesSerializer<TableRecordInfoDigest> {
 
         @Override
         public void serialize(TableRecordInfoDigest value, ByteBuffer out) {
+            out.put(VERSION_MARKER);
+            out.put(VERSION);
             BytesUtil.writeVInt(value.nColumns, out);
             BytesUtil.writeVInt(value.byteFormLen, out);
             BytesUtil.writeIntArray(value.offsets, out);
             BytesUtil.writeIntArray(value.dictMaxIds, out);
             BytesUtil.writeIntArray(value.lengths, out);
+            for (int i = 0; i < value.nColumns; i++) {
+                out.put((byte) (value.isMetric[i] ? 1 : 0));
+            }
         }
 
         @Override
         public TableRecordInfoDigest deserialize(ByteBuffer in) {
             TableRecordInfoDigest result = new TableRecordInfoDigest();
+            byte version = 0;
+            if (in.get(in.position()) == VERSION_MARKER) {
+                in.get();
+                version = in.get();
+                if (version != VERSION)
+                    throw new IllegalStateException("Unknown TableRecordInfoDigest version " + version + ", expect " + VERSION + ", is the coprocessor jar in sync with the query server?");
+            }
             result.nColumns = BytesUtil.readVInt(in);
             result.byteFormLen = BytesUtil.readVInt(in);
             result.offsets = BytesUtil.readIntArray(in);
             result.dictMaxIds = BytesUtil.readIntArray(in);
             result.lengths = BytesUtil.readIntArray(in);
+            result.isMetric = new boolean[result.nColumns];
+            if (version >= 1) {
+                for (int i = 0; i < result.nColumns; i++) {
+                    result.isMetric[i] = in.get() != 0;
+                }
+            }
             return result;
         }
 
@@ -15,13 +15,15 @@
  */
 package com.kylinolap.cube.kv;
 
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.kylinolap.cube.CubeSegment;
 import com.kylinolap.cube.cuboid.Cuboid;
 import com.kylinolap.dict.Dictionary;
@@ -38,18 +40,29 @@ public abstract class AbstractRowKeyEncoder {
 
     protected static final Logger logger = LoggerFactory.getLogger(AbstractRowKeyEncoder.class);
 
-    private static final Map<String, Map<Long, AbstractRowKeyEncoder>> ENCODER_CACHE = new ConcurrentHashMap<String, Map<Long, AbstractRowKeyEncoder>>();
+    private static final int MAX_CACHED_SEGMENTS = 1000;
+
+    // "cube/storage location" ==> (cuboid id ==> encoder); soft and bounded,
+    // so segments dropped or merged away and their dictionaries can go
+    private static final Cache<String, Map<Long, AbstractRowKeyEncoder>> ENCODER_CACHE = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_SEGMENTS).softValues().build();
 
     public static AbstractRowKeyEncoder createInstance(CubeSegment cubeSeg, Cuboid cuboid) {
 
         // The storage location identifier is unique for every segment
-        Map<Long, AbstractRowKeyEncoder> cubeCache = ENCODER_CACHE.get(cubeSeg.getStorageLocationIdentifier());
+        String storageId = cubeSeg.getStorageLocationIdentifier();
+        if (storageId == null)
+            return new RowKeyEncoder(cubeSeg, cuboid);
+
+        String segKey = cubeSeg.getCubeInstance().getName() + "/" + storageId;
+        Map<Long, AbstractRowKeyEncoder> cubeCache = ENCODER_CACHE.getIfPresent(segKey);
 
         if (cubeCache == null) {
-            cubeCache = new HashMap<Long, AbstractRowKeyEncoder>();
-            ENCODER_CACHE.put(cuboid.getCube().getName(), cubeCache);
+            cubeCache = new ConcurrentHashMap<Long, AbstractRowKeyEncoder>();
+            ENCODER_CACHE.put(segKey, cubeCache);
         }
 
+        // an encoder is compiled once per (segment, cuboid), and is stateless
+        // after that, so it can be shared by threads
         AbstractRowKeyEncoder encoder = cubeCache.get(cuboid.getId());
         if (encoder == null) {
             encoder = new RowKeyEncoder(cubeSeg, cuboid);
@@ -58,6 +71,22 @@ public abstract class AbstractRowKeyEncoder {
         return encoder;
     }
 
+    /**
+     * Drop the encoders of all segments of a cube, e.g. when the cube is
+     * reloaded or dropped.
+     */
+    public static void clearCache(String cubeName) {
+        String prefix = cubeName + "/";
+        for (Iterator<String> it = ENCODER_CACHE.asMap().keySet().iterator(); it.hasNext();) {
+            if (it.next().startsWith(prefix))
+                it.remove();
+        }
+    }
+
+    public static void clearCache() {
+        ENCODER_CACHE.invalidateAll();
+    }
+
     protected final Cuboid cuboid;
     protected byte blankByte = DEFAULT_BLANK_BYTE;
 
@@ -69,7 +98,27 @@ public abstract class AbstractRowKeyEncoder {
         this.blankByte = blankByte;
     }
 
+    abstract public int getBytesLength();
+
     abstract public byte[] encode(Map<TblColRef, String> valueMap);
 
+    /**
+     * Encode with the given blank byte for null values, leaving the encoder's
+     * own default untouched, so a shared encoder can be used concurrently
+     */
+    abstract public byte[] encode(Map<TblColRef, String> valueMap, byte blankByte);
+
     abstract public byte[] encode(byte[][] values);
+
+    /**
+     * Encode into a caller provided buffer of at least
+     * {@link #getBytesLength()} bytes, no allocation per call.
+     * 
+     * @param values
+     *            column values in cuboid order, null for null value
+     * @param valueLengths
+     *            valid length of each value, or null to use whole arrays
+     * @return length of the rowkey written
+     */
+    abstract public int encode(byte[][] values, int[] valueLengths, byte[] output);
 }
@@ -32,9 +32,7 @@ public class FuzzyKeyEncoder extends RowKeyEncoder {
     }
 
     @Override
-    protected byte[] defaultValue(int length) {
-        byte[] keyBytes = new byte[length];
-        Arrays.fill(keyBytes, RowConstants.FUZZY_MASK_ZERO);
-        return keyBytes;
+    protected void fillDefaultValue(byte blankByte, byte[] outputValue, int outputValueOffset, int length) {
+        Arrays.fill(outputValue, outputValueOffset, outputValueOffset + length, RowConstants.FUZZY_MASK_ZERO);
     }
 }
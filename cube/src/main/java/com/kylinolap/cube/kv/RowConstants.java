@@ -30,6 +30,10 @@ public class RowConstants {
     public static final byte ROWKEY_UPPER_BYTE = (byte) 0xff;
     // row key cuboid id length
     public static final int ROWKEY_CUBOIDID_LEN = 8;
+    // row key shard prefix length, present only if the segment is sharded
+    public static final int ROWKEY_SHARD_LEN = 1;
+    // shard number is kept in one unsigned byte
+    public static final int ROWKEY_MAX_SHARD_NUM = 256;
 
     // fuzzy mask
     public static final byte FUZZY_MASK_ZERO = 0;
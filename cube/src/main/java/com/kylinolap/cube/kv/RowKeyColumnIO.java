@@ -17,6 +17,7 @@
 package com.kylinolap.cube.kv;
 
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
@@ -39,10 +40,17 @@ public class RowKeyColumnIO {
 
     private static final Logger logger = LoggerFactory.getLogger(RowKeyColumnIO.class);
 
+    // marks a column without dictionary in the dictionary cache
+    private static final Object NO_DICT = new Object();
+
     private CubeSegment seg;
     private RowKeyDesc rowkeyDesc;
     private boolean forceNoDict = Boolean.getBoolean("forceNoDict");
 
+    // dictionaries of a segment don't change once built, resolve them once
+    private final ConcurrentHashMap<TblColRef, Object> dictCache = new ConcurrentHashMap<TblColRef, Object>();
+    private final ConcurrentHashMap<TblColRef, Integer> lengthCache = new ConcurrentHashMap<TblColRef, Integer>();
+
     public RowKeyColumnIO(CubeSegment cubeSeg) {
         this.seg = cubeSeg;
         this.rowkeyDesc = seg.getCubeDesc().getRowkey();
@@ -53,12 +61,13 @@ public class RowKeyColumnIO {
     }
 
     public int getColumnLength(TblColRef col) {
-        Dictionary<String> dict = getDictionary(col);
-        if (dict == null) {
-            return rowkeyDesc.getColumnLength(col);
-        } else {
-            return dict.getSizeOfId();
+        Integer length = lengthCache.get(col);
+        if (length == null) {
+            Dictionary<String> dict = getDictionary(col);
+            length = dict == null ? rowkeyDesc.getColumnLength(col) : dict.getSizeOfId();
+            lengthCache.put(col, length);
         }
+        return length;
     }
 
     public void writeColumn(TblColRef column, byte[] value, int valueLen, byte dft, byte[] output, int outputOffset) {
@@ -70,10 +79,11 @@ public class RowKeyColumnIO {
         Dictionary<String> dict = getDictionary(column);
         int columnLen = getColumnLength(column);
 
-        // non-dict value
+        // non-dict value, pad or truncate to the fixed length in place
         if (dict == null) {
-            byte[] valueBytes = padFixLen(columnLen, value);
-            System.arraycopy(valueBytes, 0, output, outputOffset, columnLen);
+            int copyLen = Math.min(valueLen, columnLen);
+            System.arraycopy(value, 0, output, outputOffset, copyLen);
+            Arrays.fill(output, outputOffset + copyLen, outputOffset + columnLen, RowConstants.ROWKEY_PLACE_HOLDER_BYTE);
             return;
         }
 
@@ -88,31 +98,19 @@ public class RowKeyColumnIO {
         }
     }
 
-    private byte[] padFixLen(int length, byte[] valueBytes) {
-        int valLen = valueBytes.length;
-        if (valLen == length) {
-            return valueBytes;
-        } else if (valLen < length) {
-            byte[] newValueBytes = new byte[length];
-            System.arraycopy(valueBytes, 0, newValueBytes, 0, valLen);
-            Arrays.fill(newValueBytes, valLen, length, RowConstants.ROWKEY_PLACE_HOLDER_BYTE);
-            return newValueBytes;
-        } else {
-            return Arrays.copyOf(valueBytes, length);
-        }
+    public String readColumnString(TblColRef col, byte[] bytes, int bytesLen) {
+        return readColumnString(col, bytes, 0, bytesLen);
     }
 
-    public String readColumnString(TblColRef col, byte[] bytes, int bytesLen) {
+    public String readColumnString(TblColRef col, byte[] bytes, int offset, int length) {
         Dictionary<String> dict = getDictionary(col);
         if (dict == null) {
-            bytes = Bytes.head(bytes, bytesLen);
-            if (isNull(bytes)) {
+            if (isNull(bytes, offset, length)) {
                 return null;
             }
-            bytes = removeFixLenPad(bytes, 0);
-            return Bytes.toString(bytes);
+            return removeFixLenPad(bytes, offset, length);
         } else {
-            int id = BytesUtil.readUnsigned(bytes, 0, bytesLen);
+            int id = BytesUtil.readUnsigned(bytes, offset, length);
             try {
                 String value = dict.getValueFromId(id);
                 return value;
@@ -123,43 +121,51 @@ public class RowKeyColumnIO {
         }
     }
 
-    private boolean isNull(byte[] bytes) {
+    private boolean isNull(byte[] bytes, int offset, int length) {
         // all 0xFF is NULL
-        if (bytes.length == 0)
+        if (length == 0)
             return false;
-        for (int i = 0; i < bytes.length; i++) {
+        for (int i = offset; i < offset + length; i++) {
             if (bytes[i] != AbstractRowKeyEncoder.DEFAULT_BLANK_BYTE)
                 return false;
         }
         return true;
     }
 
-    private byte[] removeFixLenPad(byte[] bytes, int offset) {
+    private String removeFixLenPad(byte[] bytes, int offset, int length) {
         int padCount = 0;
-        for (int i = offset; i < bytes.length; i++) {
-            byte vb = bytes[i];
-            if (vb == RowConstants.ROWKEY_PLACE_HOLDER_BYTE) {
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] == RowConstants.ROWKEY_PLACE_HOLDER_BYTE) {
                 padCount++;
             }
         }
+        if (padCount == 0) {
+            return Bytes.toString(bytes, offset, length);
+        }
 
-        int size = bytes.length - offset - padCount;
-        byte[] stripBytes = new byte[size];
+        byte[] stripBytes = new byte[length - padCount];
         int index = 0;
-        for (int i = offset; i < bytes.length; i++) {
+        for (int i = offset; i < offset + length; i++) {
             byte vb = bytes[i];
             if (vb != RowConstants.ROWKEY_PLACE_HOLDER_BYTE) {
                 stripBytes[index++] = vb;
             }
         }
-        return stripBytes;
+        return Bytes.toString(stripBytes);
     }
 
     public Dictionary<String> getDictionary(TblColRef col) {
         if (forceNoDict)
             return null;
 
-        return (Dictionary<String>) CubeManager.getInstance(seg.getCubeInstance().getConfig()).getDictionary(seg, col);
+        Object dict = dictCache.get(col);
+        if (dict == null) {
+            dict = CubeManager.getInstance(seg.getCubeInstance().getConfig()).getDictionary(seg, col);
+            if (dict == null)
+                dict = NO_DICT;
+            dictCache.put(col, dict);
+        }
+        return dict == NO_DICT ? null : (Dictionary<String>) dict;
     }
 
 }
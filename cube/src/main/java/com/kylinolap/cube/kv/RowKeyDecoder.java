@@ -20,9 +20,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.hadoop.hbase.util.Bytes;
+
 import com.kylinolap.cube.CubeSegment;
 import com.kylinolap.cube.common.RowKeySplitter;
-import com.kylinolap.cube.common.SplittedBytes;
 import com.kylinolap.cube.cuboid.Cuboid;
 import com.kylinolap.metadata.model.cube.CubeDesc;
 import com.kylinolap.metadata.model.cube.TblColRef;
@@ -34,35 +35,34 @@ import com.kylinolap.metadata.model.cube.TblColRef;
  */
 public class RowKeyDecoder {
 
+    private final CubeSegment cubeSegment;
     private final CubeDesc cubeDesc;
-    private final RowKeyColumnIO colIO;
-    private final RowKeySplitter rowKeySplitter;
+    private RowKeySplitter rowKeySplitter;
 
     private Cuboid cuboid;
+    // precompiled codec of current cuboid, columns are read in place
+    private RowKeyEncoder codec;
     private List<String> names;
     private List<String> values;
 
     public RowKeyDecoder(CubeSegment cubeSegment) {
+        this.cubeSegment = cubeSegment;
         this.cubeDesc = cubeSegment.getCubeDesc();
-        this.rowKeySplitter = new RowKeySplitter(cubeSegment, 65, 255);
-        this.colIO = new RowKeyColumnIO(cubeSegment);
         this.values = new ArrayList<String>();
     }
 
     public long decode(byte[] bytes) throws IOException {
         this.values.clear();
 
-        long cuboidId = rowKeySplitter.split(bytes, bytes.length);
+        long cuboidId = Bytes.toLong(bytes, cubeSegment.getRowkeyShardLength(), RowConstants.ROWKEY_CUBOIDID_LEN);
         initCuboid(cuboidId);
 
-        SplittedBytes[] splits = rowKeySplitter.getSplitBuffers();
-
-        int offset = 1; // skip cuboid id part
-
-        for (int i = 0; i < this.cuboid.getColumns().size(); i++) {
-            TblColRef col = this.cuboid.getColumns().get(i);
-            collectValue(col, splits[offset].value, splits[offset].length);
-            offset++;
+        List<TblColRef> columns = this.cuboid.getColumns();
+        int[] offsets = codec.getColumnOffsets();
+        int[] lengths = codec.getColumnLengths();
+        RowKeyColumnIO colIO = codec.getColumnIO();
+        for (int i = 0; i < columns.size(); i++) {
+            values.add(colIO.readColumnString(columns.get(i), bytes, offsets[i], lengths[i]));
         }
 
         return cuboidId;
@@ -72,20 +72,19 @@ public class RowKeyDecoder {
         if (this.cuboid != null && this.cuboid.getId() == cuboidID) {
             return;
         }
-        this.cuboid = Cuboid.findById(cubeDesc, cuboidID);
-    }
-
-    private void collectValue(TblColRef col, byte[] valueBytes, int length) throws IOException {
-        String strValue = colIO.readColumnString(col, valueBytes, length);
-        values.add(strValue);
+        setCuboid(Cuboid.findById(cubeDesc, cuboidID));
     }
 
     public RowKeySplitter getRowKeySplitter() {
+        if (rowKeySplitter == null) {
+            rowKeySplitter = new RowKeySplitter(cubeSegment, 65, 255);
+        }
         return rowKeySplitter;
     }
 
     public void setCuboid(Cuboid cuboid) {
         this.cuboid = cuboid;
+        this.codec = (RowKeyEncoder) AbstractRowKeyEncoder.createInstance(cubeSegment, cuboid);
         this.names = null;
     }
 
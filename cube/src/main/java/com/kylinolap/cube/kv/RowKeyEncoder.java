@@ -15,32 +15,55 @@
  */
 package com.kylinolap.cube.kv;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.MurmurHash;
 
 import com.kylinolap.cube.CubeSegment;
 import com.kylinolap.cube.cuboid.Cuboid;
 import com.kylinolap.metadata.model.cube.TblColRef;
 
 /**
+ * Encodes rowkeys of one cuboid of one segment. Columns, their offsets and
+ * lengths, and the dictionaries behind are resolved once at construction.
+ * 
+ * The rowkey is [shard][cuboid id][dimensions], where the one byte shard
+ * prefix exists only if the segment is sharded, and is a hash of the
+ * dimension bytes. Keys encoded from value maps are scan range bounds or
+ * fuzzy keys, their shard byte is left 0; range bounds are set per shard by
+ * the caller and fuzzy masks match any shard.
+ * 
  * @author George Song (ysong1)
  */
 public class RowKeyEncoder extends AbstractRowKeyEncoder {
 
     private int bytesLength;
     protected int headerLength;
+    protected final int shardNum;
     private RowKeyColumnIO colIO;
 
+    // cuboid columns in rowkey order, with their offsets and lengths
+    private final TblColRef[] columns;
+    private final int[] columnOffsets;
+    private final int[] columnLengths;
+
     protected RowKeyEncoder(CubeSegment cubeSeg, Cuboid cuboid) {
         super(cuboid);
         colIO = new RowKeyColumnIO(cubeSeg);
-        bytesLength = headerLength = RowConstants.ROWKEY_CUBOIDID_LEN; // header
-        for (TblColRef column : cuboid.getColumns()) {
-            bytesLength += colIO.getColumnLength(column);
+        shardNum = cubeSeg.getRowkeyShardNum();
+        bytesLength = headerLength = cubeSeg.getRowkeyShardLength() + RowConstants.ROWKEY_CUBOIDID_LEN; // header
+
+        List<TblColRef> cuboidColumns = cuboid.getColumns();
+        columns = cuboidColumns.toArray(new TblColRef[cuboidColumns.size()]);
+        columnOffsets = new int[columns.length];
+        columnLengths = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columnOffsets[i] = bytesLength;
+            columnLengths[i] = colIO.getColumnLength(columns[i]);
+            bytesLength += columnLengths[i];
         }
     }
 
@@ -49,12 +72,9 @@ public class RowKeyEncoder extends AbstractRowKeyEncoder {
     }
 
     public int getColumnOffset(TblColRef col) {
-        int offset = RowConstants.ROWKEY_CUBOIDID_LEN;
-
-        for (TblColRef dimCol : cuboid.getColumns()) {
-            if (col.equals(dimCol))
-                return offset;
-            offset += colIO.getColumnLength(dimCol);
+        for (int i = 0; i < columns.length; i++) {
+            if (col.equals(columns[i]))
+                return columnOffsets[i];
         }
 
         throw new IllegalArgumentException("Column " + col + " not found on cuboid " + cuboid);
@@ -64,23 +84,59 @@ public class RowKeyEncoder extends AbstractRowKeyEncoder {
         return colIO.getColumnLength(col);
     }
 
+    /**
+     * @return offset of each cuboid column in rowkey order, do not modify
+     */
+    public int[] getColumnOffsets() {
+        return columnOffsets;
+    }
+
+    /**
+     * @return length of each cuboid column in rowkey order, do not modify
+     */
+    public int[] getColumnLengths() {
+        return columnLengths;
+    }
+
     public int getRowKeyLength() {
         return bytesLength;
     }
 
+    @Override
+    public int getBytesLength() {
+        return bytesLength;
+    }
+
     public int getHeaderLength() {
         return headerLength;
     }
 
+    public int getShardNum() {
+        return shardNum;
+    }
+
+    /**
+     * @return the shard of a rowkey, decided by its dimension bytes
+     */
+    public static byte getShard(byte[] key, int dimOffset, int dimLength, int shardNum) {
+        int hash = MurmurHash.getInstance().hash(key, dimOffset, dimLength, 0);
+        return (byte) ((hash & Integer.MAX_VALUE) % shardNum);
+    }
+
     @Override
     public byte[] encode(Map<TblColRef, String> valueMap) {
-        List<byte[]> valueList = new ArrayList<byte[]>();
-        for (TblColRef bdCol : cuboid.getColumns()) {
-            String value = valueMap.get(bdCol);
-            valueList.add(valueStringToBytes(value));
+        return encode(valueMap, this.blankByte);
+    }
+
+    @Override
+    public byte[] encode(Map<TblColRef, String> valueMap, byte blankByte) {
+        byte[][] values = new byte[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = valueStringToBytes(valueMap.get(columns[i]));
         }
-        byte[][] values = valueList.toArray(RowConstants.BYTE_ARR_MARKER);
-        return encode(values);
+        byte[] bytes = new byte[this.bytesLength];
+        encode(values, null, blankByte, bytes);
+        return bytes;
     }
 
     public byte[] valueStringToBytes(String value) {
@@ -93,25 +149,33 @@ public class RowKeyEncoder extends AbstractRowKeyEncoder {
     @Override
     public byte[] encode(byte[][] values) {
         byte[] bytes = new byte[this.bytesLength];
-        int offset = fillHeader(bytes, values);
+        encode(values, null, this.blankByte, bytes);
+        fillShard(bytes);
+        return bytes;
+    }
 
-        for (int i = 0; i < cuboid.getColumns().size(); i++) {
-            TblColRef column = cuboid.getColumns().get(i);
-            int colLength = colIO.getColumnLength(column);
-            byte[] value = values[i];
-            if (value == null) {
-                fillColumnValue(column, colLength, null, 0, bytes, offset);
-            } else {
-                fillColumnValue(column, colLength, value, value.length, bytes, offset);
-            }
-            offset += colLength;
+    @Override
+    public int encode(byte[][] values, int[] valueLengths, byte[] output) {
+        encode(values, valueLengths, this.blankByte, output);
+        fillShard(output);
+        return this.bytesLength;
+    }
 
+    private void encode(byte[][] values, int[] valueLengths, byte blankByte, byte[] output) {
+        fillHeader(output, values);
+
+        for (int i = 0; i < columns.length; i++) {
+            byte[] value = values[i];
+            int valueLen = value == null ? 0 : (valueLengths == null ? value.length : valueLengths[i]);
+            fillColumnValue(columns[i], columnLengths[i], value, valueLen, blankByte, output, columnOffsets[i]);
         }
-        return bytes;
     }
 
     protected int fillHeader(byte[] bytes, byte[][] values) {
-        int offset = 0;
+        int offset = headerLength - RowConstants.ROWKEY_CUBOIDID_LEN;
+        if (offset > 0) {
+            bytes[0] = 0; // shard is filled once dimensions are in place
+        }
         System.arraycopy(cuboid.getBytes(), 0, bytes, offset, RowConstants.ROWKEY_CUBOIDID_LEN);
         offset += RowConstants.ROWKEY_CUBOIDID_LEN;
         if (this.headerLength != offset) {
@@ -120,21 +184,24 @@ public class RowKeyEncoder extends AbstractRowKeyEncoder {
         return offset;
     }
 
-    protected void fillColumnValue(TblColRef column, int columnLen, byte[] value, int valueLen, byte[] outputValue, int outputValueOffset) {
+    protected void fillShard(byte[] bytes) {
+        if (shardNum > 0) {
+            bytes[0] = getShard(bytes, headerLength, bytesLength - headerLength, shardNum);
+        }
+    }
+
+    protected void fillColumnValue(TblColRef column, int columnLen, byte[] value, int valueLen, byte blankByte, byte[] outputValue, int outputValueOffset) {
         // special null value case
         if (value == null) {
-            byte[] valueBytes = defaultValue(columnLen);
-            System.arraycopy(valueBytes, 0, outputValue, outputValueOffset, columnLen);
+            fillDefaultValue(blankByte, outputValue, outputValueOffset, columnLen);
             return;
         }
 
-        colIO.writeColumn(column, value, valueLen, this.blankByte, outputValue, outputValueOffset);
+        colIO.writeColumn(column, value, valueLen, blankByte, outputValue, outputValueOffset);
     }
 
-    protected byte[] defaultValue(int length) {
-        byte[] values = new byte[length];
-        Arrays.fill(values, this.blankByte);
-        return values;
+    protected void fillDefaultValue(byte blankByte, byte[] outputValue, int outputValueOffset, int length) {
+        Arrays.fill(outputValue, outputValueOffset, outputValueOffset + length, blankByte);
     }
 
 }
@@ -69,8 +69,16 @@ public class RowValueDecoder implements Cloneable {
         this.values = new Object[measures.length];
     }
 
+    /**
+     * decode the projected measures, or all of them when none is projected;
+     * unprojected measures are skipped without being deserialized
+     */
     public void decode(byte[] bytes) {
-        codec.decode(ByteBuffer.wrap(bytes), values);
+        if (projectionIndex.isEmpty()) {
+            codec.decode(ByteBuffer.wrap(bytes), values);
+        } else {
+            codec.decode(ByteBuffer.wrap(bytes), values, projectionIndex);
+        }
         convertToJavaObjects(values, values);
     }
 
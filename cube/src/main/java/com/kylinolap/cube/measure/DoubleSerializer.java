@@ -41,6 +41,11 @@ public class DoubleSerializer extends MeasureSerializer<DoubleWritable> {
         return current;
     }
 
+    @Override
+    public void skip(ByteBuffer in) {
+        in.position(in.position() + 8);
+    }
+
     @Override
     public DoubleWritable valueOf(byte[] value) {
         if (value == null)
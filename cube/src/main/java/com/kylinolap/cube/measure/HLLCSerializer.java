@@ -52,6 +52,11 @@ public class HLLCSerializer extends MeasureSerializer<HyperLogLogPlusCounter> {
         return current;
     }
 
+    @Override
+    public void skip(ByteBuffer in) {
+        current.skipRegisters(in);
+    }
+
     @Override
     public HyperLogLogPlusCounter valueOf(byte[] value) {
         current.clear();
@@ -17,6 +17,7 @@
 package com.kylinolap.cube.measure;
 
 import java.nio.ByteBuffer;
+import java.util.BitSet;
 import java.util.Collection;
 
 import org.apache.hadoop.io.Text;
@@ -73,6 +74,27 @@ public class MeasureCodec {
         }
     }
 
+    /**
+     * decode only the selected measures, others are skipped over and left
+     * null in result
+     */
+    public void decode(ByteBuffer buf, Object[] result, BitSet selected) {
+        assert result.length == nMeasures;
+        int last = selected.length() - 1;
+        for (int i = 0; i <= last; i++) {
+            if (selected.get(i))
+                result[i] = serializers[i].deserialize(buf);
+            else {
+                serializers[i].skip(buf);
+                result[i] = null;
+            }
+        }
+        // nothing needed after the last selected measure
+        for (int i = last + 1; i < nMeasures; i++) {
+            result[i] = null;
+        }
+    }
+
     public void encode(Object[] values, ByteBuffer out) {
         assert values.length == nMeasures;
         for (int i = 0; i < nMeasures; i++) {
@@ -16,6 +16,7 @@
 
 package com.kylinolap.cube.measure;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 
 import com.kylinolap.common.util.BytesSerializer;
@@ -57,6 +58,14 @@ abstract public class MeasureSerializer<T> implements BytesSerializer<T> {
 
     abstract public T valueOf(byte[] value);
 
+    /**
+     * move the buffer past one serialized value, subclasses override where
+     * this is cheaper than deserialize
+     */
+    public void skip(ByteBuffer in) {
+        deserialize(in);
+    }
+
     public String toString(T value) {
         if (value == null)
             return "NULL";
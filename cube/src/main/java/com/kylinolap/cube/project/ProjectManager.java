@@ -364,6 +364,18 @@ public class ProjectManager {
         loadTables(project.getResourcePath());
     }
 
+    /**
+     * Load a project not yet in cache, e.g. created on another node
+     */
+    public void reloadProjectLocal(String projectName) throws IOException {
+        String path = ProjectInstance.concatResourcePath(projectName);
+        if (getStore().exists(path) == false)
+            return;
+
+        loadProject(path, false);
+        loadTables(path);
+    }
+
     public void removeProjectCache(ProjectInstance project) {
         String projectName = ProjectInstance.getNormalizedProjectName(project.getName());
         if (projectMap.containsKey(projectName)) {
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -41,6 +42,23 @@ public class InvertedIndexLocalTest extends LocalFileMetadataTestCase {
         this.cleanupTestMetadata();
     }
     
+    @Test
+    public void testDigestSerialize() {
+        TableRecordInfoDigest copy = TableRecordInfoDigest.deserialize(TableRecordInfoDigest.serialize(info));
+        assertEquals(info.getColumnCount(), copy.getColumnCount());
+        for (int i = 0; i < info.getColumnCount(); i++) {
+            assertEquals(info.length(i), copy.length(i));
+            assertEquals(info.isMetrics(i), copy.isMetrics(i));
+        }
+
+        try {
+            TableRecordInfoDigest.deserialize(new byte[] { -1, 99, 0, 0 });
+            fail("unknown version should be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
     @Test
     public void testBitMapContainer() {
         // create container
@@ -65,6 +83,13 @@ public class InvertedIndexLocalTest extends LocalFileMetadataTestCase {
         }
         assertEquals(Dictionary.NULL_ID[dict.getSizeOfId()], container2.getValueIntAt(i++));
         assertEquals(container, container2);
+
+        // column at a time
+        int[] ids = new int[container2.getSize()];
+        container2.getValueIds(ids);
+        for (i = 0; i < ids.length; i++) {
+            assertEquals(container2.getValueIntAt(i), ids[i]);
+        }
     }
 
     @Test
@@ -100,6 +125,53 @@ public class InvertedIndexLocalTest extends LocalFileMetadataTestCase {
         int value = BytesUtil.readUnsigned(bytes.get(), bytes.getOffset(), bytes.getLength());
         assertEquals(Dictionary.NULL_ID[dict.getSizeOfId()], value);
         assertEquals(container, container2);
+
+        // column at a time
+        int[] ids = new int[container2.getSize()];
+        container2.getValueIds(ids);
+        i = 0;
+        for (int v = dict.getMinId(); v <= dict.getMaxId(); v++) {
+            assertEquals(v, ids[i++]);
+        }
+        assertEquals(Dictionary.NULL_ID[dict.getSizeOfId()], ids[i++]);
+    }
+
+    @Test
+    public void testRunLengthValueContainer() {
+        // create container, runs of 1 to 3 of each value
+        RunLengthValueContainer container = new RunLengthValueContainer(info, 0);
+        Dictionary<String> dict = info.dict(0);
+        int nullId = Dictionary.NULL_ID[dict.getSizeOfId()];
+        List<Integer> expected = Lists.newArrayList();
+        for (int v = dict.getMinId(); v <= dict.getMaxId(); v++) {
+            for (int i = 0; i <= v % 3; i++) {
+                container.append(v);
+                expected.add(v);
+            }
+        }
+        container.append(nullId);
+        expected.add(nullId);
+        container.closeForChange();
+        assertEquals(dict.getMaxId() - dict.getMinId() + 2, container.getRunCount());
+
+        // copy by serialization
+        ImmutableBytesWritable bytes = container.toBytes();
+        assertTrue(RunLengthValueContainer.isRunLength(bytes));
+        RunLengthValueContainer container2 = new RunLengthValueContainer(info, 0);
+        container2.fromBytes(bytes);
+        assertEquals(container, container2);
+
+        // check the copy, row by row, column at a time and as bitmaps
+        int[] ids = new int[container2.getSize()];
+        container2.getValueIds(ids);
+        assertEquals(expected.size(), ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals((int) expected.get(i), container2.getValueIntAt(i));
+            assertEquals((int) expected.get(i), ids[i]);
+            assertTrue(container2.getBitMap(ids[i]).contains(i));
+        }
+        assertEquals(1, container2.getBitMap(nullId).size());
+        assertEquals(0, container2.getBitMap(dict.getMaxId() + 1).size());
     }
 
     @Test
@@ -121,6 +193,91 @@ public class InvertedIndexLocalTest extends LocalFileMetadataTestCase {
         dump(recordsCopy);
     }
 
+    @Test
+    public void testColumnReader() throws IOException {
+        List<TableRecord> records = loadRecordsSorted();
+        IIKeyValueCodec codec = new IIKeyValueCodec(info);
+        List<Slice> slices = decodeKVs(codec, encodeKVs(codec, buildTimeSlices(records)));
+
+        SliceColumnReader reader = new SliceColumnReader(info);
+        for (Slice slice : slices) {
+            reader.reset(slice);
+            int row = 0;
+            for (TableRecordBytes rec : slice) {
+                for (int col = 0; col < info.getColumnCount(); col++) {
+                    if (info.isMetrics(col))
+                        assertEquals(BytesUtil.readLong(rec.getBytes(), info.offset(col), info.length(col)), reader.getLongs(col)[row]);
+                    else
+                        assertEquals(rec.getValueID(col), reader.getIds(col)[row]);
+                }
+                row++;
+            }
+            assertEquals(slice.getRecordCount(), row);
+        }
+    }
+
+    @Test
+    public void testLateRecords() throws IOException {
+        List<TableRecord> records = loadRecordsSorted();
+        long last = records.get(records.size() - 1).getTimestamp();
+        long[] lastSliceTimestamps = new long[info.getDescriptor().getSharding()];
+        Arrays.fill(lastSliceTimestamps, last);
+
+        // continue after existing slices, all records are late
+        ShardingSliceBuilder builder = new ShardingSliceBuilder(info, lastSliceTimestamps);
+        List<Slice> slices = Lists.newArrayList();
+        for (TableRecord rec : records) {
+            Slice slice = builder.append(rec);
+            if (slice != null)
+                slices.add(slice);
+        }
+        slices.addAll(builder.flush());
+
+        long[] prev = lastSliceTimestamps.clone();
+        for (Slice slice : slices) {
+            assertTrue(slice.getTimestamp() > prev[slice.getShard()]);
+            prev[slice.getShard()] = slice.getTimestamp();
+        }
+        assertEquals(new HashSet<TableRecord>(records), new HashSet<TableRecord>(iterateRecords(slices)));
+    }
+
+    @Test
+    public void testSliceStats() throws IOException {
+        List<TableRecord> records = loadRecordsSorted();
+        IIKeyValueCodec codec = new IIKeyValueCodec(info);
+        List<Pair<ImmutableBytesWritable, ImmutableBytesWritable>> kvs = encodeKVs(codec, buildTimeSlices(records));
+        List<Slice> slices = decodeKVs(codec, kvs);
+
+        for (Slice slice : slices) {
+            SliceStats stats = slice.getStats();
+            assertNotNull(stats);
+            assertEquals(slice.getRecordCount(), stats.getRecordCount());
+            for (int col = 0; col < info.getColumnCount(); col++) {
+                assertEquals(info.isMetrics(col) == false, stats.hasStats(col));
+            }
+            for (TableRecordBytes rec : slice) {
+                for (int col = 0; col < info.getColumnCount(); col++) {
+                    if (info.isMetrics(col))
+                        continue;
+                    int id = rec.getValueID(col);
+                    int nullId = Dictionary.NULL_ID[info.length(col)];
+                    assertTrue(stats.mayContain(col, id, nullId));
+                    if (id != nullId)
+                        assertTrue(stats.mayContainRange(col, id, id));
+                }
+            }
+        }
+
+        // a checker ruling out everything skips all slices
+        Iterable<Slice> none = codec.decodeKeyValue(kvs, new SliceStats.Checker() {
+            @Override
+            public boolean mayMatch(SliceStats stats) {
+                return false;
+            }
+        });
+        assertFalse(none.iterator().hasNext());
+    }
+
     private List<TableRecord> loadRecordsSorted() throws IOException {
         File file = new File(LOCALMETA_TEST_DATA, "data/TEST_KYLIN_FACT.csv");
         FileInputStream in = new FileInputStream(file);
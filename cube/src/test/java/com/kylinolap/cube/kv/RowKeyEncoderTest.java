@@ -18,18 +18,24 @@ package com.kylinolap.cube.kv;
 import static org.junit.Assert.*;
 
 import java.util.Arrays;
+import java.util.Map;
 
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.Maps;
 import com.kylinolap.common.util.LocalFileMetadataTestCase;
 import com.kylinolap.cube.CubeInstance;
 import com.kylinolap.cube.CubeManager;
+import com.kylinolap.cube.CubeSegment;
+import com.kylinolap.cube.common.RowKeySplitter;
+import com.kylinolap.cube.common.SplittedBytes;
 import com.kylinolap.cube.cuboid.Cuboid;
 import com.kylinolap.metadata.MetadataManager;
 import com.kylinolap.metadata.model.cube.CubeDesc;
+import com.kylinolap.metadata.model.cube.TblColRef;
 
 /**
  * @author George Song (ysong1)
@@ -140,4 +146,72 @@ public class RowKeyEncoderTest extends LocalFileMetadataTestCase {
         assertEquals(511, Bytes.toLong(cuboidId));
         assertArrayEquals(new byte[] { -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 }, rest);
     }
+
+    @Test
+    public void testEncodeIntoBuffer() throws Exception {
+        CubeInstance cube = CubeManager.getInstance(this.getTestConfig()).getCube("TEST_KYLIN_CUBE_WITH_SLR_READY");
+        CubeDesc cubeDesc = cube.getDescriptor();
+        String[] strs = { "123456789", "2012-12-15", "11848", "Health & Beauty", "Fragrances", "Women", "FP-GTC", "0", "15" };
+        byte[][] data = new byte[strs.length][];
+        byte[][] buffers = new byte[strs.length][];
+        int[] lengths = new int[strs.length];
+        for (int i = 0; i < strs.length; i++) {
+            data[i] = Bytes.toBytes(strs[i]);
+            // reused buffers are larger than their values
+            buffers[i] = Arrays.copyOf(data[i], 255);
+            lengths[i] = data[i].length;
+        }
+        buffers[5] = null;
+        data[5] = null;
+
+        long baseCuboidId = Cuboid.getBaseCuboidId(cubeDesc);
+        Cuboid baseCuboid = Cuboid.findById(cubeDesc, baseCuboidId);
+        AbstractRowKeyEncoder rowKeyEncoder = AbstractRowKeyEncoder.createInstance(cube.getFirstSegment(), baseCuboid);
+        assertSame(rowKeyEncoder, AbstractRowKeyEncoder.createInstance(cube.getFirstSegment(), baseCuboid));
+
+        byte[] output = new byte[rowKeyEncoder.getBytesLength()];
+        int length = rowKeyEncoder.encode(buffers, lengths, output);
+        assertEquals(48, length);
+        assertArrayEquals(rowKeyEncoder.encode(data), output);
+    }
+
+    @Test
+    public void testEncodeWithShard() throws Exception {
+        CubeInstance cube = CubeManager.getInstance(this.getTestConfig()).getCube("TEST_KYLIN_CUBE_WITHOUT_SLR_READY");
+        CubeDesc cubeDesc = cube.getDescriptor();
+        CubeSegment seg = cube.getFirstSegment();
+        String[] strs = { "2012-12-15", "11848", "Health & Beauty", "Fragrances", "Women", "FP-GTC", "0", "15" };
+        byte[][] data = new byte[strs.length][];
+        for (int i = 0; i < strs.length; i++) {
+            data[i] = Bytes.toBytes(strs[i]);
+        }
+
+        long baseCuboidId = Cuboid.getBaseCuboidId(cubeDesc);
+        Cuboid baseCuboid = Cuboid.findById(cubeDesc, baseCuboidId);
+        byte[] plainKey = new RowKeyEncoder(seg, baseCuboid).encode(data);
+
+        seg.setRowkeyShardNum(4);
+        try {
+            RowKeyEncoder rowKeyEncoder = new RowKeyEncoder(seg, baseCuboid);
+            byte[] encodedKey = rowKeyEncoder.encode(data);
+            assertEquals(31, encodedKey.length);
+            assertEquals(9, rowKeyEncoder.getHeaderLength());
+            assertArrayEquals(plainKey, Arrays.copyOfRange(encodedKey, 1, encodedKey.length));
+            assertEquals(RowKeyEncoder.getShard(plainKey, 8, plainKey.length - 8, 4), encodedKey[0]);
+            assertTrue(encodedKey[0] >= 0 && encodedKey[0] < 4);
+
+            // splitter skips the shard
+            RowKeySplitter splitter = new RowKeySplitter(seg, 65, 255);
+            assertEquals(baseCuboidId, splitter.split(encodedKey, encodedKey.length));
+            SplittedBytes firstColumn = splitter.getSplitBuffers()[1];
+            assertArrayEquals(Arrays.copyOfRange(plainKey, 8, 8 + firstColumn.length), Arrays.copyOf(firstColumn.value, firstColumn.length));
+
+            // range bounds leave shard to the caller
+            Map<TblColRef, String> values = Maps.newHashMap();
+            byte[] bound = rowKeyEncoder.encode(values, RowConstants.ROWKEY_LOWER_BYTE);
+            assertEquals(0, bound[0]);
+        } finally {
+            seg.setRowkeyShardNum(0);
+        }
+    }
 }
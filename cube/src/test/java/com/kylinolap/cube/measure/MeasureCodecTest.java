@@ -21,6 +21,7 @@ import static org.junit.Assert.*;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.BitSet;
 
 import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.LongWritable;
@@ -65,6 +66,43 @@ public class MeasureCodecTest {
         assertTrue(Arrays.equals(values, copy));
     }
 
+    @Test
+    public void testSkipDecode() {
+        MeasureDesc descs[] = new MeasureDesc[] { measure("HLLC16"), measure("decimal"), measure("double"), measure("HLLC16"), measure("long") };
+        MeasureCodec codec = new MeasureCodec(descs);
+
+        HyperLogLogPlusCounter small = new HyperLogLogPlusCounter(16);
+        small.add("abcdefg");
+        HyperLogLogPlusCounter big = new HyperLogLogPlusCounter(16);
+        for (int i = 0; i < 100000; i++) {
+            big.add("v" + i); // array scheme and compressed
+        }
+        Object values[] = new Object[] { small, new BigDecimal("333.1234567"), new DoubleWritable(1.0), big, new LongWritable(2) };
+
+        ByteBuffer buf = ByteBuffer.allocate(RowConstants.ROWVALUE_BUFFER_SIZE);
+        codec.encode(values, buf);
+        buf.flip();
+
+        BitSet selected = new BitSet();
+        selected.set(2);
+        selected.set(4);
+        Object copy[] = new Object[values.length];
+        codec.decode(buf, copy, selected);
+        assertNull(copy[0]);
+        assertNull(copy[1]);
+        assertEquals(values[2], copy[2]);
+        assertNull(copy[3]);
+        assertEquals(values[4], copy[4]);
+        assertEquals(0, buf.remaining());
+
+        buf.rewind();
+        selected.clear();
+        selected.set(3);
+        codec.decode(buf, copy, selected);
+        assertEquals(big, copy[3]);
+        assertNull(copy[4]);
+    }
+
     private MeasureDesc measure(String returnType) {
         MeasureDesc desc = new MeasureDesc();
         FunctionDesc func = new FunctionDesc();
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.dict;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * A dictionary that takes new values after being built, for streaming ingestion
+ * where values unknown to the batch built dictionary keep arriving.
+ * 
+ * Values of the base dictionary keep their IDs. Appended values get IDs after
+ * the base, in order of arrival, so unlike other dictionaries appended IDs do
+ * NOT preserve ordering of values; range filters on such a column must be
+ * evaluated on values instead of IDs. The ID right after the base max ID is
+ * reserved and decodes to null, because bitmap slices built on the base
+ * dictionary use it to mark null rows. The size of ID never changes, an append
+ * fails once the ID space is used up.
+ * 
+ * Appended values are held in their string form, and the byte form of an
+ * appended value is its UTF-8 bytes.
+ * 
+ * Not thread safe for concurrent appends and lookups, the streaming ingester
+ * appends from a single thread.
+ */
+public class AppendableDictionary extends Dictionary<String> {
+
+    private Dictionary<String> base;
+    private ArrayList<String> appended;
+    private HashMap<String, Integer> appendedIds;
+    private int maxValueLength;
+
+    public AppendableDictionary() { // default constructor for Writable interface
+    }
+
+    public AppendableDictionary(Dictionary<String> base) {
+        init(base);
+    }
+
+    private void init(Dictionary<String> base) {
+        if (base instanceof AppendableDictionary)
+            throw new IllegalArgumentException("Cannot wrap another AppendableDictionary");
+
+        this.base = base;
+        this.appended = new ArrayList<String>();
+        this.appendedIds = new HashMap<String, Integer>();
+        this.maxValueLength = base.getSizeOfValue();
+    }
+
+    public Dictionary<String> getBase() {
+        return base;
+    }
+
+    public int getAppendedCount() {
+        return appended.size();
+    }
+
+    public boolean contains(String value) {
+        if (value == null || appendedIds.containsKey(value))
+            return true;
+        try {
+            base.getIdFromValue(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the ID of given value, appending it if not seen before.
+     * 
+     * @throws IllegalStateException
+     *             if the ID space is used up
+     */
+    public int addValue(String value) {
+        if (value == null)
+            return nullId();
+
+        Integer id = appendedIds.get(value);
+        if (id != null)
+            return id;
+        try {
+            return base.getIdFromValue(value);
+        } catch (IllegalArgumentException e) {
+            // not in base, append below
+        }
+
+        int newId = firstAppendedId() + appended.size();
+        if (newId >= nullId() || isNullId(newId))
+            throw new IllegalStateException("Dictionary is full, " + appended.size() + " values appended to " + base.getMaxId() + " base IDs, cannot append '" + value + "'");
+
+        appended.add(value);
+        appendedIds.put(value, newId);
+        maxValueLength = Math.max(maxValueLength, Bytes.toBytes(value).length);
+        return newId;
+    }
+
+    private int reservedId() {
+        return base.getMaxId() + 1;
+    }
+
+    private int firstAppendedId() {
+        return base.getMaxId() + 2;
+    }
+
+    @Override
+    public int getMinId() {
+        return base.getMinId();
+    }
+
+    @Override
+    public int getMaxId() {
+        return firstAppendedId() + appended.size() - 1;
+    }
+
+    @Override
+    public int getSizeOfId() {
+        return base.getSizeOfId();
+    }
+
+    @Override
+    public int getSizeOfValue() {
+        return maxValueLength;
+    }
+
+    @Override
+    protected int getIdFromValueImpl(String value, int roundingFlag) {
+        Integer id = appendedIds.get(value);
+        if (id != null)
+            return id;
+        // rounding only makes sense among the ordered base IDs
+        return base.getIdFromValue(value, roundingFlag);
+    }
+
+    @Override
+    protected String getValueFromIdImpl(int id) {
+        if (id <= base.getMaxId())
+            return base.getValueFromId(id);
+        if (id == reservedId())
+            return null;
+
+        int seq = id - firstAppendedId();
+        if (seq < 0 || seq >= appended.size())
+            throw new IllegalArgumentException("Not a valid ID: " + id);
+        return appended.get(seq);
+    }
+
+    @Override
+    protected int getIdFromValueBytesImpl(byte[] value, int offset, int len, int roundingFlag) {
+        Integer id = appendedIds.get(Bytes.toString(value, offset, len));
+        if (id != null)
+            return id;
+        return base.getIdFromValueBytes(value, offset, len, roundingFlag);
+    }
+
+    @Override
+    protected int getValueBytesFromIdImpl(int id, byte[] returnValue, int offset) {
+        if (id <= base.getMaxId())
+            return base.getValueBytesFromId(id, returnValue, offset);
+
+        String value = getValueFromIdImpl(id);
+        if (value == null)
+            return 0;
+        byte[] bytes = Bytes.toBytes(value);
+        System.arraycopy(bytes, 0, returnValue, offset, bytes.length);
+        return bytes.length;
+    }
+
+    @Override
+    public void dump(PrintStream out) {
+        out.println("Base dictionary " + base.getClass().getName() + ", " + appended.size() + " values appended");
+        base.dump(out);
+        for (int i = 0; i < appended.size(); i++) {
+            int id = firstAppendedId() + i;
+            out.println(id + " (" + Integer.toHexString(id) + "): " + appended.get(i));
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(base.getClass().getName());
+        base.write(out);
+        out.writeInt(appended.size());
+        for (String value : appended) {
+            out.writeUTF(value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        String baseClass = in.readUTF();
+        Dictionary<String> base;
+        try {
+            base = (Dictionary<String>) Class.forName(baseClass).newInstance();
+        } catch (Exception e) {
+            throw new IOException("Cannot create base dictionary " + baseClass, e);
+        }
+        base.readFields(in);
+        init(base);
+
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            String value = in.readUTF();
+            appendedIds.put(value, firstAppendedId() + appended.size());
+            appended.add(value);
+            maxValueLength = Math.max(maxValueLength, Bytes.toBytes(value).length);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * base.hashCode() + appended.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if ((o instanceof AppendableDictionary) == false)
+            return false;
+        AppendableDictionary that = (AppendableDictionary) o;
+        return this.base.equals(that.base) && this.appended.equals(that.appended);
+    }
+
+}
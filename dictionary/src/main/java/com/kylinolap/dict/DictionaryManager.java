@@ -47,6 +47,9 @@ public class DictionaryManager {
 
     private static final DictionaryInfo NONE_INDICATOR = new DictionaryInfo();
 
+    // a cached appendable dictionary is checked against the store at most this often
+    static final long APPENDABLE_CHECK_INTERVAL_MS = 10000;
+
     // static cached instances
     private static final ConcurrentHashMap<KylinConfig, DictionaryManager> SERVICE_CACHE = new ConcurrentHashMap<KylinConfig, DictionaryManager>();
 
@@ -72,10 +75,12 @@ public class DictionaryManager {
     private ConcurrentHashMap<String, DictionaryInfo> dictCache; // resource
     // path ==>
     // DictionaryInfo
+    private ConcurrentHashMap<String, Long> appendableChecked; // resource path ==> last check time
 
     private DictionaryManager(KylinConfig config) {
         this.config = config;
         dictCache = new ConcurrentHashMap<String, DictionaryInfo>();
+        appendableChecked = new ConcurrentHashMap<String, Long>();
     }
 
     public Dictionary<?> getDictionary(String resourcePath) throws IOException {
@@ -83,8 +88,37 @@ public class DictionaryManager {
         return dictInfo == null ? null : dictInfo.getDictionaryObject();
     }
 
+    /**
+     * Like getDictionary(), except that a cached appendable dictionary not
+     * covering the given ID yet is checked against the store right away,
+     * regardless of the check interval. Slices of a streaming segment are put
+     * after their dictionaries are saved, so an ID read from a slice is
+     * covered by the dictionary in store.
+     */
+    public Dictionary<?> getDictionary(String resourcePath, int id) throws IOException {
+        DictionaryInfo dictInfo = getDictionaryInfo(resourcePath);
+        if (dictInfo == null)
+            return null;
+
+        Dictionary<?> dict = dictInfo.getDictionaryObject();
+        if (dict instanceof AppendableDictionary && id > dict.getMaxId() && isChangedInStore(dictInfo)) {
+            logger.debug("Reloading appendable dictionary for ID " + id + ", " + resourcePath);
+            appendableChecked.put(resourcePath, System.currentTimeMillis());
+            dictInfo = load(resourcePath, true);
+            if (dictInfo == null)
+                return null;
+            dictCache.put(resourcePath, dictInfo);
+            dict = dictInfo.getDictionaryObject();
+        }
+        return dict;
+    }
+
     public DictionaryInfo getDictionaryInfo(String resourcePath) throws IOException {
         DictionaryInfo dictInfo = dictCache.get(resourcePath);
+        if (dictInfo != null && dictInfo.getDictionaryObject() instanceof AppendableDictionary && isCheckDue(resourcePath) && isChangedInStore(dictInfo)) {
+            logger.debug("Reloading appendable dictionary changed in store, " + resourcePath);
+            dictInfo = null;
+        }
         if (dictInfo == null) {
             dictInfo = load(resourcePath, true);
             if (dictInfo == null)
@@ -111,6 +145,57 @@ public class DictionaryManager {
         return newDictInfo;
     }
 
+    /**
+     * Make an appendable copy of given dictionary for streaming ingestion. The
+     * copy is saved at a new resource path, leaving the original untouched for
+     * other segments sharing it. Returns the given info if its dictionary is
+     * appendable already.
+     */
+    @SuppressWarnings("unchecked")
+    public DictionaryInfo makeAppendable(DictionaryInfo dictInfo) throws IOException {
+        if (dictInfo.getDictionaryObject() instanceof AppendableDictionary)
+            return dictInfo;
+
+        AppendableDictionary dict = new AppendableDictionary((Dictionary<String>) dictInfo.getDictionaryObject());
+        DictionaryInfo newDictInfo = new DictionaryInfo(dictInfo);
+        newDictInfo.setDictionaryObject(dict);
+        newDictInfo.setDictionaryClass(dict.getClass().getName());
+        newDictInfo.setCardinality(dictInfo.getCardinality());
+
+        save(newDictInfo);
+        dictCache.put(newDictInfo.getResourcePath(), newDictInfo);
+        return newDictInfo;
+    }
+
+    /**
+     * Save values appended to an appendable dictionary, overwriting it at its
+     * resource path.
+     */
+    public void saveAppended(DictionaryInfo dictInfo) throws IOException {
+        AppendableDictionary dict = (AppendableDictionary) dictInfo.getDictionaryObject();
+        dictInfo.setCardinality(dict.getBase().getMaxId() - dict.getBase().getMinId() + 1 + dict.getAppendedCount());
+
+        save(dictInfo);
+        dictCache.put(dictInfo.getResourcePath(), dictInfo);
+    }
+
+    // a timestamp lookup per dictionary access is one store RPC per query
+    // column, appended values show after the check interval instead, or when
+    // getDictionary(path, id) asks for an ID not covered yet
+    private boolean isCheckDue(String resourcePath) {
+        long now = System.currentTimeMillis();
+        Long last = appendableChecked.get(resourcePath);
+        if (last != null && now - last < APPENDABLE_CHECK_INTERVAL_MS)
+            return false;
+        appendableChecked.put(resourcePath, now);
+        return true;
+    }
+
+    private boolean isChangedInStore(DictionaryInfo dictInfo) throws IOException {
+        ResourceStore store = MetadataManager.getInstance(config).getStore();
+        return store.getResourceTimestamp(dictInfo.getResourcePath()) != dictInfo.getLastModified();
+    }
+
     public DictionaryInfo mergeDictionary(List<DictionaryInfo> dicts) throws IOException {
         DictionaryInfo firstDictInfo = null;
         int totalSize = 0;
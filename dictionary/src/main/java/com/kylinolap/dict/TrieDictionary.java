@@ -163,6 +163,21 @@ public class TrieDictionary<T> extends Dictionary<T> {
         return maxValueLength;
     }
 
+    /**
+     * Turn the value/id cache on or off, a fresh cache is created on turning
+     * on. Mostly for measuring the bare trie.
+     */
+    public void setCacheEnabled(boolean enableCache) {
+        this.enableCache = enableCache;
+        if (enableCache) {
+            valueToIdCache = new SoftReference<HashMap>(new HashMap());
+            idToValueCache = new SoftReference<Object[]>(new Object[nValues]);
+        } else {
+            valueToIdCache = null;
+            idToValueCache = null;
+        }
+    }
+
     @Override
     final protected int getIdFromValueImpl(T value, int roundingFlag) {
         if (enableCache && roundingFlag == 0) {
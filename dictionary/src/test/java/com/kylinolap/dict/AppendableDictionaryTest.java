@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.dict;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AppendableDictionaryTest {
+
+    TrieDictionary<String> base;
+    AppendableDictionary dict;
+
+    @Before
+    public void setup() {
+        TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        b.addValue("apple");
+        b.addValue("banana");
+        b.addValue("cherry");
+        base = b.build(0);
+        dict = new AppendableDictionary(base);
+    }
+
+    @Test
+    public void testAppend() {
+        assertEquals(base.getIdFromValue("banana"), dict.addValue("banana"));
+        assertEquals(base.getMaxId(), dict.getMaxId() - 1);
+        assertEquals(dict.nullId(), dict.addValue(null));
+        assertFalse(dict.contains("durian"));
+
+        int id = dict.addValue("durian");
+        assertEquals(base.getMaxId() + 2, id);
+        assertEquals(id, dict.addValue("durian"));
+        assertEquals(id, dict.getIdFromValue("durian"));
+        assertEquals(id, dict.getMaxId());
+        assertEquals(base.getSizeOfId(), dict.getSizeOfId());
+        assertEquals("durian", dict.getValueFromId(id));
+        assertTrue(dict.contains("durian"));
+
+        byte[] buf = new byte[dict.getSizeOfValue()];
+        int len = dict.getValueBytesFromId(id, buf, 0);
+        assertEquals(id, dict.getIdFromValueBytes(buf, 0, len));
+
+        // the slot after base IDs is reserved for null
+        assertNull(dict.getValueFromId(base.getMaxId() + 1));
+        assertEquals("cherry", dict.getValueFromId(base.getIdFromValue("cherry")));
+    }
+
+    @Test
+    public void testNotFound() {
+        try {
+            dict.getIdFromValue("durian");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // good
+        }
+
+        try {
+            dict.getValueFromId(base.getMaxId() + 2);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // good
+        }
+    }
+
+    @Test
+    public void testFull() {
+        int n = 0;
+        try {
+            while (true) {
+                dict.addValue("v" + n);
+                n++;
+            }
+        } catch (IllegalStateException e) {
+            // good
+        }
+        assertEquals(dict.nullId() - base.getMaxId() - 2, n);
+        assertEquals(dict.nullId() - 1, dict.getMaxId());
+        assertEquals("v0", dict.getValueFromId(base.getMaxId() + 2));
+    }
+
+    @Test
+    public void testSerialize() throws Exception {
+        dict.addValue("durian");
+        dict.addValue("elderberry");
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        dict.write(out);
+        out.close();
+
+        AppendableDictionary dict2 = new AppendableDictionary();
+        dict2.readFields(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+
+        assertEquals(dict, dict2);
+        assertEquals(dict.getMaxId(), dict2.getMaxId());
+        assertEquals(dict.getSizeOfValue(), dict2.getSizeOfValue());
+        assertEquals(dict.getIdFromValue("elderberry"), dict2.getIdFromValue("elderberry"));
+        assertEquals(dict.getIdFromValue("apple"), dict2.getIdFromValue("apple"));
+    }
+
+}
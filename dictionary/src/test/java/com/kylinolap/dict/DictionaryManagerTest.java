@@ -24,6 +24,7 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.kylinolap.common.KylinConfig;
 import com.kylinolap.common.util.JsonUtil;
 import com.kylinolap.common.util.LocalFileMetadataTestCase;
 import com.kylinolap.metadata.MetadataManager;
@@ -67,6 +68,35 @@ public class DictionaryManagerTest extends LocalFileMetadataTestCase {
         touchDictValues(info1);
     }
 
+    @Test
+    public void testReadAppendedIdAfterCheck() throws Exception {
+        DictionaryInfo base = dictMgr.getDictionaryInfo("/dict/TEST_KYLIN_FACT/LSTG_FORMAT_NAME/bd9f6b22-36ba-4e6b-92aa-0d585faf0b39.dict");
+        DictionaryInfo appendable = dictMgr.makeAppendable(base);
+        String path = appendable.getResourcePath();
+
+        // another process, e.g. a query server, reading the same store
+        KylinConfig otherConfig = KylinConfig.createInstanceFromUri(getTestConfig().getMetadataUrl());
+        DictionaryManager other = DictionaryManager.getInstance(otherConfig);
+        try {
+            Dictionary<?> before = other.getDictionary(path);
+
+            Thread.sleep(10); // a new timestamp for the save
+            int id = ((AppendableDictionary) appendable.getDictionaryObject()).addValue("NEW-FORMAT");
+            dictMgr.saveAppended(appendable);
+
+            // within the check interval, the cached dictionary is kept
+            assertSame(before, other.getDictionary(path));
+            assertTrue(id > before.getMaxId());
+
+            Dictionary<?> after = other.getDictionary(path, id);
+            assertEquals("NEW-FORMAT", after.getValueFromId(id));
+            assertSame(after, other.getDictionary(path));
+        } finally {
+            DictionaryManager.removeInstance(otherConfig);
+            MetadataManager.removeInstance(otherConfig);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private void touchDictValues(DictionaryInfo info1) {
         Dictionary<String> dict = (Dictionary<String>) info1.getDictionaryObject();
@@ -22,6 +22,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.bind.DatatypeConverter;
 
@@ -32,11 +33,19 @@ import net.hydromatic.avatica.AvaticaStatement;
 import net.hydromatic.avatica.Meta;
 import net.hydromatic.avatica.UnregisteredDriver;
 
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.kylinolap.jdbc.KylinMetaImpl.MetaProject;
 import com.kylinolap.jdbc.KylinPrepare.PrepareResult;
+import com.kylinolap.jdbc.stub.ConnectionException;
+import com.kylinolap.jdbc.stub.RemoteClient;
+import com.kylinolap.jdbc.util.DefaultSslProtocolSocketFactory;
 
 /**
  * Kylin connection implementation
@@ -50,9 +59,17 @@ public abstract class KylinConnectionImpl extends AvaticaConnection {
     private final String baseUrl;
     private final String project;
     private MetaProject metaProject;
+    private String metaProjectETag;
+    private long metaProjectCheckTime;
+    private MultiThreadedHttpConnectionManager connectionManager;
+    private HttpClient httpClient;
     public final List<AvaticaStatement> statements;
+    private final ConcurrentHashMap<AvaticaStatement, String> runningQueries = new ConcurrentHashMap<AvaticaStatement, String>();
     static final Trojan TROJAN = createTrojan();
 
+    private static final int DEFAULT_MAX_HTTP_CONNECTIONS = 8;
+    private static final int DEFAULT_META_REVALIDATE_SECONDS = 60;
+
     protected KylinConnectionImpl(UnregisteredDriver driver, AvaticaFactory factory, String url, Properties info) {
         super(driver, factory, url, info);
 
@@ -121,6 +138,29 @@ public abstract class KylinConnectionImpl extends AvaticaConnection {
         return this.project;
     }
 
+    /**
+     * The http client shared by all remote calls of this connection. Its
+     * connections are pooled and kept alive between requests, so statements
+     * do not pay TCP and TLS setup for every query. The pool size can be set
+     * by the "maxHttpConnections" property.
+     */
+    public synchronized HttpClient getHttpClient() {
+        if (httpClient == null) {
+            if (Boolean.parseBoolean(this.info.getProperty("ssl", "false"))) {
+                Protocol.registerProtocol("https", new Protocol("https", (ProtocolSocketFactory) new DefaultSslProtocolSocketFactory(), 443));
+            }
+
+            int maxConnections = Integer.parseInt(this.info.getProperty("maxHttpConnections", String.valueOf(DEFAULT_MAX_HTTP_CONNECTIONS)));
+            connectionManager = new MultiThreadedHttpConnectionManager();
+            HttpConnectionManagerParams params = connectionManager.getParams();
+            params.setDefaultMaxConnectionsPerHost(maxConnections);
+            params.setMaxTotalConnections(maxConnections);
+            params.setStaleCheckingEnabled(true);
+            httpClient = new HttpClient(connectionManager);
+        }
+        return httpClient;
+    }
+
     public Meta getMeta() {
         return this.meta;
     }
@@ -133,12 +173,63 @@ public abstract class KylinConnectionImpl extends AvaticaConnection {
         return this.driver;
     }
 
+    /**
+     * Return the cached metadata of the project. Once it is older than the
+     * "metaRevalidateSeconds" property, the server is asked whether it has
+     * changed; an unchanged answer costs no body transfer or parsing.
+     */
     public MetaProject getMetaProject() {
+        long revalidateMs = Long.parseLong(this.info.getProperty("metaRevalidateSeconds", String.valueOf(DEFAULT_META_REVALIDATE_SECONDS))) * 1000;
+        if (metaProject != null && revalidateMs >= 0 && System.currentTimeMillis() - metaProjectCheckTime > revalidateMs) {
+            RemoteClient client = ((KylinJdbc41Factory) factory).newRemoteClient(this);
+            try {
+                setMetaProject(client.getMetadata(project));
+            } catch (ConnectionException e) {
+                logger.warn("Failed to revalidate metadata of project " + project + ", use the cached one", e);
+                metaProjectCheckTime = System.currentTimeMillis();
+            }
+        }
         return metaProject;
     }
 
     public void setMetaProject(MetaProject metaProject) {
         this.metaProject = metaProject;
+        this.metaProjectCheckTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the metadata cached without revalidation, or null
+     */
+    public MetaProject getCachedMetaProject() {
+        return metaProject;
+    }
+
+    public void markQueryRunning(AvaticaStatement statement, String queryId) {
+        runningQueries.put(statement, queryId);
+    }
+
+    public void markQueryDone(AvaticaStatement statement) {
+        runningQueries.remove(statement);
+    }
+
+    /**
+     * Ask the server to cancel the query the statement is waiting for, if any.
+     */
+    public void cancelQuery(AvaticaStatement statement) throws SQLException {
+        String queryId = runningQueries.get(statement);
+        if (queryId == null) {
+            return;
+        }
+        logger.debug("Cancel query " + queryId);
+        ((KylinJdbc41Factory) factory).newRemoteClient(this).cancel(queryId);
+    }
+
+    public String getMetaProjectETag() {
+        return metaProjectETag;
+    }
+
+    public void setMetaProjectETag(String metaProjectETag) {
+        this.metaProjectETag = metaProjectETag;
     }
 
     @Override
@@ -146,7 +237,16 @@ public abstract class KylinConnectionImpl extends AvaticaConnection {
         super.close();
 
         this.metaProject = null;
+        this.metaProjectETag = null;
         this.statements.clear();
+
+        synchronized (this) {
+            if (connectionManager != null) {
+                connectionManager.shutdown();
+                connectionManager = null;
+                httpClient = null;
+            }
+        }
     }
 
     @Override
@@ -71,6 +71,11 @@ public abstract class KylinPrepareStatementImpl extends AvaticaPreparedStatement
         return executeQueryInternal(queriedResult);
     }
 
+    @Override
+    public void cancel() throws SQLException {
+        ((KylinConnectionImpl) connection).cancelQuery(this);
+    }
+
     @Override
     protected void close_() {
         if (!closed) {
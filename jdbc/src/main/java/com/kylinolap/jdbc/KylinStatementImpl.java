@@ -16,6 +16,8 @@ ense.
 
 package com.kylinolap.jdbc;
 
+import java.sql.SQLException;
+
 import net.hydromatic.avatica.AvaticaConnection;
 import net.hydromatic.avatica.AvaticaResultSet;
 import net.hydromatic.avatica.AvaticaStatement;
@@ -32,6 +34,11 @@ public abstract class KylinStatementImpl extends AvaticaStatement {
         super(connection, resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
+    @Override
+    public void cancel() throws SQLException {
+        ((KylinConnectionImpl) connection).cancelQuery(this);
+    }
+
     @Override
     protected void close_() {
         if (!closed) {
@@ -20,20 +20,21 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import net.hydromatic.avatica.AvaticaStatement;
 import net.hydromatic.avatica.ColumnMetaData;
 import net.hydromatic.avatica.ColumnMetaData.Rep;
 import net.hydromatic.avatica.ColumnMetaData.ScalarType;
 
-import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
-import org.apache.commons.httpclient.protocol.Protocol;
-import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,16 +51,22 @@ import com.kylinolap.jdbc.KylinMetaImpl.MetaProject;
 import com.kylinolap.jdbc.KylinMetaImpl.MetaSchema;
 import com.kylinolap.jdbc.KylinMetaImpl.MetaTable;
 import com.kylinolap.jdbc.stub.TableMetaStub.ColumnMetaStub;
-import com.kylinolap.jdbc.util.DefaultSslProtocolSocketFactory;
 import com.kylinolap.jdbc.util.SQLTypeMap;
 
 /**
+ * Remote client talking to the kylin restful service. All calls go through the
+ * pooled http client of the connection, and responses are parsed straight from
+ * the response stream.
+ * 
  * @author xduo
  * 
  */
 public class KylinClient implements RemoteClient {
     private static final Logger logger = LoggerFactory.getLogger(KylinClient.class);
 
+    // thread safe once configured, and costly to create per call
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     private final KylinConnectionImpl conn;
 
     public KylinClient(KylinConnectionImpl conn) {
@@ -69,17 +76,12 @@ public class KylinClient implements RemoteClient {
     @Override
     public void connect() throws ConnectionException {
         PostMethod post = new PostMethod(conn.getConnectUrl());
-        HttpClient httpClient = new HttpClient();
-
-        if (conn.getConnectUrl().toLowerCase().startsWith("https://")) {
-            registerSsl();
-        }
         addPostHeaders(post);
 
         try {
             StringRequestEntity requestEntity = new StringRequestEntity("{}", "application/json", "UTF-8");
             post.setRequestEntity(requestEntity);
-            httpClient.executeMethod(post);
+            conn.getHttpClient().executeMethod(post);
 
             if (post.getStatusCode() != 200 && post.getStatusCode() != 201) {
                 logger.error("Authentication Failed with error code " + post.getStatusCode() + " and message:\n" + post.getResponseBodyAsString());
@@ -92,22 +94,35 @@ public class KylinClient implements RemoteClient {
         } catch (IOException e) {
             logger.error(e.getLocalizedMessage(), e);
             throw new ConnectionException(e.getLocalizedMessage());
+        } finally {
+            post.releaseConnection();
         }
     }
 
+    /**
+     * Fetch the metadata of the project. If the connection already caches it
+     * under an ETag, the request is conditional and the cached copy is returned
+     * as long as the server reports it unchanged.
+     */
     @Override
     public MetaProject getMetadata(String project) throws ConnectionException {
         GetMethod get = new GetMethod(conn.getMetaProjectUrl(project));
-        HttpClient httpClient = new HttpClient();
+        addPostHeaders(get);
 
-        if (conn.getConnectUrl().toLowerCase().startsWith("https://")) {
-            registerSsl();
+        MetaProject cached = conn.getCachedMetaProject();
+        String etag = conn.getMetaProjectETag();
+        if (cached != null && etag != null && project.equals(cached.getName())) {
+            get.addRequestHeader("If-None-Match", etag);
         }
-        addPostHeaders(get);
 
         List<TableMetaStub> tableMetaStubs = null;
         try {
-            httpClient.executeMethod(get);
+            conn.getHttpClient().executeMethod(get);
+
+            if (get.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                logger.debug("Metadata of project " + project + " not modified");
+                return cached;
+            }
 
             if (get.getStatusCode() != 200 && get.getStatusCode() != 201) {
                 logger.error("Authentication Failed with error code " + get.getStatusCode() + " and message:\n" + get.getResponseBodyAsString());
@@ -115,9 +130,12 @@ public class KylinClient implements RemoteClient {
                 throw new ConnectionException("Authentication Failed.");
             }
 
-            tableMetaStubs = new ObjectMapper().readValue(get.getResponseBodyAsString(), new TypeReference<List<TableMetaStub>>() {
+            tableMetaStubs = MAPPER.readValue(get.getResponseBodyAsStream(), new TypeReference<List<TableMetaStub>>() {
             });
 
+            Header etagHeader = get.getResponseHeader("ETag");
+            conn.setMetaProjectETag(etagHeader == null ? null : etagHeader.getValue());
+
             List<MetaTable> tables = new ArrayList<MetaTable>();
             HashMultimap<String, MetaTable> schemasMap = HashMultimap.create();
 
@@ -157,6 +175,8 @@ public class KylinClient implements RemoteClient {
         } catch (IOException e) {
             logger.error(e.getLocalizedMessage(), e);
             throw new ConnectionException(e.getLocalizedMessage());
+        } finally {
+            get.releaseConnection();
         }
     }
 
@@ -179,7 +199,14 @@ public class KylinClient implements RemoteClient {
             params = genPrestateStates(statement);
         }
 
-        queryRes = runKylinQuery(sql, params);
+        // the query id lets Statement.cancel reach the query on the server
+        String queryId = UUID.randomUUID().toString();
+        conn.markQueryRunning(statement, queryId);
+        try {
+            queryRes = runKylinQuery(queryId, sql, params);
+        } finally {
+            conn.markQueryDone(statement);
+        }
 
         List<ColumnMetaData> metas = genColumnMeta(queryRes);
         List<Object[]> data = genResultData(queryRes, metas);
@@ -246,7 +273,7 @@ public class KylinClient implements RemoteClient {
      * @return
      * @throws IOException
      */
-    private SQLResponseStub runKylinQuery(String sql, List<StateParam> params) throws SQLException {
+    private SQLResponseStub runKylinQuery(String queryId, String sql, List<StateParam> params) throws SQLException {
         String url = conn.getQueryUrl();
         String project = conn.getProject();
         QueryRequest request = null;
@@ -258,40 +285,36 @@ public class KylinClient implements RemoteClient {
         } else {
             request = new QueryRequest();
         }
+        request.setQueryId(queryId);
         request.setSql(sql);
         request.setProject(project);
 
         PostMethod post = new PostMethod(url);
         addPostHeaders(post);
-        HttpClient httpClient = new HttpClient();
-        if (conn.getQueryUrl().toLowerCase().startsWith("https://")) {
-            registerSsl();
-        }
 
         String postBody = null;
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            postBody = mapper.writeValueAsString(request);
+            postBody = MAPPER.writeValueAsString(request);
             logger.debug("Post body:\n " + postBody);
         } catch (JsonProcessingException e) {
             logger.error(e.getLocalizedMessage(), e);
         }
-        String response = null;
         SQLResponseStub queryRes = null;
 
         try {
             StringRequestEntity requestEntity = new StringRequestEntity(postBody, "application/json", "UTF-8");
             post.setRequestEntity(requestEntity);
 
-            httpClient.executeMethod(post);
-            response = post.getResponseBodyAsString();
+            conn.getHttpClient().executeMethod(post);
 
             if (post.getStatusCode() != 200 && post.getStatusCode() != 201) {
-                logger.error("Failed to query", response);
+                String response = post.getResponseBodyAsString();
+                logger.error("Failed to query: " + response);
                 throw new SQLException(response);
             }
 
-            queryRes = new ObjectMapper().readValue(response, SQLResponseStub.class);
+            // parse from the stream, no need to hold the whole body as a string
+            queryRes = MAPPER.readValue(post.getResponseBodyAsStream(), SQLResponseStub.class);
 
         } catch (HttpException e) {
             logger.error(e.getLocalizedMessage(), e);
@@ -299,25 +322,54 @@ public class KylinClient implements RemoteClient {
         } catch (IOException e) {
             logger.error(e.getLocalizedMessage(), e);
             throw new SQLException(e.getLocalizedMessage());
+        } finally {
+            post.releaseConnection();
         }
 
         return queryRes;
     }
 
+    @Override
+    public void cancel(String queryId) throws SQLException {
+        DeleteMethod delete = new DeleteMethod(conn.getQueryUrl() + "/" + queryId);
+        addPostHeaders(delete);
+
+        try {
+            conn.getHttpClient().executeMethod(delete);
+
+            // 404 if the query finished meanwhile
+            if (delete.getStatusCode() != 200 && delete.getStatusCode() != HttpStatus.SC_NOT_FOUND) {
+                String response = delete.getResponseBodyAsString();
+                logger.error("Failed to cancel query " + queryId + ": " + response);
+                throw new SQLException(response);
+            }
+        } catch (IOException e) {
+            logger.error(e.getLocalizedMessage(), e);
+            throw new SQLException(e.getLocalizedMessage());
+        } finally {
+            delete.releaseConnection();
+        }
+    }
+
     private void addPostHeaders(HttpMethodBase method) {
         method.addRequestHeader("Accept", "application/json, text/plain, */*");
         method.addRequestHeader("Content-Type", "application/json");
         method.addRequestHeader("Authorization", "Basic " + conn.getBasicAuthHeader());
     }
 
-    private void registerSsl() {
-        Protocol.registerProtocol("https", new Protocol("https", (ProtocolSocketFactory) new DefaultSslProtocolSocketFactory(), 443));
-    }
-
     public class QueryRequest {
+        private String queryId;
         private String sql;
         private String project;
 
+        public String getQueryId() {
+            return queryId;
+        }
+
+        public void setQueryId(String queryId) {
+            this.queryId = queryId;
+        }
+
         public String getSql() {
             return sql;
         }
@@ -54,4 +54,13 @@ public interface RemoteClient {
      */
     public DataSet<Object[]> query(AvaticaStatement statement, String sql) throws SQLException;
 
+    /**
+     * Cancel a running query on the server, the query call waiting for it
+     * then fails.
+     * 
+     * @param queryId
+     * @throws SQLException
+     */
+    public void cancel(String queryId) throws SQLException;
+
 }
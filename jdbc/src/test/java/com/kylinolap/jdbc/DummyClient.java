@@ -66,4 +66,8 @@ public class DummyClient implements RemoteClient {
         return new DataSet<Object[]>(meta, enumerator);
     }
 
+    @Override
+    public void cancel(String queryId) {
+    }
+
 }
@@ -15,11 +15,21 @@
  */
 package com.kylinolap.job;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +53,14 @@ public class JobDAO {
     private static final Serializer<JobStepOutput> JOB_OUTPUT_SERIALIZER = new JsonSerializer<JobStepOutput>(JobStepOutput.class);
 
     private ResourceStore store;
+    private final int outputMaxLength;
+
+    // job resource path ==> last read job, validated by resource timestamp
+    private final ConcurrentHashMap<String, JobInstance> jobCache = new ConcurrentHashMap<String, JobInstance>();
+
+    // job output resource path ==> latest output not yet written to store
+    private final ConcurrentHashMap<String, JobStepOutput> pendingOutputs = new ConcurrentHashMap<String, JobStepOutput>();
+    private final ScheduledExecutorService outputFlusher;
 
     private static final Logger logger = LoggerFactory.getLogger(JobDAO.class);
 
@@ -64,20 +82,57 @@ public class JobDAO {
     private JobDAO(KylinConfig config) {
         log.info("Using metadata url: " + config);
         this.store = MetadataManager.getInstance(config).getStore();
+        this.outputMaxLength = config.getJobOutputMaxLength();
+
+        long flushInterval = config.getJobOutputFlushIntervalMs();
+        if (flushInterval > 0) {
+            this.outputFlusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "JobOutputFlusher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            this.outputFlusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flushJobOutputs();
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.outputFlusher = null;
+        }
     }
 
+    /**
+     * Jobs are listed from one batch read of resource timestamps, only jobs
+     * changed since the last listing are read from the store again. Each call
+     * returns its own copies, so callers may change them freely and save them
+     * through {@link #updateJobInstance(JobInstance)}.
+     */
     public List<JobInstance> listAllJobs() throws IOException {
-        ArrayList<String> jobResources = store.listResources(ResourceStore.JOB_PATH_ROOT);
-        if (jobResources == null)
+        Map<String, Long> jobTimestamps = store.getResourceTimestamps(ResourceStore.JOB_PATH_ROOT);
+        if (jobTimestamps.isEmpty()) {
+            jobCache.clear();
             return Collections.emptyList();
+        }
 
-        ArrayList<JobInstance> result = new ArrayList<JobInstance>(jobResources.size());
-        for (String path : jobResources) {
-            JobInstance job = readJobResource(path);
-            if (job != null) {
-                result.add(job);
+        ArrayList<JobInstance> result = new ArrayList<JobInstance>(jobTimestamps.size());
+        for (Entry<String, Long> entry : jobTimestamps.entrySet()) {
+            String path = entry.getKey();
+            JobInstance job = jobCache.get(path);
+            if (job == null || job.getLastModified() != entry.getValue()) {
+                job = readJobResource(path);
+                if (job == null) {
+                    jobCache.remove(path);
+                    continue;
+                }
+                jobCache.put(path, job);
             }
+            result.add(copyOf(job));
         }
+        jobCache.keySet().retainAll(jobTimestamps.keySet());
 
         return result;
     }
@@ -125,23 +180,60 @@ public class JobDAO {
     }
 
     public JobStepOutput getJobOutput(String jobUuid, int stepSequenceId) throws IOException {
-        return readJobOutputResource(ResourceStore.JOB_OUTPUT_PATH_ROOT + "/" + JobStepOutput.nameOfOutput(jobUuid, stepSequenceId));
+        String path = ResourceStore.JOB_OUTPUT_PATH_ROOT + "/" + JobStepOutput.nameOfOutput(jobUuid, stepSequenceId);
+        JobStepOutput pending = pendingOutputs.get(path);
+        if (pending != null) {
+            return pending;
+        }
+        return readJobOutputResource(path);
     }
 
     public JobStepOutput getJobOutput(JobStep jobStep) throws IOException {
         return getJobOutput(jobStep.getJobInstance().getUuid(), jobStep.getSequenceID());
     }
 
+    /**
+     * Output is capped in length and written behind; repeated saves of the same
+     * step between two flushes are coalesced into one write.
+     */
     public void saveJobOutput(String jobUuid, int stepSequenceId, String outputString) throws IOException {
-        JobStepOutput output = this.getJobOutput(jobUuid, stepSequenceId);
+        JobStepOutput output = new JobStepOutput();
+        output.setName(JobStepOutput.nameOfOutput(jobUuid, stepSequenceId));
+        output.setOutput(capOutput(outputString));
+        output.setLastModified(System.currentTimeMillis());
+
+        String path = pathOfJobOutput(output);
+        if (outputFlusher == null) {
+            writeJobOutputResource(path, output);
+        } else {
+            pendingOutputs.put(path, output);
+        }
+    }
 
-        if (output == null) {
-            output = new JobStepOutput();
-            output.setName(JobStepOutput.nameOfOutput(jobUuid, stepSequenceId));
+    /**
+     * write all pending job outputs to the store
+     */
+    public void flushJobOutputs() {
+        for (Entry<String, JobStepOutput> entry : pendingOutputs.entrySet()) {
+            String path = entry.getKey();
+            JobStepOutput output = entry.getValue();
+            try {
+                writeJobOutputResource(path, output);
+                // keep it pending if a newer output came in during the write
+                pendingOutputs.remove(path, output);
+            } catch (Throwable t) {
+                log.error("Failed to write job output " + path + ", will retry", t);
+            }
         }
+    }
 
-        output.setOutput(outputString);
-        writeJobOutputResource(pathOfJobOutput(output), output);
+    private String capOutput(String outputString) {
+        if (outputString == null || outputString.length() <= outputMaxLength) {
+            return outputString;
+        }
+        // keep the tail, the latest output is the most useful
+        int cut = outputString.length() - outputMaxLength;
+        return "... (" + cut + " characters truncated) ...\n" + outputString.substring(cut);
     }
 
     public void saveJobOutput(JobStep jobStep, String outputString) throws IOException {
@@ -149,7 +241,9 @@ public class JobDAO {
     }
 
     private void saveJob(JobInstance job) throws IOException {
-        writeJobResource(pathOfJob(job), job);
+        String path = pathOfJob(job);
+        jobCache.remove(path);
+        writeJobResource(path, job);
     }
 
     public JobInstance getJob(String uuid) throws IOException {
@@ -157,11 +251,13 @@ public class JobDAO {
     }
 
     public void deleteJob(JobInstance job) throws IOException {
-        store.deleteResource(pathOfJob(job));
+        deleteJob(job.getUuid());
     }
 
     public void deleteJob(String uuid) throws IOException {
-        store.deleteResource(ResourceStore.JOB_PATH_ROOT + "/" + uuid);
+        String path = ResourceStore.JOB_PATH_ROOT + "/" + uuid;
+        jobCache.remove(path);
+        store.deleteResource(path);
     }
 
     public void updateJobInstance(JobInstance jobInstance) throws IOException {
@@ -214,6 +310,18 @@ public class JobDAO {
         }
     }
 
+    // the cached instance never leaves this class, a deep copy is an in-memory
+    // json round trip and much cheaper than reading the job from the store
+    private JobInstance copyOf(JobInstance job) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(buf);
+        JOB_SERIALIZER.serialize(job, dout);
+        dout.close();
+        JobInstance copy = JOB_SERIALIZER.deserialize(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+        copy.setLastModified(job.getLastModified());
+        return copy;
+    }
+
     private String pathOfJob(JobInstance job) {
         return ResourceStore.JOB_PATH_ROOT + "/" + job.getUuid();
     }
@@ -235,6 +343,12 @@ public class JobDAO {
     }
 
     private void writeJobOutputResource(String path, JobStepOutput output) throws IOException {
-        store.putResource(path, output, JOB_OUTPUT_SERIALIZER);
+        // outputs are last-writer-wins, no need to read the old version for a
+        // timestamp check
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(buf);
+        JOB_OUTPUT_SERIALIZER.serialize(output, dout);
+        dout.close();
+        store.putResource(path, new ByteArrayInputStream(buf.toByteArray()), System.currentTimeMillis());
     }
 }
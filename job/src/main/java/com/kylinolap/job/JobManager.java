@@ -255,6 +255,7 @@ public class JobManager {
 
     public void stopJobEngine() throws JobException {
         jobEngine.stop();
+        jobDAO.flushJobOutputs();
     }
 
     // Job engine metrics related methods
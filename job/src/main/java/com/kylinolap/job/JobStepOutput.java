@@ -16,6 +16,14 @@
 
 package com.kylinolap.job;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -29,6 +37,9 @@ import com.kylinolap.common.persistence.RootPersistentEntity;
 @JsonAutoDetect(fieldVisibility = Visibility.NONE, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE, setterVisibility = Visibility.NONE)
 public class JobStepOutput extends RootPersistentEntity {
 
+    // outputs longer than this are kept gzip compressed
+    private static final int COMPRESS_THRESHOLD = 16 * 1024;
+
     public static String nameOfOutput(String jobUuid, int stepSequenceId) {
         return jobUuid + "." + stepSequenceId;
     }
@@ -37,6 +48,8 @@ public class JobStepOutput extends RootPersistentEntity {
     private String name; // job uuid + "." +step sequence id
     @JsonProperty("output")
     private String output = "";
+    @JsonProperty("output_gz")
+    private byte[] compressedOutput;
 
     /**
      * @return the name
@@ -49,6 +62,9 @@ public class JobStepOutput extends RootPersistentEntity {
      * @return the output
      */
     public String getOutput() {
+        if (compressedOutput != null) {
+            return decompress(compressedOutput);
+        }
         return output;
     }
 
@@ -57,7 +73,13 @@ public class JobStepOutput extends RootPersistentEntity {
      *            the output to set
      */
     public void setOutput(String output) {
-        this.output = output;
+        if (output != null && output.length() > COMPRESS_THRESHOLD) {
+            this.compressedOutput = compress(output);
+            this.output = null;
+        } else {
+            this.compressedOutput = null;
+            this.output = output;
+        }
     }
 
     /**
@@ -68,4 +90,29 @@ public class JobStepOutput extends RootPersistentEntity {
         this.name = name;
     }
 
+    private static byte[] compress(String str) {
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream(str.length() / 4);
+            GZIPOutputStream gzout = new GZIPOutputStream(bout);
+            gzout.write(str.getBytes("UTF-8"));
+            gzout.close();
+            return bout.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e); // in memory, should not happen
+        }
+    }
+
+    private static String decompress(byte[] bytes) {
+        try {
+            GZIPInputStream gzin = new GZIPInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return IOUtils.toString(gzin, "UTF-8");
+            } finally {
+                IOUtils.closeQuietly(gzin);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decompress job output", e);
+        }
+    }
+
 }
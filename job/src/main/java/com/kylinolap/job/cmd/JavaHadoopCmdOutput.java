@@ -29,7 +29,7 @@ import com.kylinolap.job.JobInstance.JobStep;
 import com.kylinolap.job.constant.JobStepStatusEnum;
 import com.kylinolap.job.engine.JobEngineConfig;
 import com.kylinolap.job.hadoop.AbstractHadoopJob;
-import com.kylinolap.job.tools.HadoopStatusChecker;
+import com.kylinolap.job.tools.HadoopStatusTracker;
 
 /**
  * @author xduo
@@ -45,7 +45,6 @@ public class JavaHadoopCmdOutput implements ICommandOutput {
     private final KylinConfig config;
     private final String jobInstanceID;
     private final int jobStepID;
-    private final String yarnUrl;
     private final AbstractHadoopJob job;
     private String mrJobID = null;
     private String trackUrl = null;
@@ -54,7 +53,6 @@ public class JavaHadoopCmdOutput implements ICommandOutput {
     public JavaHadoopCmdOutput(String jobInstanceID, int jobStepID, JobEngineConfig engineConfig, AbstractHadoopJob job, boolean isAsync) {
         super();
         this.config = engineConfig.getConfig();
-        this.yarnUrl = engineConfig.getYarnStatusServiceUrl();
         this.jobInstanceID = jobInstanceID;
         this.jobStepID = jobStepID;
         this.job = job;
@@ -71,7 +69,7 @@ public class JavaHadoopCmdOutput implements ICommandOutput {
     @Override
     public JobStepStatusEnum getStatus() {
         if (this.isAsync) {
-            if (this.status == JobStepStatusEnum.ERROR) {
+            if (this.status.isComplete()) {
                 return status;
             }
 
@@ -79,9 +77,12 @@ public class JavaHadoopCmdOutput implements ICommandOutput {
                 updateHadoopJobInfo();
             }
 
-            status = new HadoopStatusChecker(this.yarnUrl, this.mrJobID, output).checkStatus();
+            HadoopStatusTracker tracker = HadoopStatusTracker.getInstance(config);
+            status = tracker.getStatus(this.mrJobID);
+            output.append(tracker.drainMessages(this.mrJobID));
 
             if (this.status.isComplete()) {
+                tracker.untrack(this.mrJobID);
                 updateJobCounter();
             }
         } else {
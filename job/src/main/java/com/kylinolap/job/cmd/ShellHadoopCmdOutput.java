@@ -17,6 +17,8 @@
 package com.kylinolap.job.cmd;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,7 +28,7 @@ import com.kylinolap.job.JobInstance;
 import com.kylinolap.job.JobInstance.JobStep;
 import com.kylinolap.job.constant.JobStepStatusEnum;
 import com.kylinolap.job.engine.JobEngineConfig;
-import com.kylinolap.job.tools.HadoopStatusChecker;
+import com.kylinolap.job.tools.HadoopStatusTracker;
 
 /**
  * @author xjiang
@@ -49,14 +51,12 @@ public class ShellHadoopCmdOutput extends ShellCmdOutput {
     private final KylinConfig config;
     private final String jobInstanceID;
     private final int jobStepID;
-    private final String yarnUrl;
 
     private String mrJobID;
 
     public ShellHadoopCmdOutput(String jobInstanceID, int jobStepID, JobEngineConfig engineConfig) {
         super();
         this.config = engineConfig.getConfig();
-        this.yarnUrl = engineConfig.getYarnStatusServiceUrl();
         this.jobInstanceID = jobInstanceID;
         this.jobStepID = jobStepID;
         this.mrJobID = null;
@@ -72,8 +72,12 @@ public class ShellHadoopCmdOutput extends ShellCmdOutput {
             return JobStepStatusEnum.WAITING;
         }
 
-        HadoopStatusChecker hadoopJobChecker = new HadoopStatusChecker(this.yarnUrl, this.mrJobID, output);
-        status = hadoopJobChecker.checkStatus();
+        HadoopStatusTracker tracker = HadoopStatusTracker.getInstance(config);
+        status = tracker.getStatus(mrJobID);
+        output.append(tracker.drainMessages(mrJobID));
+        if (status.isComplete()) {
+            tracker.untrack(mrJobID);
+        }
 
         return status;
     }
@@ -91,71 +95,66 @@ public class ShellHadoopCmdOutput extends ShellCmdOutput {
     }
 
     private void updateJobStepInfo(final String message) throws IOException {
-
-        JobDAO jobDAO = JobDAO.getInstance(config);
-        JobInstance jobInstance = jobDAO.getJob(jobInstanceID);
-        JobStep jobStep = jobInstance.getSteps().get(jobStepID);
+        // collect everything found in the message first, so the job is read
+        // and written at most once per message
+        Map<String, String> info = new HashMap<String, String>();
 
         Matcher matcher = PATTERN_APP_ID.matcher(message);
         if (matcher.find()) {
-            String appId = matcher.group(1);
-            jobStep.putInfo(JobInstance.YARN_APP_ID, appId);
-            jobDAO.updateJobInstance(jobInstance);
+            info.put(JobInstance.YARN_APP_ID, matcher.group(1));
         }
 
         matcher = PATTERN_APP_URL.matcher(message);
         if (matcher.find()) {
-            String appTrackingUrl = matcher.group(1);
-            jobStep.putInfo(JobInstance.YARN_APP_URL, appTrackingUrl);
-            jobDAO.updateJobInstance(jobInstance);
+            info.put(JobInstance.YARN_APP_URL, matcher.group(1));
         }
 
         matcher = PATTERN_JOB_ID.matcher(message);
         if (matcher.find()) {
             String mrJobID = matcher.group(1);
-            jobStep.putInfo(JobInstance.MR_JOB_ID, mrJobID);
-            jobDAO.updateJobInstance(jobInstance);
+            info.put(JobInstance.MR_JOB_ID, mrJobID);
             this.mrJobID = mrJobID;
             log.debug("Get hadoop job id " + mrJobID);
         }
 
         matcher = PATTERN_HDFS_BYTES_WRITTEN.matcher(message);
         if (matcher.find()) {
-            String hdfsWritten = matcher.group(1);
-            jobStep.putInfo(JobInstance.HDFS_BYTES_WRITTEN, hdfsWritten);
-            jobDAO.updateJobInstance(jobInstance);
+            info.put(JobInstance.HDFS_BYTES_WRITTEN, matcher.group(1));
         }
 
         matcher = PATTERN_SOURCE_RECORDS_COUNT.matcher(message);
         if (matcher.find()) {
-            String sourceCount = matcher.group(1);
-            jobStep.putInfo(JobInstance.SOURCE_RECORDS_COUNT, sourceCount);
-            jobDAO.updateJobInstance(jobInstance);
+            info.put(JobInstance.SOURCE_RECORDS_COUNT, matcher.group(1));
         }
 
         matcher = PATTERN_SOURCE_RECORDS_SIZE.matcher(message);
         if (matcher.find()) {
-            String sourceSize = matcher.group(1);
-            jobStep.putInfo(JobInstance.SOURCE_RECORDS_SIZE, sourceSize);
-            jobDAO.updateJobInstance(jobInstance);
+            info.put(JobInstance.SOURCE_RECORDS_SIZE, matcher.group(1));
         }
 
         // hive
         matcher = PATTERN_HIVE_APP_ID_URL.matcher(message);
         if (matcher.find()) {
-            String jobId = matcher.group(1);
-            String trackingUrl = matcher.group(2);
-            jobStep.putInfo(JobInstance.MR_JOB_ID, jobId);
-            jobStep.putInfo(JobInstance.YARN_APP_URL, trackingUrl);
-            jobDAO.updateJobInstance(jobInstance);
+            info.put(JobInstance.MR_JOB_ID, matcher.group(1));
+            info.put(JobInstance.YARN_APP_URL, matcher.group(2));
         }
 
         matcher = PATTERN_HIVE_BYTES_WRITTEN.matcher(message);
         if (matcher.find()) {
             // String hdfsRead = matcher.group(1);
-            String hdfsWritten = matcher.group(2);
-            jobStep.putInfo(JobInstance.HDFS_BYTES_WRITTEN, hdfsWritten);
-            jobDAO.updateJobInstance(jobInstance);
+            info.put(JobInstance.HDFS_BYTES_WRITTEN, matcher.group(2));
+        }
+
+        if (info.isEmpty()) {
+            return;
+        }
+
+        JobDAO jobDAO = JobDAO.getInstance(config);
+        JobInstance jobInstance = jobDAO.getJob(jobInstanceID);
+        JobStep jobStep = jobInstance.getSteps().get(jobStepID);
+        for (Map.Entry<String, String> entry : info.entrySet()) {
+            jobStep.putInfo(entry.getKey(), entry.getValue());
         }
+        jobDAO.updateJobInstance(jobInstance);
     }
 }
@@ -21,15 +21,14 @@ package com.kylinolap.job.engine;
  */
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.kylinolap.common.KylinConfig;
 import com.kylinolap.common.util.HadoopUtil;
-import org.apache.commons.lang.ArrayUtils;
+import com.kylinolap.common.util.LatencyHistogram;
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.math.stat.descriptive.rank.Percentile;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
@@ -169,11 +168,53 @@ public class JobEngine implements ConnectionStateListener {
 
     // Job engine metrics related methods
 
-    // <StepID, Duration Seconds>
-    public static ConcurrentHashMap<String, Double> JOB_DURATION = new ConcurrentHashMap<String, Double>();
+    // step durations in milliseconds, of all steps and by step name, over the
+    // steps completed within the last day
+    private static final long JOB_STEP_DURATION_WINDOW_MS = 24 * 60 * 60 * 1000L;
+    private static final LatencyHistogram JOB_STEP_DURATION = new LatencyHistogram(JOB_STEP_DURATION_WINDOW_MS);
+    private static final ConcurrentHashMap<String, LatencyHistogram> JOB_STEP_DURATION_BY_NAME = new ConcurrentHashMap<String, LatencyHistogram>();
+    private static volatile StepNameListener stepNameListener;
+
+    /**
+     * Told once about each step name, when a step of that name completes for
+     * the first time.
+     */
+    public static interface StepNameListener {
+        void onNewStepName(String stepName, LatencyHistogram duration);
+    }
+
+    public static void setStepNameListener(StepNameListener listener) {
+        stepNameListener = listener;
+    }
+
+    public static void recordJobStepDuration(String stepName, long millis) {
+        JOB_STEP_DURATION.record(millis);
+        if (stepName != null) {
+            LatencyHistogram histogram = JOB_STEP_DURATION_BY_NAME.get(stepName);
+            if (histogram == null) {
+                LatencyHistogram newHistogram = new LatencyHistogram(JOB_STEP_DURATION_WINDOW_MS);
+                histogram = JOB_STEP_DURATION_BY_NAME.putIfAbsent(stepName, newHistogram);
+                if (histogram == null) {
+                    histogram = newHistogram;
+                    StepNameListener listener = stepNameListener;
+                    if (listener != null) {
+                        listener.onNewStepName(stepName, histogram);
+                    }
+                }
+            }
+            histogram.record(millis);
+        }
+    }
+
+    /**
+     * @return step name ==> histogram of its durations in milliseconds
+     */
+    public static Map<String, LatencyHistogram> getJobStepDurationByName() {
+        return Collections.unmodifiableMap(JOB_STEP_DURATION_BY_NAME);
+    }
 
     public int getNumberOfJobStepsExecuted() {
-        return JOB_DURATION.values().size();
+        return (int) JOB_STEP_DURATION.getCount();
     }
 
     public String getPrimaryEngineID() throws Exception {
@@ -185,39 +226,18 @@ public class JobEngine implements ConnectionStateListener {
         }
     }
 
-    public double getMinJobStepDuration() {
-        double[] all = getJobStepDuration();
-        Arrays.sort(all);
-
-        if (all.length > 0) {
-            return all[0];
-        } else {
-            return 0;
-        }
-    }
+    // durations below are in seconds
 
-    private double[] getJobStepDuration() {
-        Collection<Double> values = JOB_DURATION.values();
-        Double[] all = (Double[]) values.toArray(new Double[values.size()]);
-        return ArrayUtils.toPrimitive(all);
+    public double getMinJobStepDuration() {
+        return JOB_STEP_DURATION.getMin() / 1000.0;
     }
 
     public double getMaxJobStepDuration() {
-        double[] all = getJobStepDuration();
-        Arrays.sort(all);
-
-        if (all.length > 1) {
-            return all[all.length - 1];
-        } else {
-            return 0;
-        }
+        return JOB_STEP_DURATION.getMax() / 1000.0;
     }
 
     public double getPercentileJobStepDuration(double percentile) {
-        Collection<Double> values = JOB_DURATION.values();
-        Double[] all = (Double[]) values.toArray(new Double[values.size()]);
-        Percentile p = new Percentile(percentile);
-        return p.evaluate(ArrayUtils.toPrimitive(all));
+        return JOB_STEP_DURATION.getPercentile(percentile) / 1000.0;
     }
 
     public Integer getScheduledJobsSzie() {
@@ -22,8 +22,11 @@ import java.util.Set;
 import org.quartz.DateBuilder;
 import org.quartz.DateBuilder.IntervalUnit;
 import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.quartz.Trigger;
 import org.quartz.TriggerBuilder;
@@ -38,6 +41,7 @@ import com.kylinolap.job.constant.JobConstants;
 import com.kylinolap.job.constant.JobStepStatusEnum;
 import com.kylinolap.job.engine.JobEngineConfig;
 import com.kylinolap.job.exception.JobException;
+import com.kylinolap.job.tools.HadoopStatusTracker;
 
 /**
  * @author xduo
@@ -73,9 +77,12 @@ public class AsyncJobFlowNode extends JobFlowNode {
                 context.getScheduler().addJob(this.currentJobDetail, true, true);
 
                 JobStepStatusEnum stepStatus = output.getStatus();
-                updateJobStep(jobInstanceID, jobStepID, config, stepStatus, null, stepStatus.isComplete() ? System.currentTimeMillis() : null, output.getOutput());
+                jobInstance = updateJobStep(jobInstanceID, jobStepID, config, stepStatus, null, stepStatus.isComplete() ? System.currentTimeMillis() : null, output.getOutput());
 
                 context.setResult(output.getExitCode());
+                if (!stepStatus.isComplete()) {
+                    listenForCompletion(context, config, jobInstance.getSteps().get(jobStepID));
+                }
                 scheduleStatusChecker(context);
                 log.debug("Start async job " + currentJobDetail.getKey());
             } else {
@@ -92,6 +99,7 @@ public class AsyncJobFlowNode extends JobFlowNode {
                 updateJobStep(jobInstance.getUuid(), jobStepID, config, stepStatus, null, stepStatus.isComplete() ? System.currentTimeMillis() : null, output.getOutput());
 
                 if (!stepStatus.isComplete()) {
+                    listenForCompletion(context, config, jobStep);
                     scheduleStatusChecker(context);
                 }
 
@@ -104,6 +112,38 @@ public class AsyncJobFlowNode extends JobFlowNode {
 
     }
 
+    /**
+     * Ask the shared status tracker to re-run this node as soon as the MR job
+     * completes, rather than waiting for the next periodic status check.
+     */
+    private void listenForCompletion(final JobExecutionContext context, KylinConfig config, JobStep jobStep) {
+        String mrJobID = jobStep.getInfo(JobInstance.MR_JOB_ID);
+        if (mrJobID == null) {
+            return;
+        }
+
+        final JobKey jobKey = this.currentJobDetail.getKey();
+        HadoopStatusTracker.getInstance(config).setListener(mrJobID, new HadoopStatusTracker.StatusListener() {
+            @Override
+            public void onComplete(String mrJobID, JobStepStatusEnum status) {
+                try {
+                    Scheduler scheduler = context.getScheduler();
+                    JobDetail jobDetail = scheduler.getJobDetail(jobKey);
+                    if (jobDetail == null || jobDetail.getJobDataMap().getBoolean(JobConstants.PROP_JOB_KILLED)) {
+                        return;
+                    }
+
+                    log.debug("Hadoop job " + mrJobID + " is " + status + ", trigger status check of " + jobKey);
+                    Set<Trigger> triggers = new HashSet<Trigger>();
+                    triggers.add(TriggerBuilder.newTrigger().startNow().build());
+                    scheduler.scheduleJob(jobDetail, triggers, true);
+                } catch (SchedulerException e) {
+                    log.error("Failed to trigger status check of " + jobKey, e);
+                }
+            }
+        });
+    }
+
     private void scheduleStatusChecker(JobExecutionContext context) throws SchedulerException {
         JobDataMap jobDataMap = this.currentJobDetail.getJobDataMap();
         JobFlow jobFlow = (JobFlow) jobDataMap.get(JobConstants.PROP_JOB_FLOW);
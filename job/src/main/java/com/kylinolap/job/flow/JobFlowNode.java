@@ -138,7 +138,7 @@ public class JobFlowNode implements InterruptableJob {
         }
 
         if (null != execEndTime) {
-            JobEngine.JOB_DURATION.put(JobInstance.getStepIdentity(jobInstance, currentStep) + " - " + String.valueOf(currentStep.getExecStartTime()), (double) (currentStep.getExecEndTime() - currentStep.getExecStartTime()) / 1000);
+            JobEngine.recordJobStepDuration(currentStep.getName(), currentStep.getExecEndTime() - currentStep.getExecStartTime());
         }
 
         return jobInstance;
@@ -74,6 +74,8 @@ public class BaseCuboidMapper<KEYIN> extends KylinMapper<KEYIN, Text, Text, Text
     private Text outputValue = new Text();
     private Object[] measures;
     private byte[][] keyBytesBuf;
+    private int[] keyBytesLen;
+    private byte[] keyBuf;
     private ByteBuffer valueBuf = ByteBuffer.allocate(RowConstants.ROWVALUE_BUFFER_SIZE);
 
     private BytesSplitter bytesSplitter;
@@ -112,6 +114,8 @@ public class BaseCuboidMapper<KEYIN> extends KylinMapper<KEYIN, Text, Text, Text
 
         int colCount = cubeDesc.getRowkey().getRowKeyColumns().length;
         keyBytesBuf = new byte[colCount][];
+        keyBytesLen = new int[colCount];
+        keyBuf = new byte[rowKeyEncoder.getBytesLength()];
 
         initNullBytes();
     }
@@ -128,23 +132,30 @@ public class BaseCuboidMapper<KEYIN> extends KylinMapper<KEYIN, Text, Text, Text
     }
 
     private boolean isNull(byte[] v) {
+        return v == null || isNull(v, v.length);
+    }
+
+    private boolean isNull(byte[] v, int length) {
         for (byte[] nullByte : nullBytes) {
-            if (Bytes.equals(v, nullByte))
+            if (Bytes.equals(v, 0, length, nullByte, 0, nullByte.length))
                 return true;
         }
         return false;
     }
 
-    private byte[] buildKey(SplittedBytes[] splitBuffers) {
+    // encodes straight from the split buffers into keyBuf, returns key length
+    private int buildKey(SplittedBytes[] splitBuffers) {
         int[] rowKeyColumnIndexes = intermediateTableDesc.getRowKeyColumnIndexes();
         for (int i = 0; i < baseCuboid.getColumns().size(); i++) {
-            int index = rowKeyColumnIndexes[i];
-            keyBytesBuf[i] = Arrays.copyOf(splitBuffers[index].value, splitBuffers[index].length);
-            if (isNull(keyBytesBuf[i])) {
+            SplittedBytes split = splitBuffers[rowKeyColumnIndexes[i]];
+            if (isNull(split.value, split.length)) {
                 keyBytesBuf[i] = null;
+            } else {
+                keyBytesBuf[i] = split.value;
+                keyBytesLen[i] = split.length;
             }
         }
-        return rowKeyEncoder.encode(keyBytesBuf);
+        return rowKeyEncoder.encode(keyBytesBuf, keyBytesLen, keyBuf);
     }
 
     private void buildValue(SplittedBytes[] splitBuffers) {
@@ -209,8 +220,8 @@ public class BaseCuboidMapper<KEYIN> extends KylinMapper<KEYIN, Text, Text, Text
             bytesSplitter.split(value.getBytes(), value.getLength(), byteRowDelimiter);
             intermediateTableDesc.sanityCheck(bytesSplitter);
 
-            byte[] rowKey = buildKey(bytesSplitter.getSplitBuffers());
-            outputKey.set(rowKey, 0, rowKey.length);
+            int keyLength = buildKey(bytesSplitter.getSplitBuffers());
+            outputKey.set(keyBuf, 0, keyLength);
 
             buildValue(bytesSplitter.getSplitBuffers());
             outputValue.set(valueBuf.array(), 0, valueBuf.position());
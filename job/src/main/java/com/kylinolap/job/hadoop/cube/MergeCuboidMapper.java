@@ -36,6 +36,7 @@ import com.kylinolap.cube.common.RowKeySplitter;
 import com.kylinolap.cube.common.SplittedBytes;
 import com.kylinolap.cube.cuboid.Cuboid;
 import com.kylinolap.cube.kv.RowConstants;
+import com.kylinolap.cube.kv.RowKeyEncoder;
 import com.kylinolap.dict.Dictionary;
 import com.kylinolap.dict.DictionaryManager;
 import com.kylinolap.job.constant.BatchConstants;
@@ -131,7 +132,9 @@ public class MergeCuboidMapper extends KylinMapper<Text, Text, Text, Text> {
         Cuboid cuboid = Cuboid.findById(cubeDesc, cuboidID);
 
         SplittedBytes[] splittedByteses = rowKeySplitter.getSplitBuffers();
-        int bufOffset = 0;
+        // source and merged segment may be sharded differently
+        int shardLength = mergedCubeSegment.getRowkeyShardLength();
+        int bufOffset = shardLength;
         BytesUtil.writeLong(cuboidID, newKeyBuf, bufOffset, RowConstants.ROWKEY_CUBOIDID_LEN);
         bufOffset += RowConstants.ROWKEY_CUBOIDID_LEN;
 
@@ -168,6 +171,12 @@ public class MergeCuboidMapper extends KylinMapper<Text, Text, Text, Text> {
                 bufOffset += splittedByteses[i + 1].length;
             }
         }
+        int shardNum = mergedCubeSegment.getRowkeyShardNum();
+        if (shardNum > 0) {
+            // dictionary IDs may change in merge, hash the new dimension bytes
+            int dimOffset = shardLength + RowConstants.ROWKEY_CUBOIDID_LEN;
+            newKeyBuf[0] = RowKeyEncoder.getShard(newKeyBuf, dimOffset, bufOffset - dimOffset, shardNum);
+        }
         byte[] newKey = Arrays.copyOf(newKeyBuf, bufOffset);
         outputKey.set(newKey, 0, newKey.length);
 
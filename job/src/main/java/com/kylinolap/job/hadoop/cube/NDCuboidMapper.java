@@ -32,6 +32,7 @@ import com.kylinolap.cube.common.RowKeySplitter;
 import com.kylinolap.cube.common.SplittedBytes;
 import com.kylinolap.cube.cuboid.Cuboid;
 import com.kylinolap.cube.cuboid.CuboidScheduler;
+import com.kylinolap.cube.kv.RowKeyEncoder;
 import com.kylinolap.job.constant.BatchConstants;
 import com.kylinolap.job.hadoop.AbstractHadoopJob;
 import com.kylinolap.metadata.model.cube.CubeDesc;
@@ -55,6 +56,8 @@ public class NDCuboidMapper extends KylinMapper<Text, Text, Text, Text> {
 
     private byte[] keyBuf = new byte[4096];
     private RowKeySplitter rowKeySplitter;
+    private int shardNum;
+    private int shardLength;
 
     @Override
     protected void setup(Context context) throws IOException {
@@ -74,10 +77,12 @@ public class NDCuboidMapper extends KylinMapper<Text, Text, Text, Text> {
         cuboidScheduler = new CuboidScheduler(cubeDesc);
 
         rowKeySplitter = new RowKeySplitter(cubeSegment, 65, 256);
+        shardNum = cubeSegment.getRowkeyShardNum();
+        shardLength = cubeSegment.getRowkeyShardLength();
     }
 
     private int buildKey(Cuboid parentCuboid, Cuboid childCuboid, SplittedBytes[] splitBuffers) {
-        int offset = 0;
+        int offset = shardLength;
 
         // cuboid id
         System.arraycopy(childCuboid.getBytes(), 0, keyBuf, offset, childCuboid.getBytes().length);
@@ -102,6 +107,12 @@ public class NDCuboidMapper extends KylinMapper<Text, Text, Text, Text> {
             mask = mask >> 1;
         }
 
+        // child rows re-shard by their own dimensions
+        if (shardNum > 0) {
+            int dimOffset = shardLength + childCuboid.getBytes().length;
+            keyBuf[0] = RowKeyEncoder.getShard(keyBuf, dimOffset, offset - dimOffset, shardNum);
+        }
+
         return offset;
     }
 
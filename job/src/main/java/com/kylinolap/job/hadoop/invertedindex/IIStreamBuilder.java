@@ -0,0 +1,288 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.job.hadoop.invertedindex;
+
+import static com.kylinolap.metadata.model.invertedindex.InvertedIndexDesc.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.kylinolap.common.KylinConfig;
+import com.kylinolap.common.util.BytesUtil;
+import com.kylinolap.common.util.HadoopUtil;
+import com.kylinolap.cube.CubeInstance;
+import com.kylinolap.cube.CubeManager;
+import com.kylinolap.cube.CubeSegment;
+import com.kylinolap.cube.CubeSegmentStatusEnum;
+import com.kylinolap.cube.invertedindex.IIKeyValueCodec;
+import com.kylinolap.cube.invertedindex.ShardingSliceBuilder;
+import com.kylinolap.cube.invertedindex.Slice;
+import com.kylinolap.cube.invertedindex.TableRecord;
+import com.kylinolap.cube.invertedindex.TableRecordInfo;
+import com.kylinolap.dict.AppendableDictionary;
+import com.kylinolap.dict.DateStrDictionary;
+import com.kylinolap.dict.DictionaryInfo;
+import com.kylinolap.dict.DictionaryManager;
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.metadata.model.invertedindex.InvertedIndexDesc;
+import com.kylinolap.metadata.model.schema.ColumnDesc;
+
+/**
+ * Realtime ingestion into a ready inverted index segment. Records are buffered,
+ * and on each flush() sorted by time, built into slices per shard and put into
+ * the HTable of the segment, where queries see them right away. Values unknown
+ * to the batch built dictionaries are appended, see AppendableDictionary.
+ * 
+ * A flush saves appended dictionaries before putting the slices, such that no
+ * slice in HTable refers to a dictionary ID not saved yet. Slices that fail to
+ * be saved or put are kept and tried again on the next flush. Not thread safe.
+ */
+public class IIStreamBuilder implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IIStreamBuilder.class);
+
+    private final KylinConfig config;
+    private final CubeSegment seg;
+    private final List<DictionaryInfo> appendableDicts;
+    private final int[] savedCounts;
+    private final TableRecordInfo info;
+    private final IIKeyValueCodec codec;
+    private final HTable table;
+    private final ShardingSliceBuilder sliceBuilder;
+    private final List<TableRecord> buffer = Lists.newArrayList();
+    private final List<Put> pendingPuts = Lists.newArrayList(); // built from buffered records, not in HTable yet
+    private int pendingCount; // records in pendingPuts
+
+    public IIStreamBuilder(KylinConfig config, String cubeName, String segmentName) throws IOException {
+        this.config = config;
+
+        CubeManager cubeMgr = CubeManager.getInstance(config);
+        CubeInstance cube = cubeMgr.getCube(cubeName);
+        if (cube == null)
+            throw new IllegalArgumentException("Cube " + cubeName + " not found");
+        this.seg = segmentName == null ? cube.getLatestReadySegment() : cube.getSegment(segmentName, CubeSegmentStatusEnum.READY);
+        if (seg == null)
+            throw new IllegalArgumentException("No ready segment " + (segmentName == null ? "" : segmentName + " ") + "in cube " + cubeName);
+
+        this.appendableDicts = makeDictionariesAppendable(cubeMgr, cube);
+        this.savedCounts = new int[appendableDicts.size()];
+        for (int i = 0; i < savedCounts.length; i++) {
+            savedCounts[i] = getDictionary(i).getAppendedCount();
+        }
+
+        this.info = new TableRecordInfo(seg);
+        this.codec = new IIKeyValueCodec(info);
+
+        Configuration conf = HadoopUtil.newHBaseConfiguration(config.getStorageUrl());
+        this.table = new HTable(conf, seg.getStorageLocationIdentifier());
+        this.sliceBuilder = new ShardingSliceBuilder(info, getLastSliceTimestamps());
+
+        logger.info("Streaming into segment " + seg + ", HTable " + seg.getStorageLocationIdentifier());
+    }
+
+    // switch the segment to appendable copies of its dimension dictionaries,
+    // except the timestamp column, whose dictionary covers all dates already
+    private List<DictionaryInfo> makeDictionariesAppendable(CubeManager cubeMgr, CubeInstance cube) throws IOException {
+        DictionaryManager dictMgr = DictionaryManager.getInstance(config);
+        InvertedIndexDesc desc = cube.getInvertedIndexDesc();
+        List<DictionaryInfo> result = Lists.newArrayList();
+        boolean changed = false;
+
+        for (ColumnDesc col : desc.getFactTableDesc().getColumns()) {
+            int i = col.getZeroBasedIndex();
+            if (desc.isMetricsCol(i) || i == desc.getTimestampColumn())
+                continue;
+
+            TblColRef colRef = new TblColRef(col);
+            DictionaryInfo dictInfo = dictMgr.getDictionaryInfo(seg.getDictResPath(colRef));
+            if (dictInfo.getDictionaryObject() instanceof DateStrDictionary)
+                continue;
+
+            DictionaryInfo appendable = dictMgr.makeAppendable(dictInfo);
+            if (appendable != dictInfo) {
+                logger.info("Dictionary of " + colRef + " made appendable at " + appendable.getResourcePath());
+                seg.putDictResPath(colRef, appendable.getResourcePath());
+                changed = true;
+            }
+            result.add(appendable);
+        }
+
+        if (changed)
+            cubeMgr.updateCube(cube);
+        return result;
+    }
+
+    private AppendableDictionary getDictionary(int i) {
+        return (AppendableDictionary) appendableDicts.get(i).getDictionaryObject();
+    }
+
+    // the last row of a shard is the one right before the next shard
+    private long[] getLastSliceTimestamps() throws IOException {
+        int sharding = info.getDescriptor().getSharding();
+        long[] result = new long[sharding];
+        byte[] key = new byte[IIKeyValueCodec.SHARD_LEN];
+        for (int shard = 0; shard < sharding; shard++) {
+            result[shard] = Long.MIN_VALUE;
+            BytesUtil.writeUnsigned(shard + 1, key, 0, key.length);
+            Result r = table.getRowOrBefore(key, HBASE_FAMILY_BYTES);
+            if (r == null || r.isEmpty())
+                continue;
+
+            byte[] row = r.getRow();
+            if (BytesUtil.readUnsigned(row, 0, IIKeyValueCodec.SHARD_LEN) == shard) {
+                result[shard] = BytesUtil.readLong(row, IIKeyValueCodec.SHARD_LEN, IIKeyValueCodec.TIMEPART_LEN);
+            }
+        }
+        return result;
+    }
+
+    public CubeSegment getSegment() {
+        return seg;
+    }
+
+    /**
+     * @return records not in HTable yet, including those of a failed flush
+     */
+    public int getBufferedCount() {
+        return buffer.size() + pendingCount;
+    }
+
+    /**
+     * Buffer a record of fact table column values. A value new to its
+     * dictionary is appended, or taken as null once the dictionary is full.
+     * 
+     * @throws IllegalArgumentException
+     *             if the record is malformed, nothing is buffered then
+     */
+    public void append(String[] values) {
+        if (values.length != info.getColumnCount())
+            throw new IllegalArgumentException("Got " + values.length + " values, but " + info.getColumnCount() + " expected");
+
+        TableRecord rec = new TableRecord(info);
+        for (int i = 0; i < values.length; i++) {
+            if (info.isAppendable(i))
+                rec.setValueID(i, appendValue(i, values[i]));
+            else
+                rec.setValueString(i, values[i]);
+        }
+        buffer.add(rec);
+    }
+
+    private int appendValue(int col, String value) {
+        AppendableDictionary dict = (AppendableDictionary) info.dict(col);
+        try {
+            return dict.addValue(value);
+        } catch (IllegalStateException e) {
+            logger.warn(e.getMessage() + ", taken as null");
+            return dict.nullId();
+        }
+    }
+
+    /**
+     * Write buffered records to HTable, partial slices included. On failure
+     * the records are kept, the next flush tries them again.
+     * 
+     * @return the number of records written
+     */
+    public int flush() throws IOException {
+        if (buffer.isEmpty() == false)
+            buildPuts();
+        if (pendingPuts.isEmpty())
+            return 0;
+
+        // a retry puts again the cells that made it last time, which is harmless
+        saveDictionaries();
+        table.put(pendingPuts);
+        table.flushCommits();
+
+        int n = pendingCount;
+        pendingPuts.clear();
+        pendingCount = 0;
+        return n;
+    }
+
+    // moves buffered records into slices, the slice builder has advanced
+    // past them then, so they are retried as puts rather than as records
+    private void buildPuts() {
+        // IDs of the timestamp dictionary preserve time order
+        final int tsCol = info.getTimestampColumn();
+        Collections.sort(buffer, new Comparator<TableRecord>() {
+            @Override
+            public int compare(TableRecord a, TableRecord b) {
+                int x = a.getValueID(tsCol);
+                int y = b.getValueID(tsCol);
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+
+        List<Slice> slices = Lists.newArrayList();
+        for (TableRecord rec : buffer) {
+            Slice slice = sliceBuilder.append(rec);
+            if (slice != null)
+                slices.add(slice);
+        }
+        slices.addAll(sliceBuilder.flush());
+
+        int cells = 0;
+        for (Slice slice : slices) {
+            for (Pair<ImmutableBytesWritable, ImmutableBytesWritable> kv : codec.encodeKeyValue(slice)) {
+                Put put = new Put(kv.getFirst().copyBytes());
+                put.add(HBASE_FAMILY_BYTES, HBASE_QUALIFIER_BYTES, kv.getSecond().copyBytes());
+                pendingPuts.add(put);
+                cells++;
+            }
+        }
+
+        logger.debug("Built " + buffer.size() + " records into " + slices.size() + " slices, " + cells + " cells");
+        pendingCount += buffer.size();
+        buffer.clear();
+    }
+
+    private void saveDictionaries() throws IOException {
+        DictionaryManager dictMgr = DictionaryManager.getInstance(config);
+        for (int i = 0; i < appendableDicts.size(); i++) {
+            int count = getDictionary(i).getAppendedCount();
+            if (count != savedCounts[i]) {
+                dictMgr.saveAppended(appendableDicts.get(i));
+                savedCounts[i] = count;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            table.close();
+        }
+    }
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.job.hadoop.invertedindex;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kylinolap.common.KylinConfig;
+import com.kylinolap.common.util.StringSplitter;
+import com.kylinolap.job.hadoop.AbstractHadoopJob;
+
+/**
+ * Streams delimited records into a ready inverted index segment, from a file
+ * being appended to (like tail -f), or from clients connecting to a socket.
+ * Buffered records are flushed to HTable every flush interval, and on exit. A
+ * failed flush keeps the records and is retried at the next interval, reading
+ * is held off meanwhile once the buffer is full.
+ * 
+ * The socket accepts anyone who can connect and has no authentication, so it
+ * listens on the loopback address unless told otherwise.
+ */
+@SuppressWarnings("static-access")
+public class IIStreamingCLI extends AbstractHadoopJob {
+
+    protected static final Logger log = LoggerFactory.getLogger(IIStreamingCLI.class);
+
+    private static final Option OPTION_SEGMENT = OptionBuilder.withArgName("name").hasArg().isRequired(false).withDescription("Ready segment to stream into, the latest ready segment by default").create("segmentname");
+    private static final Option OPTION_FILE = OptionBuilder.withArgName("path").hasArg().isRequired(false).withDescription("File to tail").create("file");
+    private static final Option OPTION_PORT = OptionBuilder.withArgName("port").hasArg().isRequired(false).withDescription("Port to listen on for records, one per line").create("port");
+    private static final Option OPTION_BIND = OptionBuilder.withArgName("address").hasArg().isRequired(false).withDescription("Address to listen on, the loopback address by default").create("bind");
+    private static final Option OPTION_FLUSH_INTERVAL = OptionBuilder.withArgName("seconds").hasArg().isRequired(false).withDescription("Flush interval in seconds, 10 by default").create("flushinterval");
+
+    private static final int DEFAULT_FLUSH_INTERVAL_SECONDS = 10;
+    private static final int MAX_BUFFERED_RECORDS = 100000;
+    private static final int POLL_WAIT_MILLIS = 500;
+
+    private volatile boolean stopped = false;
+
+    @Override
+    public int run(String[] args) throws Exception {
+        Options options = new Options();
+        try {
+            options.addOption(OPTION_CUBE_NAME);
+            options.addOption(OPTION_SEGMENT);
+            options.addOption(OPTION_FILE);
+            options.addOption(OPTION_PORT);
+            options.addOption(OPTION_BIND);
+            options.addOption(OPTION_INPUT_DELIM);
+            options.addOption(OPTION_FLUSH_INTERVAL);
+            parseOptions(options, args);
+
+            if (hasOption(OPTION_FILE) == hasOption(OPTION_PORT))
+                throw new IllegalArgumentException("Exactly one of -" + OPTION_FILE.getOpt() + " and -" + OPTION_PORT.getOpt() + " is required");
+        } catch (Exception e) {
+            printUsage(options);
+            log.error(e.getLocalizedMessage(), e);
+            return 2;
+        }
+
+        String delim = hasOption(OPTION_INPUT_DELIM) ? getOptionValue(OPTION_INPUT_DELIM) : ",";
+        long flushIntervalMillis = 1000L * (hasOption(OPTION_FLUSH_INTERVAL) ? Integer.parseInt(getOptionValue(OPTION_FLUSH_INTERVAL)) : DEFAULT_FLUSH_INTERVAL_SECONDS);
+
+        IIStreamBuilder builder = new IIStreamBuilder(KylinConfig.getInstanceFromEnv(), getOptionValue(OPTION_CUBE_NAME), getOptionValue(OPTION_SEGMENT));
+        InetAddress bindAddress = hasOption(OPTION_BIND) ? InetAddress.getByName(getOptionValue(OPTION_BIND)) : InetAddress.getLoopbackAddress();
+        LineSource source = hasOption(OPTION_FILE) ? new FileTailSource(getOptionValue(OPTION_FILE)) : new SocketSource(bindAddress, Integer.parseInt(getOptionValue(OPTION_PORT)));
+        addShutdownHook();
+
+        try {
+            long lastFlush = System.currentTimeMillis();
+            boolean lastFlushFailed = false;
+            while (stopped == false) {
+                boolean full = builder.getBufferedCount() >= MAX_BUFFERED_RECORDS;
+                if (full == false) {
+                    String line = source.poll();
+                    if (line != null && line.length() > 0) {
+                        try {
+                            builder.append(StringSplitter.split(line, delim));
+                        } catch (IllegalArgumentException e) {
+                            log.warn("Skip bad record -- " + line + " -- " + e.getMessage());
+                        }
+                    }
+                } else if (lastFlushFailed) {
+                    // wait for the next retry, without reading more
+                    sleep(POLL_WAIT_MILLIS);
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastFlush >= flushIntervalMillis || (full && lastFlushFailed == false)) {
+                    lastFlushFailed = tryFlush(builder) == false;
+                    lastFlush = now;
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(source);
+            builder.close();
+        }
+        return 0;
+    }
+
+    private boolean tryFlush(IIStreamBuilder builder) {
+        try {
+            int n = builder.flush();
+            if (n > 0)
+                log.info("Flushed " + n + " records to segment " + builder.getSegment());
+            return true;
+        } catch (IOException e) {
+            log.error("Flush failed, " + builder.getBufferedCount() + " records kept for the next try", e);
+            return false;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // stop the loop and let it flush on kill
+    private void addShutdownHook() {
+        final Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                stopped = true;
+                try {
+                    mainThread.join();
+                } catch (InterruptedException e) {
+                    // exiting anyway
+                }
+            }
+        });
+    }
+
+    private static interface LineSource extends Closeable {
+        /**
+         * @return the next line, or null if none arrives within a short wait
+         */
+        String poll() throws IOException;
+    }
+
+    // reads lines char by char, a line partially read at end of input or on
+    // timeout is kept until the rest arrives
+    private static class LineReader {
+        final StringBuilder partial = new StringBuilder();
+
+        /**
+         * @return the next complete line, or null at end of input
+         */
+        String readLine(Reader in) throws IOException {
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    int len = partial.length();
+                    String line = partial.substring(0, len > 0 && partial.charAt(len - 1) == '\r' ? len - 1 : len);
+                    partial.setLength(0);
+                    return line;
+                }
+                partial.append((char) c);
+            }
+            return null;
+        }
+    }
+
+    private static class FileTailSource implements LineSource {
+        final Reader in;
+        final LineReader reader = new LineReader();
+
+        FileTailSource(String path) throws IOException {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        }
+
+        @Override
+        public String poll() throws IOException {
+            String line = reader.readLine(in);
+            if (line != null)
+                return line;
+
+            // at end of file, wait for the writer
+            sleep(POLL_WAIT_MILLIS);
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class SocketSource implements LineSource {
+        final ServerSocket server;
+        Socket client;
+        Reader in;
+        LineReader reader;
+
+        SocketSource(InetAddress bindAddress, int port) throws IOException {
+            server = new ServerSocket(port, 0, bindAddress);
+            server.setSoTimeout(POLL_WAIT_MILLIS);
+            log.info("Listening for records on " + server.getLocalSocketAddress());
+        }
+
+        @Override
+        public String poll() throws IOException {
+            try {
+                if (client == null) {
+                    client = server.accept();
+                    client.setSoTimeout(POLL_WAIT_MILLIS);
+                    in = new BufferedReader(new InputStreamReader(client.getInputStream(), "UTF-8"));
+                    reader = new LineReader();
+                    log.info("Accepted records from " + client.getRemoteSocketAddress());
+                }
+
+                String line = reader.readLine(in);
+                if (line == null) { // client gone, wait for the next
+                    closeClient();
+                }
+                return line;
+            } catch (SocketTimeoutException e) {
+                return null;
+            }
+        }
+
+        private void closeClient() {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(client);
+            client = null;
+            in = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeClient();
+            server.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int exitCode = ToolRunner.run(new IIStreamingCLI(), args);
+        System.exit(exitCode);
+    }
+
+}
@@ -71,7 +71,6 @@ public class InvertedIndexReducer extends KylinReducer<LongWritable, ImmutableBy
             if (builder == null) {
                 builder = new SliceBuilder(info, rec.getShard());
             }
-            System.out.println(rec.getShard() + " - " + rec);
 
             Slice slice = builder.append(rec);
             if (slice != null) {
@@ -58,6 +58,7 @@ public class DeployCoprocessorCLI {
     private static final Logger logger = LoggerFactory.getLogger(DeployCoprocessorCLI.class);
 
     public static final String AGGR_COPROCESSOR_CLS_NAME = "com.kylinolap.storage.hbase.observer.AggregateRegionObserver";
+    public static final String II_ENDPOINT_CLS_NAME = "com.kylinolap.storage.hbase.coprocessor.IIEndpoint";
 
     public static void main(String[] args) throws IOException {
         KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
@@ -93,6 +94,11 @@ public class DeployCoprocessorCLI {
         desc.addCoprocessor(AGGR_COPROCESSOR_CLS_NAME, hdfsCoprocessorJar, 1001, null);
     }
 
+    public static void setIIEndpointOnHTable(HTableDescriptor desc, Path hdfsCoprocessorJar) throws IOException {
+        logger.info("Set inverted index endpoint on " + desc.getNameAsString());
+        desc.addCoprocessor(II_ENDPOINT_CLS_NAME, hdfsCoprocessorJar, 1001, null);
+    }
+
     public static void resetCoprocessor(String tableName, HBaseAdmin hbaseAdmin, Path hdfsCoprocessorJar) throws IOException {
         logger.info("Disable " + tableName);
         hbaseAdmin.disableTable(tableName);
@@ -23,6 +23,7 @@ import java.util.Date;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.protocol.Protocol;
 import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
@@ -44,6 +45,9 @@ public class HadoopStatusChecker {
 
     protected static final Logger log = LoggerFactory.getLogger(HadoopStatusChecker.class);
 
+    // one pooled client for all status checks, instead of a new connection per check
+    private static final HttpClient HTTP_CLIENT = new HttpClient(new MultiThreadedHttpConnectionManager());
+
     private final String yarnUrl;
     private final String mrJobID;
     private final StringBuilder output;
@@ -116,7 +120,7 @@ public class HadoopStatusChecker {
     }
 
     private String getHttpResponse(String url) throws IOException {
-        HttpClient client = new HttpClient();
+        HttpClient client = HTTP_CLIENT;
 
         String response = null;
         while (response == null) { // follow redirects via 'refresh'
@@ -129,29 +133,31 @@ public class HadoopStatusChecker {
             }
 
             HttpMethod get = new GetMethod(url);
-            client.executeMethod(get);
-
-            String redirect = null;
-            Header h = get.getResponseHeader("Refresh");
-            if (h != null) {
-                String s = h.getValue();
-                int cut = s.indexOf("url=");
-                if (cut >= 0) {
-                    redirect = s.substring(cut + 4);
+            try {
+                client.executeMethod(get);
+
+                String redirect = null;
+                Header h = get.getResponseHeader("Refresh");
+                if (h != null) {
+                    String s = h.getValue();
+                    int cut = s.indexOf("url=");
+                    if (cut >= 0) {
+                        redirect = s.substring(cut + 4);
+                    }
                 }
-            }
 
-            if (redirect == null) {
-                response = get.getResponseBodyAsString();
-                output.append("Job " + mrJobID + " get status check result.\n");
-                log.debug("Job " + mrJobID + " get status check result.\n");
-            } else {
-                url = redirect;
-                output.append("Job " + mrJobID + " check redirect url " + url + ".\n");
-                log.debug("Job " + mrJobID + " check redirect url " + url + ".\n");
+                if (redirect == null) {
+                    response = get.getResponseBodyAsString();
+                    output.append("Job " + mrJobID + " get status check result.\n");
+                    log.debug("Job " + mrJobID + " get status check result.\n");
+                } else {
+                    url = redirect;
+                    output.append("Job " + mrJobID + " check redirect url " + url + ".\n");
+                    log.debug("Job " + mrJobID + " check redirect url " + url + ".\n");
+                }
+            } finally {
+                get.releaseConnection();
             }
-
-            get.releaseConnection();
         }
 
         return response;
@@ -159,7 +165,7 @@ public class HadoopStatusChecker {
 
     private static Protocol EASY_HTTPS = null;
 
-    private static void registerEasyHttps() {
+    private static synchronized void registerEasyHttps() {
         // by pass all https issue
         if (EASY_HTTPS == null) {
             EASY_HTTPS = new Protocol("https", (ProtocolSocketFactory) new DefaultSslProtocolSocketFactory(), 443);
@@ -167,7 +173,7 @@ public class HadoopStatusChecker {
         }
     }
 
-    public JobStepStatusEnum calculateStatus(JobStatus jobStatus) {
+    public static JobStepStatusEnum calculateStatus(JobStatus jobStatus) {
         JobStepStatusEnum status;
         switch (jobStatus.getState()) {
         case RUNNING:
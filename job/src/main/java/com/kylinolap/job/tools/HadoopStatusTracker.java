@@ -0,0 +1,350 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.job.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.mapreduce.Cluster;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.JobStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kylinolap.common.KylinConfig;
+import com.kylinolap.common.util.HadoopUtil;
+import com.kylinolap.job.constant.JobStepStatusEnum;
+
+/**
+ * Shared tracker for the status of submitted MR jobs. A single daemon thread
+ * refreshes the status of all tracked jobs in one sweep per interval, from a
+ * single job status listing of the cluster, so the number of threads and
+ * ResourceManager round-trips no longer grows with the number of running
+ * steps. Callers read the last known status, only the first
+ * call for a job asks the cluster directly, and may register a listener to be
+ * told when a job completes. Jobs no one asks about any more are dropped.
+ */
+public class HadoopStatusTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(HadoopStatusTracker.class);
+
+    // a completed job no one asked about for this long is dropped
+    private static final long COMPLETED_RETENTION_MS = 5 * 60 * 1000L;
+    // a job no one asked about nor listens to for this long is dropped
+    private static final long IDLE_RETENTION_MS = 60 * 60 * 1000L;
+
+    private static final ConcurrentHashMap<KylinConfig, HadoopStatusTracker> CACHE = new ConcurrentHashMap<KylinConfig, HadoopStatusTracker>();
+
+    public static HadoopStatusTracker getInstance(KylinConfig config) {
+        HadoopStatusTracker r = CACHE.get(config);
+        if (r == null) {
+            synchronized (HadoopStatusTracker.class) {
+                r = CACHE.get(config);
+                if (r == null) {
+                    r = new HadoopStatusTracker(config);
+                    CACHE.put(config, r);
+                    if (CACHE.size() > 1) {
+                        logger.warn("More than one singleton exist");
+                    }
+                }
+            }
+        }
+        return r;
+    }
+
+    public static void clearCache() {
+        for (HadoopStatusTracker tracker : CACHE.values()) {
+            tracker.shutdown();
+        }
+        CACHE.clear();
+    }
+
+    /**
+     * Notified from the tracker thread once a tracked MR job reaches a
+     * complete status. Implementations must not block.
+     */
+    public static interface StatusListener {
+        void onComplete(String mrJobID, JobStepStatusEnum status);
+    }
+
+    private static class TrackedJob {
+        final String mrJobID;
+        volatile JobStepStatusEnum status = JobStepStatusEnum.WAITING;
+        volatile StatusListener listener;
+        volatile long lastAccess = System.currentTimeMillis();
+        final StringBuilder log = new StringBuilder();
+
+        TrackedJob(String mrJobID) {
+            this.mrJobID = mrJobID;
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    private final String yarnUrl;
+    private final ConcurrentHashMap<String, TrackedJob> trackedJobs = new ConcurrentHashMap<String, TrackedJob>();
+    private final ScheduledExecutorService executor;
+    private Cluster cluster;
+
+    private HadoopStatusTracker(KylinConfig config) {
+        this.yarnUrl = config.getYarnStatusServiceUrl();
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "HadoopStatusTracker");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        int interval = Math.max(1, config.getYarnStatusCheckIntervalSeconds());
+        this.executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    checkAll();
+                } catch (Throwable t) {
+                    logger.error("Failed to refresh status of hadoop jobs", t);
+                }
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Return the last known status of the given MR job. A job not tracked yet
+     * is fetched from the cluster at once and tracked from then on, later
+     * calls do not block on the cluster.
+     */
+    public JobStepStatusEnum getStatus(String mrJobID) {
+        if (mrJobID == null || mrJobID.trim().length() == 0) {
+            return JobStepStatusEnum.WAITING;
+        }
+        TrackedJob job = trackedJobs.get(mrJobID);
+        if (job == null) {
+            job = track(mrJobID);
+            refresh(job);
+        }
+        job.touch();
+        return job.status;
+    }
+
+    /**
+     * Return and clear the status messages collected for the job since the
+     * last call, so callers can append them to the step output.
+     */
+    public String drainMessages(String mrJobID) {
+        TrackedJob job = mrJobID == null ? null : trackedJobs.get(mrJobID);
+        if (job == null) {
+            return "";
+        }
+        job.touch();
+        synchronized (job.log) {
+            String msg = job.log.toString();
+            job.log.setLength(0);
+            return msg;
+        }
+    }
+
+    public void setListener(String mrJobID, StatusListener listener) {
+        TrackedJob job = track(mrJobID);
+        job.touch();
+        job.listener = listener;
+        if (job.status.isComplete()) {
+            fireComplete(job);
+        }
+    }
+
+    public void untrack(String mrJobID) {
+        trackedJobs.remove(mrJobID);
+    }
+
+    public int getTrackedJobCount() {
+        return trackedJobs.size();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        trackedJobs.clear();
+        closeCluster();
+    }
+
+    private TrackedJob track(String mrJobID) {
+        TrackedJob job = trackedJobs.get(mrJobID);
+        if (job == null) {
+            TrackedJob newJob = new TrackedJob(mrJobID);
+            job = trackedJobs.putIfAbsent(mrJobID, newJob);
+            if (job == null) {
+                job = newJob;
+                logger.debug("Start tracking hadoop job " + mrJobID);
+            }
+        }
+        return job;
+    }
+
+    private void checkAll() {
+        long now = System.currentTimeMillis();
+        List<TrackedJob> pending = new ArrayList<TrackedJob>();
+        for (Iterator<Map.Entry<String, TrackedJob>> it = trackedJobs.entrySet().iterator(); it.hasNext();) {
+            TrackedJob job = it.next().getValue();
+            if (isExpired(job, now)) {
+                logger.debug("Stop tracking hadoop job " + job.mrJobID + ", status " + job.status);
+                it.remove();
+                continue;
+            }
+            if (job.status.isComplete()) {
+                // keep completed jobs around until the listener consumed them
+                if (job.listener == null) {
+                    continue;
+                }
+                fireComplete(job);
+            } else {
+                pending.add(job);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        logger.debug("Refreshing status of " + pending.size() + " hadoop jobs");
+        Map<String, JobStatus> statuses = getAllJobStatuses();
+        for (TrackedJob job : pending) {
+            JobStatus mrStatus = statuses.get(job.mrJobID);
+            if (mrStatus != null) {
+                update(job, HadoopStatusChecker.calculateStatus(mrStatus));
+            } else {
+                refresh(job);
+            }
+        }
+    }
+
+    /**
+     * One round-trip for the status of all jobs the cluster knows, keyed by
+     * job id. Empty if the job client is unavailable, the jobs are then asked
+     * for one by one.
+     */
+    private Map<String, JobStatus> getAllJobStatuses() {
+        try {
+            JobStatus[] all = getCluster().getAllJobStatuses();
+            Map<String, JobStatus> result = new HashMap<String, JobStatus>();
+            if (all != null) {
+                for (JobStatus status : all) {
+                    result.put(status.getJobID().toString(), status);
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            logger.warn("Failed to list job statuses from job client, fall back to single job queries", e);
+            closeCluster();
+            return Collections.emptyMap();
+        }
+    }
+
+    private boolean isExpired(TrackedJob job, long now) {
+        if (job.listener != null) {
+            return false;
+        }
+        long idle = now - job.lastAccess;
+        return idle > IDLE_RETENTION_MS || (job.status.isComplete() && idle > COMPLETED_RETENTION_MS);
+    }
+
+    private void refresh(TrackedJob job) {
+        update(job, queryStatus(job));
+    }
+
+    private void update(TrackedJob job, JobStepStatusEnum newStatus) {
+        if (newStatus == null) {
+            return;
+        }
+        if (newStatus != job.status) {
+            logger.debug("State of Hadoop job: " + job.mrJobID + " changed from " + job.status + " to " + newStatus);
+        }
+        job.status = newStatus;
+        if (newStatus.isComplete()) {
+            fireComplete(job);
+        }
+    }
+
+    private void fireComplete(TrackedJob job) {
+        StatusListener listener;
+        synchronized (job) {
+            listener = job.listener;
+            job.listener = null;
+        }
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onComplete(job.mrJobID, job.status);
+        } catch (Throwable t) {
+            logger.error("Status listener of hadoop job " + job.mrJobID + " failed", t);
+        }
+    }
+
+    /**
+     * Ask the cluster through the MR client API first; fall back to the YARN
+     * REST service if the job client is unavailable or does not know the job.
+     */
+    private JobStepStatusEnum queryStatus(TrackedJob job) {
+        try {
+            Job mrJob = getCluster().getJob(JobID.forName(job.mrJobID));
+            if (mrJob != null) {
+                return HadoopStatusChecker.calculateStatus(mrJob.getStatus());
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to get status of " + job.mrJobID + " from job client, fall back to REST", e);
+            closeCluster();
+        }
+
+        if (yarnUrl == null) {
+            return null;
+        }
+        synchronized (job.log) {
+            return new HadoopStatusChecker(yarnUrl, job.mrJobID, job.log).checkStatus();
+        }
+    }
+
+    private synchronized Cluster getCluster() throws IOException {
+        if (cluster == null) {
+            cluster = new Cluster(HadoopUtil.getCurrentConfiguration());
+        }
+        return cluster;
+    }
+
+    private synchronized void closeCluster() {
+        if (cluster != null) {
+            try {
+                cluster.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close hadoop cluster client", e);
+            }
+            cluster = null;
+        }
+    }
+}
@@ -87,6 +87,45 @@ public class JobDAOTest extends LocalFileMetadataTestCase {
 
     }
 
+    @Test
+    public void testLargeOutput() throws IOException {
+        String uuid = "132432cb-8c68-42d8-aa3a-504151b39d1b";
+        int seq = 2;
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            buf.append("line ").append(i).append("\n");
+        }
+        String s = buf.toString();
+        JobDAO service = JobDAO.getInstance(getTestConfig());
+        service.saveJobOutput(uuid, seq, s);
+        service.flushJobOutputs();
+
+        JobStepOutput output = service.getJobOutput(uuid, seq);
+        assertEquals(s, output.getOutput());
+    }
+
+    @Test
+    public void testListCache() throws IOException {
+        String uuid = "132432cb-8c68-42d8-aa3a-504151b39d1b";
+        JobDAO service = JobDAO.getInstance(getTestConfig());
+        service.updateJobInstance(createDumbJobInstance(uuid));
+        assertEquals(1, service.listAllJobs("test_kylin_cube_with_slr").size());
+
+        JobInstance job = service.getJob(uuid);
+        job.setRelatedCube("abc");
+        service.updateJobInstance(job);
+        assertEquals(1, service.listAllJobs("abc").size());
+        assertEquals(0, service.listAllJobs("test_kylin_cube_with_slr").size());
+
+        // changing a listed job must not change what the next listing sees
+        service.listAllJobs("abc").get(0).setRelatedCube("xyz");
+        assertEquals(1, service.listAllJobs("abc").size());
+        assertEquals(0, service.listAllJobs("xyz").size());
+
+        service.deleteJob(uuid);
+        assertEquals(0, service.listAllJobs("abc").size());
+    }
+
     private JobInstance createDumbJobInstance(String uuid) {
         try {
             ObjectMapper mapper = new ObjectMapper();
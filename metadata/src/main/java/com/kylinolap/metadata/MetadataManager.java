@@ -17,6 +17,7 @@ package com.kylinolap.metadata;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -38,6 +39,7 @@ import com.kylinolap.common.restclient.Broadcaster;
 import com.kylinolap.common.restclient.SingleValueCache;
 import com.kylinolap.common.util.JsonUtil;
 import com.kylinolap.metadata.model.cube.CubeDesc;
+import com.kylinolap.metadata.model.cube.DimensionDesc;
 import com.kylinolap.metadata.model.invertedindex.InvertedIndexDesc;
 import com.kylinolap.metadata.model.schema.TableDesc;
 import com.kylinolap.metadata.validation.CubeMetadataValidator;
@@ -102,13 +104,13 @@ public class MetadataManager {
 
     private KylinConfig config;
     // table name ==> SourceTable
-    private SingleValueCache<String, TableDesc> srcTableMap = new SingleValueCache<String, TableDesc>(Broadcaster.TYPE.METADATA);
+    private SingleValueCache<String, TableDesc> srcTableMap = new SingleValueCache<String, TableDesc>(Broadcaster.TYPE.TABLE);
     // name ==> CubeDesc
-    private SingleValueCache<String, CubeDesc> cubeDescMap = new SingleValueCache<String, CubeDesc>(Broadcaster.TYPE.METADATA);
+    private SingleValueCache<String, CubeDesc> cubeDescMap = new SingleValueCache<String, CubeDesc>(Broadcaster.TYPE.CUBE_DESC);
     // name ==> InvertedIndexDesc
     private SingleValueCache<String, InvertedIndexDesc> iiDescMap = new SingleValueCache<String, InvertedIndexDesc>(Broadcaster.TYPE.METADATA);
     // name => value
-    private SingleValueCache<String, Map<String, String>> srcTableExdMap = new SingleValueCache<String, Map<String, String>>(Broadcaster.TYPE.METADATA);
+    private SingleValueCache<String, Map<String, String>> srcTableExdMap = new SingleValueCache<String, Map<String, String>>(Broadcaster.TYPE.TABLE);
 
     private MetadataManager(KylinConfig config) throws IOException {
         init(config);
@@ -462,6 +464,76 @@ public class MetadataManager {
         return ndesc;
     }
 
+    /**
+     * Reload one source table and its extended info from resource store
+     * without broadcasting, then re-init the cube descs built on it. It will
+     * be triggered by a table event from another node.
+     * 
+     * @param tableName
+     * @return names of the cube descs re-inited
+     * @throws IOException
+     */
+    public List<String> reloadSourceTableLocal(String tableName) throws IOException {
+        tableName = tableName.toUpperCase();
+        ResourceStore store = getStore();
+
+        String path = ResourceStore.TABLE_RESOURCE_ROOT + "/" + tableName + MetadataConstances.FILE_SURFIX;
+        srcTableMap.removeLocal(tableName);
+        if (store.exists(path)) {
+            loadSourceTable(path);
+        }
+
+        String exdPath = ResourceStore.TABLE_EXD_RESOURCE_ROOT + "/" + tableName + MetadataConstances.FILE_SURFIX;
+        Map<String, String> attrContainer = new HashMap<String, String>();
+        if (loadSourceTableExd(store, exdPath, attrContainer) != null) {
+            srcTableExdMap.putLocal(tableName, attrContainer);
+        } else {
+            srcTableExdMap.removeLocal(tableName);
+        }
+
+        List<String> affected = new ArrayList<String>();
+        for (CubeDesc desc : Lists.newArrayList(cubeDescMap.values())) {
+            if (isTableUsed(desc, tableName)) {
+                reloadCubeDescLocal(desc.getName());
+                affected.add(desc.getName());
+            }
+        }
+        return affected;
+    }
+
+    private boolean isTableUsed(CubeDesc desc, String tableName) {
+        if (tableName.equalsIgnoreCase(desc.getFactTable()))
+            return true;
+        for (DimensionDesc dim : desc.getDimensions()) {
+            if (tableName.equalsIgnoreCase(dim.getTable()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reload one CubeDesc from resource store without broadcasting, or drop
+     * it if it's gone. It will be triggered by a desc event from another node.
+     * 
+     * @param name
+     * @throws IOException
+     */
+    public void reloadCubeDescLocal(String name) throws IOException {
+        String path = CubeDesc.getCubeDescResourcePath(name);
+        if (getStore().exists(path) == false) {
+            cubeDescMap.removeLocal(name);
+            return;
+        }
+
+        try {
+            CubeDesc ndesc = loadCubeDesc(path);
+            cubeDescMap.putLocal(ndesc.getName(), ndesc);
+        } catch (IllegalStateException e) {
+            logger.error("Error reloading cube desc " + path, e);
+            cubeDescMap.removeLocal(name);
+        }
+    }
+
     /**
      * Tell CubeManager that the cube instance has changed. The cube info will
      * be stored Reload the cube desc and source table A broadcast must be sent
@@ -477,6 +477,9 @@ public class CubeDesc extends RootPersistentEntity {
         initMeasureColumns(tables);
 
         rowkey.init(this);
+        if (isHBaseMappingEmpty() && measures != null && measures.isEmpty() == false) {
+            hbaseMapping = HBaseMappingDesc.layoutBySize(measures);
+        }
         if (hbaseMapping != null) {
             hbaseMapping.init(this);
         }
@@ -727,6 +730,10 @@ public class CubeDesc extends RootPersistentEntity {
         }
     }
 
+    private boolean isHBaseMappingEmpty() {
+        return hbaseMapping == null || hbaseMapping.getColumnFamily() == null || hbaseMapping.getColumnFamily().length == 0;
+    }
+
     private void initMeasureReferenceToColumnFamily() {
         if (measures == null || measures.size() == 0)
             return;
@@ -15,14 +15,17 @@
  */
 package com.kylinolap.metadata.model.cube;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.kylinolap.common.util.StringUtil;
+import com.kylinolap.metadata.model.schema.DataType;
 
 /**
  * Created with IntelliJ IDEA. User: lukhan Date: 9/24/13 Time: 10:44 AM To
@@ -34,6 +37,54 @@ public class HBaseMappingDesc {
     @JsonProperty("column_family")
     private HBaseColumnFamilyDesc[] columnFamily;
 
+    /**
+     * Lay out measures by size class, for cubes that give no mapping. Small
+     * numeric measures share one column in family F1, and each HLL counter
+     * gets a column of its own in family F2, so scans fetch and decode the
+     * heavy counters only when a query asks for them.
+     */
+    public static HBaseMappingDesc layoutBySize(List<MeasureDesc> measures) {
+        List<String> small = new ArrayList<String>();
+        List<String> heavy = new ArrayList<String>();
+        for (MeasureDesc m : measures) {
+            if (DataType.getInstance(m.getFunction().getReturnType()).isHLLC())
+                heavy.add(m.getName());
+            else
+                small.add(m.getName());
+        }
+
+        List<HBaseColumnFamilyDesc> families = new ArrayList<HBaseColumnFamilyDesc>();
+        if (small.isEmpty() == false) {
+            families.add(newColumnFamily("F1", new String[] { "M" }, new String[][] { small.toArray(new String[small.size()]) }));
+        }
+        if (heavy.isEmpty() == false) {
+            String[] qualifiers = new String[heavy.size()];
+            String[][] refs = new String[heavy.size()][];
+            for (int i = 0; i < heavy.size(); i++) {
+                qualifiers[i] = heavy.size() == 1 ? "M" : "M" + (i + 1);
+                refs[i] = new String[] { heavy.get(i) };
+            }
+            families.add(newColumnFamily(small.isEmpty() ? "F1" : "F2", qualifiers, refs));
+        }
+
+        HBaseMappingDesc result = new HBaseMappingDesc();
+        result.setColumnFamily(families.toArray(new HBaseColumnFamilyDesc[families.size()]));
+        return result;
+    }
+
+    private static HBaseColumnFamilyDesc newColumnFamily(String name, String[] qualifiers, String[][] measureRefs) {
+        HBaseColumnDesc[] columns = new HBaseColumnDesc[qualifiers.length];
+        for (int i = 0; i < qualifiers.length; i++) {
+            columns[i] = new HBaseColumnDesc();
+            columns[i].setQualifier(qualifiers[i]);
+            columns[i].setMeasureRefs(measureRefs[i]);
+        }
+        HBaseColumnFamilyDesc cf = new HBaseColumnFamilyDesc();
+        cf.setName(name);
+        cf.setColumns(columns);
+        return cf;
+    }
+
     // point to the cube instance which contain this HBaseMappingDesc instance.
     private CubeDesc cubeRef;
 
@@ -70,4 +70,19 @@ public class MetadataManagerTest extends LocalFileMetadataTestCase {
         Assert.assertNotNull(cubeDesc);
     }
 
+    @Test
+    public void testReloadSourceTableLocal() throws Exception {
+        MetadataManager mgr = MetadataManager.getInstance(this.getTestConfig());
+        TableDesc before = mgr.getTableDesc("TEST_CAL_DT");
+        CubeDesc descBefore = mgr.getCubeDesc("test_kylin_cube_with_slr_desc");
+
+        List<String> affected = mgr.reloadSourceTableLocal("test_cal_dt");
+
+        TableDesc after = mgr.getTableDesc("TEST_CAL_DT");
+        Assert.assertNotNull(after);
+        Assert.assertNotSame(before, after);
+        Assert.assertTrue(affected.contains("test_kylin_cube_with_slr_desc"));
+        Assert.assertNotSame(descBefore, mgr.getCubeDesc("test_kylin_cube_with_slr_desc"));
+    }
+
 }
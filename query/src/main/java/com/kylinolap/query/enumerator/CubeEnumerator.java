@@ -53,6 +53,7 @@ public class CubeEnumerator implements Enumerator<Object[]> {
     private final Object[] current;
     private ITupleIterator cursor;
     private int[] fieldIndexes;
+    private long storageNanos;
 
     public CubeEnumerator(OLAPContext olapContext, DataContext optiqContext) {
         this.olapContext = olapContext;
@@ -69,6 +70,15 @@ public class CubeEnumerator implements Enumerator<Object[]> {
 
     @Override
     public boolean moveNext() {
+        long startTime = System.nanoTime();
+        try {
+            return doMoveNext();
+        } finally {
+            addStorageTime(startTime);
+        }
+    }
+
+    private boolean doMoveNext() {
         if (cursor == null) {
             cursor = queryStorage();
         }
@@ -94,10 +104,18 @@ public class CubeEnumerator implements Enumerator<Object[]> {
     @Override
     public void close() {
         if (cursor != null) {
+            long startTime = System.nanoTime();
             cursor.close();
+            addStorageTime(startTime);
         }
     }
 
+    private void addStorageTime(long startNanos) {
+        // most calls take far less than a millisecond, sum up in nanos
+        storageNanos += System.nanoTime() - startNanos;
+        olapContext.storageTime = storageNanos / 1000000;
+    }
+
     private Object[] convertCurrentRow(ITuple tuple) {
 
         // build field index map
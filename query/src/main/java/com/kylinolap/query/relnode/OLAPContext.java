@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eigenbase.reltype.RelDataType;
 
@@ -32,6 +33,7 @@ import com.kylinolap.metadata.model.cube.FunctionDesc;
 import com.kylinolap.metadata.model.cube.JoinDesc;
 import com.kylinolap.metadata.model.cube.TblColRef;
 import com.kylinolap.query.schema.OLAPSchema;
+import com.kylinolap.storage.QueryMemoryBudget;
 import com.kylinolap.storage.StorageContext;
 import com.kylinolap.storage.filter.TupleFilter;
 
@@ -47,6 +49,10 @@ public class OLAPContext {
 
     private static final ThreadLocal<Map<Integer, OLAPContext>> _localContexts = new ThreadLocal<Map<Integer, OLAPContext>>();
 
+    private static final ThreadLocal<AtomicBoolean> _localCancelFlag = new ThreadLocal<AtomicBoolean>();
+
+    private static final ThreadLocal<QueryMemoryBudget.Account> _localMemoryAccount = new ThreadLocal<QueryMemoryBudget.Account>();
+
     public static void setParameters(Map<String, String> parameters) {
         _localPrarameters.set(parameters);
     }
@@ -55,6 +61,30 @@ public class OLAPContext {
         _localPrarameters.remove();
     }
 
+    /**
+     * Storage contexts created afterwards on this thread share the flag, and
+     * stop scanning once it is set.
+     */
+    public static void setCancelFlag(AtomicBoolean cancelFlag) {
+        _localCancelFlag.set(cancelFlag);
+    }
+
+    public static void clearCancelFlag() {
+        _localCancelFlag.remove();
+    }
+
+    /**
+     * Storage contexts created afterwards on this thread reserve memory
+     * through the account.
+     */
+    public static void setMemoryAccount(QueryMemoryBudget.Account account) {
+        _localMemoryAccount.set(account);
+    }
+
+    public static void clearMemoryAccount() {
+        _localMemoryAccount.remove();
+    }
+
     public static void registerContext(OLAPContext ctx) {
         if (_localContexts.get() == null) {
             Map<Integer, OLAPContext> contextMap = new HashMap<Integer, OLAPContext>();
@@ -79,6 +109,8 @@ public class OLAPContext {
     public OLAPContext(int seq) {
         this.id = seq;
         this.storageContext = new StorageContext();
+        this.storageContext.setCancelFlag(_localCancelFlag.get());
+        this.storageContext.setMemoryAccount(_localMemoryAccount.get());
         Map<String, String> parameters = _localPrarameters.get();
         if (parameters != null) {
             String acceptPartialResult = parameters.get(PRM_ACCEPT_PARTIAL_RESULT);
@@ -116,6 +148,10 @@ public class OLAPContext {
     // hive query
     public String sql = "";
 
+    // profile, in milliseconds
+    public long implementTime = 0; // cube routing, rewrite and code generation
+    public long storageTime = 0; // storage search and iteration
+
     public boolean isSimpleQuery() {
         return (joins.size() == 0) && (groupByColumns.size() == 0) && (aggregations.size() == 0);
     }
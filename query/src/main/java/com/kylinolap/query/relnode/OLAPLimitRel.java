@@ -79,6 +79,10 @@ public class OLAPLimitRel extends SingleRel implements OLAPRel, EnumerableRel {
         this.context = implementor.getContext();
         Number limitValue = (Number) (((RexLiteral) localFetch).getValue());
         int limit = limitValue.intValue();
+        // rows skipped by offset have to come from storage too
+        if (localOffset instanceof RexLiteral) {
+            limit += ((Number) ((RexLiteral) localOffset).getValue()).intValue();
+        }
         this.context.storageContext.setLimit(limit);
     }
 
@@ -15,6 +15,7 @@
  */
 package com.kylinolap.query.relnode;
 
+import java.util.Collection;
 import java.util.List;
 
 import net.hydromatic.linq4j.expressions.Blocks;
@@ -63,6 +64,21 @@ public class OLAPToEnumerableConverter extends ConverterRelImpl implements Enume
 
     @Override
     public Result implement(EnumerableRelImplementor enumImplementor, Prefer pref) {
+        long startTime = System.currentTimeMillis();
+        try {
+            return doImplement(enumImplementor, pref);
+        } finally {
+            long implementTime = System.currentTimeMillis() - startTime;
+            Collection<OLAPContext> contexts = OLAPContext.getThreadLocalContexts();
+            if (contexts != null) {
+                for (OLAPContext context : contexts) {
+                    context.implementTime = implementTime;
+                }
+            }
+        }
+    }
+
+    private Result doImplement(EnumerableRelImplementor enumImplementor, Prefer pref) {
         // post-order travel children
         OLAPImplementor olapImplementor = new OLAPRel.OLAPImplementor();
         olapImplementor.visitChild(getChild(), this);
@@ -28,6 +28,7 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import com.kylinolap.rest.exception.BadRequestException;
 import com.kylinolap.rest.exception.ForbiddenException;
 import com.kylinolap.rest.exception.NotFoundException;
+import com.kylinolap.rest.exception.ServiceUnavailableException;
 import com.kylinolap.rest.response.ErrorResponse;
 import com.kylinolap.rest.service.MetricsService;
 
@@ -73,4 +74,12 @@ public class BasicController {
         logger.error("", ex);
         return new ErrorResponse(req.getRequestURL().toString(), ex);
     }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(ServiceUnavailableException.class)
+    @ResponseBody
+    ErrorResponse handleServiceUnavailable(HttpServletRequest req, Exception ex) {
+        logger.warn(ex.getMessage());
+        return new ErrorResponse(req.getRequestURL().toString(), ex);
+    }
 }
@@ -16,19 +16,30 @@
 package com.kylinolap.rest.controller;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import com.kylinolap.common.persistence.ResourceStore;
 import com.kylinolap.common.restclient.Broadcaster;
 import com.kylinolap.common.restclient.Broadcaster.EVENT;
+import com.kylinolap.cube.cuboid.Cuboid;
+import com.kylinolap.cube.kv.AbstractRowKeyEncoder;
 import com.kylinolap.metadata.MetadataConstances;
+import com.kylinolap.rest.service.AclService;
 import com.kylinolap.rest.service.CubeService;
 import com.kylinolap.rest.service.ProjectService;
 
@@ -49,6 +60,9 @@ public class CacheController extends BasicController {
     @Autowired
     private ProjectService projectService;
 
+    @Autowired
+    private AclService aclService;
+
     /**
      * Wipe system cache
      * 
@@ -63,19 +77,113 @@ public class CacheController extends BasicController {
     @RequestMapping(value = "/{type}/{name}/{event}", method = { RequestMethod.PUT })
     @ResponseBody
     public void wipeCache(@PathVariable String type, @PathVariable String event, @PathVariable String name) throws IOException {
+        // drop what changed on other nodes from the local resource cache first
+        revalidateResourceCache(Collections.singletonList(type));
+
+        wipe(type, event, name);
+    }
+
+    /**
+     * Wipe system cache for a batch of events, each as "type/name/event".
+     * 
+     * @param events
+     * @throws IOException
+     */
+    @RequestMapping(value = "/batch", method = { RequestMethod.PUT })
+    @ResponseBody
+    public void wipeCache(@RequestBody List<String> events) throws IOException {
+        List<String> types = new ArrayList<String>();
+        for (String event : events) {
+            types.add(event.split("/")[0]);
+        }
+        revalidateResourceCache(types);
+
+        for (String event : events) {
+            String[] parts = event.split("/");
+            if (parts.length != 3) {
+                logger.warn("Ignore malformed cache wipe event " + event);
+                continue;
+            }
+            wipe(parts[0], parts[2], parts[1]);
+        }
+    }
+
+    /**
+     * Revalidate only the cached resources under the roots the event types
+     * may have changed, once per root.
+     */
+    private void revalidateResourceCache(Collection<String> types) throws IOException {
+        Set<String> roots = new HashSet<String>();
+        for (String type : types) {
+            Broadcaster.TYPE wipeType = Broadcaster.TYPE.getType(type);
+            if (wipeType == null)
+                continue;
+
+            switch (wipeType) {
+            case METADATA:
+                roots.add("/");
+                break;
+            case TABLE:
+                roots.add(ResourceStore.TABLE_RESOURCE_ROOT + "/");
+                roots.add(ResourceStore.TABLE_EXD_RESOURCE_ROOT + "/");
+                break;
+            case CUBE_DESC:
+                roots.add(ResourceStore.CUBE_DESC_RESOURCE_ROOT + "/");
+                break;
+            case CUBE:
+                roots.add(ResourceStore.CUBE_RESOURCE_ROOT + "/");
+                break;
+            case PROJECT:
+                roots.add(ResourceStore.PROJECT_RESOURCE_ROOT + "/");
+                break;
+            case ACL:
+                break; // not kept in the resource store
+            }
+        }
+
+        if (roots.contains("/")) {
+            cubeMgmtService.revalidateResourceCache("/");
+            return;
+        }
+        for (String root : roots) {
+            cubeMgmtService.revalidateResourceCache(root);
+        }
+    }
+
+    /**
+     * Invalidate only what depends on the changed object: the cube, desc,
+     * table or project itself, its cuboids and lookup tables, and data source
+     * and query cache of the projects involved. The "metadata" type and the
+     * "ALL" name still reset everything.
+     */
+    private void wipe(String type, String event, String name) throws IOException {
         Broadcaster.TYPE wipeType = Broadcaster.TYPE.getType(type);
         EVENT wipeEvent = Broadcaster.EVENT.getEvent(event);
+        if (wipeType == null || wipeEvent == null) {
+            logger.warn("Ignore unknown cache wipe event " + type + "/" + name + "/" + event);
+            return;
+        }
+
         switch (wipeType) {
         case METADATA:
             logger.debug("Reload all metadata");
             cubeMgmtService.reloadMetadataCache();
-            projectService.cleanDataCache();
             cubeMgmtService.cleanDataCache();
+            Cuboid.clearCache();
+            AbstractRowKeyEncoder.clearCache();
+            break;
+        case TABLE:
+            logger.debug("Reload table " + name + ", event type " + event);
+            cubeMgmtService.reloadTableCache(name);
+            break;
+        case CUBE_DESC:
+            logger.debug("Reload cube desc " + name + ", event type " + event);
+            cubeMgmtService.reloadCubeDescCache(name);
             break;
         case CUBE:
             logger.debug("Reload cube " + name + " with type:" + type + ", event type " + event);
-            cubeMgmtService.reloadMetadataCache();
             if ("ALL".equalsIgnoreCase(name.toUpperCase())) {
+                cubeMgmtService.reloadMetadataCache();
                 cubeMgmtService.cleanDataCache();
                 break;
             }
@@ -92,8 +200,8 @@ public class CacheController extends BasicController {
             break;
         case PROJECT:
             logger.debug("Reload project " + name + " with type:" + type + ", event type " + event);
-            cubeMgmtService.reloadMetadataCache();
             if ("ALL".equalsIgnoreCase(name.toUpperCase())) {
+                cubeMgmtService.reloadMetadataCache();
                 projectService.cleanDataCache();
                 break;
             }
@@ -108,6 +216,10 @@ public class CacheController extends BasicController {
                 break;
             }
             break;
+        case ACL:
+            logger.debug("Reload acl of " + name + ", event type " + event);
+            aclService.invalidateAcl("ALL".equalsIgnoreCase(name) ? null : name);
+            break;
         }
     }
 }
@@ -24,6 +24,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -42,6 +43,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.supercsv.io.CsvListWriter;
 import org.supercsv.io.ICsvListWriter;
@@ -51,8 +53,11 @@ import com.codahale.metrics.annotation.Timed;
 import com.kylinolap.common.KylinConfig;
 import com.kylinolap.cube.CubeInstance;
 import com.kylinolap.rest.constant.Constant;
+import com.kylinolap.rest.exception.BadRequestException;
 import com.kylinolap.rest.exception.ForbiddenException;
 import com.kylinolap.rest.exception.InternalErrorException;
+import com.kylinolap.rest.exception.NotFoundException;
+import com.kylinolap.rest.exception.ServiceUnavailableException;
 import com.kylinolap.rest.model.Query;
 import com.kylinolap.rest.model.SelectedColumnMeta;
 import com.kylinolap.rest.model.TableMeta;
@@ -60,9 +65,16 @@ import com.kylinolap.rest.request.MetaRequest;
 import com.kylinolap.rest.request.PrepareSqlRequest;
 import com.kylinolap.rest.request.SQLRequest;
 import com.kylinolap.rest.request.SaveSqlRequest;
+import com.kylinolap.rest.response.QueryProfile;
+import com.kylinolap.rest.response.QueryStatus;
+import com.kylinolap.rest.response.QueryStatus.Lane;
+import com.kylinolap.rest.response.QueryStatus.State;
 import com.kylinolap.rest.response.SQLResponse;
 import com.kylinolap.rest.service.QueryService;
+import com.kylinolap.rest.service.QueryTracker.TrackedQuery;
 import com.kylinolap.rest.util.QueryUtil;
+import com.kylinolap.storage.QueryCancelledException;
+import com.kylinolap.storage.QueryRejectedException;
 
 /**
  * Handle query requests.
@@ -87,26 +99,14 @@ public class QueryController extends BasicController {
     @ResponseBody
     @Timed(name = "query")
     public SQLResponse query(@RequestBody SQLRequest sqlRequest) {
-        long startTimestamp = System.currentTimeMillis();
-
-        SQLResponse response = doQuery(sqlRequest);
-        response.setDuration(System.currentTimeMillis() - startTimestamp);
-
-        queryService.logQuery(sqlRequest, response, new Date(startTimestamp), new Date(System.currentTimeMillis()));
-
-        return response;
+        return runTracked(sqlRequest, Lane.INTERACTIVE, newQueryTask(sqlRequest, true));
     }
 
     @RequestMapping(value = "/query/prestate", method = RequestMethod.POST, produces = "application/json")
     @ResponseBody
     @Timed(name = "query")
     public SQLResponse prepareQuery(@RequestBody PrepareSqlRequest sqlRequest) {
-        long startTimestamp = System.currentTimeMillis();
-
-        SQLResponse response = doQuery(sqlRequest);
-        response.setDuration(System.currentTimeMillis() - startTimestamp);
-
-        queryService.logQuery(sqlRequest, response, new Date(startTimestamp), new Date(System.currentTimeMillis()));
+        SQLResponse response = runTracked(sqlRequest, Lane.INTERACTIVE, newQueryTask(sqlRequest, true));
 
         if (response.getIsException()) {
             String errorMsg = response.getExceptionMessage();
@@ -116,6 +116,55 @@ public class QueryController extends BasicController {
         return response;
     }
 
+    /**
+     * Submit a query to run in background, the servlet thread returns at once
+     * with the query id for status and result polling.
+     */
+    @RequestMapping(value = "/query/async", method = RequestMethod.POST)
+    @ResponseBody
+    @Timed(name = "submitQuery")
+    public QueryStatus submitQuery(@RequestBody SQLRequest sqlRequest) {
+        TrackedQuery query = queryService.admitQuery(sqlRequest, true, Lane.EXPORT);
+        queryService.submitQuery(query, newQueryTask(sqlRequest, true));
+        return query.getStatus();
+    }
+
+    @RequestMapping(value = "/query/async/{id}", method = RequestMethod.GET)
+    @ResponseBody
+    public QueryStatus getQueryStatus(@PathVariable String id) {
+        return queryService.getTrackedQuery(id).getStatus();
+    }
+
+    @RequestMapping(value = "/query/async/{id}/result", method = RequestMethod.GET)
+    @ResponseBody
+    public SQLResponse getQueryResult(@PathVariable String id) {
+        TrackedQuery query = queryService.getTrackedQuery(id);
+        State state = query.getState();
+        if (state.isDone() == false) {
+            throw new BadRequestException("Query " + id + " is " + state + ", poll its status until it is done");
+        }
+        if (state != State.SUCCEED) {
+            throw new InternalErrorException(query.getExceptionMessage());
+        }
+        return query.getResponse();
+    }
+
+    /**
+     * Cancel a running query, synchronous ones are identified by the query id
+     * given in their request.
+     */
+    @RequestMapping(value = "/query/{id}", method = RequestMethod.DELETE)
+    @ResponseBody
+    public void cancelQuery(@PathVariable String id) {
+        queryService.cancelQuery(id);
+    }
+
+    @RequestMapping(value = "/query/running", method = RequestMethod.GET)
+    @ResponseBody
+    public List<QueryStatus> getRunningQueries() {
+        return queryService.getRunningQueries();
+    }
+
     @RequestMapping(value = "/saved_queries", method = RequestMethod.POST)
     @ResponseBody
     @Timed(name = "saveQuery")
@@ -146,7 +195,7 @@ public class QueryController extends BasicController {
     @ResponseBody
     @Timed(name = "downloadResult")
     public void downloadQueryResult(@PathVariable String format, SQLRequest sqlRequest, HttpServletResponse response) {
-        SQLResponse result = doQuery(sqlRequest);
+        SQLResponse result = runTracked(sqlRequest, Lane.EXPORT, newQueryTask(sqlRequest, false));
         response.setContentType("text/" + format + ";charset=utf-8");
         response.setHeader("Content-Disposition", "attachment; filename=\"result." + format + "\"");
         ICsvListWriter csvWriter = null;
@@ -173,6 +222,22 @@ public class QueryController extends BasicController {
         }
     }
 
+    @RequestMapping(value = "/query/profiles", method = RequestMethod.GET)
+    @ResponseBody
+    public List<QueryProfile> getQueryProfiles(@RequestParam(value = "limit", required = false) Integer limit) {
+        return queryService.getQueryProfiles(limit == null ? Integer.MAX_VALUE : limit);
+    }
+
+    @RequestMapping(value = "/query/profiles/{id}", method = RequestMethod.GET)
+    @ResponseBody
+    public QueryProfile getQueryProfile(@PathVariable String id) {
+        QueryProfile profile = queryService.getQueryProfile(id);
+        if (profile == null) {
+            throw new NotFoundException("Query profile " + id + " not found, it may have been overwritten by newer queries");
+        }
+        return profile;
+    }
+
     @RequestMapping(value = "/tables_and_columns", method = RequestMethod.GET)
     @ResponseBody
     public List<TableMeta> getMetadata(MetaRequest metaRequest) {
@@ -184,6 +249,36 @@ public class QueryController extends BasicController {
         }
     }
 
+    private Callable<SQLResponse> newQueryTask(final SQLRequest sqlRequest, final boolean logQuery) {
+        return new Callable<SQLResponse>() {
+            @Override
+            public SQLResponse call() {
+                long startTimestamp = System.currentTimeMillis();
+
+                SQLResponse response = doQuery(sqlRequest);
+                response.setDuration(System.currentTimeMillis() - startTimestamp);
+
+                if (logQuery) {
+                    queryService.logQuery(sqlRequest, response, new Date(startTimestamp), new Date(System.currentTimeMillis()));
+                }
+                return response;
+            }
+        };
+    }
+
+    private SQLResponse runTracked(SQLRequest sqlRequest, Lane lane, Callable<SQLResponse> task) {
+        TrackedQuery query = queryService.admitQuery(sqlRequest, false, lane);
+        try {
+            return queryService.runQuery(query, task);
+        } catch (QueryRejectedException e) {
+            throw new ServiceUnavailableException(e.getLocalizedMessage());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InternalErrorException(e.getLocalizedMessage(), e);
+        }
+    }
+
     private SQLResponse doQuery(SQLRequest sqlRequest) {
         String sql = sqlRequest.getSql();
         String project = sqlRequest.getProject();
@@ -220,15 +315,30 @@ public class QueryController extends BasicController {
             logger.error("Exception when execute sql", ade);
             throw new ForbiddenException(ade.getLocalizedMessage());
         } catch (Throwable e) { // calcite may throw AssertError
-            SQLResponse exceptionRes = new SQLResponse(null, null, 0, true, e.getMessage());
-            Cache exceptionCache = cacheManager.getCache(EXCEPTION_QUERY_CACHE);
-            exceptionCache.put(new Element(sqlRequest, exceptionRes));
+            // a cancelled or rejected query may well succeed next time
+            boolean rejected = hasCause(e, QueryRejectedException.class);
+            if (rejected == false && hasCause(e, QueryCancelledException.class) == false) {
+                SQLResponse exceptionRes = new SQLResponse(null, null, 0, true, e.getMessage());
+                Cache exceptionCache = cacheManager.getCache(EXCEPTION_QUERY_CACHE);
+                exceptionCache.put(new Element(sqlRequest, exceptionRes));
+            }
 
             logger.error("Exception when execute sql", e);
+            if (rejected) {
+                throw new ServiceUnavailableException(QueryUtil.makeErrorMsgUserFriendly(e.getLocalizedMessage()));
+            }
             throw new InternalErrorException(QueryUtil.makeErrorMsgUserFriendly(e.getLocalizedMessage()));
         }
     }
 
+    private boolean hasCause(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (type.isInstance(t))
+                return true;
+        }
+        return false;
+    }
+
     private SQLResponse searchQueryInCache(SQLRequest sqlRequest) {
         SQLResponse response = null;
         Cache exceptionCache = cacheManager.getCache(EXCEPTION_QUERY_CACHE);
@@ -21,10 +21,17 @@ import java.util.Map;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.MetricSet;
+import com.kylinolap.common.util.LatencyHistogram;
 import com.kylinolap.job.JobManager;
+import com.kylinolap.job.engine.JobEngine;
 
 /**
+ * Job engine gauges, plus count and duration percentiles per job step name.
+ * Step durations are in milliseconds over the steps of the last day; gauges of
+ * a step name are registered when a step of that name first completes.
+ * 
  * @author xduo
  * 
  */
@@ -32,6 +39,9 @@ public class JobMetrics implements MetricSet {
 
     private JobManager jobManager;
 
+    private MetricRegistry registry;
+    private String registryName;
+
     static class JobMetricsHolder {
         static final JobMetrics INSTANCE = new JobMetrics();
     }
@@ -105,9 +115,59 @@ public class JobMetrics implements MetricSet {
             }
         });
 
+        for (Map.Entry<String, LatencyHistogram> entry : JobEngine.getJobStepDurationByName().entrySet()) {
+            addStepMetrics(metricSet, entry.getKey(), entry.getValue());
+        }
+
         return metricSet;
     }
 
+    /**
+     * Register all metrics under the given name, including those of job steps
+     * that complete for the first time later.
+     */
+    public synchronized void register(MetricRegistry registry, String name) {
+        this.registry = registry;
+        this.registryName = name;
+        JobEngine.setStepNameListener(new JobEngine.StepNameListener() {
+            @Override
+            public void onNewStepName(String stepName, LatencyHistogram duration) {
+                registerLate(stepName, duration);
+            }
+        });
+        for (Map.Entry<String, Metric> entry : getMetrics().entrySet()) {
+            registerIfAbsent(MetricRegistry.name(name, entry.getKey()), entry.getValue());
+        }
+    }
+
+    private synchronized void registerLate(String stepName, LatencyHistogram duration) {
+        Map<String, Metric> metricSet = new HashMap<String, Metric>();
+        addStepMetrics(metricSet, stepName, duration);
+        for (Map.Entry<String, Metric> entry : metricSet.entrySet()) {
+            registerIfAbsent(MetricRegistry.name(registryName, entry.getKey()), entry.getValue());
+        }
+    }
+
+    private void registerIfAbsent(String name, Metric metric) {
+        if (registry.getNames().contains(name) == false) {
+            registry.register(name, metric);
+        }
+    }
+
+    private static void addStepMetrics(Map<String, Metric> metricSet, String stepName, final LatencyHistogram duration) {
+        String prefix = "step." + stepName + ".";
+
+        metricSet.put(prefix + "count", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return duration.getCount();
+            }
+        });
+        QueryMetrics.addPercentile(metricSet, prefix + "duration.p50", duration, 50);
+        QueryMetrics.addPercentile(metricSet, prefix + "duration.p95", duration, 95);
+        QueryMetrics.addPercentile(metricSet, prefix + "duration.p99", duration, 99);
+    }
+
     public void setJobManager(JobManager jobManager) {
         this.jobManager = jobManager;
     }
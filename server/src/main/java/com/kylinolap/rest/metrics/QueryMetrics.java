@@ -16,26 +16,55 @@
 
 package com.kylinolap.rest.metrics;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.MetricSet;
+import com.kylinolap.common.util.LatencyHistogram;
+import com.kylinolap.common.util.StripedCounter;
 
 /**
+ * Query counts, scan counts and latency histograms, in total and broken down
+ * by project, cube and query outcome. Recording takes no lock; stats for a
+ * project or cube seen for the first time are registered to the metric
+ * registry as they appear. Counts are cumulative since server start, durations
+ * cover the queries of the last five minutes.
+ * 
  * @author xduo
  * 
  */
 public class QueryMetrics implements MetricSet {
 
-    private Map<String, Float> metrics = new HashMap<String, Float>();
+    public enum Outcome {
+        CACHE_HIT, COPROCESSOR, PARTIAL_RESULT, EXCEPTION
+    }
+
+    // duration gauges report on the queries of the last few minutes only
+    private static final long DURATION_WINDOW_MS = 5 * 60 * 1000L;
+
+    static class QueryStats {
+        final StripedCounter count = new StripedCounter();
+        final StripedCounter scanCount = new StripedCounter();
+        final LatencyHistogram duration = new LatencyHistogram(DURATION_WINDOW_MS);
+    }
+
+    private static final String TOTAL = "";
+
+    private final ConcurrentHashMap<String, QueryStats> stats = new ConcurrentHashMap<String, QueryStats>();
+
+    private MetricRegistry registry;
+    private String registryName;
 
     private QueryMetrics() {
-        // register query metrics
-        this.increase("duration", (float) 0);
-        this.increase("totalScanCount", (float) 0);
-        this.increase("count", (float) 0);
+        getStats(TOTAL);
+        for (Outcome outcome : Outcome.values()) {
+            getStats(outcomeKey(outcome));
+        }
     }
 
     static class QueryMetricsHolder {
@@ -46,35 +75,122 @@ public class QueryMetrics implements MetricSet {
         return QueryMetricsHolder.INSTANCE;
     }
 
-    public synchronized void increase(String key, Float value) {
-        if (metrics.containsKey(key)) {
-            metrics.put(key, metrics.get(key) + value);
-        } else {
-            metrics.put(key, value);
+    /**
+     * @param durationMillis
+     *            query duration in milliseconds
+     */
+    public void record(String project, Collection<String> cubes, Collection<Outcome> outcomes, long durationMillis, long scanCount) {
+        record(getStats(TOTAL), durationMillis, scanCount);
+        if (project != null) {
+            record(getStats("project." + project), durationMillis, scanCount);
+        }
+        for (String cube : cubes) {
+            record(getStats("cube." + cube), durationMillis, scanCount);
+        }
+        for (Outcome outcome : outcomes) {
+            record(getStats(outcomeKey(outcome)), durationMillis, scanCount);
         }
     }
 
-    public synchronized Float getAndReset(String key) {
-        float value = metrics.get(key);
-        metrics.put(key, (float) 0);
+    private void record(QueryStats s, long durationMillis, long scanCount) {
+        s.count.increment();
+        s.scanCount.add(scanCount);
+        s.duration.record(durationMillis);
+    }
 
-        return value;
+    private static String outcomeKey(Outcome outcome) {
+        return "outcome." + outcome.name().toLowerCase();
     }
 
-    public synchronized Map<String, Metric> getMetrics() {
-        Map<String, Metric> metricSet = new HashMap<String, Metric>();
+    private QueryStats getStats(String key) {
+        QueryStats s = stats.get(key);
+        if (s == null) {
+            QueryStats newStats = new QueryStats();
+            s = stats.putIfAbsent(key, newStats);
+            if (s == null) {
+                s = newStats;
+                registerLate(key, s);
+            }
+        }
+        return s;
+    }
 
-        for (final String key : metrics.keySet()) {
-            metricSet.put(key, new Gauge<Float>() {
-                @Override
-                public Float getValue() {
-                    float value = getAndReset(key);
+    /**
+     * Register all metrics under the given name, including those of projects
+     * and cubes that appear later.
+     */
+    public synchronized void register(MetricRegistry registry, String name) {
+        this.registry = registry;
+        this.registryName = name;
+        for (Map.Entry<String, Metric> entry : getMetrics().entrySet()) {
+            registerIfAbsent(MetricRegistry.name(name, entry.getKey()), entry.getValue());
+        }
+    }
 
-                    return value;
-                }
-            });
+    private synchronized void registerLate(String key, QueryStats s) {
+        if (registry == null) {
+            return;
         }
+        Map<String, Metric> metrics = new HashMap<String, Metric>();
+        addMetrics(metrics, key, s);
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            registerIfAbsent(MetricRegistry.name(registryName, entry.getKey()), entry.getValue());
+        }
+    }
+
+    private void registerIfAbsent(String name, Metric metric) {
+        if (registry.getNames().contains(name) == false) {
+            registry.register(name, metric);
+        }
+    }
 
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> metricSet = new HashMap<String, Metric>();
+        for (Map.Entry<String, QueryStats> entry : stats.entrySet()) {
+            addMetrics(metricSet, entry.getKey(), entry.getValue());
+        }
         return metricSet;
     }
+
+    private static void addMetrics(Map<String, Metric> metricSet, String key, final QueryStats s) {
+        String prefix = key.length() == 0 ? "" : key + ".";
+
+        metricSet.put(prefix + "count", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return s.count.get();
+            }
+        });
+        metricSet.put(prefix + "totalScanCount", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return s.scanCount.get();
+            }
+        });
+        metricSet.put(prefix + "duration.mean", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return s.duration.getMean();
+            }
+        });
+        metricSet.put(prefix + "duration.max", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return s.duration.getMax();
+            }
+        });
+        addPercentile(metricSet, prefix + "duration.p50", s.duration, 50);
+        addPercentile(metricSet, prefix + "duration.p95", s.duration, 95);
+        addPercentile(metricSet, prefix + "duration.p99", s.duration, 99);
+    }
+
+    static void addPercentile(Map<String, Metric> metricSet, String name, final LatencyHistogram histogram, final double percentile) {
+        metricSet.put(name, new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return histogram.getPercentile(percentile);
+            }
+        });
+    }
 }
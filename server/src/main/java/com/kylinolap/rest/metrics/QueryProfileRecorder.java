@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.rest.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.kylinolap.common.KylinConfig;
+import com.kylinolap.rest.response.QueryProfile;
+
+/**
+ * Keeps the profiles of the most recent queries in a fixed size ring buffer.
+ * Recording never blocks, older profiles are overwritten.
+ */
+public class QueryProfileRecorder {
+
+    private final AtomicReferenceArray<QueryProfile> buffer;
+    private final AtomicLong recorded = new AtomicLong(0);
+
+    QueryProfileRecorder(int capacity) {
+        this.buffer = new AtomicReferenceArray<QueryProfile>(Math.max(1, capacity));
+    }
+
+    static class QueryProfileRecorderHolder {
+        static final QueryProfileRecorder INSTANCE = new QueryProfileRecorder(KylinConfig.getInstanceFromEnv().getQueryProfileBufferSize());
+    }
+
+    public static QueryProfileRecorder getInstance() {
+        return QueryProfileRecorderHolder.INSTANCE;
+    }
+
+    public void record(QueryProfile profile) {
+        long seq = recorded.getAndIncrement();
+        buffer.set((int) (seq % buffer.length()), profile);
+    }
+
+    /**
+     * @return recorded profiles, most recent first
+     */
+    public List<QueryProfile> getProfiles(int limit) {
+        long last = recorded.get();
+        int n = (int) Math.min(Math.min(last, buffer.length()), limit);
+        List<QueryProfile> result = new ArrayList<QueryProfile>(n);
+        for (long seq = last - 1; seq >= last - n; seq--) {
+            QueryProfile profile = buffer.get((int) (seq % buffer.length()));
+            if (profile != null) {
+                result.add(profile);
+            }
+        }
+        return result;
+    }
+
+    public QueryProfile getProfile(String id) {
+        for (int i = 0; i < buffer.length(); i++) {
+            QueryProfile profile = buffer.get(i);
+            if (profile != null && profile.getId().equals(id)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    public int getCapacity() {
+        return buffer.length();
+    }
+}
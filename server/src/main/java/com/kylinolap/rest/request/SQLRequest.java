@@ -22,10 +22,19 @@ public class SQLRequest {
     private Integer offset = 0;
     private Integer limit = 0;
     private boolean acceptPartial = true;
+    private String queryId; // optional, lets the client cancel the query; not part of the cache key
 
     public SQLRequest() {
     }
 
+    public String getQueryId() {
+        return queryId;
+    }
+
+    public void setQueryId(String queryId) {
+        this.queryId = queryId;
+    }
+
     public String getProject() {
         return project;
     }
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.rest.response;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.kylinolap.storage.ScanStats;
+
+/**
+ * Where the time of one query went. Stage times are in milliseconds:
+ * <ul>
+ * <li>prepare - parse, validate and optimize in Optiq</li>
+ * <li>implement - cube routing, rewrite and code generation</li>
+ * <li>execute - iterating the result, which splits into storage (search and
+ * scan of the cube segments) and post aggregation (what Optiq does on top)</li>
+ * </ul>
+ */
+public class QueryProfile implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String id;
+    private String sql;
+    private String project;
+    private String user;
+    private long startTime;
+    private long duration;
+
+    private long prepareTime;
+    private long implementTime;
+    private long executeTime;
+    private long storageTime;
+    private long postAggregationTime;
+
+    private List<String> cubes = new ArrayList<String>();
+    private List<Long> cuboidIds = new ArrayList<Long>();
+    private int keyRangeCount;
+    private boolean coprocessor;
+    private long totalScanCount;
+    private int resultRowCount;
+    private boolean partial;
+    private boolean hitCache;
+    private boolean exception;
+    private List<ScanStats> scanStats = new ArrayList<ScanStats>();
+
+    public QueryProfile() {
+    }
+
+    public QueryProfile(String sql, String project, long startTime) {
+        this.id = UUID.randomUUID().toString();
+        this.sql = sql;
+        this.project = project;
+        this.startTime = startTime;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public long getPrepareTime() {
+        return prepareTime;
+    }
+
+    public void setPrepareTime(long prepareTime) {
+        this.prepareTime = prepareTime;
+    }
+
+    public long getImplementTime() {
+        return implementTime;
+    }
+
+    public void setImplementTime(long implementTime) {
+        this.implementTime = implementTime;
+    }
+
+    public long getExecuteTime() {
+        return executeTime;
+    }
+
+    public void setExecuteTime(long executeTime) {
+        this.executeTime = executeTime;
+    }
+
+    public long getStorageTime() {
+        return storageTime;
+    }
+
+    public void setStorageTime(long storageTime) {
+        this.storageTime = storageTime;
+    }
+
+    public long getPostAggregationTime() {
+        return postAggregationTime;
+    }
+
+    public void setPostAggregationTime(long postAggregationTime) {
+        this.postAggregationTime = postAggregationTime;
+    }
+
+    public List<String> getCubes() {
+        return cubes;
+    }
+
+    public List<Long> getCuboidIds() {
+        return cuboidIds;
+    }
+
+    public int getKeyRangeCount() {
+        return keyRangeCount;
+    }
+
+    public void setKeyRangeCount(int keyRangeCount) {
+        this.keyRangeCount = keyRangeCount;
+    }
+
+    public boolean isCoprocessor() {
+        return coprocessor;
+    }
+
+    public void setCoprocessor(boolean coprocessor) {
+        this.coprocessor = coprocessor;
+    }
+
+    public long getTotalScanCount() {
+        return totalScanCount;
+    }
+
+    public void setTotalScanCount(long totalScanCount) {
+        this.totalScanCount = totalScanCount;
+    }
+
+    public int getResultRowCount() {
+        return resultRowCount;
+    }
+
+    public void setResultRowCount(int resultRowCount) {
+        this.resultRowCount = resultRowCount;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    public boolean isHitCache() {
+        return hitCache;
+    }
+
+    public void setHitCache(boolean hitCache) {
+        this.hitCache = hitCache;
+    }
+
+    public boolean isException() {
+        return exception;
+    }
+
+    public void setException(boolean exception) {
+        this.exception = exception;
+    }
+
+    public List<ScanStats> getScanStats() {
+        return scanStats;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.rest.response;
+
+/**
+ * State of a query submitted to this server, as returned by the status
+ * polling endpoint.
+ */
+public class QueryStatus {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEED, FAILED, CANCELLED;
+
+        public boolean isDone() {
+            return this == SUCCEED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    /**
+     * export queries get a separate concurrency limit and a capped share of
+     * the memory budget, so they cannot starve interactive ones
+     */
+    public enum Lane {
+        INTERACTIVE, EXPORT
+    }
+
+    private String id;
+    private String user;
+    private String project;
+    private String sql;
+    private Lane lane;
+    private State state;
+    private long submitTime;
+    private long duration;
+    private String exceptionMessage;
+
+    public QueryStatus() {
+    }
+
+    public QueryStatus(String id, String user, String project, String sql, Lane lane, State state, long submitTime, long duration, String exceptionMessage) {
+        this.id = id;
+        this.user = user;
+        this.project = project;
+        this.sql = sql;
+        this.lane = lane;
+        this.state = state;
+        this.submitTime = submitTime;
+        this.duration = duration;
+        this.exceptionMessage = exceptionMessage;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    public void setProject(String project) {
+        this.project = project;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public void setSql(String sql) {
+        this.sql = sql;
+    }
+
+    public Lane getLane() {
+        return lane;
+    }
+
+    public void setLane(Lane lane) {
+        this.lane = lane;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    public void setSubmitTime(long submitTime) {
+        this.submitTime = submitTime;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public String getExceptionMessage() {
+        return exceptionMessage;
+    }
+
+    public void setExceptionMessage(String exceptionMessage) {
+        this.exceptionMessage = exceptionMessage;
+    }
+}
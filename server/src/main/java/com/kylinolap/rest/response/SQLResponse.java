@@ -51,6 +51,8 @@ public class SQLResponse implements Serializable {
 
     private boolean hitCache = false;
 
+    private QueryProfile profile;
+
     public SQLResponse() {
     }
 
@@ -138,4 +140,12 @@ public class SQLResponse implements Serializable {
         this.hitCache = hitCache;
     }
 
+    public QueryProfile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(QueryProfile profile) {
+        this.profile = profile;
+    }
+
 }
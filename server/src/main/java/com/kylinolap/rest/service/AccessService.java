@@ -60,6 +60,18 @@ public class AccessService {
     @Autowired
     UserService userService;
 
+    /**
+     * Warm the ACL cache for a list of domain objects in one batch, before
+     * their permissions are evaluated one by one.
+     */
+    public void preloadAcls(List<? extends AclEntity> aes) {
+        List<ObjectIdentity> oids = new ArrayList<ObjectIdentity>(aes.size());
+        for (AclEntity ae : aes) {
+            oids.add(new ObjectIdentityImpl(ae.getClass(), ae.getId()));
+        }
+        aclService.preloadAcls(oids);
+    }
+
     // ~ Methods to manage acl life circle of domain objects ~
 
     @Transactional
@@ -21,10 +21,15 @@ import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.hbase.client.Delete;
@@ -68,9 +73,16 @@ import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.kylinolap.common.KylinConfig;
 import com.kylinolap.common.persistence.HBaseConnection;
+import com.kylinolap.common.restclient.Broadcaster;
 import com.kylinolap.rest.util.Serializer;
 
 /**
+ * ACLs are stored in HBase, one row per domain object. Rows read are cached
+ * in memory, including the absence of a row, and misses of one call are
+ * fetched in a single multi-get. Cached rows are dropped on local changes,
+ * on "acl" cache wipe events broadcast by other nodes, and after
+ * kylin.rest.acl.cache.ttl.seconds as a safety net.
+ * 
  * @author xduo
  * 
  */
@@ -96,6 +108,10 @@ public class AclService implements MutableAclService {
     private String tableNameBase = null;
     private String aclTableName = null;
 
+    // object identifier ==> acl row, or the absence of it
+    private final ConcurrentHashMap<String, AclRecord> aclCache = new ConcurrentHashMap<String, AclRecord>();
+    private final long aclCacheTTLMillis;
+
     private final Field fieldAces = FieldUtils.getField(AclImpl.class, "aces");
     private final Field fieldAcl = FieldUtils.getField(AccessControlEntryImpl.class, "acl");
 
@@ -118,6 +134,7 @@ public class AclService implements MutableAclService {
         tableNameBase = cut < 0 ? DEFAULT_TABLE_PREFIX : metadataUrl.substring(0, cut);
         hbaseUrl = cut < 0 ? metadataUrl : metadataUrl.substring(cut + 1);
         aclTableName = tableNameBase + ACL_TABLE_NAME;
+        aclCacheTTLMillis = KylinConfig.getInstanceFromEnv().getAclCacheTTLSeconds() * 1000L;
 
         fieldAces.setAccessible(true);
         fieldAcl.setAccessible(true);
@@ -177,41 +194,114 @@ public class AclService implements MutableAclService {
     @Override
     public Map<ObjectIdentity, Acl> readAclsById(List<ObjectIdentity> oids, List<Sid> sids) throws NotFoundException {
         Map<ObjectIdentity, Acl> aclMaps = new HashMap<ObjectIdentity, Acl>();
-        HTableInterface htable = null;
-        Result result = null;
-        try {
-            htable = HBaseConnection.get(hbaseUrl).getTable(aclTableName);
+        Map<String, AclRecord> records = loadRecords(oids);
 
-            for (ObjectIdentity oid : oids) {
-                result = htable.get(new Get(Bytes.toBytes(String.valueOf(oid.getIdentifier()))));
+        for (ObjectIdentity oid : oids) {
+            AclRecord record = records.get(String.valueOf(oid.getIdentifier()));
+            if (record == null || !record.exists) {
+                throw new NotFoundException("Unable to find ACL information for object identity '" + oid + "'");
+            }
 
-                if (null != result && !result.isEmpty()) {
-                    SidInfo owner = sidSerializer.deserialize(result.getValue(Bytes.toBytes(ACL_INFO_FAMILY), Bytes.toBytes(ACL_INFO_FAMILY_OWNER_COLUMN)));
-                    Sid ownerSid = (null == owner) ? null : (owner.isPrincipal() ? new PrincipalSid(owner.getSid()) : new GrantedAuthoritySid(owner.getSid()));
-                    boolean entriesInheriting = Bytes.toBoolean(result.getValue(Bytes.toBytes(ACL_INFO_FAMILY), Bytes.toBytes(ACL_INFO_FAMILY_ENTRY_INHERIT_COLUMN)));
+            Sid ownerSid = (null == record.owner) ? null : (record.owner.isPrincipal() ? new PrincipalSid(record.owner.getSid()) : new GrantedAuthoritySid(record.owner.getSid()));
 
-                    Acl parentAcl = null;
-                    DomainObjectInfo parentInfo = domainObjSerializer.deserialize(result.getValue(Bytes.toBytes(ACL_INFO_FAMILY), Bytes.toBytes(ACL_INFO_FAMILY_PARENT_COLUMN)));
-                    if (null != parentInfo) {
-                        ObjectIdentity parentObj = new ObjectIdentityImpl(parentInfo.getType(), parentInfo.getId());
-                        parentAcl = readAclById(parentObj, null);
-                    }
+            Acl parentAcl = null;
+            if (null != record.parent) {
+                ObjectIdentity parentObj = new ObjectIdentityImpl(record.parent.getType(), record.parent.getId());
+                parentAcl = readAclById(parentObj, null);
+            }
 
-                    AclImpl acl = new AclImpl(oid, oid.getIdentifier(), aclAuthorizationStrategy, permissionGrantingStrategy, parentAcl, null, entriesInheriting, ownerSid);
-                    genAces(sids, result, acl);
+            AclImpl acl = new AclImpl(oid, oid.getIdentifier(), aclAuthorizationStrategy, permissionGrantingStrategy, parentAcl, null, record.entriesInheriting, ownerSid);
+            genAces(sids, record, acl);
 
-                    aclMaps.put(oid, acl);
-                } else {
-                    throw new NotFoundException("Unable to find ACL information for object identity '" + oid + "'");
-                }
+            aclMaps.put(oid, acl);
+        }
+
+        return aclMaps;
+    }
+
+    /**
+     * Load the ACLs of the given objects and of their parents into the cache,
+     * in one multi-get per level. Objects without an ACL are skipped, so list
+     * APIs may call this before evaluating permissions one by one.
+     */
+    public void preloadAcls(Collection<ObjectIdentity> oids) {
+        Map<String, AclRecord> records = loadRecords(oids);
+
+        List<ObjectIdentity> parents = new ArrayList<ObjectIdentity>();
+        for (AclRecord record : records.values()) {
+            if (record.exists && null != record.parent) {
+                parents.add(new ObjectIdentityImpl(record.parent.getType(), record.parent.getId()));
+            }
+        }
+        if (!parents.isEmpty()) {
+            loadRecords(parents);
+        }
+    }
+
+    /**
+     * Drop the cached ACL of an object, or all cached ACLs if id is null
+     */
+    public void invalidateAcl(String id) {
+        if (null == id) {
+            aclCache.clear();
+        } else {
+            aclCache.remove(id);
+        }
+    }
+
+    HTableInterface getAclTable() throws IOException {
+        return HBaseConnection.get(hbaseUrl).getTable(aclTableName);
+    }
+
+    private void changedAcl(ObjectIdentity oid, Broadcaster.EVENT event) {
+        String id = String.valueOf(oid.getIdentifier());
+        invalidateAcl(id);
+        Broadcaster.queue(Broadcaster.TYPE.ACL.getType(), event.getType(), id);
+    }
+
+    private Map<String, AclRecord> loadRecords(Collection<ObjectIdentity> oids) {
+        Map<String, AclRecord> records = new HashMap<String, AclRecord>();
+        Set<String> misses = new LinkedHashSet<String>();
+        long now = System.currentTimeMillis();
+
+        for (ObjectIdentity oid : oids) {
+            String id = String.valueOf(oid.getIdentifier());
+            AclRecord record = aclCache.get(id);
+            if (record != null && now - record.loadTime < aclCacheTTLMillis) {
+                records.put(id, record);
+            } else {
+                misses.add(id);
+            }
+        }
+        if (misses.isEmpty()) {
+            return records;
+        }
+
+        List<Get> gets = new ArrayList<Get>(misses.size());
+        for (String id : misses) {
+            gets.add(new Get(Bytes.toBytes(id)));
+        }
+
+        HTableInterface htable = null;
+        try {
+            htable = HBaseConnection.get(hbaseUrl).getTable(aclTableName);
+            Result[] results = htable.get(gets);
+
+            int i = 0;
+            for (String id : misses) {
+                Result result = results[i++];
+                AclRecord record = (null != result && !result.isEmpty()) ? new AclRecord(result, now) : new AclRecord(now);
+                aclCache.put(id, record);
+                records.put(id, record);
             }
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage(), e);
         } finally {
             IOUtils.closeQuietly(htable);
         }
+        logger.debug("Loaded " + misses.size() + " ACLs in one batch");
 
-        return aclMaps;
+        return records;
     }
 
     @Override
@@ -239,6 +329,7 @@ public class AclService implements MutableAclService {
 
             htable.put(put);
             htable.flushCommits();
+            changedAcl(objectIdentity, Broadcaster.EVENT.CREATE);
 
             logger.debug("ACL of " + objectIdentity + " created successfully.");
         } catch (IOException e) {
@@ -268,6 +359,7 @@ public class AclService implements MutableAclService {
 
             htable.delete(delete);
             htable.flushCommits();
+            changedAcl(objectIdentity, Broadcaster.EVENT.DROP);
 
             logger.debug("ACL of " + objectIdentity + " deleted successfully.");
         } catch (IOException e) {
@@ -309,6 +401,9 @@ public class AclService implements MutableAclService {
 
                 logger.debug("ACL of " + acl.getObjectIdentity() + " updated successfully.");
             }
+            // only once the new aces are written, otherwise a node reloading
+            // in between would cache the acl without entries
+            changedAcl(acl.getObjectIdentity(), Broadcaster.EVENT.UPDATE);
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage(), e);
         } finally {
@@ -318,7 +413,7 @@ public class AclService implements MutableAclService {
         return (MutableAcl) readAclById(acl.getObjectIdentity());
     }
 
-    private void genAces(List<Sid> sids, Result result, AclImpl acl) throws JsonParseException, JsonMappingException, IOException {
+    private void genAces(List<Sid> sids, AclRecord record, AclImpl acl) {
         List<AceInfo> aceInfos = new ArrayList<AceInfo>();
         if (null != sids) {
             // Just return aces in sids
@@ -330,20 +425,13 @@ public class AclService implements MutableAclService {
                     sidName = ((GrantedAuthoritySid) sid).getGrantedAuthority();
                 }
 
-                AceInfo aceInfo = aceSerializer.deserialize(result.getValue(Bytes.toBytes(ACL_ACES_FAMILY), Bytes.toBytes(sidName)));
+                AceInfo aceInfo = record.aces.get(sidName);
                 if (null != aceInfo) {
                     aceInfos.add(aceInfo);
                 }
             }
         } else {
-            NavigableMap<byte[], byte[]> familyMap = result.getFamilyMap(Bytes.toBytes(ACL_ACES_FAMILY));
-            for (byte[] qualifier : familyMap.keySet()) {
-                AceInfo aceInfo = aceSerializer.deserialize(familyMap.get(qualifier));
-
-                if (null != aceInfo) {
-                    aceInfos.add(aceInfo);
-                }
-            }
+            aceInfos.addAll(record.aces.values());
         }
 
         List<AccessControlEntry> newAces = new ArrayList<AccessControlEntry>();
@@ -368,6 +456,45 @@ public class AclService implements MutableAclService {
         }
     }
 
+    /**
+     * The content of an acl row, parsed once when it is loaded into the cache
+     */
+    private class AclRecord {
+        final boolean exists;
+        final SidInfo owner;
+        final boolean entriesInheriting;
+        final DomainObjectInfo parent;
+        // sid ==> ace, in row order
+        final Map<String, AceInfo> aces = new LinkedHashMap<String, AceInfo>();
+        final long loadTime;
+
+        AclRecord(Result result, long loadTime) throws JsonParseException, JsonMappingException, IOException {
+            this.exists = true;
+            this.owner = sidSerializer.deserialize(result.getValue(Bytes.toBytes(ACL_INFO_FAMILY), Bytes.toBytes(ACL_INFO_FAMILY_OWNER_COLUMN)));
+            this.entriesInheriting = Bytes.toBoolean(result.getValue(Bytes.toBytes(ACL_INFO_FAMILY), Bytes.toBytes(ACL_INFO_FAMILY_ENTRY_INHERIT_COLUMN)));
+            this.parent = domainObjSerializer.deserialize(result.getValue(Bytes.toBytes(ACL_INFO_FAMILY), Bytes.toBytes(ACL_INFO_FAMILY_PARENT_COLUMN)));
+
+            NavigableMap<byte[], byte[]> familyMap = result.getFamilyMap(Bytes.toBytes(ACL_ACES_FAMILY));
+            if (null != familyMap) {
+                for (Map.Entry<byte[], byte[]> entry : familyMap.entrySet()) {
+                    AceInfo aceInfo = aceSerializer.deserialize(entry.getValue());
+                    if (null != aceInfo) {
+                        aces.put(Bytes.toString(entry.getKey()), aceInfo);
+                    }
+                }
+            }
+            this.loadTime = loadTime;
+        }
+
+        AclRecord(long loadTime) {
+            this.exists = false;
+            this.owner = null;
+            this.entriesInheriting = false;
+            this.parent = null;
+            this.loadTime = loadTime;
+        }
+    }
+
     protected static class DomainObjectInfo {
         private String id;
         private String type;
@@ -31,15 +31,21 @@ import java.util.concurrent.ConcurrentMap;
 
 import javax.sql.DataSource;
 
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Caching;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
 
 import com.google.common.io.Files;
 import com.kylinolap.common.KylinConfig;
+import com.kylinolap.common.persistence.CachedResourceStore;
+import com.kylinolap.common.persistence.ResourceStore;
 import com.kylinolap.cube.CubeManager;
 import com.kylinolap.cube.project.ProjectInstance;
 import com.kylinolap.cube.project.ProjectManager;
@@ -61,6 +67,24 @@ public abstract class BasicService {
 //    @Autowired
 //    protected JdbcTemplate jdbcTemplate;
 
+    private static final String[] QUERY_CACHES = { QueryController.SUCCESS_QUERY_CACHE, QueryController.EXCEPTION_QUERY_CACHE };
+
+    private CacheManager cacheManager;
+
+    /**
+     * Index the query caches by project as soon as the first service is
+     * created, before any query result is cached
+     */
+    @Autowired(required = false)
+    public void setCacheManager(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+        for (String cacheName : QUERY_CACHES) {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (cache != null)
+                QueryCacheIndex.register(cache);
+        }
+    }
+
     public KylinConfig getConfig() {
         return KylinConfig.getInstanceFromEnv();
     }
@@ -127,6 +151,50 @@ public abstract class BasicService {
         BasicService.resetOLAPDataSources();
     }
 
+    /**
+     * Drop the data source and cached query results of one project only, so
+     * queries on other projects stay warm
+     * 
+     * @param project
+     */
+    public void cleanProjectDataCache(String project) {
+        logger.debug("Clean data cache of project " + project);
+        removeOLAPDataSource(project);
+
+        if (cacheManager == null)
+            return;
+
+        for (String cacheName : QUERY_CACHES) {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (cache == null)
+                continue;
+
+            QueryCacheIndex.register(cache).removeProject(cache, project);
+        }
+    }
+
+    /**
+     * Drop the data cache of every project containing the cube
+     * 
+     * @param cubeName
+     */
+    public void cleanCubeDataCache(String cubeName) {
+        for (ProjectInstance project : getProjectManager().getProjects(cubeName)) {
+            cleanProjectDataCache(project.getName());
+        }
+    }
+
+    /**
+     * Check locally cached metadata resources against the store by timestamp,
+     * so the following manager reloads only re-read what has changed
+     */
+    public void revalidateResourceCache(String pathPrefix) throws IOException {
+        ResourceStore store = ResourceStore.getStore(getConfig());
+        if (store instanceof CachedResourceStore) {
+            ((CachedResourceStore) store).revalidate(pathPrefix);
+        }
+    }
+
     /**
      * Reload the cube desc with name {name} into cache
      * 
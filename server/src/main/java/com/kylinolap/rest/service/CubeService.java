@@ -39,8 +39,6 @@ import org.apache.hadoop.util.ToolRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Caching;
 import org.springframework.security.access.prepost.PostFilter;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -58,8 +56,10 @@ import com.kylinolap.cube.CubeManager;
 import com.kylinolap.cube.CubeSegment;
 import com.kylinolap.cube.CubeSegmentStatusEnum;
 import com.kylinolap.cube.CubeStatusEnum;
+import com.kylinolap.cube.cuboid.Cuboid;
 import com.kylinolap.cube.cuboid.CuboidCLI;
 import com.kylinolap.cube.exception.CubeIntegrityException;
+import com.kylinolap.cube.kv.AbstractRowKeyEncoder;
 import com.kylinolap.cube.project.ProjectInstance;
 import com.kylinolap.job.JobDAO;
 import com.kylinolap.job.JobInstance;
@@ -70,11 +70,11 @@ import com.kylinolap.job.exception.JobException;
 import com.kylinolap.job.hadoop.cardinality.HiveColumnCardinalityJob;
 import com.kylinolap.metadata.MetadataConstances;
 import com.kylinolap.metadata.model.cube.CubeDesc;
+import com.kylinolap.metadata.model.cube.DimensionDesc;
 import com.kylinolap.metadata.model.schema.ColumnDesc;
 import com.kylinolap.metadata.model.schema.TableDesc;
 import com.kylinolap.metadata.tool.HiveSourceTableLoader;
 import com.kylinolap.rest.constant.Constant;
-import com.kylinolap.rest.controller.QueryController;
 import com.kylinolap.rest.exception.InternalErrorException;
 import com.kylinolap.rest.request.MetricsRequest;
 import com.kylinolap.rest.response.HBaseResponse;
@@ -115,6 +115,9 @@ public class CubeService extends BasicService {
             }
         }
 
+        // the post filter checks each cube, let it hit the cache
+        accessService.preloadAcls(filterCubes);
+
         return filterCubes;
     }
 
@@ -261,13 +264,72 @@ public class CubeService extends BasicService {
     }
 
     public void reloadCubeCache(String cubeName) {
-        CubeInstance cube = CubeManager.getInstance(this.getConfig()).getCube(cubeName);
-        CubeManager.getInstance(this.getConfig()).loadCubeCache(cube);
+        CubeManager cubeMgr = CubeManager.getInstance(this.getConfig());
+        CubeInstance cube = cubeMgr.getCube(cubeName);
+        if (cube != null) {
+            cubeMgr.loadCubeCache(cube);
+        } else {
+            cubeMgr.reloadCubeLocal(cubeName);
+        }
+        AbstractRowKeyEncoder.clearCache(cubeName);
+
+        // a new build comes with new snapshots of the lookup tables
+        cube = cubeMgr.getCube(cubeName);
+        if (cube != null && cube.getDescriptor() != null) {
+            for (DimensionDesc dim : cube.getDescriptor().getDimensions()) {
+                if (dim.getJoin() != null)
+                    cubeMgr.removeLookupTableCache(dim.getTable());
+            }
+        }
+        cleanCubeDataCache(cubeName);
     }
 
     public void removeCubeCache(String cubeName) {
         CubeInstance cube = CubeManager.getInstance(this.getConfig()).getCube(cubeName);
+        if (cube == null)
+            return;
+
+        cleanCubeDataCache(cubeName);
         CubeManager.getInstance(this.getConfig()).removeCubeCache(cube);
+        AbstractRowKeyEncoder.clearCache(cubeName);
+    }
+
+    /**
+     * Reload a cube desc changed on another node, with the cuboids and data
+     * cache of the cubes built from it
+     * 
+     * @param descName
+     * @throws IOException
+     */
+    public void reloadCubeDescCache(String descName) throws IOException {
+        getMetadataManager().reloadCubeDescLocal(descName);
+        afterCubeDescReloaded(descName);
+    }
+
+    /**
+     * Reload a source table changed on another node, with the descs, lookup
+     * tables and data cache depending on it
+     * 
+     * @param tableName
+     * @throws IOException
+     */
+    public void reloadTableCache(String tableName) throws IOException {
+        List<String> descs = getMetadataManager().reloadSourceTableLocal(tableName);
+        getCubeManager().removeLookupTableCache(tableName);
+        for (String descName : descs) {
+            afterCubeDescReloaded(descName);
+        }
+        for (ProjectInstance project : getProjectManager().listAllProjects()) {
+            if (project.containsTable(tableName))
+                cleanProjectDataCache(project.getName());
+        }
+    }
+
+    private void afterCubeDescReloaded(String descName) {
+        Cuboid.reloadCache(descName);
+        for (CubeInstance cube : getCubeManager().getCubesByDesc(descName)) {
+            cleanCubeDataCache(cube.getName());
+        }
     }
 
     /**
@@ -280,7 +342,6 @@ public class CubeService extends BasicService {
      * @throws JobException
      */
     @PreAuthorize(Constant.ACCESS_HAS_ROLE_ADMIN + " or hasPermission(#cube, 'ADMINISTRATION') or hasPermission(#cube, 'OPERATION') or hasPermission(#cube, 'MANAGEMENT')")
-    @Caching(evict = { @CacheEvict(value = QueryController.SUCCESS_QUERY_CACHE, allEntries = true), @CacheEvict(value = QueryController.EXCEPTION_QUERY_CACHE, allEntries = true) })
     public CubeInstance purgeCube(CubeInstance cube) throws IOException, CubeIntegrityException, JobException {
         String cubeName = cube.getName();
 
@@ -291,6 +352,7 @@ public class CubeService extends BasicService {
 
         try {
             this.releaseAllSegments(cube);
+            cleanCubeDataCache(cubeName);
             return cube;
         } catch (IOException e) {
             throw e;
@@ -307,7 +369,6 @@ public class CubeService extends BasicService {
      * @throws JobException
      */
     @PreAuthorize(Constant.ACCESS_HAS_ROLE_ADMIN + " or hasPermission(#cube, 'ADMINISTRATION') or hasPermission(#cube, 'OPERATION') or hasPermission(#cube, 'MANAGEMENT')")
-    @Caching(evict = { @CacheEvict(value = QueryController.SUCCESS_QUERY_CACHE, allEntries = true), @CacheEvict(value = QueryController.EXCEPTION_QUERY_CACHE, allEntries = true) })
     public CubeInstance disableCube(CubeInstance cube) throws IOException, CubeIntegrityException, JobException {
         String cubeName = cube.getName();
 
@@ -319,7 +380,9 @@ public class CubeService extends BasicService {
         cube.setStatus(CubeStatusEnum.DISABLED);
 
         try {
-            return getCubeManager().updateCube(cube);
+            CubeInstance updatedCube = getCubeManager().updateCube(cube);
+            cleanCubeDataCache(cubeName);
+            return updatedCube;
         } catch (IOException e) {
             cube.setStatus(ostatus);
             throw e;
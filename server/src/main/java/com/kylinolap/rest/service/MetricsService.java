@@ -16,12 +16,19 @@
 
 package com.kylinolap.rest.service;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.kylinolap.common.restclient.Broadcaster;
 import com.kylinolap.job.JobManager;
 import com.kylinolap.rest.metrics.JobMetrics;
 import com.kylinolap.rest.metrics.QueryMetrics;
@@ -40,11 +47,45 @@ public class MetricsService implements InitializingBean {
     public void registerJobMetrics(final JobManager jobManager) {
         JobMetrics jobMetrics = JobMetrics.getInstance();
         jobMetrics.setJobManager(jobManager);
-        metricRegistry.register("JobMetrics", jobMetrics);
+        jobMetrics.register(metricRegistry, "JobMetrics");
     }
 
     public void registerQueryMetrics() {
-        metricRegistry.register("QueryMetrics", QueryMetrics.getInstance());
+        QueryMetrics.getInstance().register(metricRegistry, "QueryMetrics");
+    }
+
+    public void registerBroadcasterMetrics() {
+        metricRegistry.register("Broadcaster", new MetricSet() {
+            @Override
+            public Map<String, Metric> getMetrics() {
+                Map<String, Metric> metrics = new HashMap<String, Metric>();
+                metrics.put("queueDepth", new Gauge<Integer>() {
+                    @Override
+                    public Integer getValue() {
+                        return Broadcaster.getQueueDepth();
+                    }
+                });
+                metrics.put("lagMillis", new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return Broadcaster.getLagMillis();
+                    }
+                });
+                metrics.put("delivered", new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return Broadcaster.getDeliveredCount();
+                    }
+                });
+                metrics.put("failed", new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return Broadcaster.getFailedCount();
+                    }
+                });
+                return metrics;
+            }
+        });
     }
 
     /*
@@ -56,5 +97,6 @@ public class MetricsService implements InitializingBean {
     @Override
     public void afterPropertiesSet() throws Exception {
         registerQueryMetrics();
+        registerBroadcasterMetrics();
     }
 }
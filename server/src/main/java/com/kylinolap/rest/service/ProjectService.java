@@ -112,7 +112,12 @@ public class ProjectService extends BasicService {
      */
     public void reloadProjectCache(String name) throws IOException {
         ProjectInstance project = this.getProjectManager().getProject(name);
-        this.getProjectManager().loadProjectCache(project, false);
+        if (project != null) {
+            this.getProjectManager().loadProjectCache(project, false);
+        } else {
+            this.getProjectManager().reloadProjectLocal(name);
+        }
+        cleanProjectDataCache(name);
     }
 
     /**
@@ -120,7 +125,9 @@ public class ProjectService extends BasicService {
      */
     public void removeProjectCache(String name) {
         ProjectInstance project = this.getProjectManager().getProject(name);
-        this.getProjectManager().removeProjectCache(project);
+        if (project != null)
+            this.getProjectManager().removeProjectCache(project);
+        cleanProjectDataCache(name);
     }
 
 }
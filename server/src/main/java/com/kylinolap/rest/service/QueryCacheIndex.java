@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.rest.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+import com.kylinolap.cube.project.ProjectInstance;
+import com.kylinolap.rest.request.SQLRequest;
+
+/**
+ * Keys of a query result cache grouped by project. The index listens to the
+ * cache, so it follows puts as well as removals, expiry and eviction, and the
+ * results of one project can be dropped without scanning every key.
+ */
+public class QueryCacheIndex extends CacheEventListenerAdapter {
+
+    // queries without a project run on the default one, dropped with any project
+    private static final String NO_PROJECT = "";
+
+    /**
+     * @return the index listening to the cache, registered now if the cache
+     *         has none yet
+     */
+    public static synchronized QueryCacheIndex register(Ehcache cache) {
+        QueryCacheIndex index = get(cache);
+        if (index == null) {
+            index = new QueryCacheIndex();
+            cache.getCacheEventNotificationService().registerListener(index);
+            for (Object key : cache.getKeys()) {
+                index.add(key);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the index listening to the cache, null if none is registered
+     */
+    public static QueryCacheIndex get(Ehcache cache) {
+        for (CacheEventListener listener : cache.getCacheEventNotificationService().getCacheEventListeners()) {
+            if (listener instanceof QueryCacheIndex) {
+                return (QueryCacheIndex) listener;
+            }
+        }
+        return null;
+    }
+
+    private final ConcurrentHashMap<String, Set<Object>> keysByProject = new ConcurrentHashMap<String, Set<Object>>();
+
+    /**
+     * Remove the cached results of the project, and of queries without a
+     * project, from the cache.
+     */
+    public void removeProject(Ehcache cache, String project) {
+        remove(cache, keysOf(ProjectInstance.getNormalizedProjectName(project)));
+        remove(cache, keysOf(NO_PROJECT));
+    }
+
+    private void remove(Ehcache cache, Set<Object> keys) {
+        List<Object> snapshot = new ArrayList<Object>(keys);
+        for (Object key : snapshot) {
+            keys.remove(key);
+            cache.remove(key);
+        }
+    }
+
+    int size() {
+        int n = 0;
+        for (Set<Object> keys : keysByProject.values()) {
+            n += keys.size();
+        }
+        return n;
+    }
+
+    private void add(Object key) {
+        keysOf(projectOf(key)).add(key);
+    }
+
+    private void drop(Object key) {
+        Set<Object> keys = keysByProject.get(projectOf(key));
+        if (keys != null) {
+            keys.remove(key);
+        }
+    }
+
+    private Set<Object> keysOf(String project) {
+        Set<Object> keys = keysByProject.get(project);
+        if (keys == null) {
+            Set<Object> newKeys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+            keys = keysByProject.putIfAbsent(project, newKeys);
+            if (keys == null) {
+                keys = newKeys;
+            }
+        }
+        return keys;
+    }
+
+    private static String projectOf(Object key) {
+        String project = key instanceof SQLRequest ? ((SQLRequest) key).getProject() : null;
+        return project == null ? NO_PROJECT : ProjectInstance.getNormalizedProjectName(project);
+    }
+
+    @Override
+    public void notifyElementPut(Ehcache cache, Element element) throws CacheException {
+        add(element.getObjectKey());
+    }
+
+    @Override
+    public void notifyElementUpdated(Ehcache cache, Element element) throws CacheException {
+        add(element.getObjectKey());
+    }
+
+    @Override
+    public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
+        drop(element.getObjectKey());
+    }
+
+    @Override
+    public void notifyElementExpired(Ehcache cache, Element element) {
+        drop(element.getObjectKey());
+    }
+
+    @Override
+    public void notifyElementEvicted(Ehcache cache, Element element) {
+        drop(element.getObjectKey());
+    }
+
+    @Override
+    public void notifyRemoveAll(Ehcache cache) {
+        keysByProject.clear();
+    }
+}
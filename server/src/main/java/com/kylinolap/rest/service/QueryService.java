@@ -35,6 +35,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.sql.DataSource;
 
@@ -50,6 +51,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
@@ -60,7 +63,10 @@ import com.kylinolap.cube.CubeManager;
 import com.kylinolap.cube.cuboid.Cuboid;
 import com.kylinolap.query.relnode.OLAPContext;
 import com.kylinolap.rest.constant.Constant;
+import com.kylinolap.rest.exception.ForbiddenException;
+import com.kylinolap.rest.exception.NotFoundException;
 import com.kylinolap.rest.metrics.QueryMetrics;
+import com.kylinolap.rest.metrics.QueryProfileRecorder;
 import com.kylinolap.rest.model.ColumnMeta;
 import com.kylinolap.rest.model.Query;
 import com.kylinolap.rest.model.SelectedColumnMeta;
@@ -68,9 +74,14 @@ import com.kylinolap.rest.model.TableMeta;
 import com.kylinolap.rest.request.PrepareSqlRequest;
 import com.kylinolap.rest.request.PrepareSqlRequest.StateParam;
 import com.kylinolap.rest.request.SQLRequest;
+import com.kylinolap.rest.response.QueryProfile;
+import com.kylinolap.rest.response.QueryStatus;
+import com.kylinolap.rest.response.QueryStatus.Lane;
 import com.kylinolap.rest.response.SQLResponse;
+import com.kylinolap.rest.service.QueryTracker.TrackedQuery;
 import com.kylinolap.rest.util.QueryUtil;
 import com.kylinolap.rest.util.Serializer;
+import com.kylinolap.storage.StorageContext;
 
 /**
  * @author xduo
@@ -222,9 +233,29 @@ public class QueryService extends BasicService {
             resultRowCount = response.getResults().size();
         }
 
-        QueryMetrics.getInstance().increase("duration", duration);
-        QueryMetrics.getInstance().increase("totalScanCount", (float) totalScanCount);
-        QueryMetrics.getInstance().increase("count", (float) 1);
+        QueryProfile profile = response.getProfile();
+        if (profile == null || response.isHitCache()) {
+            // cached or intercepted, nothing was executed this time
+            profile = new QueryProfile(request.getSql(), request.getProject(), startTime.getTime());
+            profile.setHitCache(response.isHitCache());
+            profile.setException(response.getIsException());
+            profile.setPartial(response.isPartial());
+            profile.setResultRowCount(resultRowCount);
+        }
+        profile.setUser(user);
+        profile.setDuration(endTime.getTime() - startTime.getTime());
+        QueryProfileRecorder.getInstance().record(profile);
+
+        List<QueryMetrics.Outcome> outcomes = new ArrayList<QueryMetrics.Outcome>();
+        if (response.isHitCache())
+            outcomes.add(QueryMetrics.Outcome.CACHE_HIT);
+        if (profile.isCoprocessor())
+            outcomes.add(QueryMetrics.Outcome.COPROCESSOR);
+        if (response.isPartial())
+            outcomes.add(QueryMetrics.Outcome.PARTIAL_RESULT);
+        if (response.getIsException())
+            outcomes.add(QueryMetrics.Outcome.EXCEPTION);
+        QueryMetrics.getInstance().record(request.getProject(), cubeNames, outcomes, endTime.getTime() - startTime.getTime(), totalScanCount);
 
         String newLine = System.getProperty("line.separator");
         StringBuilder stringBuilder = new StringBuilder();
@@ -342,6 +373,8 @@ public class QueryService extends BasicService {
         ResultSet resultSet = null;
         List<List<String>> results = new LinkedList<List<String>>();
         List<SelectedColumnMeta> columnMetas = new LinkedList<SelectedColumnMeta>();
+        long startTime = System.currentTimeMillis();
+        long executeStartTime = startTime;
 
         try {
             conn = getOLAPDataSource(sqlRequest.getProject()).getConnection();
@@ -358,6 +391,7 @@ public class QueryService extends BasicService {
                 stat = conn.createStatement();
                 resultSet = stat.executeQuery(sql);
             }
+            executeStartTime = System.currentTimeMillis();
 
             ResultSetMetaData metaData = resultSet.getMetaData();
             int columnCount = metaData.getColumnCount();
@@ -381,24 +415,123 @@ public class QueryService extends BasicService {
         } finally {
             close(resultSet, stat, conn);
         }
+        long endTime = System.currentTimeMillis();
 
+        QueryProfile profile = new QueryProfile(sqlRequest.getSql(), sqlRequest.getProject(), startTime);
         boolean isPartialResult = false;
         String cube = "";
         long totalScanCount = 0;
+        long implementTime = 0;
+        long storageTime = 0;
         if (OLAPContext.getThreadLocalContexts() != null) { // contexts can be null in case of 'explain plan for'
             for (OLAPContext ctx : OLAPContext.getThreadLocalContexts()) {
                 isPartialResult |= ctx.storageContext.isPartialResultReturned();
                 cube = ctx.cubeInstance.getName();
                 totalScanCount += ctx.storageContext.getTotalScanCount();
+                implementTime = Math.max(implementTime, ctx.implementTime);
+                storageTime += ctx.storageTime;
+                addToProfile(profile, ctx);
             }
         }
 
+        long executeTime = endTime - executeStartTime;
+        profile.setPrepareTime(Math.max(0, executeStartTime - startTime - implementTime));
+        profile.setImplementTime(implementTime);
+        profile.setExecuteTime(executeTime);
+        profile.setStorageTime(storageTime);
+        profile.setPostAggregationTime(Math.max(0, executeTime - storageTime));
+        profile.setTotalScanCount(totalScanCount);
+        profile.setResultRowCount(results.size());
+        profile.setPartial(isPartialResult);
+
         SQLResponse response = new SQLResponse(columnMetas, results, cube, 0, false, null, isPartialResult);
         response.setTotalScanCount(totalScanCount);
+        response.setProfile(profile);
 
         return response;
     }
 
+    private void addToProfile(QueryProfile profile, OLAPContext ctx) {
+        if (ctx.cubeInstance != null && profile.getCubes().contains(ctx.cubeInstance.getName()) == false) {
+            profile.getCubes().add(ctx.cubeInstance.getName());
+        }
+        StorageContext storageContext = ctx.storageContext;
+        if (storageContext.getCuboid() != null) {
+            profile.getCuboidIds().add(storageContext.getCuboid().getId());
+        }
+        profile.setKeyRangeCount(profile.getKeyRangeCount() + storageContext.getKeyRangeCount());
+        profile.setCoprocessor(profile.isCoprocessor() || storageContext.isCoprocessorEnabled());
+        profile.getScanStats().addAll(storageContext.getScanStats());
+    }
+
+    /**
+     * @return profiles of recent queries on this server, most recent first
+     */
+    @PreAuthorize(Constant.ACCESS_HAS_ROLE_ADMIN)
+    public List<QueryProfile> getQueryProfiles(int limit) {
+        return QueryProfileRecorder.getInstance().getProfiles(limit);
+    }
+
+    @PreAuthorize(Constant.ACCESS_HAS_ROLE_ADMIN)
+    public QueryProfile getQueryProfile(String id) {
+        return QueryProfileRecorder.getInstance().getProfile(id);
+    }
+
+    /**
+     * Admit a query of the current user, subject to the per user and per
+     * project concurrency limits. The lane decides which server wide limit
+     * and share of query memory apply once it runs.
+     */
+    public TrackedQuery admitQuery(SQLRequest sqlRequest, boolean async, Lane lane) {
+        String user = SecurityContextHolder.getContext().getAuthentication().getName();
+        return QueryTracker.getInstance().admit(sqlRequest.getQueryId(), user, sqlRequest.getProject(), sqlRequest.getSql(), async, lane);
+    }
+
+    public SQLResponse runQuery(TrackedQuery query, Callable<SQLResponse> task) throws Exception {
+        return QueryTracker.getInstance().run(query, task);
+    }
+
+    public void submitQuery(TrackedQuery query, Callable<SQLResponse> task) {
+        QueryTracker.getInstance().submit(query, task);
+    }
+
+    /**
+     * @return the query with given id, only visible to its user and admins
+     */
+    public TrackedQuery getTrackedQuery(String queryId) {
+        TrackedQuery query = QueryTracker.getInstance().get(queryId);
+        if (query == null) {
+            throw new NotFoundException("Query " + queryId + " not found, it may have finished long ago");
+        }
+
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (query.getUser().equals(auth.getName()) == false && isAdmin(auth) == false) {
+            throw new ForbiddenException("Query " + queryId + " is not submitted by " + auth.getName());
+        }
+        return query;
+    }
+
+    /**
+     * @return false if the query is already done
+     */
+    public boolean cancelQuery(String queryId) {
+        getTrackedQuery(queryId);
+        return QueryTracker.getInstance().cancel(queryId);
+    }
+
+    @PreAuthorize(Constant.ACCESS_HAS_ROLE_ADMIN)
+    public List<QueryStatus> getRunningQueries() {
+        return QueryTracker.getInstance().getRunningQueries();
+    }
+
+    private boolean isAdmin(Authentication auth) {
+        for (GrantedAuthority authority : auth.getAuthorities()) {
+            if (Constant.ROLE_ADMIN.equals(authority.getAuthority()))
+                return true;
+        }
+        return false;
+    }
+
     /**
      * @param preparedState
      * @param param
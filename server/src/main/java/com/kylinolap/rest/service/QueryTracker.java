@@ -0,0 +1,362 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.rest.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.kylinolap.common.KylinConfig;
+import com.kylinolap.query.relnode.OLAPContext;
+import com.kylinolap.rest.exception.BadRequestException;
+import com.kylinolap.rest.exception.ServiceUnavailableException;
+import com.kylinolap.rest.response.QueryStatus;
+import com.kylinolap.rest.response.QueryStatus.Lane;
+import com.kylinolap.rest.response.QueryStatus.State;
+import com.kylinolap.rest.response.SQLResponse;
+import com.kylinolap.storage.QueryCancelledException;
+import com.kylinolap.storage.QueryMemoryBudget;
+import com.kylinolap.storage.QueryRejectedException;
+
+/**
+ * Tracks the queries running on this server. Every query is admitted here
+ * first, which enforces the per user and per project concurrency limits, and
+ * gets a cancel flag that the storage contexts of the query share. Once the
+ * flag is set, storage iterators stop scanning at their next tuple and the
+ * query fails with a cancelled state, freeing its thread.
+ * 
+ * Before it runs, a query also waits for a slot of its lane, interactive or
+ * export, and opens an account on the query memory budget which the storage
+ * engine reserves from; both are given back when the query ends.
+ * 
+ * Asynchronous queries run on a bounded thread pool, their status and result
+ * are kept for polling until the retention time after they finish.
+ */
+public class QueryTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryTracker.class);
+
+    static class QueryTrackerHolder {
+        static final QueryTracker INSTANCE;
+        static {
+            KylinConfig config = KylinConfig.getInstanceFromEnv();
+            INSTANCE = new QueryTracker(config.getQueryMaxConcurrentPerUser(), config.getQueryMaxConcurrentPerProject(), config.getQueryAsyncThreadCount(), config.getQueryAsyncResultRetentionSeconds() * 1000L);
+            INSTANCE.setLaneLimits(config.getQueryMaxConcurrent(), config.getQueryMaxConcurrentExport(), config.getQueryAdmissionTimeoutSeconds() * 1000L);
+            INSTANCE.setMemoryBudget(QueryMemoryBudget.getInstance());
+        }
+    }
+
+    public static QueryTracker getInstance() {
+        return QueryTrackerHolder.INSTANCE;
+    }
+
+    public static class TrackedQuery {
+        private final String id;
+        private final String user;
+        private final String project;
+        private final String sql;
+        private final boolean async;
+        private final Lane lane;
+        private final long submitTime;
+        private final AtomicBoolean cancelFlag = new AtomicBoolean(false);
+
+        private volatile State state = State.QUEUED;
+        private volatile long endTime;
+        private volatile SQLResponse response;
+        private volatile String exceptionMessage;
+        private volatile Future<?> future;
+
+        TrackedQuery(String id, String user, String project, String sql, boolean async, Lane lane) {
+            this.id = id;
+            this.user = user;
+            this.project = project;
+            this.sql = sql;
+            this.async = async;
+            this.lane = lane;
+            this.submitTime = System.currentTimeMillis();
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        public Lane getLane() {
+            return lane;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public boolean isCancelled() {
+            return cancelFlag.get();
+        }
+
+        public SQLResponse getResponse() {
+            return response;
+        }
+
+        public String getExceptionMessage() {
+            return exceptionMessage;
+        }
+
+        public QueryStatus getStatus() {
+            long end = state.isDone() ? endTime : System.currentTimeMillis();
+            return new QueryStatus(id, user, project, sql, lane, state, submitTime, end - submitTime, exceptionMessage);
+        }
+    }
+
+    private final int maxPerUser;
+    private final int maxPerProject;
+    private final long retentionMs;
+    private final ConcurrentHashMap<String, TrackedQuery> queries = new ConcurrentHashMap<String, TrackedQuery>();
+    private final ExecutorService asyncExecutor;
+
+    private Semaphore interactiveSlots; // null means no limit
+    private Semaphore exportSlots;
+    private long admissionTimeoutMs;
+    private QueryMemoryBudget memoryBudget; // null means no accounting
+
+    QueryTracker(int maxPerUser, int maxPerProject, int asyncThreadCount, long retentionMs) {
+        this.maxPerUser = maxPerUser;
+        this.maxPerProject = maxPerProject;
+        this.retentionMs = retentionMs;
+        this.asyncExecutor = Executors.newFixedThreadPool(Math.max(1, asyncThreadCount), new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AsyncQuery-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    void setLaneLimits(int maxInteractive, int maxExport, long admissionTimeoutMs) {
+        this.interactiveSlots = maxInteractive > 0 ? new Semaphore(maxInteractive, true) : null;
+        this.exportSlots = maxExport > 0 ? new Semaphore(maxExport, true) : null;
+        this.admissionTimeoutMs = admissionTimeoutMs;
+    }
+
+    void setMemoryBudget(QueryMemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Admit a query, or throw ServiceUnavailableException if its user or
+     * project already has the maximum number of queries in flight.
+     * 
+     * @param queryId
+     *            given by the client so it can cancel a synchronous query
+     *            still waiting for its response, or null to generate one
+     */
+    public synchronized TrackedQuery admit(String queryId, String user, String project, String sql, boolean async, Lane lane) {
+        purgeExpired();
+
+        if (queryId == null || queryId.length() == 0) {
+            queryId = UUID.randomUUID().toString();
+        } else if (queries.containsKey(queryId)) {
+            throw new BadRequestException("Query id " + queryId + " is already in use");
+        }
+
+        int userCount = 0;
+        int projectCount = 0;
+        for (TrackedQuery q : queries.values()) {
+            if (q.state.isDone())
+                continue;
+            if (q.user.equals(user))
+                userCount++;
+            if (q.project != null && q.project.equals(project))
+                projectCount++;
+        }
+        if (maxPerUser > 0 && userCount >= maxPerUser) {
+            throw new ServiceUnavailableException("User " + user + " already has " + userCount + " queries running, please retry after some of them finish");
+        }
+        if (maxPerProject > 0 && projectCount >= maxPerProject) {
+            throw new ServiceUnavailableException("Project " + project + " already has " + projectCount + " queries running, please retry later");
+        }
+
+        TrackedQuery query = new TrackedQuery(queryId, user, project, sql, async, lane);
+        queries.put(queryId, query);
+        return query;
+    }
+
+    /**
+     * Run an admitted query on the calling thread, once a slot of its lane is
+     * free. The storage contexts created by the task share the cancel flag
+     * and memory account of the query.
+     */
+    public SQLResponse run(TrackedQuery query, Callable<SQLResponse> task) throws Exception {
+        Semaphore slots = query.lane == Lane.EXPORT ? exportSlots : interactiveSlots;
+        if (slots != null && acquireSlot(query, slots) == false) {
+            slots = null;
+        }
+        if (query.isCancelled()) {
+            if (slots != null)
+                slots.release();
+            finish(query, State.CANCELLED, null, "Query is cancelled");
+            throw new QueryCancelledException("Query is cancelled");
+        }
+
+        QueryMemoryBudget.Account account = memoryBudget == null ? null : memoryBudget.newAccount(query.lane == Lane.EXPORT);
+        query.state = State.RUNNING;
+        OLAPContext.setCancelFlag(query.cancelFlag);
+        OLAPContext.setMemoryAccount(account);
+        try {
+            SQLResponse response = task.call();
+            finish(query, State.SUCCEED, response, null);
+            return response;
+        } catch (Exception e) {
+            finish(query, query.isCancelled() ? State.CANCELLED : State.FAILED, null, e.getLocalizedMessage());
+            throw e;
+        } catch (Error e) {
+            finish(query, State.FAILED, null, e.getLocalizedMessage());
+            throw e;
+        } finally {
+            OLAPContext.clearCancelFlag();
+            OLAPContext.clearMemoryAccount();
+            if (account != null)
+                account.releaseAll();
+            if (slots != null)
+                slots.release();
+        }
+    }
+
+    // wait in queue, return false if cancelled meanwhile, throw on timeout
+    private boolean acquireSlot(TrackedQuery query, Semaphore slots) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + admissionTimeoutMs;
+        while (query.isCancelled() == false) {
+            long wait = Math.min(1000, deadline - System.currentTimeMillis());
+            if (wait <= 0) {
+                String msg = "Too many " + query.lane.name().toLowerCase() + " queries running on this server, please retry later";
+                finish(query, State.FAILED, null, msg);
+                throw new QueryRejectedException(msg);
+            }
+            if (slots.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run an admitted query on the async thread pool, on behalf of the
+     * current user.
+     */
+    public void submit(final TrackedQuery query, final Callable<SQLResponse> task) {
+        final SecurityContext securityContext = SecurityContextHolder.getContext();
+        query.future = asyncExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                SecurityContextHolder.setContext(securityContext);
+                try {
+                    QueryTracker.this.run(query, task);
+                } catch (Throwable t) {
+                    logger.error("Async query " + query.id + " failed", t);
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+            }
+        });
+    }
+
+    private void finish(TrackedQuery query, State state, SQLResponse response, String exceptionMessage) {
+        query.response = response;
+        query.exceptionMessage = exceptionMessage;
+        query.endTime = System.currentTimeMillis();
+        query.state = state;
+
+        // nobody polls a synchronous query once its response is returned
+        if (query.async == false) {
+            queries.remove(query.id);
+        }
+    }
+
+    public TrackedQuery get(String queryId) {
+        return queries.get(queryId);
+    }
+
+    /**
+     * Ask a query to stop. A query still queued is dropped right away, a
+     * running one stops at the next tuple its storage iterators produce.
+     * 
+     * @return false if the query is unknown or already done
+     */
+    public boolean cancel(String queryId) {
+        TrackedQuery query = queries.get(queryId);
+        if (query == null || query.state.isDone()) {
+            return false;
+        }
+
+        logger.info("Cancel query " + queryId + " of user " + query.user);
+        query.cancelFlag.set(true);
+        Future<?> future = query.future;
+        if (query.state == State.QUEUED && future != null && future.cancel(false)) {
+            finish(query, State.CANCELLED, null, "Query is cancelled");
+        }
+        return true;
+    }
+
+    public List<QueryStatus> getRunningQueries() {
+        List<QueryStatus> result = new ArrayList<QueryStatus>();
+        for (TrackedQuery query : queries.values()) {
+            if (query.state.isDone() == false) {
+                result.add(query.getStatus());
+            }
+        }
+        return result;
+    }
+
+    private void purgeExpired() {
+        long expireBefore = System.currentTimeMillis() - retentionMs;
+        for (Iterator<TrackedQuery> it = queries.values().iterator(); it.hasNext();) {
+            TrackedQuery query = it.next();
+            if (query.state.isDone() && query.endTime < expireBefore) {
+                it.remove();
+            }
+        }
+    }
+
+    public void shutdown() {
+        asyncExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.rest.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.kylinolap.rest.response.QueryProfile;
+
+public class QueryProfileRecorderTest {
+
+    @Test
+    public void testRingBuffer() {
+        QueryProfileRecorder recorder = new QueryProfileRecorder(3);
+        assertTrue(recorder.getProfiles(10).isEmpty());
+
+        QueryProfile[] profiles = new QueryProfile[5];
+        for (int i = 0; i < profiles.length; i++) {
+            profiles[i] = new QueryProfile("select " + i, "default", i);
+            recorder.record(profiles[i]);
+        }
+
+        List<QueryProfile> recent = recorder.getProfiles(10);
+        assertEquals(3, recent.size());
+        assertSame(profiles[4], recent.get(0));
+        assertSame(profiles[2], recent.get(2));
+        assertEquals(1, recorder.getProfiles(1).size());
+
+        assertSame(profiles[3], recorder.getProfile(profiles[3].getId()));
+        assertNull(recorder.getProfile(profiles[0].getId()));
+    }
+}
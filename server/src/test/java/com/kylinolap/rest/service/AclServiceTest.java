@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.rest.service;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Sid;
+
+import com.kylinolap.common.persistence.AclEntity;
+import com.kylinolap.rest.security.AclPermission;
+import com.kylinolap.rest.service.AccessServiceTest.MockAclEntity;
+
+public class AclServiceTest extends ServiceTestBase {
+
+    @Autowired
+    AccessService accessService;
+
+    @Autowired
+    AclService aclService;
+
+    @Test
+    public void testCacheInvalidation() throws Exception {
+        AclEntity ae = new AccessServiceTest().new MockAclEntity("test-acl-cache-object");
+        ObjectIdentity oid = new ObjectIdentityImpl(MockAclEntity.class, ae.getId());
+        accessService.clean(ae, true);
+
+        accessService.init(ae, AclPermission.ADMINISTRATION);
+        Assert.assertEquals(1, aclService.readAclById(oid).getEntries().size());
+
+        // an update drops the cached acl
+        Sid modeler = accessService.getSid("MODELER", true);
+        accessService.grant(ae, AclPermission.READ, modeler);
+        Assert.assertEquals(2, aclService.readAclById(oid).getEntries().size());
+
+        // a change behind the cache, e.g. by another node, is seen once the
+        // acl cache wipe event arrives
+        HTableInterface htable = aclService.getAclTable();
+        try {
+            htable.delete(new Delete(Bytes.toBytes(ae.getId())));
+            htable.flushCommits();
+        } finally {
+            IOUtils.closeQuietly(htable);
+        }
+        Assert.assertEquals(2, aclService.readAclById(oid).getEntries().size());
+        aclService.invalidateAcl(ae.getId());
+        assertNotFound(oid);
+
+        // a delete drops the cached acl
+        accessService.init(ae, AclPermission.ADMINISTRATION);
+        Assert.assertEquals(1, aclService.readAclById(oid).getEntries().size());
+        aclService.deleteAcl(oid, true);
+        assertNotFound(oid);
+    }
+
+    private void assertNotFound(ObjectIdentity oid) {
+        try {
+            aclService.readAclById(oid);
+            Assert.fail("ACL of " + oid + " should be gone");
+        } catch (NotFoundException e) {
+            // expected
+        }
+    }
+}
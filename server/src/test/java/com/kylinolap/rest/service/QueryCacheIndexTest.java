@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.rest.service;
+
+import static org.junit.Assert.*;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.Configuration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kylinolap.rest.request.SQLRequest;
+
+public class QueryCacheIndexTest {
+
+    private CacheManager cacheManager;
+    private Cache cache;
+
+    @Before
+    public void setUp() {
+        cacheManager = new CacheManager(new Configuration().name("QueryCacheIndexTest"));
+        cache = new Cache("queries", 3, false, true, 0, 0);
+        cacheManager.addCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testRemoveProject() {
+        cache.put(new Element(request("default", "select 1"), "r1"));
+        QueryCacheIndex index = QueryCacheIndex.register(cache);
+        assertSame(index, QueryCacheIndex.register(cache));
+        assertEquals(1, index.size());
+
+        cache.put(new Element(request("DEFAULT", "select 2"), "r2"));
+        cache.put(new Element(request("other", "select 1"), "r3"));
+        assertEquals(3, index.size());
+
+        index.removeProject(cache, "Default");
+        assertEquals(1, cache.getSize());
+        assertNotNull(cache.get(request("other", "select 1")));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testQueryWithoutProject() {
+        QueryCacheIndex index = QueryCacheIndex.register(cache);
+        cache.put(new Element(request(null, "select 1"), "r1"));
+        cache.put(new Element(request("other", "select 1"), "r2"));
+
+        index.removeProject(cache, "default");
+        assertEquals(1, cache.getSize());
+        assertNull(cache.get(request(null, "select 1")));
+    }
+
+    @Test
+    public void testFollowsEviction() {
+        QueryCacheIndex index = QueryCacheIndex.register(cache);
+        for (int i = 0; i < 10; i++) {
+            cache.put(new Element(request("default", "select " + i), "r" + i));
+        }
+        assertEquals(cache.getSize(), index.size());
+
+        cache.remove(request("default", "select 9"));
+        assertEquals(cache.getSize(), index.size());
+
+        cache.removeAll();
+        assertEquals(0, index.size());
+    }
+
+    private static SQLRequest request(String project, String sql) {
+        SQLRequest request = new SQLRequest();
+        request.setProject(project);
+        request.setSql(sql);
+        return request;
+    }
+}
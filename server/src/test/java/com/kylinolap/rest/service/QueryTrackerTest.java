@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.rest.service;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kylinolap.rest.exception.ServiceUnavailableException;
+import com.kylinolap.rest.response.QueryStatus.Lane;
+import com.kylinolap.rest.response.QueryStatus.State;
+import com.kylinolap.rest.response.SQLResponse;
+import com.kylinolap.rest.service.QueryTracker.TrackedQuery;
+import com.kylinolap.storage.QueryCancelledException;
+import com.kylinolap.storage.QueryRejectedException;
+
+public class QueryTrackerTest {
+
+    private QueryTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new QueryTracker(2, 3, 1, 60000);
+    }
+
+    @After
+    public void tearDown() {
+        tracker.shutdown();
+    }
+
+    @Test
+    public void testAdmission() throws Exception {
+        tracker.admit(null, "u1", "p1", "select 1", false, Lane.INTERACTIVE);
+        tracker.admit(null, "u1", "p1", "select 2", false, Lane.INTERACTIVE);
+        try {
+            tracker.admit(null, "u1", "p2", "select 3", false, Lane.INTERACTIVE);
+            fail("user limit not applied");
+        } catch (ServiceUnavailableException e) {
+            // expected
+        }
+
+        tracker.admit(null, "u2", "p1", "select 4", false, Lane.INTERACTIVE);
+        try {
+            tracker.admit(null, "u3", "p1", "select 5", false, Lane.INTERACTIVE);
+            fail("project limit not applied");
+        } catch (ServiceUnavailableException e) {
+            // expected
+        }
+
+        // a finished query frees its slot
+        TrackedQuery q = tracker.admit("q6", "u3", "p2", "select 6", false, Lane.INTERACTIVE);
+        tracker.run(q, newTask(new SQLResponse()));
+        assertEquals(State.SUCCEED, q.getState());
+        assertNull(tracker.get("q6"));
+        tracker.admit(null, "u3", "p2", "select 7", false, Lane.INTERACTIVE);
+    }
+
+    @Test
+    public void testCancelBeforeRun() throws Exception {
+        TrackedQuery q = tracker.admit("q1", "u1", "p1", "select 1", false, Lane.INTERACTIVE);
+        assertTrue(tracker.cancel("q1"));
+        try {
+            tracker.run(q, newTask(new SQLResponse()));
+            fail("cancelled query should not run");
+        } catch (QueryCancelledException e) {
+            // expected
+        }
+        assertEquals(State.CANCELLED, q.getState());
+        assertFalse(tracker.cancel("q1"));
+    }
+
+    @Test
+    public void testAsyncQuery() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final SQLResponse response = new SQLResponse();
+
+        TrackedQuery q1 = tracker.admit(null, "u1", "p1", "select 1", true, Lane.EXPORT);
+        tracker.submit(q1, new Callable<SQLResponse>() {
+            @Override
+            public SQLResponse call() throws Exception {
+                started.countDown();
+                release.await();
+                return response;
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(State.RUNNING, q1.getState());
+
+        // the single async thread is busy, the second query stays queued
+        TrackedQuery q2 = tracker.admit(null, "u2", "p1", "select 2", true, Lane.EXPORT);
+        tracker.submit(q2, newTask(new SQLResponse()));
+        assertEquals(State.QUEUED, q2.getState());
+        assertTrue(tracker.cancel(q2.getId()));
+        assertEquals(State.CANCELLED, q2.getState());
+
+        release.countDown();
+        for (int i = 0; i < 100 && q1.getState().isDone() == false; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(State.SUCCEED, q1.getState());
+        assertSame(response, q1.getResponse());
+        // async results are kept for polling
+        assertSame(q1, tracker.get(q1.getId()));
+        assertTrue(tracker.getRunningQueries().isEmpty());
+    }
+
+    @Test
+    public void testLaneLimit() throws Exception {
+        tracker.setLaneLimits(0, 1, 200);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        TrackedQuery q1 = tracker.admit(null, "u1", "p1", "select 1", true, Lane.EXPORT);
+        tracker.submit(q1, new Callable<SQLResponse>() {
+            @Override
+            public SQLResponse call() throws Exception {
+                started.countDown();
+                release.await();
+                return new SQLResponse();
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // the only export slot is taken, a second export times out in queue
+        TrackedQuery q2 = tracker.admit(null, "u2", "p1", "select 2", false, Lane.EXPORT);
+        try {
+            tracker.run(q2, newTask(new SQLResponse()));
+            fail("export lane limit not applied");
+        } catch (QueryRejectedException e) {
+            // expected
+        }
+        assertEquals(State.FAILED, q2.getState());
+
+        // while interactive queries are not limited by exports
+        TrackedQuery q3 = tracker.admit(null, "u2", "p1", "select 3", false, Lane.INTERACTIVE);
+        tracker.run(q3, newTask(new SQLResponse()));
+        assertEquals(State.SUCCEED, q3.getState());
+
+        release.countDown();
+        for (int i = 0; i < 100 && q1.getState().isDone() == false; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(State.SUCCEED, q1.getState());
+        TrackedQuery q4 = tracker.admit(null, "u2", "p1", "select 4", false, Lane.EXPORT);
+        tracker.run(q4, newTask(new SQLResponse()));
+        assertEquals(State.SUCCEED, q4.getState());
+    }
+
+    private Callable<SQLResponse> newTask(final SQLResponse response) {
+        return new Callable<SQLResponse>() {
+            @Override
+            public SQLResponse call() {
+                return response;
+            }
+        };
+    }
+}
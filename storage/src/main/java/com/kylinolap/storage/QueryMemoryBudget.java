@@ -0,0 +1,213 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kylinolap.common.KylinConfig;
+
+/**
+ * Memory budget shared by the queries running in this JVM. A storage engine
+ * reserves what it estimates a query will hold in memory before scanning, and
+ * the query gives its reservations back when it ends. A reservation that does
+ * not fit waits for others to be released, and is rejected after a timeout.
+ * 
+ * As the storage iterators return rows they charge them to the account of the
+ * query, which reserves more without waiting once the estimate is used up.
+ * 
+ * Export queries may only take part of the budget, so there is always room
+ * left for interactive ones.
+ */
+public class QueryMemoryBudget {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryMemoryBudget.class);
+
+    // a grant smaller than this is not worth running with, wait instead
+    static final long MIN_GRANT = 64L * 1024 * 1024;
+
+    // charges beyond the reservation top it up by at least this much
+    static final long CHARGE_STEP = 16L * 1024 * 1024;
+
+    static class QueryMemoryBudgetHolder {
+        static final QueryMemoryBudget INSTANCE;
+        static {
+            KylinConfig config = KylinConfig.getInstanceFromEnv();
+            INSTANCE = new QueryMemoryBudget(config.getQueryMemBudget(), config.getQueryMemBudgetExportRatio(), config.getQueryAdmissionTimeoutSeconds() * 1000L);
+        }
+    }
+
+    public static QueryMemoryBudget getInstance() {
+        return QueryMemoryBudgetHolder.INSTANCE;
+    }
+
+    private final long total;
+    private final long exportLimit;
+    private final long timeoutMs;
+
+    private long reserved;
+    private long reservedByExport;
+
+    QueryMemoryBudget(long total, double exportRatio, long timeoutMs) {
+        this.total = total;
+        this.exportLimit = (long) (total * exportRatio);
+        this.timeoutMs = timeoutMs;
+    }
+
+    public Account newAccount(boolean export) {
+        return new Account(export);
+    }
+
+    synchronized long reserve(long want, boolean export) {
+        long min = Math.min(want, MIN_GRANT);
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            long available = total - reserved;
+            if (export) {
+                available = Math.min(available, exportLimit - reservedByExport);
+            }
+            if (available >= min) {
+                long grant = Math.min(want, available);
+                reserved += grant;
+                if (export) {
+                    reservedByExport += grant;
+                }
+                return grant;
+            }
+
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                throw new QueryRejectedException("Query server is short of memory, " + (total - reserved) + " of " + total + " bytes available, please retry later");
+            }
+            logger.debug("Wait for query memory budget, want " + want + " bytes, " + available + " available");
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryRejectedException("Interrupted while waiting for query memory budget");
+            }
+        }
+    }
+
+    // grant what is available right away, may be 0
+    synchronized long tryReserve(long want, boolean export) {
+        long available = total - reserved;
+        if (export) {
+            available = Math.min(available, exportLimit - reservedByExport);
+        }
+        long grant = Math.max(0, Math.min(want, available));
+        reserved += grant;
+        if (export) {
+            reservedByExport += grant;
+        }
+        return grant;
+    }
+
+    synchronized void release(long bytes, boolean export) {
+        reserved -= bytes;
+        if (export) {
+            reservedByExport -= bytes;
+        }
+        notifyAll();
+    }
+
+    public synchronized long getAvailable() {
+        return total - reserved;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Reservations of one query, released all at once when it ends.
+     */
+    public class Account {
+        private final boolean export;
+        private long reserved;
+        private long charged;
+
+        Account(boolean export) {
+            this.export = export;
+        }
+
+        /**
+         * @return bytes granted, may be less than wanted when the budget is
+         *         tight
+         * @throws QueryRejectedException
+         *             if not even a minimal grant is available in time
+         */
+        public long reserve(long want) {
+            long grant = QueryMemoryBudget.this.reserve(want, export);
+            synchronized (this) {
+                reserved += grant;
+            }
+            return grant;
+        }
+
+        /**
+         * Charge bytes held by rows the query has scanned. Once the charges
+         * pass what is reserved, more is reserved without waiting, as the
+         * query already holds memory others may be waiting for.
+         * 
+         * @throws QueryRejectedException
+         *             if the budget cannot cover the charges
+         */
+        public void charge(long bytes) {
+            long more;
+            synchronized (this) {
+                charged += bytes;
+                more = charged - reserved;
+            }
+            if (more <= 0) {
+                return;
+            }
+
+            long grant = tryReserve(Math.max(more, CHARGE_STEP), export);
+            synchronized (this) {
+                reserved += grant;
+                if (charged > reserved) {
+                    throw new QueryRejectedException("Query server is short of memory, the query holds " + charged + " bytes and no more is available, please retry later");
+                }
+            }
+        }
+
+        public synchronized long getReserved() {
+            return reserved;
+        }
+
+        public synchronized long getCharged() {
+            return charged;
+        }
+
+        public boolean isExport() {
+            return export;
+        }
+
+        public void releaseAll() {
+            long r;
+            synchronized (this) {
+                r = reserved;
+                reserved = 0;
+                charged = 0;
+            }
+            if (r > 0) {
+                release(r, export);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage;
+
+import java.io.Serializable;
+
+/**
+ * What it took to scan one cube segment for a query, as seen from the query
+ * server. With coprocessor on, rows returned are already aggregated by the
+ * region servers.
+ */
+public class ScanStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String segmentName;
+    private String tableName;
+    private long cuboidId;
+    private boolean coprocessor;
+    private int rangeCount;
+    private long scanMillis;
+    private long rowsReturned;
+    private long bytesReturned;
+    private long rpcCount;
+    private long rpcRetries;
+    private long regionCount;
+
+    public ScanStats(String segmentName, String tableName, long cuboidId, boolean coprocessor) {
+        this.segmentName = segmentName;
+        this.tableName = tableName;
+        this.cuboidId = cuboidId;
+        this.coprocessor = coprocessor;
+    }
+
+    public void addRange() {
+        rangeCount++;
+    }
+
+    public void addScanMetrics(long bytes, long rpcs, long retries, long regions) {
+        bytesReturned += bytes;
+        rpcCount += rpcs;
+        rpcRetries += retries;
+        regionCount += regions;
+    }
+
+    public void setRowsReturned(long rowsReturned) {
+        this.rowsReturned = rowsReturned;
+    }
+
+    public void setScanMillis(long scanMillis) {
+        this.scanMillis = scanMillis;
+    }
+
+    public String getSegmentName() {
+        return segmentName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public long getCuboidId() {
+        return cuboidId;
+    }
+
+    public boolean isCoprocessor() {
+        return coprocessor;
+    }
+
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    public long getScanMillis() {
+        return scanMillis;
+    }
+
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    public long getBytesReturned() {
+        return bytesReturned;
+    }
+
+    public long getRpcCount() {
+        return rpcCount;
+    }
+
+    public long getRpcRetries() {
+        return rpcRetries;
+    }
+
+    public long getRegionCount() {
+        return regionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStats [segment=" + segmentName + ", table=" + tableName + ", cuboid=" + cuboidId + ", coprocessor=" + coprocessor + ", ranges=" + rangeCount + ", ms=" + scanMillis + ", rows=" + rowsReturned + ", bytes=" + bytesReturned + ", rpc=" + rpcCount + ", rpc_retries=" + rpcRetries + ", regions=" + regionCount + "]";
+    }
+}
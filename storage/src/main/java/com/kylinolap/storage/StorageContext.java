@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
@@ -33,6 +34,7 @@ public class StorageContext {
 
     public static final int HARD_THRESHOLD = 4000000;
     public static final int DEFAULT_THRESHOLD = 1000000;
+    public static final int MEMORY_CHARGE_ROWS = 1000; // rows charged to the memory account at a time
 
     public enum OrderEnum {
         ASCENDING, DESCENDING
@@ -42,6 +44,8 @@ public class StorageContext {
     private int threshold;
     private int limit;
     private boolean hasSort;
+    private int sortFieldCount;
+    private boolean postAggregationFilter;
     private List<MeasureDesc> sortMeasures;
     private List<OrderEnum> sortOrders;
     private boolean acceptPartialResult;
@@ -53,10 +57,20 @@ public class StorageContext {
     private Set<TblColRef> otherMandatoryColumns;
     private boolean enableLimit;
     private boolean enableCoprocessor;
+    private int topN; // groups kept per region by coprocessor, 0 means no TopN
+    private boolean compactResponse; // coprocessor packs rows into blocks
 
     private long totalScanCount;
     private Cuboid cuboid;
     private boolean partialResultReturned;
+    private AtomicBoolean cancelFlag; // shared by the contexts of one query, null if not cancellable
+    private QueryMemoryBudget.Account memoryAccount; // shared by the contexts of one query, null if not accounted
+    private boolean memoryShort; // granted less memory than estimated
+    private int rowSizeEstimate; // bytes a returned row holds, for memory charges
+
+    // profile of the storage access
+    private int keyRangeCount;
+    private final List<ScanStats> scanStats;
 
     public StorageContext() {
         this.threshold = DEFAULT_THRESHOLD;
@@ -73,9 +87,13 @@ public class StorageContext {
         this.otherMandatoryColumns = new HashSet<TblColRef>();
         this.enableLimit = false;
         this.enableCoprocessor = false;
+        this.topN = 0;
 
         this.acceptPartialResult = false;
         this.partialResultReturned = false;
+
+        this.keyRangeCount = 0;
+        this.scanStats = new ArrayList<ScanStats>();
     }
 
     public String getConnUrl() {
@@ -139,12 +157,34 @@ public class StorageContext {
 
     public void markSort() {
         this.hasSort = true;
+        this.sortFieldCount++;
     }
 
     public boolean hasSort() {
         return this.hasSort;
     }
 
+    public int getSortFieldCount() {
+        return sortFieldCount;
+    }
+
+    public List<MeasureDesc> getSortMeasures() {
+        return sortMeasures;
+    }
+
+    public List<OrderEnum> getSortOrders() {
+        return sortOrders;
+    }
+
+    // a filter on aggregated values, i.e. HAVING
+    public void markPostAggregationFilter() {
+        this.postAggregationFilter = true;
+    }
+
+    public boolean hasPostAggregationFilter() {
+        return postAggregationFilter;
+    }
+
     public void setCuboid(Cuboid c) {
         cuboid = c;
     }
@@ -209,4 +249,96 @@ public class StorageContext {
         return this.enableCoprocessor;
     }
 
+    public void enableCompactResponse() {
+        this.compactResponse = true;
+    }
+
+    public boolean isCompactResponseEnabled() {
+        return compactResponse;
+    }
+
+    public void enableTopN(int n) {
+        this.topN = n;
+    }
+
+    public void disableTopN() {
+        this.topN = 0;
+    }
+
+    public boolean isTopNEnabled() {
+        return topN > 0;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    public int getKeyRangeCount() {
+        return keyRangeCount;
+    }
+
+    public void setKeyRangeCount(int keyRangeCount) {
+        this.keyRangeCount = keyRangeCount;
+    }
+
+    public void addScanStats(ScanStats stats) {
+        synchronized (scanStats) {
+            scanStats.add(stats);
+        }
+    }
+
+    public List<ScanStats> getScanStats() {
+        synchronized (scanStats) {
+            return new ArrayList<ScanStats>(scanStats);
+        }
+    }
+
+    public QueryMemoryBudget.Account getMemoryAccount() {
+        return memoryAccount;
+    }
+
+    public void setMemoryAccount(QueryMemoryBudget.Account memoryAccount) {
+        this.memoryAccount = memoryAccount;
+    }
+
+    public boolean isMemoryShort() {
+        return memoryShort;
+    }
+
+    public void setMemoryShort(boolean memoryShort) {
+        this.memoryShort = memoryShort;
+    }
+
+    public void setRowSizeEstimate(int rowSizeEstimate) {
+        this.rowSizeEstimate = rowSizeEstimate;
+    }
+
+    /**
+     * storage iterators call this as they return rows, so the memory account
+     * follows what the query actually holds rather than the estimate
+     */
+    public void chargeRows(int rows) {
+        if (memoryAccount != null && rowSizeEstimate > 0) {
+            memoryAccount.charge((long) rows * rowSizeEstimate);
+        }
+    }
+
+    public void setCancelFlag(AtomicBoolean cancelFlag) {
+        this.cancelFlag = cancelFlag;
+    }
+
+    public boolean isCancelled() {
+        return cancelFlag != null && cancelFlag.get();
+    }
+
+    /**
+     * storage iterators call this as they go, so a cancelled query stops
+     * scanning and gets its scanners closed by the usual close path
+     */
+    public void checkCancelled() {
+        if (isCancelled()) {
+            throw new QueryCancelledException("Query is cancelled");
+        }
+    }
+
 }
@@ -1,11 +1,13 @@
 package com.kylinolap.storage.filter;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.kylinolap.dict.Dictionary;
 import com.kylinolap.metadata.model.cube.TblColRef;
 
 import it.uniroma3.mat.extendedset.intset.ConciseSet;
+import it.uniroma3.mat.extendedset.intset.IntSet.IntIterator;
 
 /**
  * @author yangli9
@@ -98,12 +100,51 @@ public class BitMapFilterEvaluator {
     }
 
     private ConciseSet collectRange(TblColRef column, int from, int to) {
-        ConciseSet set = new ConciseSet();
+        List<ConciseSet> sets = new ArrayList<ConciseSet>();
         for (int i = from; i <= to; i++) {
             ConciseSet bitMap = provider.getBitMap(column, i);
             if (bitMap == null)
                 return null;
-            set.addAll(bitMap);
+            sets.add(bitMap);
+        }
+        return union(sets);
+    }
+
+    /**
+     * OR of many sets. Pairwise ConciseSet.addAll() rebuilds the result every
+     * time, here the bits are set in a plain bitmap of the record group, and
+     * then appended in order into a new ConciseSet.
+     */
+    private ConciseSet union(List<ConciseSet> sets) {
+        if (sets.size() <= 2) {
+            ConciseSet set = new ConciseSet();
+            for (ConciseSet s : sets) {
+                set.addAll(s);
+            }
+            return set;
+        }
+
+        int max = -1;
+        for (ConciseSet s : sets) {
+            if (s.isEmpty() == false)
+                max = Math.max(max, s.last());
+        }
+        long[] words = new long[(max >> 6) + 1];
+        for (ConciseSet s : sets) {
+            IntIterator it = s.iterator();
+            while (it.hasNext()) {
+                int i = it.next();
+                words[i >> 6] |= 1L << i;
+            }
+        }
+
+        ConciseSet set = new ConciseSet();
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                set.add((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
         }
         return set;
     }
@@ -124,15 +165,15 @@ public class BitMapFilterEvaluator {
     }
 
     private ConciseSet evalCompareIn(CompareTupleFilter filter) {
-        ConciseSet set = new ConciseSet();
+        List<ConciseSet> sets = new ArrayList<ConciseSet>();
         for (String value : filter.getValues()) {
             int id = Dictionary.stringToDictId(value);
             ConciseSet bitMap = provider.getBitMap(filter.getColumn(), id);
             if (bitMap == null)
                 return null;
-            set.addAll(bitMap);
+            sets.add(bitMap);
         }
-        return set;
+        return union(sets);
     }
 
     private ConciseSet evalCompareNotIn(CompareTupleFilter filter) {
@@ -194,16 +235,16 @@ public class BitMapFilterEvaluator {
     }
 
     private ConciseSet evalLogicalOr(List<? extends TupleFilter> children) {
-        ConciseSet set = new ConciseSet();
+        List<ConciseSet> sets = new ArrayList<ConciseSet>();
         
         for (TupleFilter c : children) {
             ConciseSet t = evaluate(c);
             if (t == null)
                 return null; // because it's OR
             
-            set.addAll(t);
+            sets.add(t);
         }
-        return set;
+        return union(sets);
     }
 
     private ConciseSet evalLogicalNot(List<? extends TupleFilter> children) {
@@ -207,6 +207,8 @@ public class ConcurrentHBaseTupleIterator implements ITupleIterator {
     }
 
     private boolean validate() {
+        context.checkCancelled();
+
         if (scanExceptions.size() > 0) {
             throw new RuntimeException(scanExceptions.get(0).getLocalizedMessage());
         }
@@ -262,7 +264,14 @@ public class ConcurrentHBaseTupleIterator implements ITupleIterator {
                 Iterator<Result> resultIterator = doScan(keyRange);
 
                 while (resultIterator.hasNext()) {
+                    if (context.isCancelled()) {
+                        logger.info("Query cancelled, stop scanning " + tableName);
+                        break;
+                    }
                     scanCount++;
+                    if (scanCount % StorageContext.MEMORY_CHARGE_ROWS == 0) {
+                        context.chargeRows(StorageContext.MEMORY_CHARGE_ROWS);
+                    }
 
                     // translate result to tuple
                     try {
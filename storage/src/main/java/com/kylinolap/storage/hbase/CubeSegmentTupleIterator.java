@@ -21,10 +21,21 @@ import java.text.MessageFormat;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.hadoop.hbase.client.HConnection;
 import org.apache.hadoop.hbase.client.HTableInterface;
@@ -41,6 +52,8 @@ import org.apache.hadoop.hbase.util.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.kylinolap.common.KylinConfig;
 import com.kylinolap.common.persistence.StorageException;
 import com.kylinolap.common.util.Array;
 import com.kylinolap.cube.CubeInstance;
@@ -53,15 +66,29 @@ import com.kylinolap.metadata.model.cube.CubeDesc.DeriveInfo;
 import com.kylinolap.metadata.model.cube.HBaseColumnDesc;
 import com.kylinolap.metadata.model.cube.MeasureDesc;
 import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.storage.ScanStats;
 import com.kylinolap.storage.StorageContext;
 import com.kylinolap.storage.filter.TupleFilter;
 import com.kylinolap.storage.hbase.observer.CoprocessorEnabler;
+import com.kylinolap.storage.hbase.observer.SRowBatchFilter;
+import com.kylinolap.storage.hbase.observer.SRowBlock;
+import com.kylinolap.storage.hbase.observer.SRowFilter;
+import com.kylinolap.storage.hbase.observer.SRowTopN;
+import com.kylinolap.storage.hbase.observer.SRowType;
 import com.kylinolap.storage.tuple.ITupleIterator;
 import com.kylinolap.storage.tuple.Tuple;
 import com.kylinolap.storage.tuple.Tuple.IDerivedColumnFiller;
 import com.kylinolap.storage.tuple.TupleInfo;
 
 /**
+ * Scans the key ranges of one segment one after another. Ranges of a sharded
+ * segment are opened ahead in parallel, as opening the scanner is where the
+ * region servers do the coprocessor aggregation.
+ * 
+ * A cancelled query stops waiting for the scans opened ahead and leaves them
+ * to be closed once open. The region servers cannot be told about the cancel
+ * and go on aggregating until their coprocessor timeout.
+ * 
  * @author xjiang
  * 
  */
@@ -70,6 +97,10 @@ public class CubeSegmentTupleIterator implements ITupleIterator {
     public static final Logger logger = LoggerFactory.getLogger(CubeSegmentTupleIterator.class);
 
     public static final int SCAN_CACHE = 1024;
+    // with compact response each result is a block of up to SRowBlock.MAX_ROWS
+    // rows, caching a few blocks per RPC keeps the response size close to
+    // that of plain rows
+    public static final int SCAN_CACHE_BLOCKS = 2;
 
     public static final ITupleIterator EMPTY_TUPLE_ITERATOR = new ITupleIterator() {
         @Override
@@ -98,14 +129,31 @@ public class CubeSegmentTupleIterator implements ITupleIterator {
     private final HTableInterface table;
     private final RowKeyDecoder rowKeyDecoder;
     private final Iterator<HBaseKeyRange> rangeIterator;
+    private final HConnection conn;
+
+    // scans opened ahead, at most scanFanout of them
+    private final int scanFanout;
+    private final LinkedList<OpeningScan> openingScans = new LinkedList<OpeningScan>();
+
+    // without coprocessor, rows are pre-filtered on row key at client side
+    private SRowFilter rowFilter;
+    private final Map<Long, SRowBatchFilter> batchFilters = new HashMap<Long, SRowBatchFilter>();
 
     private Scan scan;
     private ResultScanner scanner;
+    private HTableInterface scannerTable;
     private Iterator<Result> resultIterator;
+    private SRowBlock.Reader blockReader; // rows of the current compact block
+    private int[] blockColumns; // block column of each value decoder
     private TupleInfo tupleInfo;
     private Tuple tuple;
+    private SRowTopN.Mark lastTopNMark;
     private int scanCount;
 
+    private final long startTime;
+    private final ScanStats scanStats;
+    private boolean closed;
+
     public CubeSegmentTupleIterator(CubeSegment cubeSeg, Collection<HBaseKeyRange> keyRanges, HConnection conn, Collection<TblColRef> dimensions, TupleFilter filter, Collection<TblColRef> groupBy, Collection<RowValueDecoder> rowValueDecoders, StorageContext context) {
         this.cube = cubeSeg.getCubeInstance();
         this.cubeSeg = cubeSeg;
@@ -117,6 +165,10 @@ public class CubeSegmentTupleIterator implements ITupleIterator {
         this.tableName = cubeSeg.getStorageLocationIdentifier();
         this.rowKeyDecoder = new RowKeyDecoder(this.cubeSeg);
         this.scanCount = 0;
+        this.conn = conn;
+        this.startTime = System.currentTimeMillis();
+        this.scanStats = new ScanStats(cubeSeg.getName(), tableName, context.getCuboid() == null ? 0 : context.getCuboid().getId(), context.isCoprocessorEnabled());
+        this.scanFanout = cubeSeg.getRowkeyShardNum() > 0 ? Math.max(1, cube.getConfig().getShardScanThreadCount()) : 1;
 
         try {
             this.table = conn.getTable(tableName);
@@ -127,29 +179,140 @@ public class CubeSegmentTupleIterator implements ITupleIterator {
         scanNextRange();
     }
 
+    private static ExecutorService scanExecutor;
+
+    /**
+     * The shard scan pool is shared by all queries of the process and sized
+     * once from the config of the first query that needs it. Its threads are
+     * daemons and exit when idle, so the pool needs no shutdown.
+     */
+    private static synchronized ExecutorService getScanExecutor(KylinConfig config) {
+        if (scanExecutor == null) {
+            int nThreads = Math.max(1, config.getShardScanThreadCount());
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(nThreads, nThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("CubeSegmentScan-%d").build());
+            pool.allowCoreThreadTimeOut(true);
+            scanExecutor = pool;
+        }
+        return scanExecutor;
+    }
+
+    private static class OpenedScan {
+        final HBaseKeyRange keyRange;
+        final Scan scan;
+        final ResultScanner scanner;
+        final HTableInterface table;
+
+        OpenedScan(HBaseKeyRange keyRange, Scan scan, ResultScanner scanner, HTableInterface table) {
+            this.keyRange = keyRange;
+            this.scan = scan;
+            this.scanner = scanner;
+            this.table = table;
+        }
+
+        void closeQuietly() {
+            try {
+                scanner.close();
+                table.close();
+            } catch (Throwable t) {
+                logger.warn("Error when close scanner opened ahead", t);
+            }
+        }
+    }
+
+    /**
+     * A scan being opened ahead. If the iterator gives it up, whichever of
+     * the two comes last closes the scanner, so neither waits for the other.
+     */
+    private class OpeningScan implements Callable<OpenedScan> {
+        final HBaseKeyRange keyRange;
+        Future<OpenedScan> future;
+        private OpenedScan opened;
+        private boolean abandoned;
+
+        OpeningScan(HBaseKeyRange keyRange) {
+            this.keyRange = keyRange;
+        }
+
+        @Override
+        public OpenedScan call() throws Exception {
+            // HTable is not thread safe, each scan opened ahead gets its own
+            HTableInterface scanTable = conn.getTable(tableName);
+            OpenedScan result;
+            try {
+                result = doScan(keyRange, scanTable);
+            } catch (RuntimeException e) {
+                scanTable.close();
+                throw e;
+            }
+            synchronized (this) {
+                if (abandoned == false) {
+                    opened = result;
+                    return result;
+                }
+            }
+            result.closeQuietly();
+            return null;
+        }
+
+        synchronized void abandon() {
+            abandoned = true;
+            future.cancel(false);
+            if (opened != null) {
+                opened.closeQuietly();
+                opened = null;
+            }
+        }
+    }
+
     @Override
     public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
         closeScanner();
+        closeOpeningScans();
         closeTable();
+
+        scanStats.setRowsReturned(scanCount);
+        scanStats.setScanMillis(System.currentTimeMillis() - startTime);
+        context.addScanStats(scanStats);
     }
 
-    private void closeScanner() {
-        if (logger.isDebugEnabled() && scan != null) {
-            logger.debug("Scan " + scan.toString());
-            byte[] metricsBytes = scan.getAttribute(Scan.SCAN_ATTRIBUTES_METRICS_DATA);
-            if (metricsBytes != null) {
-                ScanMetrics scanMetrics = ProtobufUtil.toScanMetrics(metricsBytes);
-                logger.debug("HBase Metrics: " + "count={}, ms={}, bytes={}, remote_bytes={}, regions={}, not_serving_region={}, rpc={}, rpc_retries={}, remote_rpc={}, remote_rpc_retries={}", new Object[] { scanCount, scanMetrics.sumOfMillisSecBetweenNexts, scanMetrics.countOfBytesInResults, scanMetrics.countOfBytesInRemoteResults, scanMetrics.countOfRegions, scanMetrics.countOfNSRE, scanMetrics.countOfRPCcalls, scanMetrics.countOfRPCRetries, scanMetrics.countOfRemoteRPCcalls, scanMetrics.countOfRemoteRPCRetries });
-            }
+    private void closeOpeningScans() {
+        for (OpeningScan opening : openingScans) {
+            opening.abandon();
         }
+        openingScans.clear();
+    }
+
+    private void closeScanner() {
         try {
             if (scanner != null) {
                 scanner.close();
                 scanner = null;
             }
+            if (scannerTable != null && scannerTable != table) {
+                scannerTable.close();
+            }
+            scannerTable = null;
         } catch (Throwable t) {
             throw new StorageException("Error when close scanner for table " + tableName, t);
         }
+
+        // scan metrics are written to the scan once the scanner is closed
+        if (scan != null) {
+            byte[] metricsBytes = scan.getAttribute(Scan.SCAN_ATTRIBUTES_METRICS_DATA);
+            if (metricsBytes != null) {
+                ScanMetrics scanMetrics = ProtobufUtil.toScanMetrics(metricsBytes);
+                scanStats.addScanMetrics(scanMetrics.countOfBytesInResults.get(), scanMetrics.countOfRPCcalls.get(), scanMetrics.countOfRPCRetries.get(), scanMetrics.countOfRegions.get());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Scan " + scan.toString());
+                    logger.debug("HBase Metrics: " + "count={}, ms={}, bytes={}, remote_bytes={}, regions={}, not_serving_region={}, rpc={}, rpc_retries={}, remote_rpc={}, remote_rpc_retries={}", new Object[] { scanCount, scanMetrics.sumOfMillisSecBetweenNexts, scanMetrics.countOfBytesInResults, scanMetrics.countOfBytesInRemoteResults, scanMetrics.countOfRegions, scanMetrics.countOfNSRE, scanMetrics.countOfRPCcalls, scanMetrics.countOfRPCRetries, scanMetrics.countOfRemoteRPCcalls, scanMetrics.countOfRemoteRPCRetries });
+                }
+            }
+            scan = null;
+        }
     }
 
     private void closeTable() {
@@ -164,66 +327,202 @@ public class CubeSegmentTupleIterator implements ITupleIterator {
 
     @Override
     public boolean hasNext() {
-        return rangeIterator.hasNext() || resultIterator.hasNext();
+        return rangeIterator.hasNext() || openingScans.isEmpty() == false || resultIterator.hasNext() || (blockReader != null && blockReader.hasNext());
     }
 
     @Override
     public Tuple next() {
-        // get next result from hbase
+        // get next result from hbase, or next row of the current block
         Result result = null;
+        boolean fromBlock = false;
         while (hasNext()) {
-            if (resultIterator.hasNext()) {
+            if (blockReader != null && blockReader.hasNext()) {
+                blockReader.next();
+                fromBlock = true;
+                scanCount++;
+                break;
+            } else if (resultIterator.hasNext()) {
                 result = this.resultIterator.next();
+                if (context.isTopNEnabled()) {
+                    this.lastTopNMark = SRowTopN.Mark.fromResult(result);
+                }
+                blockReader = context.isCompactResponseEnabled() ? SRowBlock.Reader.fromResult(result) : null;
+                if (blockReader != null) {
+                    blockColumns = mapBlockColumns(blockReader);
+                    result = null;
+                    continue; // rows are served from the block
+                }
                 scanCount++;
                 break;
             } else {
                 scanNextRange();
             }
         }
-        if (result == null) {
+        if (result == null && fromBlock == false) {
             return null;
         }
         // translate result to tuple
         try {
-            translateResult(result, this.tuple);
+            if (fromBlock)
+                translateBlockRow(blockReader, this.tuple);
+            else
+                translateResult(result, this.tuple);
         } catch (IOException e) {
             throw new IllegalStateException("Can't translate result " + result, e);
         }
         return this.tuple;
     }
 
+    /**
+     * the TopN mark of the region the last tuple came from, null if the region
+     * returned all its groups
+     */
+    public SRowTopN.Mark getLastTopNMark() {
+        return lastTopNMark;
+    }
+
     private void scanNextRange() {
-        if (this.rangeIterator.hasNext()) {
+        if (this.rangeIterator.hasNext() || this.openingScans.isEmpty() == false) {
             closeScanner();
-            HBaseKeyRange keyRange = this.rangeIterator.next();
-            this.tupleInfo = buildTupleInfo(keyRange.getCuboid());
+            OpenedScan opened = nextOpenedScan();
+            this.scan = opened.scan;
+            this.scanner = opened.scanner;
+            this.scannerTable = opened.table;
+            this.scanStats.addRange();
+            this.tupleInfo = buildTupleInfo(opened.keyRange.getCuboid());
             this.tuple = new Tuple(this.tupleInfo);
 
-            this.resultIterator = doScan(keyRange);
+            this.resultIterator = filterResults(scanner.iterator(), opened.keyRange.getCuboid());
         } else {
             this.resultIterator = Collections.<Result> emptyList().iterator();
         }
     }
 
-    private final Iterator<Result> doScan(HBaseKeyRange keyRange) {
+    private Iterator<Result> filterResults(Iterator<Result> results, Cuboid cuboid) {
+        if (filter == null || context.isCoprocessorEnabled())
+            return results;
+
+        Long cuboidId = cuboid.getId();
+        if (batchFilters.containsKey(cuboidId) == false) {
+            if (rowFilter == null)
+                rowFilter = SRowFilter.fromFilter(cubeSeg, filter);
+            SRowBatchFilter batchFilter = rowFilter.compile(SRowType.fromCuboid(cubeSeg, cuboid));
+            batchFilters.put(cuboidId, (batchFilter == null || batchFilter.isAlwaysTrue()) ? null : batchFilter);
+        }
+        SRowBatchFilter batchFilter = batchFilters.get(cuboidId);
+        return batchFilter == null ? results : new FilteredResultIterator(results, batchFilter);
+    }
+
+    /**
+     * Pulls results a batch at a time and serves only those whose row key
+     * passes the filter.
+     */
+    private static class FilteredResultIterator implements Iterator<Result> {
+        private final Iterator<Result> results;
+        private final SRowBatchFilter filter;
+        private final Result[] batch = new Result[SRowBatchFilter.DEFAULT_BATCH_SIZE];
+        private final byte[][] keys = new byte[SRowBatchFilter.DEFAULT_BATCH_SIZE][];
+        private final int[] offsets = new int[SRowBatchFilter.DEFAULT_BATCH_SIZE];
+        private final int[] selection = new int[SRowBatchFilter.DEFAULT_BATCH_SIZE];
+        private int selected = 0;
+        private int pos = 0;
+
+        FilteredResultIterator(Iterator<Result> results, SRowBatchFilter filter) {
+            this.results = results;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pos >= selected) {
+                if (results.hasNext() == false)
+                    return false;
+                fetchBatch();
+            }
+            return true;
+        }
+
+        private void fetchBatch() {
+            int n = 0;
+            while (n < batch.length && results.hasNext()) {
+                Result r = results.next();
+                batch[n] = r;
+                keys[n] = r.getRow();
+                n++;
+            }
+            selected = filter.evaluate(keys, offsets, n, selection);
+            pos = 0;
+        }
+
+        @Override
+        public Result next() {
+            if (hasNext() == false)
+                throw new NoSuchElementException();
+            return batch[selection[pos++]];
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private OpenedScan nextOpenedScan() {
+        if (scanFanout <= 1) {
+            return doScan(this.rangeIterator.next(), table);
+        }
+
+        ExecutorService executor = getScanExecutor(cube.getConfig());
+        while (openingScans.size() < scanFanout && rangeIterator.hasNext()) {
+            OpeningScan opening = new OpeningScan(rangeIterator.next());
+            opening.future = executor.submit(opening);
+            openingScans.add(opening);
+        }
 
-        Iterator<Result> iter = null;
+        OpeningScan opening = openingScans.removeFirst();
         try {
-            scan = buildScan(keyRange);
-            applyFuzzyFilter(scan, keyRange);
-            logScan(keyRange);
+            // wait in short steps, so a cancelled query does not wait for the
+            // region servers to finish aggregating
+            while (true) {
+                if (context.isCancelled()) {
+                    opening.abandon();
+                    context.checkCancelled();
+                }
+                try {
+                    return opening.future.get(1, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    // check again
+                }
+            }
+        } catch (InterruptedException e) {
+            opening.abandon();
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted when open scanner on table " + tableName, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof StorageException) {
+                throw (StorageException) cause;
+            }
+            throw new StorageException("Error when open scanner on table " + tableName, cause);
+        }
+    }
 
-            scanner = CoprocessorEnabler.scanWithCoprocessorIfBeneficial(cubeSeg, keyRange.getCuboid(), filter, groupBy, rowValueDecoders, context, table, scan);
+    private final OpenedScan doScan(HBaseKeyRange keyRange, HTableInterface scanTable) {
 
-            iter = scanner.iterator();
+        try {
+            Scan scan = buildScan(keyRange);
+            applyFuzzyFilter(scan, keyRange);
+            logScan(keyRange, scan);
+
+            ResultScanner scanner = CoprocessorEnabler.scanWithCoprocessorIfBeneficial(cubeSeg, keyRange.getCuboid(), filter, groupBy, rowValueDecoders, context, scanTable, scan);
+            return new OpenedScan(keyRange, scan, scanner, scanTable);
         } catch (Throwable t) {
             String msg = MessageFormat.format("Error when scan from lower key {1} to upper key {2} on table {0}.", tableName, Bytes.toString(keyRange.getStartKey()), Bytes.toString(keyRange.getStopKey()));
             throw new StorageException(msg, t);
         }
-        return iter;
     }
 
-    private void logScan(HBaseKeyRange keyRange) {
+    private void logScan(HBaseKeyRange keyRange, Scan scan) {
         StringBuilder info = new StringBuilder();
         info.append("\nScan hbase table ").append(tableName).append(": ");
         if (keyRange.getCuboid().requirePostAggregation()) {
@@ -242,7 +541,7 @@ public class CubeSegmentTupleIterator implements ITupleIterator {
         info.append(keyRange.getStopKeyAsString());
         info.append(" - ");
         info.append(Bytes.toStringBinary(keyRange.getStopKey()));
-        if (this.scan.getFilter() != null) {
+        if (scan.getFilter() != null) {
             info.append("\nFuzzy: ");
             info.append(keyRange.getFuzzyKeyAsString());
         }
@@ -251,7 +550,7 @@ public class CubeSegmentTupleIterator implements ITupleIterator {
 
     private Scan buildScan(HBaseKeyRange keyRange) {
         Scan scan = new Scan();
-        scan.setCaching(SCAN_CACHE);
+        scan.setCaching(context.isCompactResponseEnabled() ? SCAN_CACHE_BLOCKS : SCAN_CACHE);
         scan.setCacheBlocks(true);
         scan.setAttribute(Scan.SCAN_ATTRIBUTES_METRICS_ENABLE, Bytes.toBytes(Boolean.TRUE));
         for (RowValueDecoder valueDecoder : this.rowValueDecoders) {
@@ -336,8 +635,42 @@ public class CubeSegmentTupleIterator implements ITupleIterator {
     }
 
     private void translateResult(Result res, Tuple tuple) throws IOException {
+        translateRowKey(res.getRow(), tuple);
+
+        // aggregations
+        for (RowValueDecoder rowValueDecoder : this.rowValueDecoders) {
+            HBaseColumnDesc hbaseColumn = rowValueDecoder.getHBaseColumn();
+            String columnFamily = hbaseColumn.getColumnFamilyName();
+            String qualifier = hbaseColumn.getQualifier();
+            // FIXME: avoidable bytes array creation, why not use res.getValueAsByteBuffer directly?
+            byte[] valueBytes = res.getValue(Bytes.toBytes(columnFamily), Bytes.toBytes(qualifier));
+            translateValue(rowValueDecoder, valueBytes, tuple);
+        }
+    }
+
+    private int[] mapBlockColumns(SRowBlock.Reader block) {
+        int[] columns = new int[rowValueDecoders.size()];
+        int i = 0;
+        for (RowValueDecoder rowValueDecoder : this.rowValueDecoders) {
+            HBaseColumnDesc hbaseColumn = rowValueDecoder.getHBaseColumn();
+            columns[i++] = block.getColumnIndex(Bytes.toBytes(hbaseColumn.getColumnFamilyName()), Bytes.toBytes(hbaseColumn.getQualifier()));
+        }
+        return columns;
+    }
+
+    private void translateBlockRow(SRowBlock.Reader block, Tuple tuple) throws IOException {
+        translateRowKey(block.getKey(), tuple);
+
+        // aggregations
+        int i = 0;
+        for (RowValueDecoder rowValueDecoder : this.rowValueDecoders) {
+            int column = blockColumns[i++];
+            translateValue(rowValueDecoder, column < 0 ? null : block.getValue(column), tuple);
+        }
+    }
+
+    private void translateRowKey(byte[] rowkey, Tuple tuple) throws IOException {
         // groups
-        byte[] rowkey = res.getRow();
         rowKeyDecoder.decode(rowkey);
         List<TblColRef> columns = rowKeyDecoder.getColumns();
         List<String> dimensionNames = rowKeyDecoder.getNames(context.getAliasMap());
@@ -354,21 +687,15 @@ public class CubeSegmentTupleIterator implements ITupleIterator {
         for (IDerivedColumnFiller filler : tupleInfo.getDerivedColumnFillers()) {
             filler.fillDerivedColumns(dimensionValues, tuple);
         }
+    }
 
-        // aggregations
-        for (RowValueDecoder rowValueDecoder : this.rowValueDecoders) {
-            HBaseColumnDesc hbaseColumn = rowValueDecoder.getHBaseColumn();
-            String columnFamily = hbaseColumn.getColumnFamilyName();
-            String qualifier = hbaseColumn.getQualifier();
-            // FIXME: avoidable bytes array creation, why not use res.getValueAsByteBuffer directly?
-            byte[] valueBytes = res.getValue(Bytes.toBytes(columnFamily), Bytes.toBytes(qualifier));
-            rowValueDecoder.decode(valueBytes);
-            List<String> measureNames = rowValueDecoder.getNames();
-            Object[] measureValues = rowValueDecoder.getValues();
-            BitSet projectionIndex = rowValueDecoder.getProjectionIndex();
-            for (int i = projectionIndex.nextSetBit(0); i >= 0; i = projectionIndex.nextSetBit(i + 1)) {
-                tuple.setMeasureValue(measureNames.get(i), measureValues[i]);
-            }
+    private void translateValue(RowValueDecoder rowValueDecoder, byte[] valueBytes, Tuple tuple) {
+        rowValueDecoder.decode(valueBytes);
+        List<String> measureNames = rowValueDecoder.getNames();
+        Object[] measureValues = rowValueDecoder.getValues();
+        BitSet projectionIndex = rowValueDecoder.getProjectionIndex();
+        for (int i = projectionIndex.nextSetBit(0); i >= 0; i = projectionIndex.nextSetBit(i + 1)) {
+            tuple.setMeasureValue(measureNames.get(i), measureValues[i]);
         }
     }
 }
@@ -16,7 +16,9 @@
 package com.kylinolap.storage.hbase;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -120,18 +122,13 @@ public class HBaseKeyRange implements Comparable<HBaseKeyRange> {
             }
         }
 
+        // the encoder is cached and shared, pass the blank byte per call
         AbstractRowKeyEncoder encoder = AbstractRowKeyEncoder.createInstance(cubeSeg, cuboid);
-        encoder.setBlankByte(RowConstants.ROWKEY_LOWER_BYTE);
-        this.startKey = encoder.encode(startValues);
+        this.startKey = encoder.encode(startValues, RowConstants.ROWKEY_LOWER_BYTE);
 
-        encoder.setBlankByte(RowConstants.ROWKEY_UPPER_BYTE);
         // In order to make stopRow inclusive add a trailing 0 byte. #See
         // Scan.setStopRow(byte [] stopRow)
-        this.stopKey = Bytes.add(encoder.encode(stopValues), ZERO_TAIL_BYTES);
-
-        // restore encoder defaults for later reuse (note
-        // AbstractRowKeyEncoder.createInstance() caches instances)
-        encoder.setBlankByte(AbstractRowKeyEncoder.DEFAULT_BLANK_BYTE);
+        this.stopKey = Bytes.add(encoder.encode(stopValues, RowConstants.ROWKEY_UPPER_BYTE), ZERO_TAIL_BYTES);
 
         // always fuzzy match cuboid ID to lock on the selected cuboid
         this.fuzzyKeys = buildFuzzyKeys(fuzzyValues);
@@ -171,6 +168,29 @@ public class HBaseKeyRange implements Comparable<HBaseKeyRange> {
         return result;
     }
 
+    /**
+     * A range on a sharded segment spans every shard, fan it out into one
+     * range per shard so each can be scanned on its own.
+     * 
+     * @return per shard ranges, or this range if the segment is not sharded
+     */
+    public List<HBaseKeyRange> splitByShard() {
+        int shardNum = cubeSeg.getRowkeyShardNum();
+        if (shardNum <= 0) {
+            return Collections.singletonList(this);
+        }
+
+        List<HBaseKeyRange> result = Lists.newArrayListWithCapacity(shardNum);
+        for (int shard = 0; shard < shardNum; shard++) {
+            byte[] shardStartKey = Arrays.copyOf(startKey, startKey.length);
+            byte[] shardStopKey = Arrays.copyOf(stopKey, stopKey.length);
+            shardStartKey[0] = (byte) shard;
+            shardStopKey[0] = (byte) shard;
+            result.add(new HBaseKeyRange(cubeSeg, cuboid, shardStartKey, shardStopKey, fuzzyKeys, flatOrAndFilter, partitionColumnStartDate, partitionColumnEndDate));
+        }
+        return result;
+    }
+
     public CubeSegment getCubeSegment() {
         return this.cubeSeg;
     }
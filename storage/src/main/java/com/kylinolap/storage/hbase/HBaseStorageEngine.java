@@ -51,6 +51,7 @@ import com.kylinolap.metadata.model.cube.HBaseMappingDesc;
 import com.kylinolap.metadata.model.cube.MeasureDesc;
 import com.kylinolap.metadata.model.cube.TblColRef;
 import com.kylinolap.storage.IStorageEngine;
+import com.kylinolap.storage.QueryMemoryBudget;
 import com.kylinolap.storage.StorageContext;
 import com.kylinolap.storage.filter.ColumnTupleFilter;
 import com.kylinolap.storage.filter.CompareTupleFilter;
@@ -68,7 +69,6 @@ public class HBaseStorageEngine implements IStorageEngine {
     private static final Logger logger = LoggerFactory.getLogger(HBaseStorageEngine.class);
 
     private static final int MERGE_KEYRANGE_THRESHOLD = 7;
-    private static final long MEM_BUDGET_PER_QUERY = 3L * 1024 * 1024 * 1024; // 3G
 
     private final CubeInstance cubeInstance;
     private final CubeDesc cubeDesc;
@@ -80,7 +80,7 @@ public class HBaseStorageEngine implements IStorageEngine {
 
     @Override
     public ITupleIterator search(Collection<TblColRef> dimensions, TupleFilter filter, //
-            Collection<TblColRef> groups, Collection<FunctionDesc> metrics, StorageContext context) {
+            Collection<TblColRef> groups, Collection<FunctionDesc> metrics, final StorageContext context) {
 
         // all dimensions = groups + others
         Set<TblColRef> others = Sets.newHashSet(dimensions);
@@ -118,15 +118,46 @@ public class HBaseStorageEngine implements IStorageEngine {
 
         // translate filter into segment scan ranges
         List<HBaseKeyRange> scans = buildScanRanges(flatFilter, dimensionsD);
+        context.setKeyRangeCount(scans.size());
 
         // check involved measures, build value decoder for each each family:column
         List<RowValueDecoder> valueDecoders = translateAggregation(cubeDesc.getHBaseMapping(), metrics, scans, context);
 
-        setThreshold(dimensionsD, valueDecoders, context); // set cautious threshold to prevent out of memory
+        reserveMemory(dimensionsD, valueDecoders, scans, context); // set cautious threshold to prevent out of memory
         setCoprocessor(groupsCopD, valueDecoders, context); // enable coprocessor if beneficial
         setLimit(filter, context);
-
-        HConnection conn = HBaseConnection.get(context.getConnUrl());
+        String topNField = setTopN(filter, groupsD, groupsCopD, derivedPostAggregation, valueDecoders, context);
+
+        final HConnection conn = HBaseConnection.get(context.getConnUrl());
+        if (cubeInstance.getConfig().isConcurrentScanIteratorEnabled()) {
+            Map<CubeSegment, Collection<HBaseKeyRange>> segmentKeyRanges = Maps.newLinkedHashMap();
+            for (HBaseKeyRange scan : scans) {
+                Collection<HBaseKeyRange> ranges = segmentKeyRanges.get(scan.getCubeSegment());
+                if (ranges == null) {
+                    ranges = Lists.newArrayList();
+                    segmentKeyRanges.put(scan.getCubeSegment(), ranges);
+                }
+                ranges.add(scan);
+            }
+            return new ConcurrentHBaseTupleIterator(conn, segmentKeyRanges, cubeDesc, cubeInstance, dimensionsD, filterD, groupsCopD, valueDecoders, context);
+        }
+        // only the serialized iterator decodes compact blocks
+        if (context.isCoprocessorEnabled() && cubeInstance.getConfig().isCoprocessorCompactResponseEnabled()) {
+            context.enableCompactResponse();
+        }
+        if (context.isTopNEnabled()) {
+            final List<HBaseKeyRange> fScans = scans;
+            final Set<TblColRef> fDimensionsD = dimensionsD;
+            final TupleFilter fFilterD = filterD;
+            final Set<TblColRef> fGroupsCopD = groupsCopD;
+            final List<RowValueDecoder> fValueDecoders = valueDecoders;
+            return new TopNTupleIterator(new TopNTupleIterator.ScanFactory() {
+                @Override
+                public SerializedHBaseTupleIterator newScan() {
+                    return new SerializedHBaseTupleIterator(conn, fScans, cubeInstance, fDimensionsD, fFilterD, fGroupsCopD, fValueDecoders, context);
+                }
+            }, groups, topNField, context);
+        }
         return new SerializedHBaseTupleIterator(conn, scans, cubeInstance, dimensionsD, filterD, groupsCopD, valueDecoders, context);
     }
 
@@ -380,7 +411,9 @@ public class HBaseStorageEngine implements IStorageEngine {
 
             List<HBaseKeyRange> mergedRanges = mergeOverlapRanges(scanRanges);
             mergedRanges = mergeTooManyRanges(mergedRanges);
-            result.addAll(mergedRanges);
+            for (HBaseKeyRange mergedRange : mergedRanges) {
+                result.addAll(mergedRange.splitByShard());
+            }
         }
 
         dropUnhitSegments(result);
@@ -565,11 +598,63 @@ public class HBaseStorageEngine implements IStorageEngine {
         }
     }
 
-    private void setThreshold(Collection<TblColRef> dimensions, List<RowValueDecoder> valueDecoders, StorageContext context) {
-        if (RowValueDecoder.hasMemHungryCountDistinct(valueDecoders) == false) {
+    /**
+     * Reserve memory for the rows the query may hold, estimated from the row
+     * size of the cuboid and measures, and the source records of the segments
+     * the key ranges hit. Without an account (outside a query server) only
+     * memory hungry count distinct is limited, to the per query budget. The
+     * threshold is cut to what is granted, and a short grant is marked on the
+     * context for the coprocessor enabler. The estimate is only a first
+     * reservation, the storage iterators charge the rows as they come.
+     */
+    private void reserveMemory(Collection<TblColRef> dimensions, List<RowValueDecoder> valueDecoders, List<HBaseKeyRange> scans, StorageContext context) {
+        boolean memHungry = RowValueDecoder.hasMemHungryCountDistinct(valueDecoders);
+        long budgetPerQuery = cubeInstance.getConfig().getQueryMemBudgetPerQuery();
+        int rowSizeEst = estimateRowSize(dimensions, valueDecoders);
+        int rowLimitPerQuery = (int) Math.min(Integer.MAX_VALUE, budgetPerQuery / rowSizeEst);
+        context.setRowSizeEstimate(rowSizeEst);
+
+        QueryMemoryBudget.Account account = context.getMemoryAccount();
+        if (account == null) {
+            if (memHungry) {
+                context.setThreshold(rowLimitPerQuery);
+            }
             return;
         }
 
+        long memEst = rowSizeEst * estimateRowCount(scans, context);
+        long want = Math.min(memEst, budgetPerQuery);
+        long granted = account.reserve(want);
+        logger.info("Reserved " + granted + " bytes for the query, estimated " + memEst + " bytes, " + rowSizeEst + " bytes per row");
+
+        int rowLimit = (int) Math.min(Integer.MAX_VALUE, granted / rowSizeEst);
+        if (memHungry) {
+            // on a full grant keep the per query cap, rows beyond the estimate
+            // reserve more as they are charged
+            context.setThreshold(granted < want ? rowLimit : rowLimitPerQuery);
+        } else if (granted < want) {
+            context.setThreshold(Math.min(context.getThreshold(), rowLimit));
+        }
+        context.setMemoryShort(granted < memEst);
+    }
+
+    private long estimateRowCount(List<HBaseKeyRange> scans, StorageContext context) {
+        // a cuboid never has more rows than the source of its segment
+        Set<CubeSegment> segments = Sets.newHashSet();
+        long rows = 0;
+        for (HBaseKeyRange scan : scans) {
+            CubeSegment segment = scan.getCubeSegment();
+            if (segments.add(segment)) {
+                if (segment.getSourceRecords() <= 0) {
+                    return context.getThreshold(); // unknown
+                }
+                rows += segment.getSourceRecords();
+            }
+        }
+        return Math.min(rows, context.getThreshold());
+    }
+
+    private int estimateRowSize(Collection<TblColRef> dimensions, List<RowValueDecoder> valueDecoders) {
         int rowSizeEst = dimensions.size() * 3;
         for (RowValueDecoder decoder : valueDecoders) {
             MeasureDesc[] measures = decoder.getMeasures();
@@ -579,9 +664,7 @@ public class HBaseStorageEngine implements IStorageEngine {
                 rowSizeEst += func.getReturnDataType().getSpaceEstimate();
             }
         }
-
-        long rowEst = MEM_BUDGET_PER_QUERY / rowSizeEst;
-        context.setThreshold((int) rowEst);
+        return Math.max(1, rowSizeEst);
     }
 
     private void setLimit(TupleFilter filter, StorageContext context) {
@@ -594,6 +677,39 @@ public class HBaseStorageEngine implements IStorageEngine {
         }
     }
 
+    /**
+     * Push ORDER BY measure LIMIT n down to coprocessor as per region TopN,
+     * returns the tuple field of the sort measure, or null if not pushed down.
+     */
+    private String setTopN(TupleFilter filter, Set<TblColRef> groupsD, Set<TblColRef> groupsCopD, Set<TblColRef> derivedPostAggregation, //
+            List<RowValueDecoder> valueDecoders, StorageContext context) {
+        int maxLimit = cubeInstance.getConfig().getCoprocessorTopNMaxLimit();
+        boolean goodSort = context.getSortFieldCount() == 1 && context.getSortMeasures().size() == 1 && context.hasPostAggregationFilter() == false;
+        boolean goodLimit = context.getLimit() > 0 && context.getLimit() <= maxLimit && context.getLimit() < StorageContext.DEFAULT_THRESHOLD;
+        boolean goodScan = context.isCoprocessorEnabled() && cubeInstance.getConfig().isConcurrentScanIteratorEnabled() == false;
+        // coprocessor groups must be exactly the query groups, otherwise groups are merged after the cut
+        boolean goodGroups = groupsCopD.equals(groupsD) && derivedPostAggregation.isEmpty();
+        boolean goodFilter = filter == null || TupleFilter.isEvaluableRecursively(filter);
+        if (!(goodSort && goodLimit && goodScan && goodGroups && goodFilter))
+            return null;
+
+        MeasureDesc measure = context.getSortMeasures().get(0);
+        if (TopNTupleIterator.isTopNSupported(measure, context.getSortOrders().get(0)) == false)
+            return null;
+
+        for (RowValueDecoder decoder : valueDecoders) {
+            MeasureDesc[] measures = decoder.getMeasures();
+            for (int i = 0; i < measures.length; i++) {
+                if (measures[i].equals(measure) && decoder.getProjectionIndex().get(i)) {
+                    logger.info("Enable coprocessor TopN " + context.getLimit() + " on " + measure);
+                    context.enableTopN(context.getLimit());
+                    return decoder.getNames().get(i);
+                }
+            }
+        }
+        return null;
+    }
+
     private void setCoprocessor(Set<TblColRef> groupsCopD, List<RowValueDecoder> valueDecoders, StorageContext context) {
         CoprocessorEnabler.enableCoprocessorIfBeneficial(cubeInstance, groupsCopD, valueDecoders, context);
     }
@@ -16,108 +16,467 @@
 
 package com.kylinolap.storage.hbase;
 
-import static com.kylinolap.metadata.model.invertedindex.InvertedIndexDesc.*;
-
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import com.kylinolap.cube.invertedindex.*;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.ipc.BlockingRpcCallback;
+import org.apache.hadoop.hbase.ipc.ServerRpcController;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
 import com.kylinolap.common.KylinConfig;
 import com.kylinolap.common.persistence.HBaseConnection;
 import com.kylinolap.common.persistence.StorageException;
+import com.kylinolap.common.util.BytesUtil;
 import com.kylinolap.cube.CubeInstance;
 import com.kylinolap.cube.CubeSegment;
+import com.kylinolap.cube.CubeSegmentStatusEnum;
+import com.kylinolap.cube.invertedindex.TableRecord;
+import com.kylinolap.cube.invertedindex.TableRecordInfo;
+import com.kylinolap.cube.invertedindex.TableRecordInfoDigest;
+import com.kylinolap.dict.DateStrDictionary;
+import com.kylinolap.dict.Dictionary;
 import com.kylinolap.metadata.model.cube.FunctionDesc;
 import com.kylinolap.metadata.model.cube.TblColRef;
 import com.kylinolap.metadata.model.schema.ColumnDesc;
 import com.kylinolap.storage.IStorageEngine;
 import com.kylinolap.storage.StorageContext;
+import com.kylinolap.storage.filter.ColumnTupleFilter;
+import com.kylinolap.storage.filter.CompareTupleFilter;
 import com.kylinolap.storage.filter.TupleFilter;
+import com.kylinolap.storage.hbase.coprocessor.EndpointAggregators;
+import com.kylinolap.storage.hbase.coprocessor.EndpointFilter;
+import com.kylinolap.storage.hbase.coprocessor.EndpointKeyRanges;
+import com.kylinolap.storage.hbase.coprocessor.EndpointProjector;
+import com.kylinolap.storage.hbase.coprocessor.generated.IIProtos;
+import com.kylinolap.storage.hbase.observer.SRowType;
 import com.kylinolap.storage.tuple.ITupleIterator;
 import com.kylinolap.storage.tuple.Tuple;
 import com.kylinolap.storage.tuple.TupleInfo;
 
 /**
+ * Queries all ready segments of an inverted index cube through IIEndpoint.
+ * Filter on the timestamp column is turned into one key range per shard, and
+ * segments out of the time range are skipped. The regions of a segment are
+ * called a few at a time ahead of the one being read, so rows stream to the
+ * query instead of being collected from all regions first.
+ * Unless the query avoids aggregation, the endpoint groups rows by the
+ * dimensions and returns SUM, MIN, MAX and COUNT per group, like a cuboid.
+ * 
  * @author yangli9
  */
 public class InvertedIndexStorageEngine implements IStorageEngine {
 
+    private static final Logger logger = LoggerFactory.getLogger(InvertedIndexStorageEngine.class);
+
+    // dimension columns of higher cardinality are converted row by row
+    private static final int MAX_CACHED_CARDINALITY = 1 << 16;
+
+    // regions called ahead of the one being read, bounds the responses held
+    // in memory by a query
+    private static final int REGIONS_IN_FLIGHT = 4;
+
+    private static ExecutorService executor;
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int nThreads = KylinConfig.getInstanceFromEnv().getEndpointThreadCount();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(nThreads, nThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ii-endpoint-%d").build());
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+
     private String hbaseUrl;
-    private CubeSegment seg;
+    private CubeInstance cube;
 
     public InvertedIndexStorageEngine(CubeInstance cube) {
-        this.seg = cube.getFirstSegment();
+        this.cube = cube;
         this.hbaseUrl = KylinConfig.getInstanceFromEnv().getStorageUrl();
     }
 
     @Override
     public ITupleIterator search(Collection<TblColRef> dimensions, TupleFilter filter, Collection<TblColRef> groups, Collection<FunctionDesc> metrics, StorageContext context) {
+        return new IISegmentTupleIterator(cube.getSegments(CubeSegmentStatusEnum.READY), dimensions, filter, groups, metrics, context);
+    }
+
+    /**
+     * @return start keys of the regions that overlap [startKey, endKey), in
+     *         key order; null means unbounded
+     */
+    private static List<byte[]> getRegionStartKeys(HConnection hconn, String tableName, byte[] startKey, byte[] endKey) throws IOException {
+        List<byte[]> keys = Lists.newArrayList();
+        for (HRegionLocation location : hconn.locateRegions(TableName.valueOf(tableName))) {
+            HRegionInfo region = location.getRegionInfo();
+            if (endKey != null && Bytes.compareTo(region.getStartKey(), endKey) >= 0)
+                continue;
+            if (startKey != null && region.getEndKey().length > 0 && Bytes.compareTo(region.getEndKey(), startKey) <= 0)
+                continue;
+            keys.add(region.getStartKey());
+        }
+        return keys;
+    }
+
+    private static void collectColumns(TupleFilter filter, Set<TblColRef> collector) {
+        if (filter == null)
+            return;
+
+        if (filter instanceof ColumnTupleFilter) {
+            collector.add(((ColumnTupleFilter) filter).getColumn());
+        }
+        for (TupleFilter child : filter.getChildren()) {
+            collectColumns(child, collector);
+        }
+    }
+
+    /**
+     * @return inclusive [start, end] of the timestamp column allowed by the
+     *         filter, or null if no timestamp could pass
+     */
+    static long[] deriveTimeRange(TupleFilter filter, TblColRef tsColumn) {
+        long[] all = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+        if (filter == null)
+            return all;
+
+        switch (filter.getOperator()) {
+        case AND: {
+            long[] r = all;
+            for (TupleFilter child : filter.getChildren()) {
+                long[] c = deriveTimeRange(child, tsColumn);
+                if (c == null)
+                    return null;
+                r = new long[] { Math.max(r[0], c[0]), Math.min(r[1], c[1]) };
+            }
+            return r[0] > r[1] ? null : r;
+        }
+        case OR: {
+            long[] r = null;
+            for (TupleFilter child : filter.getChildren()) {
+                long[] c = deriveTimeRange(child, tsColumn);
+                if (c == null)
+                    continue;
+                r = r == null ? c : new long[] { Math.min(r[0], c[0]), Math.max(r[1], c[1]) };
+            }
+            return r;
+        }
+        case EQ:
+        case IN:
+        case LT:
+        case LTE:
+        case GT:
+        case GTE:
+            return deriveTimeRange((CompareTupleFilter) filter, tsColumn);
+        default:
+            return all;
+        }
+    }
 
+    private static long[] deriveTimeRange(CompareTupleFilter filter, TblColRef tsColumn) {
+        long[] all = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+        if (tsColumn.equals(filter.getColumn()) == false || filter.getValues().isEmpty())
+            return all;
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
         try {
-            return new IISegmentTupleIterator(context);
-        } catch (IOException e) {
-            throw new StorageException(e.getMessage(), e);
+            for (String value : filter.getValues()) {
+                long t = DateStrDictionary.stringToMillis(value);
+                min = Math.min(min, t);
+                max = Math.max(max, t);
+            }
+        } catch (IllegalArgumentException e) {
+            return all; // not a date constant, e.g. unbound variable
+        }
+
+        switch (filter.getOperator()) {
+        case EQ:
+        case IN:
+            return new long[] { min, max };
+        case LT:
+            return new long[] { Long.MIN_VALUE, max - 1 };
+        case LTE:
+            return new long[] { Long.MIN_VALUE, max };
+        case GT:
+            return new long[] { min + 1, Long.MAX_VALUE };
+        case GTE:
+            return new long[] { min, Long.MAX_VALUE };
+        default:
+            return all;
         }
     }
 
-    private class IISegmentTupleIterator implements ITupleIterator {
+    class IISegmentTupleIterator implements ITupleIterator {
         final StorageContext context;
-        final HBaseClientKVIterator kvIterator;
-        final IIKeyValueCodec codec;
-        final Iterator<Slice> sliceIterator;
-        Iterator<TableRecordBytes> recordIterator;
+        final TupleFilter filter;
+        final boolean evalFilterOnClient;
+        final Iterator<CubeSegment> segmentIterator;
+        // group key of the endpoint aggregation, filter columns are kept for
+        // evaluating the filter on client
+        final Set<TblColRef> groupBy;
+        final List<FunctionDesc> metrics;
+        final boolean pushDownAggregation;
+        RegionRowIterator rowIterator;
         Tuple next;
 
+        // of current segment, projector and aggregators are null when rows
+        // are returned raw
+        EndpointProjector projector;
+        EndpointAggregators aggregators;
+        TableRecord record;
+
         TupleInfo tupleInfo;
         Tuple tuple;
+        int[] tupleColumns; // record column of each dimension field
+        String[] dataTypes;
 
-        IISegmentTupleIterator(StorageContext context) throws IOException {
+        // converted dimension values by dictionary ID, per segment
+        TableRecordInfo cacheInfo;
+        Object[][] valueCache;
+
+        IISegmentTupleIterator(List<CubeSegment> segments, Collection<TblColRef> dimensions, TupleFilter filter, Collection<TblColRef> groups, Collection<FunctionDesc> metrics, StorageContext context) {
             this.context = context;
+            this.filter = filter;
+            // EndpointFilter could be looser than the original, check again on returned rows
+            this.evalFilterOnClient = filter != null && TupleFilter.isEvaluableRecursively(filter);
+            this.segmentIterator = segments.iterator();
+            this.groupBy = new LinkedHashSet<TblColRef>(dimensions);
+            this.groupBy.addAll(groups);
+            collectColumns(filter, this.groupBy);
+            this.metrics = Lists.newArrayList(metrics);
+            this.pushDownAggregation = context.isAvoidAggregation() == false;
+        }
+
+        private RegionRowIterator querySegment(CubeSegment seg) throws IOException {
+            TableRecordInfo info = new TableRecordInfo(seg);
+            ColumnDesc tsColumn = info.getColumns()[info.getTimestampColumn()];
+            long[] timeRange = deriveTimeRange(filter, new TblColRef(tsColumn));
+            // a streaming segment takes records beyond its date range, and
+            // late records go to slices timestamped after their own time
+            if (timeRange != null && info.hasAppendableDictionary()) {
+                timeRange = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+            }
+            if (timeRange == null || isOutOfRange(seg, timeRange)) {
+                logger.debug("Skip segment " + seg + ", out of time range");
+                return null;
+            }
+
+            IIProtos.IIRequest.Builder request = IIProtos.IIRequest.newBuilder();
+            request.setTableInfo(ByteString.copyFrom(TableRecordInfoDigest.serialize(info)));
+            if (filter != null) {
+                request.setFilter(ByteString.copyFrom(EndpointFilter.serialize(EndpointFilter.fromFilter(info, filter))));
+            }
+            prepareSegment(info);
+            if (aggregators != null) {
+                request.setProjector(ByteString.copyFrom(EndpointProjector.serialize(projector)));
+                request.setAggregators(ByteString.copyFrom(EndpointAggregators.serialize(aggregators)));
+            } else if (pushDownAggregation) {
+                logger.debug("Aggregation of " + metrics + " not pushed down to segment " + seg);
+            }
+            byte[] startKey = null;
+            byte[] endKey = null;
+            if (timeRange[0] != Long.MIN_VALUE || timeRange[1] != Long.MAX_VALUE) {
+                EndpointKeyRanges ranges = EndpointKeyRanges.fromTimeRange(info.getDescriptor().getSharding(), timeRange[0], timeRange[1]);
+                request.setKeyRanges(ByteString.copyFrom(EndpointKeyRanges.serialize(ranges)));
+                startKey = ranges.getFirstStartKey();
+                endKey = ranges.getLastStopKey();
+            }
 
             HConnection hconn = HBaseConnection.get(hbaseUrl);
             String tableName = seg.getStorageLocationIdentifier();
-            kvIterator = new HBaseClientKVIterator(hconn, tableName, HBASE_FAMILY_BYTES, HBASE_QUALIFIER_BYTES);
-            codec = new IIKeyValueCodec(new TableRecordInfo(seg));
-            sliceIterator = codec.decodeKeyValue(kvIterator).iterator();
+            List<byte[]> regionStartKeys = getRegionStartKeys(hconn, tableName, startKey, endKey);
+            return new RegionRowIterator(hconn, tableName, regionStartKeys, request.build());
+        }
+
+        /**
+         * decides whether the endpoint aggregates rows of the segment, and
+         * sets up projector, aggregators and record for decoding its rows
+         */
+        void prepareSegment(TableRecordInfo info) {
+            projector = null;
+            aggregators = pushDownAggregation && isGroupByPossible(info) ? EndpointAggregators.fromFunctions(info, metrics) : null;
+            if (aggregators != null) {
+                projector = EndpointProjector.fromColumns(info, groupBy);
+            }
+            record = new TableRecord(info);
+        }
+
+        // all group by columns must be dimensions of the inverted index, and a
+        // dimension field must not share its name with a metrics field, e.g.
+        // PRICE of SUM(PRICE)
+        private boolean isGroupByPossible(TableRecordInfo info) {
+            SRowType type = SRowType.fromTableRecordInfo(info);
+            Set<String> fieldNames = new HashSet<String>();
+            for (TblColRef column : groupBy) {
+                int i = type.getColumnIndex(column);
+                if (i < 0 || info.isMetrics(i))
+                    return false;
+                fieldNames.add(context.getFieldName(column));
+            }
+            for (FunctionDesc func : metrics) {
+                if (fieldNames.contains(func.getRewriteFieldName()))
+                    return false;
+            }
+            return true;
+        }
+
+        private boolean isOutOfRange(CubeSegment seg, long[] timeRange) {
+            if (seg.getDateRangeEnd() <= 0)
+                return false; // unknown
+            return seg.getDateRangeEnd() <= timeRange[0] || seg.getDateRangeStart() > timeRange[1];
         }
 
         private TupleInfo buildTupleInfo(TableRecordInfo recInfo) {
             TupleInfo info = new TupleInfo();
             ColumnDesc[] columns = recInfo.getColumns();
-            for (int i = 0; i < columns.length; i++) {
+            if (projector == null) {
+                tupleColumns = new int[columns.length];
+                for (int i = 0; i < columns.length; i++)
+                    tupleColumns[i] = i;
+            } else {
+                tupleColumns = projector.getColumns();
+            }
+
+            int index = 0;
+            for (int i : tupleColumns) {
                 TblColRef col = new TblColRef(columns[i]);
-                info.setField(context.getFieldName(col), col, col.getType().getName(), i);
+                info.setField(context.getFieldName(col), col, col.getType().getName(), index++);
+            }
+            if (aggregators != null) {
+                // same names as cube measures, which the query rewrites to
+                for (FunctionDesc func : metrics) {
+                    info.setField(func.getRewriteFieldName(), null, func.getSQLType(), index++);
+                }
             }
             return info;
         }
 
-        private Tuple toTuple(TableRecord rec) {
+        // a raw row is a record, an aggregated row is the group key followed
+        // by the metrics
+        Tuple toTuple(ByteString raw) {
+            byte[] row = raw.toByteArray();
+            if (aggregators == null) {
+                record.setBytes(row, 0, row.length);
+            } else {
+                projector.setKey(row, record.getBytes());
+            }
+
             if (tuple == null) {
-                tupleInfo = buildTupleInfo(rec.info());
+                tupleInfo = buildTupleInfo(record.info());
                 tuple = new Tuple(tupleInfo);
+                dataTypes = new String[tupleInfo.size()];
+                for (int i = 0; i < dataTypes.length; i++) {
+                    dataTypes[i] = tupleInfo.getDataType(tupleInfo.getAllFields().get(i));
+                }
             }
 
             List<String> fieldNames = tupleInfo.getAllFields();
-            for (int i = 0, n = tupleInfo.size(); i < n; i++) {
-                tuple.setDimensionValue(fieldNames.get(i), rec.getValueString(i));
+            for (int i = 0; i < tupleColumns.length; i++) {
+                tuple.setDimensionObjectValue(fieldNames.get(i), getValue(record, tupleColumns[i], dataTypes[i]));
+            }
+            if (aggregators != null) {
+                long[] aggrs = aggregators.read(row, projector.getKeyLength());
+                for (int i = 0; i < aggrs.length; i++) {
+                    int field = tupleColumns.length + i;
+                    tuple.setMeasureValue(fieldNames.get(field), getMetricsValue(aggrs[i], aggregators.getColumn(i), dataTypes[field]));
+                }
             }
             return tuple;
         }
 
+        // an aggregated metrics value is decoded as if it were the value of
+        // the metrics column
+        private Object getMetricsValue(long value, int col, String dataType) {
+            if (col < 0) // COUNT
+                return value;
+
+            BytesUtil.writeLong(value, record.getBytes(), record.info().offset(col), EndpointAggregators.METRIC_LEN);
+            return Tuple.convertOptiqCellValue(record.getValueString(col), dataType);
+        }
+
+        // a dimension value goes through dictionary and type conversion once
+        // per distinct ID, instead of once per row
+        private Object getValue(TableRecord rec, int col, String dataType) {
+            TableRecordInfo info = rec.info();
+            if (info != cacheInfo) {
+                cacheInfo = info;
+                valueCache = new Object[info.getColumnCount()][];
+            }
+
+            if (info.isMetrics(col))
+                return Tuple.convertOptiqCellValue(rec.getValueString(col), dataType);
+
+            int id = rec.getValueID(col);
+            if (id > info.getMaxID(col) && id != Dictionary.NULL_ID[info.length(col)] && info.isAppendable(col)) {
+                // appended by streaming after the dictionary was loaded
+                try {
+                    info.refreshDictionary(col, id);
+                } catch (IOException e) {
+                    throw new StorageException("Error when reloading dictionary of column " + info.getColumns()[col], e);
+                }
+                valueCache[col] = null;
+            }
+
+            int cardinality = info.getMaxID(col) + 1;
+            if (cardinality > MAX_CACHED_CARDINALITY)
+                return Tuple.convertOptiqCellValue(rec.getValueString(col), dataType);
+            if (id < 0 || id >= cardinality) // NULL
+                return Tuple.convertOptiqCellValue(rec.getValueString(col), dataType);
+
+            if (valueCache[col] == null)
+                valueCache[col] = new Object[cardinality];
+            Object value = valueCache[col][id];
+            if (value == null) {
+                value = Tuple.convertOptiqCellValue(rec.getValueString(col), dataType);
+                valueCache[col][id] = value;
+            }
+            return value;
+        }
+
         @Override
         public boolean hasNext() {
+            context.checkCancelled();
             while (next == null) {
-                if (recordIterator != null && recordIterator.hasNext()) {
-                    next = toTuple((TableRecord) recordIterator.next());
+                if (rowIterator != null && rowIterator.hasNext()) {
+                    Tuple t = toTuple(rowIterator.next());
+                    if (evalFilterOnClient && filter.evaluate(t) == false)
+                        continue;
+                    next = t;
                     break;
                 }
-                if (sliceIterator.hasNext()) {
-                    recordIterator = sliceIterator.next().iterator();
+                closeRegions();
+                if (segmentIterator.hasNext()) {
+                    CubeSegment seg = segmentIterator.next();
+                    try {
+                        rowIterator = querySegment(seg);
+                    } catch (IOException e) {
+                        throw new StorageException("Error when querying segment " + seg, e);
+                    }
                     continue;
                 }
                 break;
@@ -128,7 +487,7 @@ public class InvertedIndexStorageEngine implements IStorageEngine {
 
         @Override
         public Tuple next() {
-            if (next == null)
+            if (next == null && hasNext() == false)
                 throw new NoSuchElementException();
 
             Tuple r = next;
@@ -138,7 +497,112 @@ public class InvertedIndexStorageEngine implements IStorageEngine {
 
         @Override
         public void close() {
-            kvIterator.close();
+            closeRegions();
+        }
+
+        private void closeRegions() {
+            if (rowIterator != null) {
+                rowIterator.close();
+                rowIterator = null;
+            }
+        }
+
+        /**
+         * Calls IIEndpoint on the regions of a segment in key order, with up
+         * to REGIONS_IN_FLIGHT calls running ahead of the region being read.
+         */
+        private class RegionRowIterator implements Iterator<ByteString> {
+            final String tableName;
+            final HTableInterface table;
+            final Iterator<byte[]> regionStartKeys;
+            final IIProtos.IIRequest request;
+            final LinkedList<Future<IIProtos.IIResponse>> pending = Lists.newLinkedList();
+            Iterator<ByteString> rows = Iterators.emptyIterator();
+
+            RegionRowIterator(HConnection hconn, String tableName, List<byte[]> regionStartKeys, IIProtos.IIRequest request) throws IOException {
+                this.tableName = tableName;
+                this.table = hconn.getTable(tableName);
+                this.regionStartKeys = regionStartKeys.iterator();
+                this.request = request;
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (rows.hasNext() == false) {
+                    callAhead();
+                    if (pending.isEmpty())
+                        return false;
+                    rows = waitFor(pending.removeFirst()).getRowsList().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public ByteString next() {
+                if (hasNext() == false)
+                    throw new NoSuchElementException();
+                return rows.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private void callAhead() {
+                // regions not called yet are spared once the query is cancelled
+                while (pending.size() < REGIONS_IN_FLIGHT && regionStartKeys.hasNext() && context.isCancelled() == false) {
+                    final byte[] regionStartKey = regionStartKeys.next();
+                    pending.add(getExecutor().submit(new Callable<IIProtos.IIResponse>() {
+                        @Override
+                        public IIProtos.IIResponse call() throws Exception {
+                            return callRegion(regionStartKey);
+                        }
+                    }));
+                }
+            }
+
+            private IIProtos.IIResponse callRegion(byte[] regionStartKey) throws IOException {
+                IIProtos.RowsService service = IIProtos.RowsService.newStub(table.coprocessorService(regionStartKey));
+                ServerRpcController controller = new ServerRpcController();
+                BlockingRpcCallback<IIProtos.IIResponse> rpcCallback = new BlockingRpcCallback<IIProtos.IIResponse>();
+                service.getRows(controller, request, rpcCallback);
+                IIProtos.IIResponse response = rpcCallback.get();
+                if (controller.failedOnException()) {
+                    throw controller.getFailedOn();
+                }
+                logger.debug(response.getRowsCount() + " rows from region " + Bytes.toStringBinary(regionStartKey));
+                return response;
+            }
+
+            // wait in steps, so a cancelled query does not wait for the region
+            private IIProtos.IIResponse waitFor(Future<IIProtos.IIResponse> future) {
+                while (true) {
+                    context.checkCancelled();
+                    try {
+                        return future.get(1, TimeUnit.SECONDS);
+                    } catch (TimeoutException e) {
+                        continue;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new StorageException("Interrupted when querying table " + tableName, e);
+                    } catch (ExecutionException e) {
+                        throw new StorageException("Error when querying table " + tableName, e.getCause());
+                    }
+                }
+            }
+
+            void close() {
+                for (Future<IIProtos.IIResponse> future : pending) {
+                    future.cancel(true);
+                }
+                pending.clear();
+                try {
+                    table.close();
+                } catch (IOException e) {
+                    logger.warn("Error when closing table " + tableName, e);
+                }
+            }
         }
 
     }
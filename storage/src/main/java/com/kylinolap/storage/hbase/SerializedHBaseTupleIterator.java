@@ -32,6 +32,7 @@ import com.kylinolap.cube.kv.RowValueDecoder;
 import com.kylinolap.metadata.model.cube.TblColRef;
 import com.kylinolap.storage.StorageContext;
 import com.kylinolap.storage.filter.TupleFilter;
+import com.kylinolap.storage.hbase.observer.SRowTopN;
 import com.kylinolap.storage.tuple.ITuple;
 import com.kylinolap.storage.tuple.ITupleIterator;
 
@@ -86,6 +87,7 @@ public class SerializedHBaseTupleIterator implements ITupleIterator {
 
     @Override
     public boolean hasNext() {
+        context.checkCancelled();
         // 1. check limit
         if (context.isLimitEnabled() && scanCount >= context.getLimit()) {
             return false;
@@ -110,6 +112,9 @@ public class SerializedHBaseTupleIterator implements ITupleIterator {
             if (segmentIterator.hasNext()) {
                 t = segmentIterator.next();
                 scanCount++;
+                if (scanCount % StorageContext.MEMORY_CHARGE_ROWS == 0) {
+                    context.chargeRows(StorageContext.MEMORY_CHARGE_ROWS);
+                }
                 break;
             } else {
                 segmentIterator.close();
@@ -119,9 +124,19 @@ public class SerializedHBaseTupleIterator implements ITupleIterator {
         return t;
     }
 
+    /** the TopN mark of the region the last tuple came from */
+    SRowTopN.Mark getLastTopNMark() {
+        if (segmentIterator instanceof CubeSegmentTupleIterator)
+            return ((CubeSegmentTupleIterator) segmentIterator).getLastTopNMark();
+        return null;
+    }
+
     @Override
     public void close() {
         context.setTotalScanCount(scanCount);
-        segmentIterator.close();
+        // segments not reached yet have their first range opened already
+        for (CubeSegmentTupleIterator segIter : segmentIteratorList) {
+            segIter.close();
+        }
     }
 }
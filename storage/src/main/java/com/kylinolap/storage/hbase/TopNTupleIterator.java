@@ -0,0 +1,231 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kylinolap.metadata.model.cube.MeasureDesc;
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.storage.StorageContext;
+import com.kylinolap.storage.StorageContext.OrderEnum;
+import com.kylinolap.storage.hbase.observer.SRowTopN;
+import com.kylinolap.storage.tuple.ITuple;
+import com.kylinolap.storage.tuple.ITupleIterator;
+import com.kylinolap.storage.tuple.Tuple;
+
+/**
+ * Runs a scan whose coprocessors keep only the top N groups per region, and
+ * checks the partial groups they returned do prove the global top N. The
+ * query engine still merges and sorts the groups. If the proof fails, e.g. a
+ * group may be under counted or an unseen group may qualify, the scan is
+ * done again without TopN.
+ */
+public class TopNTupleIterator implements ITupleIterator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopNTupleIterator.class);
+
+    public static interface ScanFactory {
+        SerializedHBaseTupleIterator newScan();
+    }
+
+    /**
+     * MAX descending and MIN ascending are exact without check, a group's
+     * value in the region holding its best value always makes that region's
+     * top N. SUM and COUNT descending are checked by thresholds.
+     */
+    public static boolean isTopNSupported(MeasureDesc measure, OrderEnum order) {
+        if (measure.getFunction().isSum() || measure.getFunction().isCount() || measure.getFunction().isMax())
+            return order == OrderEnum.DESCENDING;
+        if (measure.getFunction().isMin())
+            return order == OrderEnum.ASCENDING;
+        return false;
+    }
+
+    private final Iterator<Tuple> tuples;
+    private final ITupleIterator fallback;
+
+    public TopNTupleIterator(ScanFactory factory, Collection<TblColRef> groups, String measureField, StorageContext context) {
+        MeasureDesc measure = context.getSortMeasures().get(0);
+        boolean descending = context.getSortOrders().get(0) == OrderEnum.DESCENDING;
+        boolean exact = measure.getFunction().isMax() || measure.getFunction().isMin();
+        Verifier verifier = new Verifier(context.getTopN(), descending, exact);
+
+        List<Tuple> result = new ArrayList<Tuple>();
+        SerializedHBaseTupleIterator scan = factory.newScan();
+        try {
+            while (scan.hasNext()) {
+                ITuple tuple = scan.next();
+                if (tuple == null)
+                    break;
+                Tuple copy = ((Tuple) tuple).copy();
+                result.add(copy);
+                verifier.add(groupKey(copy, groups), toBigDecimal(copy.getValue(measureField)), scan.getLastTopNMark());
+            }
+        } finally {
+            scan.close();
+        }
+
+        if (verifier.verify()) {
+            this.tuples = result.iterator();
+            this.fallback = null;
+        } else {
+            logger.info("TopN " + context.getTopN() + " is not proven by " + result.size() + " partial groups, scan again without TopN");
+            context.disableTopN();
+            this.tuples = null;
+            this.fallback = factory.newScan();
+        }
+    }
+
+    private List<Object> groupKey(Tuple tuple, Collection<TblColRef> groups) {
+        List<Object> key = new ArrayList<Object>(groups.size());
+        for (TblColRef col : groups) {
+            key.add(tuple.getValue(col));
+        }
+        return key;
+    }
+
+    private BigDecimal toBigDecimal(Object value) {
+        if (value instanceof BigDecimal)
+            return (BigDecimal) value;
+        if (value instanceof Double || value instanceof Float)
+            return BigDecimal.valueOf(((Number) value).doubleValue());
+        if (value instanceof Number)
+            return BigDecimal.valueOf(((Number) value).longValue());
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return fallback == null ? tuples.hasNext() : fallback.hasNext();
+    }
+
+    @Override
+    public ITuple next() {
+        if (fallback != null)
+            return fallback.next();
+        return tuples.hasNext() ? tuples.next() : null;
+    }
+
+    @Override
+    public void close() {
+        if (fallback != null)
+            fallback.close();
+    }
+
+    // ============================================================================
+
+    /**
+     * Checks partial groups from all regions give the exact top N.
+     * 
+     * For SUM (values known non-negative), a region that cut groups reports a
+     * threshold, the best value cut. A group's true value is at least the sum
+     * of its partials, and at most that plus the thresholds of the regions
+     * that did not return it. The top N by lower bound is proven if each of
+     * them is exact, and no other group, seen or unseen, can exceed the N-th.
+     */
+    static class Verifier {
+        final int n;
+        final boolean descending;
+        final boolean exact;
+
+        final Map<Long, BigDecimal> thresholds = new HashMap<Long, BigDecimal>();
+        final Map<List<Object>, Bound> groups = new HashMap<List<Object>, Bound>();
+        boolean unsafe = false;
+
+        Verifier(int n, boolean descending, boolean exact) {
+            this.n = n;
+            this.descending = descending;
+            this.exact = exact;
+        }
+
+        private static class Bound {
+            BigDecimal lower = BigDecimal.ZERO;
+            BigDecimal covered = BigDecimal.ZERO; // thresholds of regions that returned the group
+        }
+
+        void add(List<Object> key, BigDecimal value, SRowTopN.Mark mark) {
+            if (value == null || (mark != null && mark.safe == false)) {
+                unsafe = true;
+                return;
+            }
+            if (exact)
+                return;
+
+            Bound bound = groups.get(key);
+            if (bound == null) {
+                bound = new Bound();
+                groups.put(key, bound);
+            }
+            bound.lower = bound.lower.add(value);
+            if (mark != null && mark.threshold != null) {
+                thresholds.put(mark.partition, mark.threshold);
+                bound.covered = bound.covered.add(mark.threshold);
+            }
+        }
+
+        boolean verify() {
+            if (unsafe)
+                return false;
+            if (exact || thresholds.isEmpty())
+                return true;
+            if (descending == false || groups.size() < n)
+                return false;
+
+            BigDecimal total = BigDecimal.ZERO;
+            for (BigDecimal t : thresholds.values()) {
+                total = total.add(t);
+            }
+
+            List<Bound> sorted = new ArrayList<Bound>(groups.values());
+            Collections.sort(sorted, new Comparator<Bound>() {
+                @Override
+                public int compare(Bound o1, Bound o2) {
+                    return o2.lower.compareTo(o1.lower);
+                }
+            });
+
+            // an unseen group is at most the sum of all thresholds
+            BigDecimal nth = sorted.get(n - 1).lower;
+            if (total.compareTo(nth) > 0)
+                return false;
+
+            for (int i = 0; i < sorted.size(); i++) {
+                Bound b = sorted.get(i);
+                BigDecimal missing = total.subtract(b.covered);
+                if (i < n) {
+                    if (missing.signum() != 0)
+                        return false;
+                } else {
+                    if (b.lower.add(missing).compareTo(nth) > 0)
+                        return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.coprocessor;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Collection;
+
+import com.kylinolap.common.util.BytesSerializer;
+import com.kylinolap.common.util.BytesUtil;
+import com.kylinolap.cube.invertedindex.SliceColumnReader;
+import com.kylinolap.cube.invertedindex.TableRecordInfo;
+import com.kylinolap.metadata.model.cube.FunctionDesc;
+import com.kylinolap.metadata.model.cube.ParameterDesc;
+import com.kylinolap.metadata.model.schema.ColumnDesc;
+
+/**
+ * Aggregates metrics columns of inverted index records on region server.
+ * Metrics are 8 bytes fixed point longs in record, thus SUM, MIN, MAX and
+ * COUNT are all done over primitive longs.
+ */
+public class EndpointAggregators {
+
+    public static final int METRIC_LEN = 8;
+
+    static final int SUM = 0;
+    static final int MIN = 1;
+    static final int MAX = 2;
+    static final int COUNT = 3;
+
+    /**
+     * @return null if any of the functions cannot be aggregated on region
+     *         server, e.g. COUNT_DISTINCT or functions on dimensions; the
+     *         caller shall aggregate on client in such case
+     */
+    public static EndpointAggregators fromFunctions(TableRecordInfo info, Collection<FunctionDesc> functions) {
+        int n = functions.size();
+        int[] funcs = new int[n];
+        int[] columns = new int[n];
+        int[] offsets = new int[n];
+        int i = 0;
+        for (FunctionDesc func : functions) {
+            if (func.isCount()) {
+                funcs[i] = COUNT;
+                columns[i] = -1;
+                offsets[i] = -1;
+            } else {
+                if (func.isSum())
+                    funcs[i] = SUM;
+                else if (func.isMin())
+                    funcs[i] = MIN;
+                else if (func.isMax())
+                    funcs[i] = MAX;
+                else
+                    return null;
+
+                int col = metricsColumn(info, func.getParameter());
+                if (col < 0)
+                    return null;
+                columns[i] = col;
+                offsets[i] = info.offset(col);
+            }
+            i++;
+        }
+        return new EndpointAggregators(funcs, columns, offsets);
+    }
+
+    private static int metricsColumn(TableRecordInfo info, ParameterDesc param) {
+        if (param == null || param.isColumnType() == false)
+            return -1;
+        for (ColumnDesc col : info.getColumns()) {
+            int i = col.getZeroBasedIndex();
+            if (col.getName().equals(param.getValue()) && info.isMetrics(i) && info.length(i) == METRIC_LEN)
+                return i;
+        }
+        return -1;
+    }
+
+    public static byte[] serialize(EndpointAggregators o) {
+        ByteBuffer buf = ByteBuffer.allocate(BytesSerializer.SERIALIZE_BUFFER_SIZE);
+        serializer.serialize(o, buf);
+        byte[] result = new byte[buf.position()];
+        System.arraycopy(buf.array(), 0, result, 0, buf.position());
+        return result;
+    }
+
+    public static EndpointAggregators deserialize(byte[] bytes) {
+        return serializer.deserialize(ByteBuffer.wrap(bytes));
+    }
+
+    private static final Serializer serializer = new Serializer();
+
+    private static class Serializer implements BytesSerializer<EndpointAggregators> {
+
+        @Override
+        public void serialize(EndpointAggregators value, ByteBuffer out) {
+            BytesUtil.writeIntArray(value.funcs, out);
+            BytesUtil.writeIntArray(value.columns, out);
+            BytesUtil.writeIntArray(value.offsets, out);
+        }
+
+        @Override
+        public EndpointAggregators deserialize(ByteBuffer in) {
+            int[] funcs = BytesUtil.readIntArray(in);
+            int[] columns = BytesUtil.readIntArray(in);
+            int[] offsets = BytesUtil.readIntArray(in);
+            return new EndpointAggregators(funcs, columns, offsets);
+        }
+    }
+
+    // ============================================================================
+
+    final int[] funcs;
+    final int[] columns; // metrics column index in record, -1 for COUNT
+    final int[] offsets; // metrics offset in record bytes, -1 for COUNT
+    final int nMetrics;
+
+    public EndpointAggregators(int[] funcs, int[] columns, int[] offsets) {
+        this.funcs = funcs;
+        this.columns = columns;
+        this.offsets = offsets;
+        this.nMetrics = funcs.length;
+    }
+
+    public int getMetricsCount() {
+        return nMetrics;
+    }
+
+    /**
+     * @return metrics column of the i-th function, -1 for COUNT
+     */
+    public int getColumn(int i) {
+        return columns[i];
+    }
+
+    public void collectColumns(BitSet set) {
+        for (int col : columns) {
+            if (col >= 0)
+                set.set(col);
+        }
+    }
+
+    public long[] newAggregations() {
+        long[] aggrs = new long[nMetrics];
+        for (int i = 0; i < nMetrics; i++) {
+            if (funcs[i] == MIN)
+                aggrs[i] = Long.MAX_VALUE;
+            else if (funcs[i] == MAX)
+                aggrs[i] = Long.MIN_VALUE;
+        }
+        return aggrs;
+    }
+
+    public void aggregate(long[] aggrs, byte[] record) {
+        for (int i = 0; i < nMetrics; i++) {
+            if (funcs[i] == COUNT) {
+                aggrs[i]++;
+                continue;
+            }
+
+            long v = BytesUtil.readLong(record, offsets[i], METRIC_LEN);
+            switch (funcs[i]) {
+            case SUM:
+                aggrs[i] += v;
+                break;
+            case MIN:
+                aggrs[i] = Math.min(aggrs[i], v);
+                break;
+            case MAX:
+                aggrs[i] = Math.max(aggrs[i], v);
+                break;
+            default:
+                throw new IllegalStateException("Unknown function " + funcs[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the metrics column of each function as vector of current slice,
+     *         null for COUNT
+     */
+    public long[][] getVectors(SliceColumnReader reader) {
+        long[][] vectors = new long[nMetrics][];
+        for (int i = 0; i < nMetrics; i++) {
+            if (columns[i] >= 0)
+                vectors[i] = reader.getLongs(columns[i]);
+        }
+        return vectors;
+    }
+
+    /**
+     * aggregate one row of the vectors from getVectors()
+     */
+    public void aggregate(long[] aggrs, long[][] vectors, int row) {
+        for (int i = 0; i < nMetrics; i++) {
+            switch (funcs[i]) {
+            case COUNT:
+                aggrs[i]++;
+                break;
+            case SUM:
+                aggrs[i] += vectors[i][row];
+                break;
+            case MIN:
+                aggrs[i] = Math.min(aggrs[i], vectors[i][row]);
+                break;
+            case MAX:
+                aggrs[i] = Math.max(aggrs[i], vectors[i][row]);
+                break;
+            default:
+                throw new IllegalStateException("Unknown function " + funcs[i]);
+            }
+        }
+    }
+
+    /**
+     * aggregate rows [0, nRows) of the vectors from getVectors(), a function
+     * at a time
+     */
+    public void aggregateAll(long[] aggrs, long[][] vectors, int nRows) {
+        for (int i = 0; i < nMetrics; i++) {
+            long[] v = vectors[i];
+            long r = aggrs[i];
+            switch (funcs[i]) {
+            case COUNT:
+                r += nRows;
+                break;
+            case SUM:
+                for (int row = 0; row < nRows; row++)
+                    r += v[row];
+                break;
+            case MIN:
+                for (int row = 0; row < nRows; row++)
+                    r = Math.min(r, v[row]);
+                break;
+            case MAX:
+                for (int row = 0; row < nRows; row++)
+                    r = Math.max(r, v[row]);
+                break;
+            default:
+                throw new IllegalStateException("Unknown function " + funcs[i]);
+            }
+            aggrs[i] = r;
+        }
+    }
+
+    /**
+     * merge partial aggregations, e.g. those from different regions
+     */
+    public void merge(long[] aggrs, long[] other) {
+        for (int i = 0; i < nMetrics; i++) {
+            switch (funcs[i]) {
+            case SUM:
+            case COUNT:
+                aggrs[i] += other[i];
+                break;
+            case MIN:
+                aggrs[i] = Math.min(aggrs[i], other[i]);
+                break;
+            case MAX:
+                aggrs[i] = Math.max(aggrs[i], other[i]);
+                break;
+            default:
+                throw new IllegalStateException("Unknown function " + funcs[i]);
+            }
+        }
+    }
+
+    public int getSerializedLength() {
+        return nMetrics * METRIC_LEN;
+    }
+
+    public void write(long[] aggrs, byte[] buf, int offset) {
+        for (int i = 0; i < nMetrics; i++) {
+            BytesUtil.writeLong(aggrs[i], buf, offset + i * METRIC_LEN, METRIC_LEN);
+        }
+    }
+
+    public long[] read(byte[] buf, int offset) {
+        long[] aggrs = new long[nMetrics];
+        for (int i = 0; i < nMetrics; i++) {
+            aggrs[i] = BytesUtil.readLong(buf, offset + i * METRIC_LEN, METRIC_LEN);
+        }
+        return aggrs;
+    }
+
+}
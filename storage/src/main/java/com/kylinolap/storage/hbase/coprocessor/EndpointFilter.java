@@ -0,0 +1,327 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.coprocessor;
+
+import it.uniroma3.mat.extendedset.intset.ConciseSet;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Collection;
+
+import com.kylinolap.common.util.BytesSerializer;
+import com.kylinolap.common.util.BytesUtil;
+import com.kylinolap.cube.invertedindex.BitMapIndex;
+import com.kylinolap.cube.invertedindex.ColumnValueContainer;
+import com.kylinolap.cube.invertedindex.Slice;
+import com.kylinolap.cube.invertedindex.SliceStats;
+import com.kylinolap.cube.invertedindex.TableRecordBytes;
+import com.kylinolap.cube.invertedindex.TableRecordInfo;
+import com.kylinolap.dict.Dictionary;
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.storage.filter.BitMapFilterEvaluator;
+import com.kylinolap.storage.filter.BitMapFilterEvaluator.BitMapProvider;
+import com.kylinolap.storage.filter.ColumnTupleFilter;
+import com.kylinolap.storage.filter.CompareTupleFilter;
+import com.kylinolap.storage.filter.ConstantTupleFilter;
+import com.kylinolap.storage.filter.LogicalTupleFilter;
+import com.kylinolap.storage.filter.TupleFilter;
+import com.kylinolap.storage.filter.TupleFilter.FilterOperatorEnum;
+import com.kylinolap.storage.hbase.observer.SRowFilter;
+import com.kylinolap.storage.hbase.observer.SRowFilter.DictIdTranslator;
+import com.kylinolap.storage.hbase.observer.SRowTuple;
+import com.kylinolap.storage.hbase.observer.SRowType;
+
+/**
+ * Filter pushed down to IIEndpoint. Constants are translated into dictionary
+ * IDs on client side. On region server, the part of filter on bitmap columns
+ * is answered by the bitmaps of each slice, and only the remaining candidate
+ * rows are evaluated one by one. Before that, slices whose stats rule out the
+ * filter are skipped without decoding.
+ */
+public class EndpointFilter implements SliceStats.Checker {
+
+    /**
+     * Filters on metrics columns and columns with appendable dictionaries are
+     * dropped (taken as TRUE), as well as those not evaluable. The result could
+     * be looser than the original filter in such case, check
+     * TupleFilter.isEvaluableRecursively() before pushing down aggregations.
+     */
+    public static EndpointFilter fromFilter(final TableRecordInfo info, TupleFilter rootFilter) {
+        final SRowType type = SRowType.fromTableRecordInfo(info);
+        SRowFilter filter = SRowFilter.fromFilter(rootFilter, new DictIdTranslator() {
+            @Override
+            public boolean isTranslatable(TblColRef column) {
+                int col = type.getColumnIndex(column);
+                // IDs of an appendable dictionary are out of value order
+                return col >= 0 && info.isMetrics(col) == false && info.isAppendable(col) == false;
+            }
+
+            @Override
+            public int getColumnLength(TblColRef column) {
+                return info.length(type.getColumnIndex(column));
+            }
+
+            @Override
+            public void translate(TblColRef column, String value, int roundingFlag, byte[] id) {
+                Dictionary<String> dict = info.dict(type.getColumnIndex(column));
+                int valueId;
+                try {
+                    valueId = dict.getIdFromValue(value, roundingFlag);
+                } catch (IllegalArgumentException ex) {
+                    valueId = dict.nullId();
+                }
+                BytesUtil.writeUnsigned(valueId, id, 0, id.length);
+            }
+        });
+        return new EndpointFilter(type, filter);
+    }
+
+    public static byte[] serialize(EndpointFilter o) {
+        ByteBuffer buf = ByteBuffer.allocate(BytesSerializer.SERIALIZE_BUFFER_SIZE);
+        serializer.serialize(o, buf);
+        byte[] result = new byte[buf.position()];
+        System.arraycopy(buf.array(), 0, result, 0, buf.position());
+        return result;
+    }
+
+    public static EndpointFilter deserialize(byte[] bytes) {
+        return serializer.deserialize(ByteBuffer.wrap(bytes));
+    }
+
+    private static final Serializer serializer = new Serializer();
+
+    private static class Serializer implements BytesSerializer<EndpointFilter> {
+
+        @Override
+        public void serialize(EndpointFilter value, ByteBuffer out) {
+            BytesUtil.writeByteArray(SRowType.serialize(value.type), out);
+            BytesUtil.writeByteArray(SRowFilter.serialize(value.filter), out);
+        }
+
+        @Override
+        public EndpointFilter deserialize(ByteBuffer in) {
+            SRowType type = SRowType.deserialize(BytesUtil.readByteArray(in));
+            SRowFilter filter = SRowFilter.deserialize(BytesUtil.readByteArray(in));
+            return new EndpointFilter(type, filter);
+        }
+    }
+
+    // ============================================================================
+
+    final SRowType type;
+    final SRowFilter filter;
+    final SRowTuple tuple;
+    final boolean hasNot;
+
+    public EndpointFilter(SRowType type, SRowFilter filter) {
+        this.type = type;
+        this.filter = filter;
+        this.tuple = new SRowTuple(type);
+        this.hasNot = hasNot(filter.getFilter());
+    }
+
+    private static boolean hasNot(TupleFilter f) {
+        if (f == null)
+            return false;
+        if (f.getOperator() == FilterOperatorEnum.NOT)
+            return true;
+        for (TupleFilter child : f.getChildren()) {
+            if (hasNot(child))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * mark the columns referenced by the filter
+     */
+    public void collectColumns(BitSet columns) {
+        collectColumns(filter.getFilter(), columns);
+    }
+
+    private void collectColumns(TupleFilter f, BitSet columns) {
+        if (f == null)
+            return;
+        if (f instanceof ColumnTupleFilter) {
+            int col = type.getColumnIndex(((ColumnTupleFilter) f).getColumn());
+            if (col >= 0)
+                columns.set(col);
+        }
+        for (TupleFilter child : f.getChildren()) {
+            collectColumns(child, columns);
+        }
+    }
+
+    /**
+     * @return false if the stats of a slice show none of its rows could match
+     */
+    @Override
+    public boolean mayMatch(SliceStats stats) {
+        TupleFilter f = filter.getFilter();
+        return f == null || mayMatch(f, stats);
+    }
+
+    private boolean mayMatch(TupleFilter f, SliceStats stats) {
+        if (f instanceof ConstantTupleFilter)
+            return f.getValues().isEmpty() == false;
+
+        if (f instanceof LogicalTupleFilter) {
+            switch (f.getOperator()) {
+            case AND:
+                for (TupleFilter child : f.getChildren()) {
+                    if (mayMatch(child, stats) == false)
+                        return false;
+                }
+                return true;
+            case OR:
+                for (TupleFilter child : f.getChildren()) {
+                    if (mayMatch(child, stats))
+                        return true;
+                }
+                return false;
+            default:
+                return true; // stats cannot tell what is NOT there
+            }
+        }
+
+        if (f instanceof CompareTupleFilter)
+            return mayMatch((CompareTupleFilter) f, stats);
+
+        return true;
+    }
+
+    private boolean mayMatch(CompareTupleFilter compf, SliceStats stats) {
+        int col = compf.getColumn() == null ? -1 : type.getColumnIndex(compf.getColumn());
+        if (stats.hasStats(col) == false || compf.getNullString() == null)
+            return true;
+
+        int nullId = Dictionary.NULL_ID[compf.getNullString().length()];
+        Collection<String> values = compf.getValues();
+        switch (compf.getOperator()) {
+        case ISNULL:
+            return stats.getNullCount(col) > 0;
+        case ISNOTNULL:
+            return stats.getNullCount(col) < stats.getRecordCount();
+        case EQ:
+        case IN:
+            for (String v : values) {
+                if (stats.mayContain(col, Dictionary.stringToDictId(v), nullId))
+                    return true;
+            }
+            return values.isEmpty();
+        case LT:
+            return values.isEmpty() || stats.mayContainRange(col, 0, Dictionary.stringToDictId(compf.getFirstValue()) - 1);
+        case LTE:
+            return values.isEmpty() || stats.mayContainRange(col, 0, Dictionary.stringToDictId(compf.getFirstValue()));
+        case GT:
+            return values.isEmpty() || stats.mayContainRange(col, Dictionary.stringToDictId(compf.getFirstValue()) + 1, Integer.MAX_VALUE);
+        case GTE:
+            return values.isEmpty() || stats.mayContainRange(col, Dictionary.stringToDictId(compf.getFirstValue()), Integer.MAX_VALUE);
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * @return true if the bitmaps of the slice fully answer the filter, then
+     *         the result of preEvaluate() needs no further check
+     */
+    public boolean isExact(Slice slice) {
+        TupleFilter f = filter.getFilter();
+        return f == null || isExact(f, slice);
+    }
+
+    private boolean isExact(TupleFilter f, Slice slice) {
+        if (f instanceof LogicalTupleFilter) {
+            for (TupleFilter child : f.getChildren()) {
+                if (isExact(child, slice) == false)
+                    return false;
+            }
+            return true;
+        }
+        if (f instanceof CompareTupleFilter) {
+            CompareTupleFilter compf = (CompareTupleFilter) f;
+            int col = compf.getColumn() == null ? -1 : type.getColumnIndex(compf.getColumn());
+            if (col < 0 || (slice.getColumnValueContainer(col) instanceof BitMapIndex) == false)
+                return false;
+            FilterOperatorEnum op = compf.getOperator();
+            return op == FilterOperatorEnum.ISNULL || op == FilterOperatorEnum.ISNOTNULL || compf.getValues().isEmpty() == false;
+        }
+        return false;
+    }
+
+    /**
+     * @return rows of the slice that could match the filter, null means all
+     *         rows could match
+     */
+    public ConciseSet preEvaluate(Slice slice) {
+        TupleFilter f = filter.getFilter();
+        if (f == null)
+            return null;
+
+        // bitmap evaluator takes unknown as all rows under AND, which turns
+        // into none under NOT, thus is safe only without NOT or when exact
+        if (hasNot && isExact(f, slice) == false)
+            return null;
+
+        return new BitMapFilterEvaluator(new SliceBitMapProvider(slice)).evaluate(f);
+    }
+
+    /**
+     * evaluate a record, only columns referenced by the filter need be set
+     */
+    public boolean evaluate(TableRecordBytes rec) {
+        byte[] bytes = rec.getBytes();
+        tuple.setUnderlying(bytes, 0, bytes.length);
+        return filter.evaluate(tuple);
+    }
+
+    private class SliceBitMapProvider implements BitMapProvider {
+
+        final Slice slice;
+
+        SliceBitMapProvider(Slice slice) {
+            this.slice = slice;
+        }
+
+        private BitMapIndex getContainer(TblColRef column) {
+            int col = type.getColumnIndex(column);
+            if (col < 0)
+                return null;
+            ColumnValueContainer c = slice.getColumnValueContainer(col);
+            return c instanceof BitMapIndex ? (BitMapIndex) c : null;
+        }
+
+        @Override
+        public ConciseSet getBitMap(TblColRef col, int valueId) {
+            BitMapIndex c = getContainer(col);
+            return c == null ? null : c.getBitMap(valueId);
+        }
+
+        @Override
+        public int getRecordCount() {
+            return slice.getRecordCount();
+        }
+
+        @Override
+        public int getMaxValueId(TblColRef col) {
+            BitMapIndex c = getContainer(col);
+            return c == null ? -1 : c.getMaxValueId();
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.coprocessor;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.kylinolap.common.util.BytesSerializer;
+import com.kylinolap.common.util.BytesUtil;
+import com.kylinolap.cube.invertedindex.IIKeyValueCodec;
+
+/**
+ * Row key ranges for IIEndpoint to scan, one [start, stop) per shard. Keys of
+ * inverted index are shard + slice timestamp + column, so a time range maps
+ * to one key range in each shard. The endpoint moves the start key back to
+ * the slice that covers it.
+ */
+public class EndpointKeyRanges {
+
+    /**
+     * @param startTime
+     *            inclusive, Long.MIN_VALUE if unbounded
+     * @param endTime
+     *            inclusive, Long.MAX_VALUE if unbounded
+     */
+    public static EndpointKeyRanges fromTimeRange(int nShards, long startTime, long endTime) {
+        List<byte[]> startKeys = Lists.newArrayListWithCapacity(nShards);
+        List<byte[]> stopKeys = Lists.newArrayListWithCapacity(nShards);
+        for (int shard = 0; shard < nShards; shard++) {
+            startKeys.add(startTime <= 0 ? shardKey(shard) : shardTimeKey(shard, startTime));
+            // SliceBuilder bumps a slice timestamp by 1 when it equals the
+            // previous one, so the slice at endTime + 1 could hold endTime
+            stopKeys.add(endTime >= Long.MAX_VALUE - 1 ? shardKey(shard + 1) : shardTimeKey(shard, endTime + 2));
+        }
+        return new EndpointKeyRanges(startKeys, stopKeys);
+    }
+
+    private static byte[] shardKey(int shard) {
+        byte[] key = new byte[IIKeyValueCodec.SHARD_LEN];
+        BytesUtil.writeUnsigned(shard, key, 0, IIKeyValueCodec.SHARD_LEN);
+        return key;
+    }
+
+    private static byte[] shardTimeKey(int shard, long time) {
+        byte[] key = new byte[IIKeyValueCodec.SHARD_LEN + IIKeyValueCodec.TIMEPART_LEN];
+        BytesUtil.writeUnsigned(shard, key, 0, IIKeyValueCodec.SHARD_LEN);
+        BytesUtil.writeLong(time, key, IIKeyValueCodec.SHARD_LEN, IIKeyValueCodec.TIMEPART_LEN);
+        return key;
+    }
+
+    public static byte[] serialize(EndpointKeyRanges o) {
+        ByteBuffer buf = ByteBuffer.allocate(BytesSerializer.SERIALIZE_BUFFER_SIZE);
+        serializer.serialize(o, buf);
+        byte[] result = new byte[buf.position()];
+        System.arraycopy(buf.array(), 0, result, 0, buf.position());
+        return result;
+    }
+
+    public static EndpointKeyRanges deserialize(byte[] bytes) {
+        return serializer.deserialize(ByteBuffer.wrap(bytes));
+    }
+
+    private static final Serializer serializer = new Serializer();
+
+    private static class Serializer implements BytesSerializer<EndpointKeyRanges> {
+
+        @Override
+        public void serialize(EndpointKeyRanges value, ByteBuffer out) {
+            BytesUtil.writeVInt(value.size(), out);
+            for (int i = 0; i < value.size(); i++) {
+                BytesUtil.writeByteArray(value.startKeys.get(i), out);
+                BytesUtil.writeByteArray(value.stopKeys.get(i), out);
+            }
+        }
+
+        @Override
+        public EndpointKeyRanges deserialize(ByteBuffer in) {
+            int n = BytesUtil.readVInt(in);
+            List<byte[]> startKeys = Lists.newArrayListWithCapacity(n);
+            List<byte[]> stopKeys = Lists.newArrayListWithCapacity(n);
+            for (int i = 0; i < n; i++) {
+                startKeys.add(BytesUtil.readByteArray(in));
+                stopKeys.add(BytesUtil.readByteArray(in));
+            }
+            return new EndpointKeyRanges(startKeys, stopKeys);
+        }
+    }
+
+    // ============================================================================
+
+    final List<byte[]> startKeys;
+    final List<byte[]> stopKeys;
+
+    public EndpointKeyRanges(List<byte[]> startKeys, List<byte[]> stopKeys) {
+        assert startKeys.size() == stopKeys.size();
+        this.startKeys = startKeys;
+        this.stopKeys = stopKeys;
+    }
+
+    public int size() {
+        return startKeys.size();
+    }
+
+    public byte[] getStartKey(int i) {
+        return startKeys.get(i);
+    }
+
+    public byte[] getStopKey(int i) {
+        return stopKeys.get(i);
+    }
+
+    /** the first start key, for locating regions */
+    public byte[] getFirstStartKey() {
+        return startKeys.get(0);
+    }
+
+    /** the last stop key, for locating regions */
+    public byte[] getLastStopKey() {
+        return stopKeys.get(stopKeys.size() - 1);
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.coprocessor;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Collection;
+
+import com.kylinolap.common.util.BytesSerializer;
+import com.kylinolap.common.util.BytesUtil;
+import com.kylinolap.cube.invertedindex.SliceColumnReader;
+import com.kylinolap.cube.invertedindex.TableRecordInfo;
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.storage.hbase.observer.SRowType;
+
+/**
+ * Picks the group by columns out of a record of inverted index, the byte
+ * form of the key is simply concatenated column values (dictionary IDs).
+ */
+public class EndpointProjector {
+
+    public static EndpointProjector fromColumns(TableRecordInfo info, Collection<TblColRef> groupBy) {
+        SRowType type = SRowType.fromTableRecordInfo(info);
+        int n = groupBy.size();
+        int[] columns = new int[n];
+        int[] offsets = new int[n];
+        int[] lengths = new int[n];
+        int i = 0;
+        for (TblColRef column : groupBy) {
+            int col = type.getColumnIndex(column);
+            if (col < 0)
+                throw new IllegalArgumentException("Column " + column + " not found in inverted index " + info.getDescriptor().getName());
+            columns[i] = col;
+            offsets[i] = info.offset(col);
+            lengths[i] = info.length(col);
+            i++;
+        }
+        return new EndpointProjector(columns, offsets, lengths);
+    }
+
+    public static byte[] serialize(EndpointProjector o) {
+        ByteBuffer buf = ByteBuffer.allocate(BytesSerializer.SERIALIZE_BUFFER_SIZE);
+        serializer.serialize(o, buf);
+        byte[] result = new byte[buf.position()];
+        System.arraycopy(buf.array(), 0, result, 0, buf.position());
+        return result;
+    }
+
+    public static EndpointProjector deserialize(byte[] bytes) {
+        return serializer.deserialize(ByteBuffer.wrap(bytes));
+    }
+
+    private static final Serializer serializer = new Serializer();
+
+    private static class Serializer implements BytesSerializer<EndpointProjector> {
+
+        @Override
+        public void serialize(EndpointProjector value, ByteBuffer out) {
+            BytesUtil.writeIntArray(value.columns, out);
+            BytesUtil.writeIntArray(value.offsets, out);
+            BytesUtil.writeIntArray(value.lengths, out);
+        }
+
+        @Override
+        public EndpointProjector deserialize(ByteBuffer in) {
+            int[] columns = BytesUtil.readIntArray(in);
+            int[] offsets = BytesUtil.readIntArray(in);
+            int[] lengths = BytesUtil.readIntArray(in);
+            return new EndpointProjector(columns, offsets, lengths);
+        }
+    }
+
+    // ============================================================================
+
+    final int[] columns; // column index in record
+    final int[] offsets; // column offset in record bytes
+    final int[] lengths;
+    final int keyLength;
+
+    public EndpointProjector(int[] columns, int[] offsets, int[] lengths) {
+        this.columns = columns;
+        this.offsets = offsets;
+        this.lengths = lengths;
+
+        int len = 0;
+        for (int l : lengths)
+            len += l;
+        this.keyLength = len;
+    }
+
+    public void collectColumns(BitSet set) {
+        for (int col : columns)
+            set.set(col);
+    }
+
+    public int getKeyLength() {
+        return keyLength;
+    }
+
+    /**
+     * @return the record column index of each part of the key
+     */
+    public int[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * copy the group by columns of a record into key[0..keyLength-1]
+     */
+    public void getKey(byte[] record, byte[] key) {
+        int o = 0;
+        for (int i = 0; i < columns.length; i++) {
+            System.arraycopy(record, offsets[i], key, o, lengths[i]);
+            o += lengths[i];
+        }
+    }
+
+    /**
+     * copy key[0..keyLength-1] back to the group by columns of a record,
+     * reverse of getKey()
+     */
+    public void setKey(byte[] key, byte[] record) {
+        int o = 0;
+        for (int i = 0; i < columns.length; i++) {
+            System.arraycopy(key, o, record, offsets[i], lengths[i]);
+            o += lengths[i];
+        }
+    }
+
+    /**
+     * write the group by columns of a row of current slice into
+     * key[0..keyLength-1], same bytes as getKey() of the record
+     */
+    public void getKey(SliceColumnReader reader, int row, byte[] key) {
+        int o = 0;
+        for (int i = 0; i < columns.length; i++) {
+            if (lengths[i] <= 4)
+                BytesUtil.writeUnsigned(reader.getIds(columns[i])[row], key, o, lengths[i]);
+            else
+                BytesUtil.writeLong(reader.getLongs(columns[i])[row], key, o, lengths[i]);
+            o += lengths[i];
+        }
+    }
+
+}
@@ -1,27 +1,49 @@
 package com.kylinolap.storage.hbase.coprocessor;
 
 import com.google.protobuf.ByteString;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.protobuf.RpcCallback;
 import com.google.protobuf.RpcController;
 import com.google.protobuf.Service;
+import com.kylinolap.common.util.ByteArray;
 import com.kylinolap.cube.invertedindex.*;
+import com.kylinolap.metadata.model.invertedindex.InvertedIndexDesc;
 import com.kylinolap.storage.hbase.coprocessor.generated.IIProtos;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.hbase.Coprocessor;
 import org.apache.hadoop.hbase.CoprocessorEnvironment;
+import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.coprocessor.CoprocessorException;
 import org.apache.hadoop.hbase.coprocessor.CoprocessorService;
 import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.protobuf.ResponseConverter;
 import org.apache.hadoop.hbase.regionserver.HRegion;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+
+import it.uniroma3.mat.extendedset.intset.ConciseSet;
+import it.uniroma3.mat.extendedset.intset.IntSet.IntIterator;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by honma on 11/7/14.
+ *
+ * Scans slices of an inverted index region. Optionally, a filter first skips
+ * slices by their stats, then is evaluated against the bitmaps of each slice, and records are grouped and aggregated
+ * on region server. Without aggregators, response rows are the byte form of
+ * matching records; with aggregators, each row is the group key (projected
+ * dictionary IDs) followed by 8 bytes per metric.
  */
 public class IIEndpoint extends IIProtos.RowsService
         implements Coprocessor, CoprocessorService {
@@ -34,33 +56,47 @@ public class IIEndpoint extends IIProtos.RowsService
     @Override
     public void getRows(RpcController controller, IIProtos.IIRequest request, RpcCallback<IIProtos.IIResponse> done) {
         IIProtos.IIResponse response = null;
-        RegionScanner innerScanner = null;
+        List<RegionScanner> innerScanners = Lists.newArrayList();
         HRegion region = null;
         try {
             ByteBuffer byteBuffer = request.getTableInfo().asReadOnlyByteBuffer();
             TableRecordInfoDigest tableInfo = TableRecordInfoDigest.deserialize(byteBuffer);
+            EndpointFilter filter = request.hasFilter() ? EndpointFilter.deserialize(request.getFilter().toByteArray()) : null;
+            EndpointProjector projector = request.hasProjector() ? EndpointProjector.deserialize(request.getProjector().toByteArray()) : null;
+            EndpointAggregators aggregators = request.hasAggregators() ? EndpointAggregators.deserialize(request.getAggregators().toByteArray()) : null;
+            if (aggregators != null && projector == null) {
+                projector = new EndpointProjector(new int[0], new int[0], new int[0]); // grand total
+            }
 
             region = env.getRegion();
-            innerScanner = region.getScanner(new Scan());
             region.startRegionOperation();
 
-            synchronized (innerScanner) {
-                IIProtos.IIResponse.Builder responseBuilder = IIProtos.IIResponse.newBuilder();
+            // ranges are disjoint and ascending, their KVs concatenate into one stream of slices
+            List<Iterable<Pair<ImmutableBytesWritable, ImmutableBytesWritable>>> kvs = Lists.newArrayList();
+            for (Scan scan : getScans(region, request)) {
+                RegionScanner innerScanner = region.getScanner(scan);
+                innerScanners.add(innerScanner);
+                kvs.add(new HbaseServerKVIterator(innerScanner));
+            }
 
-                IIKeyValueCodec codec = new IIKeyValueCodec(tableInfo);
-                for (Slice slice : codec.decodeKeyValue(new HbaseServerKVIterator(innerScanner))) {
-                    for (TableRecordBytes recordBytes : slice) {
-                        responseBuilder.addRows(ByteString.copyFrom(recordBytes.getBytes()));
-                    }
-                }
+            IIProtos.IIResponse.Builder responseBuilder = IIProtos.IIResponse.newBuilder();
 
-                response = responseBuilder.build();
+            IIKeyValueCodec codec = new IIKeyValueCodec(tableInfo);
+            Iterable<Slice> slices = codec.decodeKeyValue(Iterables.concat(kvs), filter);
+            if (aggregators == null) {
+                scanRecords(slices, tableInfo, filter, responseBuilder);
+            } else {
+                scanAggregations(slices, tableInfo, filter, projector, aggregators, responseBuilder);
             }
 
+            response = responseBuilder.build();
+
         } catch (IOException ioe) {
             ResponseConverter.setControllerException(controller, ioe);
         } finally {
-            IOUtils.closeQuietly(innerScanner);
+            for (RegionScanner innerScanner : innerScanners) {
+                IOUtils.closeQuietly(innerScanner);
+            }
             if (region != null) {
                 try {
                     region.closeRegionOperation();
@@ -74,6 +110,185 @@ public class IIEndpoint extends IIProtos.RowsService
         done.run(response);
     }
 
+    private List<Scan> getScans(HRegion region, IIProtos.IIRequest request) throws IOException {
+        List<Scan> scans = Lists.newArrayList();
+        if (request.hasKeyRanges() == false) {
+            scans.add(new Scan());
+            return scans;
+        }
+
+        byte[] regionStart = region.getStartKey();
+        byte[] regionEnd = region.getEndKey();
+        EndpointKeyRanges ranges = EndpointKeyRanges.deserialize(request.getKeyRanges().toByteArray());
+        for (int i = 0; i < ranges.size(); i++) {
+            byte[] start = ranges.getStartKey(i);
+            byte[] stop = ranges.getStopKey(i);
+            if (Bytes.compareTo(start, regionStart) < 0)
+                start = regionStart;
+            if (regionEnd.length > 0 && Bytes.compareTo(stop, regionEnd) > 0)
+                stop = regionEnd;
+            if (Bytes.compareTo(start, stop) >= 0)
+                continue;
+
+            scans.add(new Scan(seekSliceStart(region, start), stop));
+        }
+        return scans;
+    }
+
+    /**
+     * A slice holds records from its timestamp till the next slice's, move the
+     * start key back to the beginning of the slice that covers it.
+     */
+    private byte[] seekSliceStart(HRegion region, byte[] start) throws IOException {
+        if (start.length <= IIKeyValueCodec.SHARD_LEN)
+            return start;
+
+        Result before = region.getClosestRowBefore(start, InvertedIndexDesc.HBASE_FAMILY_BYTES);
+        if (before == null || before.isEmpty())
+            return start;
+
+        byte[] row = before.getRow();
+        if (Bytes.compareTo(row, 0, IIKeyValueCodec.SHARD_LEN, start, 0, IIKeyValueCodec.SHARD_LEN) != 0)
+            return start; // from another shard
+        if (Bytes.compareTo(row, region.getStartKey()) < 0)
+            return start;
+
+        return Arrays.copyOf(row, IIKeyValueCodec.SHARD_LEN + IIKeyValueCodec.TIMEPART_LEN);
+    }
+
+    private void scanRecords(Iterable<Slice> slices, TableRecordInfoDigest tableInfo, EndpointFilter filter, IIProtos.IIResponse.Builder responseBuilder) {
+        BitSet allColumns = new BitSet();
+        allColumns.set(0, tableInfo.getColumnCount());
+        RecordReader reader = new RecordReader(tableInfo, filter, allColumns);
+        for (Slice slice : slices) {
+            reader.reset(slice);
+            while (reader.next()) {
+                reader.readRecord();
+                responseBuilder.addRows(ByteString.copyFrom(reader.record.getBytes()));
+            }
+        }
+    }
+
+    private void scanAggregations(Iterable<Slice> slices, TableRecordInfoDigest tableInfo, EndpointFilter filter, EndpointProjector projector, EndpointAggregators aggregators, IIProtos.IIResponse.Builder responseBuilder) {
+        // group by and metrics columns are read as vectors, records are
+        // only filled for filter evaluation
+        RecordReader reader = new RecordReader(tableInfo, filter, new BitSet());
+
+        Map<ByteArray, long[]> groups = Maps.newHashMap();
+        ByteArray probe = new ByteArray(new byte[projector.getKeyLength()]);
+        for (Slice slice : slices) {
+            reader.reset(slice);
+            long[][] vectors = aggregators.getVectors(reader.columnReader);
+            if (projector.getKeyLength() == 0 && reader.isAllRows()) {
+                long[] aggrs = groups.get(probe);
+                if (aggrs == null) {
+                    aggrs = aggregators.newAggregations();
+                    groups.put(probe, aggrs);
+                }
+                aggregators.aggregateAll(aggrs, vectors, slice.getRecordCount());
+                continue;
+            }
+            while (reader.next()) {
+                projector.getKey(reader.columnReader, reader.row, probe.data);
+                long[] aggrs = groups.get(probe);
+                if (aggrs == null) {
+                    aggrs = aggregators.newAggregations();
+                    groups.put(new ByteArray(probe.data.clone()), aggrs);
+                }
+                aggregators.aggregate(aggrs, vectors, reader.row);
+            }
+        }
+
+        int keyLength = projector.getKeyLength();
+        for (Map.Entry<ByteArray, long[]> entry : groups.entrySet()) {
+            byte[] row = new byte[keyLength + aggregators.getSerializedLength()];
+            System.arraycopy(entry.getKey().data, 0, row, 0, keyLength);
+            aggregators.write(entry.getValue(), row, keyLength);
+            responseBuilder.addRows(ByteString.copyFrom(row));
+        }
+    }
+
+    /**
+     * Iterates the matching rows of a slice. Columns referenced by filter are
+     * decoded into the record only when the bitmaps cannot answer the filter
+     * exactly, the needed columns only by readRecord().
+     */
+    private static class RecordReader {
+        final EndpointFilter filter;
+        final int[] filterColumns;
+        final int[] neededColumns;
+        final SliceColumnReader columnReader;
+        final TableRecordBytes record;
+
+        Slice slice;
+        boolean exact;
+        IntIterator candidates;
+        int row;
+
+        RecordReader(TableRecordInfoDigest tableInfo, EndpointFilter filter, BitSet neededColumns) {
+            BitSet filterCols = new BitSet();
+            if (filter != null) {
+                filter.collectColumns(filterCols);
+            }
+            this.filter = filter;
+            this.filterColumns = toArray(filterCols);
+            this.neededColumns = toArray(neededColumns);
+            this.columnReader = new SliceColumnReader(tableInfo);
+            this.record = tableInfo.createTableRecord();
+        }
+
+        private static int[] toArray(BitSet cols) {
+            int[] r = new int[cols.cardinality()];
+            for (int i = 0, col = cols.nextSetBit(0); col >= 0; i++, col = cols.nextSetBit(col + 1)) {
+                r[i] = col;
+            }
+            return r;
+        }
+
+        void reset(Slice slice) {
+            this.slice = slice;
+            this.row = -1;
+            this.exact = filter == null || filter.isExact(slice);
+            ConciseSet matches = filter == null ? null : filter.preEvaluate(slice);
+            this.candidates = matches == null ? null : matches.iterator();
+            this.columnReader.reset(slice);
+        }
+
+        /** all rows of the slice match, no need to iterate */
+        boolean isAllRows() {
+            return exact && candidates == null;
+        }
+
+        boolean next() {
+            while (nextCandidate()) {
+                if (exact) {
+                    return true;
+                }
+                columnReader.readRecord(row, filterColumns, record);
+                if (filter.evaluate(record)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void readRecord() {
+            columnReader.readRecord(row, neededColumns, record);
+        }
+
+        private boolean nextCandidate() {
+            if (candidates == null) {
+                row++;
+                return row < slice.getRecordCount();
+            }
+            if (candidates.hasNext() == false) {
+                return false;
+            }
+            row = candidates.next();
+            return true;
+        }
+    }
+
     @Override
     public void start(CoprocessorEnvironment env) throws IOException {
         if (env instanceof RegionCoprocessorEnvironment) {
@@ -20,6 +20,46 @@ public final class IIProtos {
      * <code>required bytes tableInfo = 1;</code>
      */
     com.google.protobuf.ByteString getTableInfo();
+
+    // optional bytes filter = 2;
+    /**
+     * <code>optional bytes filter = 2;</code>
+     */
+    boolean hasFilter();
+    /**
+     * <code>optional bytes filter = 2;</code>
+     */
+    com.google.protobuf.ByteString getFilter();
+
+    // optional bytes projector = 3;
+    /**
+     * <code>optional bytes projector = 3;</code>
+     */
+    boolean hasProjector();
+    /**
+     * <code>optional bytes projector = 3;</code>
+     */
+    com.google.protobuf.ByteString getProjector();
+
+    // optional bytes aggregators = 4;
+    /**
+     * <code>optional bytes aggregators = 4;</code>
+     */
+    boolean hasAggregators();
+    /**
+     * <code>optional bytes aggregators = 4;</code>
+     */
+    com.google.protobuf.ByteString getAggregators();
+
+    // optional bytes keyRanges = 5;
+    /**
+     * <code>optional bytes keyRanges = 5;</code>
+     */
+    boolean hasKeyRanges();
+    /**
+     * <code>optional bytes keyRanges = 5;</code>
+     */
+    com.google.protobuf.ByteString getKeyRanges();
   }
   /**
    * Protobuf type {@code IIRequest}
@@ -77,6 +117,26 @@ public final class IIProtos {
               tableInfo_ = input.readBytes();
               break;
             }
+            case 18: {
+              bitField0_ |= 0x00000002;
+              filter_ = input.readBytes();
+              break;
+            }
+            case 26: {
+              bitField0_ |= 0x00000004;
+              projector_ = input.readBytes();
+              break;
+            }
+            case 34: {
+              bitField0_ |= 0x00000008;
+              aggregators_ = input.readBytes();
+              break;
+            }
+            case 42: {
+              bitField0_ |= 0x00000010;
+              keyRanges_ = input.readBytes();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -132,9 +192,73 @@ public final class IIProtos {
     public com.google.protobuf.ByteString getTableInfo() {
       return tableInfo_;
     }
+    // optional bytes filter = 2;
+    public static final int FILTER_FIELD_NUMBER = 2;
+    private com.google.protobuf.ByteString filter_;
+    /**
+     * <code>optional bytes filter = 2;</code>
+     */
+    public boolean hasFilter() {
+      return ((bitField0_ & 0x00000002) == 0x00000002);
+    }
+    /**
+     * <code>optional bytes filter = 2;</code>
+     */
+    public com.google.protobuf.ByteString getFilter() {
+      return filter_;
+    }
+    // optional bytes projector = 3;
+    public static final int PROJECTOR_FIELD_NUMBER = 3;
+    private com.google.protobuf.ByteString projector_;
+    /**
+     * <code>optional bytes projector = 3;</code>
+     */
+    public boolean hasProjector() {
+      return ((bitField0_ & 0x00000004) == 0x00000004);
+    }
+    /**
+     * <code>optional bytes projector = 3;</code>
+     */
+    public com.google.protobuf.ByteString getProjector() {
+      return projector_;
+    }
+    // optional bytes aggregators = 4;
+    public static final int AGGREGATORS_FIELD_NUMBER = 4;
+    private com.google.protobuf.ByteString aggregators_;
+    /**
+     * <code>optional bytes aggregators = 4;</code>
+     */
+    public boolean hasAggregators() {
+      return ((bitField0_ & 0x00000008) == 0x00000008);
+    }
+    /**
+     * <code>optional bytes aggregators = 4;</code>
+     */
+    public com.google.protobuf.ByteString getAggregators() {
+      return aggregators_;
+    }
+    // optional bytes keyRanges = 5;
+    public static final int KEYRANGES_FIELD_NUMBER = 5;
+    private com.google.protobuf.ByteString keyRanges_;
+    /**
+     * <code>optional bytes keyRanges = 5;</code>
+     */
+    public boolean hasKeyRanges() {
+      return ((bitField0_ & 0x00000010) == 0x00000010);
+    }
+    /**
+     * <code>optional bytes keyRanges = 5;</code>
+     */
+    public com.google.protobuf.ByteString getKeyRanges() {
+      return keyRanges_;
+    }
 
     private void initFields() {
       tableInfo_ = com.google.protobuf.ByteString.EMPTY;
+      filter_ = com.google.protobuf.ByteString.EMPTY;
+      projector_ = com.google.protobuf.ByteString.EMPTY;
+      aggregators_ = com.google.protobuf.ByteString.EMPTY;
+      keyRanges_ = com.google.protobuf.ByteString.EMPTY;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -155,6 +279,18 @@ public final class IIProtos {
       if (((bitField0_ & 0x00000001) == 0x00000001)) {
         output.writeBytes(1, tableInfo_);
       }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        output.writeBytes(2, filter_);
+      }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        output.writeBytes(3, projector_);
+      }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        output.writeBytes(4, aggregators_);
+      }
+      if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        output.writeBytes(5, keyRanges_);
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -168,6 +304,22 @@ public final class IIProtos {
         size += com.google.protobuf.CodedOutputStream
           .computeBytesSize(1, tableInfo_);
       }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(2, filter_);
+      }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(3, projector_);
+      }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(4, aggregators_);
+      }
+      if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(5, keyRanges_);
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -196,6 +348,26 @@ public final class IIProtos {
         result = result && getTableInfo()
             .equals(other.getTableInfo());
       }
+      result = result && (hasFilter() == other.hasFilter());
+      if (hasFilter()) {
+        result = result && getFilter()
+            .equals(other.getFilter());
+      }
+      result = result && (hasProjector() == other.hasProjector());
+      if (hasProjector()) {
+        result = result && getProjector()
+            .equals(other.getProjector());
+      }
+      result = result && (hasAggregators() == other.hasAggregators());
+      if (hasAggregators()) {
+        result = result && getAggregators()
+            .equals(other.getAggregators());
+      }
+      result = result && (hasKeyRanges() == other.hasKeyRanges());
+      if (hasKeyRanges()) {
+        result = result && getKeyRanges()
+            .equals(other.getKeyRanges());
+      }
       result = result &&
           getUnknownFields().equals(other.getUnknownFields());
       return result;
@@ -213,6 +385,22 @@ public final class IIProtos {
         hash = (37 * hash) + TABLEINFO_FIELD_NUMBER;
         hash = (53 * hash) + getTableInfo().hashCode();
       }
+      if (hasFilter()) {
+        hash = (37 * hash) + FILTER_FIELD_NUMBER;
+        hash = (53 * hash) + getFilter().hashCode();
+      }
+      if (hasProjector()) {
+        hash = (37 * hash) + PROJECTOR_FIELD_NUMBER;
+        hash = (53 * hash) + getProjector().hashCode();
+      }
+      if (hasAggregators()) {
+        hash = (37 * hash) + AGGREGATORS_FIELD_NUMBER;
+        hash = (53 * hash) + getAggregators().hashCode();
+      }
+      if (hasKeyRanges()) {
+        hash = (37 * hash) + KEYRANGES_FIELD_NUMBER;
+        hash = (53 * hash) + getKeyRanges().hashCode();
+      }
       hash = (29 * hash) + getUnknownFields().hashCode();
       memoizedHashCode = hash;
       return hash;
@@ -324,6 +512,14 @@ public final class IIProtos {
         super.clear();
         tableInfo_ = com.google.protobuf.ByteString.EMPTY;
         bitField0_ = (bitField0_ & ~0x00000001);
+        filter_ = com.google.protobuf.ByteString.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000002);
+        projector_ = com.google.protobuf.ByteString.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000004);
+        aggregators_ = com.google.protobuf.ByteString.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000008);
+        keyRanges_ = com.google.protobuf.ByteString.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000010);
         return this;
       }
 
@@ -356,6 +552,22 @@ public final class IIProtos {
           to_bitField0_ |= 0x00000001;
         }
         result.tableInfo_ = tableInfo_;
+        if (((from_bitField0_ & 0x00000002) == 0x00000002)) {
+          to_bitField0_ |= 0x00000002;
+        }
+        result.filter_ = filter_;
+        if (((from_bitField0_ & 0x00000004) == 0x00000004)) {
+          to_bitField0_ |= 0x00000004;
+        }
+        result.projector_ = projector_;
+        if (((from_bitField0_ & 0x00000008) == 0x00000008)) {
+          to_bitField0_ |= 0x00000008;
+        }
+        result.aggregators_ = aggregators_;
+        if (((from_bitField0_ & 0x00000010) == 0x00000010)) {
+          to_bitField0_ |= 0x00000010;
+        }
+        result.keyRanges_ = keyRanges_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -375,6 +587,18 @@ public final class IIProtos {
         if (other.hasTableInfo()) {
           setTableInfo(other.getTableInfo());
         }
+        if (other.hasFilter()) {
+          setFilter(other.getFilter());
+        }
+        if (other.hasProjector()) {
+          setProjector(other.getProjector());
+        }
+        if (other.hasAggregators()) {
+          setAggregators(other.getAggregators());
+        }
+        if (other.hasKeyRanges()) {
+          setKeyRanges(other.getKeyRanges());
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -442,6 +666,150 @@ public final class IIProtos {
         return this;
       }
 
+      // optional bytes filter = 2;
+      private com.google.protobuf.ByteString filter_ = com.google.protobuf.ByteString.EMPTY;
+      /**
+       * <code>optional bytes filter = 2;</code>
+       */
+      public boolean hasFilter() {
+        return ((bitField0_ & 0x00000002) == 0x00000002);
+      }
+      /**
+       * <code>optional bytes filter = 2;</code>
+       */
+      public com.google.protobuf.ByteString getFilter() {
+        return filter_;
+      }
+      /**
+       * <code>optional bytes filter = 2;</code>
+       */
+      public Builder setFilter(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000002;
+        filter_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bytes filter = 2;</code>
+       */
+      public Builder clearFilter() {
+        bitField0_ = (bitField0_ & ~0x00000002);
+        filter_ = getDefaultInstance().getFilter();
+        onChanged();
+        return this;
+      }
+
+      // optional bytes projector = 3;
+      private com.google.protobuf.ByteString projector_ = com.google.protobuf.ByteString.EMPTY;
+      /**
+       * <code>optional bytes projector = 3;</code>
+       */
+      public boolean hasProjector() {
+        return ((bitField0_ & 0x00000004) == 0x00000004);
+      }
+      /**
+       * <code>optional bytes projector = 3;</code>
+       */
+      public com.google.protobuf.ByteString getProjector() {
+        return projector_;
+      }
+      /**
+       * <code>optional bytes projector = 3;</code>
+       */
+      public Builder setProjector(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000004;
+        projector_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bytes projector = 3;</code>
+       */
+      public Builder clearProjector() {
+        bitField0_ = (bitField0_ & ~0x00000004);
+        projector_ = getDefaultInstance().getProjector();
+        onChanged();
+        return this;
+      }
+
+      // optional bytes aggregators = 4;
+      private com.google.protobuf.ByteString aggregators_ = com.google.protobuf.ByteString.EMPTY;
+      /**
+       * <code>optional bytes aggregators = 4;</code>
+       */
+      public boolean hasAggregators() {
+        return ((bitField0_ & 0x00000008) == 0x00000008);
+      }
+      /**
+       * <code>optional bytes aggregators = 4;</code>
+       */
+      public com.google.protobuf.ByteString getAggregators() {
+        return aggregators_;
+      }
+      /**
+       * <code>optional bytes aggregators = 4;</code>
+       */
+      public Builder setAggregators(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000008;
+        aggregators_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bytes aggregators = 4;</code>
+       */
+      public Builder clearAggregators() {
+        bitField0_ = (bitField0_ & ~0x00000008);
+        aggregators_ = getDefaultInstance().getAggregators();
+        onChanged();
+        return this;
+      }
+
+      // optional bytes keyRanges = 5;
+      private com.google.protobuf.ByteString keyRanges_ = com.google.protobuf.ByteString.EMPTY;
+      /**
+       * <code>optional bytes keyRanges = 5;</code>
+       */
+      public boolean hasKeyRanges() {
+        return ((bitField0_ & 0x00000010) == 0x00000010);
+      }
+      /**
+       * <code>optional bytes keyRanges = 5;</code>
+       */
+      public com.google.protobuf.ByteString getKeyRanges() {
+        return keyRanges_;
+      }
+      /**
+       * <code>optional bytes keyRanges = 5;</code>
+       */
+      public Builder setKeyRanges(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000010;
+        keyRanges_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bytes keyRanges = 5;</code>
+       */
+      public Builder clearKeyRanges() {
+        bitField0_ = (bitField0_ & ~0x00000010);
+        keyRanges_ = getDefaultInstance().getKeyRanges();
+        onChanged();
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:IIRequest)
     }
 
@@ -1201,11 +1569,13 @@ public final class IIProtos {
       descriptor;
   static {
     java.lang.String[] descriptorData = {
-      "\n\010II.proto\"\036\n\tIIRequest\022\021\n\ttableInfo\030\001 \002" +
-      "(\014\"\032\n\nIIResponse\022\014\n\004rows\030\001 \003(\01421\n\013RowsSe" +
-      "rvice\022\"\n\007getRows\022\n.IIRequest\032\013.IIRespons" +
-      "eBE\n1com.kylinolap.storage.hbase.coproce" +
-      "ssor.generatedB\010IIProtosH\001\210\001\001\240\001\001"
+      "\n\010II.proto\"i\n\tIIRequest\022\021\n\ttableInfo\030\001 \002" +
+      "(\014\022\016\n\006filter\030\002 \001(\014\022\021\n\tprojector\030\003 \001(\014\022\023\n" +
+      "\013aggregators\030\004 \001(\014\022\021\n\tkeyRanges\030\005 \001(\014\"\032\n" +
+      "\nIIResponse\022\014\n\004rows\030\001 \003(\01421\n\013RowsService" +
+      "\022\"\n\007getRows\022\n.IIRequest\032\013.IIResponseBE\n1" +
+      "com.kylinolap.storage.hbase.coprocessor." +
+      "generatedB\010IIProtosH\001\210\001\001\240\001\001"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -1217,7 +1587,7 @@ public final class IIProtos {
           internal_static_IIRequest_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_IIRequest_descriptor,
-              new java.lang.String[] { "TableInfo", });
+              new java.lang.String[] { "TableInfo", "Filter", "Projector", "Aggregators", "KeyRanges", });
           internal_static_IIResponse_descriptor =
             getDescriptor().getMessageTypes().get(1);
           internal_static_IIResponse_fieldAccessorTable = new
@@ -27,6 +27,7 @@ import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
 import org.apache.hadoop.hbase.regionserver.HRegion;
 import org.apache.hadoop.hbase.regionserver.RegionCoprocessorHost;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
 
 /**
  * @author yangli9
@@ -41,6 +42,9 @@ public class AggregateRegionObserver extends BaseRegionObserver {
     static final String PROJECTOR = "_Projector";
     static final String AGGREGATORS = "_Aggregators";
     static final String FILTER = "_Filter";
+    static final String TOPN = "_TopN";
+    static final String COMPACT = "_Compact";
+    static final String TIMEOUT = "_Timeout";
 
     @Override
     public final RegionScanner postScannerOpen(final ObserverContext<RegionCoprocessorEnvironment> ctxt, final Scan scan, final RegionScanner innerScanner) throws IOException {
@@ -51,6 +55,9 @@ public class AggregateRegionObserver extends BaseRegionObserver {
         if (copAbortOnError) {
             try {
                 return doPostScannerObserver(ctxt, scan, innerScanner);
+            } catch (CoprocessorTimeoutException e) {
+                // the inner scanner is consumed, falling back to it is no good
+                throw e;
             } catch (Throwable e) {
                 LOG.error("Kylin Coprocessor Error", e);
                 return innerScanner;
@@ -61,11 +68,31 @@ public class AggregateRegionObserver extends BaseRegionObserver {
     }
 
     private RegionScanner doPostScannerObserver(final ObserverContext<RegionCoprocessorEnvironment> ctxt, final Scan scan, final RegionScanner innerScanner) throws IOException {
-        byte[] coprocessorEnableBytes = scan.getAttribute(COPROCESSOR_ENABLE);
-        if (coprocessorEnableBytes == null || coprocessorEnableBytes.length == 0 || coprocessorEnableBytes[0] == 0) {
+        if (isEnabled(scan) == false) {
             return innerScanner;
         }
 
+        // start/end region operation & sync on scanner is suggested by the
+        // javadoc of RegionScanner.nextRaw()
+        // FIXME: will the lock still work when a iterator is returned? is it safe? Is readonly attribute helping here? by mhb
+        HRegion region = ctxt.getEnvironment().getRegion();
+        region.startRegionOperation();
+        try {
+            synchronized (innerScanner) {
+                return createAggregationScanner(scan, innerScanner);
+            }
+        } finally {
+            region.closeRegionOperation();
+        }
+
+    }
+
+    private static boolean isEnabled(Scan scan) {
+        byte[] coprocessorEnableBytes = scan.getAttribute(COPROCESSOR_ENABLE);
+        return coprocessorEnableBytes != null && coprocessorEnableBytes.length > 0 && coprocessorEnableBytes[0] != 0;
+    }
+
+    private static AggregationScanner createAggregationScanner(Scan scan, RegionScanner innerScanner) throws IOException {
         byte[] typeBytes = scan.getAttribute(TYPE);
         SRowType type = SRowType.deserialize(typeBytes);
 
@@ -78,19 +105,26 @@ public class AggregateRegionObserver extends BaseRegionObserver {
         byte[] filterBytes = scan.getAttribute(FILTER);
         SRowFilter filter = SRowFilter.deserialize(filterBytes);
 
-        // start/end region operation & sync on scanner is suggested by the
-        // javadoc of RegionScanner.nextRaw()
-        // FIXME: will the lock still work when a iterator is returned? is it safe? Is readonly attribute helping here? by mhb
-        HRegion region = ctxt.getEnvironment().getRegion();
-        region.startRegionOperation();
-        try {
-            synchronized (innerScanner) {
-                return new AggregationScanner(type, filter, projector, aggregators, innerScanner);
-            }
-        } finally {
-            region.closeRegionOperation();
-        }
+        byte[] topNBytes = scan.getAttribute(TOPN);
+        SRowTopN topN = SRowTopN.deserialize(topNBytes);
+
+        byte[] compactBytes = scan.getAttribute(COMPACT);
+        boolean compact = compactBytes != null && compactBytes.length > 0 && compactBytes[0] != 0;
+
+        // relative, as clocks of the query server and region servers may differ
+        byte[] timeoutBytes = scan.getAttribute(TIMEOUT);
+        long timeout = timeoutBytes == null ? 0 : Bytes.toLong(timeoutBytes);
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+
+        return new AggregationScanner(type, filter, projector, aggregators, topN, compact, deadline, innerScanner);
+    }
 
+    /**
+     * Do what the observer does in a region server, on a scanner outside of
+     * any region; for in-process stand-ins of HBase in tests and benchmarks.
+     */
+    public static RegionScanner wrapScanner(Scan scan, RegionScanner innerScanner) throws IOException {
+        return isEnabled(scan) ? createAggregationScanner(scan, innerScanner) : innerScanner;
     }
 
 }
@@ -17,10 +17,16 @@
 package com.kylinolap.storage.hbase.observer;
 
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.SortedMap;
 
 import org.apache.hadoop.hbase.Cell;
@@ -62,8 +68,67 @@ public class AggregationCache {
         return aggBuf;
     }
 
-    public RegionScanner getScanner(RegionScanner innerScanner) {
-        return new AggregationRegionScanner(innerScanner);
+    /**
+     * @param compact
+     *            pack rows into {@link SRowBlock}s instead of one KeyValue per
+     *            row and HBase column
+     */
+    public RegionScanner getScanner(RegionScanner innerScanner, boolean compact) {
+        return new AggregationRegionScanner(innerScanner, aggBufMap.entrySet().iterator(), null, compact);
+    }
+
+    /**
+     * Return only the top N groups by the TopN measure, each row marked with
+     * the region's threshold. Groups are picked through a bounded heap whose
+     * head is the worst group kept.
+     */
+    public RegionScanner getTopNScanner(RegionScanner innerScanner, final SRowTopN topN, boolean compact) {
+        final Comparator<TopNEntry> betterFirst = new Comparator<TopNEntry>() {
+            @Override
+            public int compare(TopNEntry o1, TopNEntry o2) {
+                return topN.compare(o1.value, o2.value);
+            }
+        };
+        PriorityQueue<TopNEntry> heap = new PriorityQueue<TopNEntry>(topN.n + 1, Collections.reverseOrder(betterFirst));
+
+        boolean safe = true;
+        BigDecimal threshold = null;
+        for (Entry<AggrKey, MeasureAggregator[]> entry : aggBufMap.entrySet()) {
+            BigDecimal value = topN.valueOf(entry.getValue());
+            if (value == null || (topN.requireNonNegative && value.signum() < 0))
+                safe = false;
+
+            heap.add(new TopNEntry(entry, value));
+            if (heap.size() > topN.n) {
+                TopNEntry cut = heap.poll();
+                if (threshold == null || topN.compare(cut.value, threshold) < 0)
+                    threshold = cut.value;
+            }
+        }
+
+        List<TopNEntry> top = new ArrayList<TopNEntry>(heap);
+        Collections.sort(top, betterFirst);
+        List<Entry<AggrKey, MeasureAggregator[]>> entries = new ArrayList<Entry<AggrKey, MeasureAggregator[]>>(top.size());
+        for (TopNEntry e : top) {
+            entries.add(e.entry);
+        }
+
+        SRowTopN.Mark mark = new SRowTopN.Mark(new Random().nextLong(), safe, threshold);
+        return new AggregationRegionScanner(innerScanner, entries.iterator(), mark.toBytes(), compact);
+    }
+
+    public long getTopNSize(SRowTopN topN) {
+        return Math.min(aggBufMap.size(), topN.n);
+    }
+
+    private static class TopNEntry {
+        final Entry<AggrKey, MeasureAggregator[]> entry;
+        final BigDecimal value;
+
+        TopNEntry(Entry<AggrKey, MeasureAggregator[]> entry, BigDecimal value) {
+            this.entry = entry;
+            this.value = value;
+        }
     }
 
     public long getSize() {
@@ -93,17 +158,26 @@ public class AggregationCache {
 
         private final RegionScanner innerScanner;
         private final Iterator<Entry<AggrKey, MeasureAggregator[]>> iterator;
+        private final byte[] topNMark;
+        private final SRowBlock.Writer blockWriter;
 
-        public AggregationRegionScanner(RegionScanner innerScanner) {
+        public AggregationRegionScanner(RegionScanner innerScanner, Iterator<Entry<AggrKey, MeasureAggregator[]>> iterator, byte[] topNMark, boolean compact) {
             this.innerScanner = innerScanner;
-            this.iterator = aggBufMap.entrySet().iterator();
+            this.iterator = iterator;
+            this.topNMark = topNMark;
+            this.blockWriter = compact ? new SRowBlock.Writer(aggregators.getHColFamilies(), aggregators.getHColQualifiers()) : null;
         }
 
         @Override
         public boolean next(List<Cell> results) throws IOException {
             // AggregateRegionObserver.LOG.info("Kylin Scanner next()");
             boolean hasMore = false;
-            if (iterator.hasNext()) {
+            if (blockWriter != null) {
+                if (iterator.hasNext()) {
+                    makeBlock(results);
+                    hasMore = iterator.hasNext();
+                }
+            } else if (iterator.hasNext()) {
                 Entry<AggrKey, MeasureAggregator[]> entry = iterator.next();
                 makeCells(entry, results);
                 hasMore = iterator.hasNext();
@@ -112,6 +186,34 @@ public class AggregationCache {
             return hasMore;
         }
 
+        private void makeBlock(List<Cell> results) {
+            byte[] blockRow = null;
+            blockWriter.reset();
+            while (iterator.hasNext() && blockWriter.isFull() == false) {
+                Entry<AggrKey, MeasureAggregator[]> entry = iterator.next();
+                AggrKey rowKey = entry.getKey();
+                if (blockRow == null)
+                    blockRow = rowKey.copy().get();
+                blockWriter.add(rowKey.get(), rowKey.offset(), rowKey.length(), aggregators.getHColValues(entry.getValue()));
+            }
+
+            // the block cell is keyed by the first row in it
+            byte[] block = blockWriter.toBytes();
+            results.add(new KeyValue(blockRow, 0, blockRow.length, //
+                    SRowBlock.FAMILY, 0, SRowBlock.FAMILY.length, //
+                    SRowBlock.QUALIFIER, 0, SRowBlock.QUALIFIER.length, //
+                    HConstants.LATEST_TIMESTAMP, Type.Put, //
+                    block, 0, block.length));
+            if (topNMark != null) {
+                results.add(new KeyValue(blockRow, 0, blockRow.length, //
+                        SRowTopN.MARK_FAMILY, 0, SRowTopN.MARK_FAMILY.length, //
+                        SRowTopN.MARK_QUALIFIER, 0, SRowTopN.MARK_QUALIFIER.length, //
+                        HConstants.LATEST_TIMESTAMP, Type.Put, //
+                        topNMark, 0, topNMark.length));
+                Collections.sort(results, KeyValue.COMPARATOR);
+            }
+        }
+
         private void makeCells(Entry<AggrKey, MeasureAggregator[]> entry, List<Cell> results) {
             byte[][] families = aggregators.getHColFamilies();
             byte[][] qualifiers = aggregators.getHColQualifiers();
@@ -138,6 +240,17 @@ public class AggregationCache {
                     results.add(keyValue);
                 }
             }
+
+            if (topNMark != null) {
+                Cell keyValue = new KeyValue(rowKey.get(), rowKey.offset(), rowKey.length(), //
+                        SRowTopN.MARK_FAMILY, 0, SRowTopN.MARK_FAMILY.length, //
+                        SRowTopN.MARK_QUALIFIER, 0, SRowTopN.MARK_QUALIFIER.length, //
+                        HConstants.LATEST_TIMESTAMP, Type.Put, //
+                        topNMark, 0, topNMark.length);
+                results.add(keyValue);
+                // keep cells sorted, Result looks up columns by binary search
+                Collections.sort(results, KeyValue.COMPARATOR);
+            }
         }
 
         @Override
@@ -36,46 +36,105 @@ public class AggregationScanner implements RegionScanner {
     private RegionScanner outerScanner;
 
     public AggregationScanner(SRowType type, SRowFilter filter, SRowProjector groupBy, SRowAggregators aggrs, RegionScanner innerScanner) throws IOException {
+        this(type, filter, groupBy, aggrs, null, false, 0, innerScanner);
+    }
+
+    public AggregationScanner(SRowType type, SRowFilter filter, SRowProjector groupBy, SRowAggregators aggrs, SRowTopN topN, boolean compact, RegionScanner innerScanner) throws IOException {
+        this(type, filter, groupBy, aggrs, topN, compact, 0, innerScanner);
+    }
+
+    /**
+     * @param deadline
+     *            time in millis after which aggregation gives up with a
+     *            CoprocessorTimeoutException, 0 for none
+     */
+    public AggregationScanner(SRowType type, SRowFilter filter, SRowProjector groupBy, SRowAggregators aggrs, SRowTopN topN, boolean compact, long deadline, RegionScanner innerScanner) throws IOException {
 
         AggregateRegionObserver.LOG.info("Kylin Coprocessor start");
 
         AggregationCache aggCache;
         Stats stats = new Stats();
 
-        aggCache = buildAggrCache(innerScanner, type, groupBy, aggrs, filter, stats);
-        stats.countOutputRow(aggCache.getSize());
-        this.outerScanner = aggCache.getScanner(innerScanner);
+        try {
+            aggCache = buildAggrCache(innerScanner, type, groupBy, aggrs, filter, deadline, stats);
+        } catch (CoprocessorTimeoutException e) {
+            AggregateRegionObserver.LOG.warn("Kylin Coprocessor timeout: " + stats);
+            innerScanner.close();
+            throw e;
+        }
+        if (topN == null) {
+            stats.countOutputRow(aggCache.getSize());
+            this.outerScanner = aggCache.getScanner(innerScanner, compact);
+        } else {
+            stats.countOutputRow(aggCache.getTopNSize(topN));
+            this.outerScanner = aggCache.getTopNScanner(innerScanner, topN, compact);
+        }
 
         AggregateRegionObserver.LOG.info("Kylin Coprocessor aggregation done: " + stats);
     }
 
     @SuppressWarnings("rawtypes")
-    AggregationCache buildAggrCache(final RegionScanner innerScanner, SRowType type, SRowProjector projector, SRowAggregators aggregators, SRowFilter filter, Stats stats) throws IOException {
+    AggregationCache buildAggrCache(final RegionScanner innerScanner, SRowType type, SRowProjector projector, SRowAggregators aggregators, SRowFilter filter, long deadline, Stats stats) throws IOException {
 
         AggregationCache aggCache = new AggregationCache(aggregators, 0);
 
-        SRowTuple tuple = new SRowTuple(type);
+        SRowBatchFilter batchFilter = (filter == null) ? null : filter.compile(type);
+        if (batchFilter != null && batchFilter.isAlwaysTrue())
+            batchFilter = null;
+
+        // rows are buffered and filtered a batch at a time
+        int batchSize = SRowBatchFilter.DEFAULT_BATCH_SIZE;
+        List<List<Cell>> batch = new ArrayList<List<Cell>>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new ArrayList<Cell>());
+        }
+        byte[][] keys = new byte[batchSize][];
+        int[] offsets = new int[batchSize];
+        int[] selection = new int[batchSize];
+
         boolean hasMore = true;
-        List<Cell> results = new ArrayList<Cell>();
+        int n = 0;
         while (hasMore) {
+            List<Cell> results = batch.get(n);
             results.clear();
             hasMore = innerScanner.nextRaw(results);
-            if (results.isEmpty())
-                continue;
-
-            if (stats != null)
-                stats.countInputRow(results);
-
-            Cell cell = results.get(0);
-            tuple.setUnderlying(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength());
-            if (filter != null && filter.evaluate(tuple) == false)
-                continue;
-
-            AggrKey aggKey = projector.getRowKey(results);
-            MeasureAggregator[] bufs = aggCache.getBuffer(aggKey);
-            aggregators.aggregate(bufs, results);
+            if (results.isEmpty() == false) {
+                if (stats != null)
+                    stats.countInputRow(results);
+
+                Cell cell = results.get(0);
+                keys[n] = cell.getRowArray();
+                offsets[n] = cell.getRowOffset();
+                n++;
+            }
 
-            aggCache.checkMemoryUsage();
+            if (n == batchSize || (hasMore == false && n > 0)) {
+                int selected;
+                if (batchFilter == null) {
+                    for (int i = 0; i < n; i++) {
+                        selection[i] = i;
+                    }
+                    selected = n;
+                } else {
+                    selected = batchFilter.evaluate(keys, offsets, n, selection);
+                }
+
+                for (int i = 0; i < selected; i++) {
+                    List<Cell> row = batch.get(selection[i]);
+                    AggrKey aggKey = projector.getRowKey(row);
+                    MeasureAggregator[] bufs = aggCache.getBuffer(aggKey);
+                    aggregators.aggregate(bufs, row);
+
+                    aggCache.checkMemoryUsage();
+                }
+                n = 0;
+
+                // the query server has given up or the query is cancelled,
+                // stop holding the region server
+                if (deadline > 0 && System.currentTimeMillis() > deadline) {
+                    throw new CoprocessorTimeoutException("Kylin coprocessor gave up aggregating after the scan timeout");
+                }
+            }
         }
         return aggCache;
     }
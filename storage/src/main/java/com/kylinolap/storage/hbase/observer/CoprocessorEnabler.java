@@ -21,10 +21,13 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,8 +37,11 @@ import com.kylinolap.cube.CubeInstance;
 import com.kylinolap.cube.CubeSegment;
 import com.kylinolap.cube.cuboid.Cuboid;
 import com.kylinolap.cube.kv.RowValueDecoder;
+import com.kylinolap.metadata.model.cube.HBaseColumnDesc;
+import com.kylinolap.metadata.model.cube.MeasureDesc;
 import com.kylinolap.metadata.model.cube.TblColRef;
 import com.kylinolap.storage.StorageContext;
+import com.kylinolap.storage.StorageContext.OrderEnum;
 import com.kylinolap.storage.filter.TupleFilter;
 import com.kylinolap.storage.hbase.RegionScannerAdapter;
 import com.kylinolap.storage.hbase.ResultScannerAdapter;
@@ -63,10 +69,11 @@ public class CoprocessorEnabler {
         SRowFilter filter = SRowFilter.fromFilter(segment, tupleFiler);
         SRowProjector projector = SRowProjector.fromColumns(segment, cuboid, groupBy);
         SRowAggregators aggrs = SRowAggregators.fromValuDecoders(rowValueDecoders);
+        SRowTopN topN = buildTopN(context, rowValueDecoders, aggrs);
 
         if (DEBUG_LOCAL_COPROCESSOR) {
             RegionScanner innerScanner = new RegionScannerAdapter(table.getScanner(scan));
-            AggregationScanner aggrScanner = new AggregationScanner(type, filter, projector, aggrs, innerScanner);
+            AggregationScanner aggrScanner = new AggregationScanner(type, filter, projector, aggrs, topN, context.isCompactResponseEnabled(), innerScanner);
             return new ResultScannerAdapter(aggrScanner);
         } else {
             scan.setAttribute(AggregateRegionObserver.COPROCESSOR_ENABLE, new byte[] { 0x01 });
@@ -74,10 +81,48 @@ public class CoprocessorEnabler {
             scan.setAttribute(AggregateRegionObserver.PROJECTOR, SRowProjector.serialize(projector));
             scan.setAttribute(AggregateRegionObserver.AGGREGATORS, SRowAggregators.serialize(aggrs));
             scan.setAttribute(AggregateRegionObserver.FILTER, SRowFilter.serialize(filter));
+            if (topN != null) {
+                scan.setAttribute(AggregateRegionObserver.TOPN, SRowTopN.serialize(topN));
+            }
+            if (context.isCompactResponseEnabled()) {
+                scan.setAttribute(AggregateRegionObserver.COMPACT, new byte[] { 0x01 });
+            }
+            scan.setAttribute(AggregateRegionObserver.TIMEOUT, Bytes.toBytes(getCoprocessorTimeout(segment, table)));
             return table.getScanner(scan);
         }
     }
 
+    // a cancelled query cannot reach the region servers, but they do stop
+    // once the query server would have timed out the scan anyway
+    private static long getCoprocessorTimeout(CubeSegment segment, HTableInterface table) {
+        int timeoutSeconds = segment.getCubeInstance().getConfig().getQueryCoprocessorTimeoutSeconds();
+        if (timeoutSeconds > 0) {
+            return timeoutSeconds * 1000L;
+        }
+        Configuration conf = table.getConfiguration();
+        return conf == null ? HConstants.DEFAULT_HBASE_RPC_TIMEOUT : conf.getInt(HConstants.HBASE_RPC_TIMEOUT_KEY, HConstants.DEFAULT_HBASE_RPC_TIMEOUT);
+    }
+
+    private static SRowTopN buildTopN(StorageContext context, Collection<RowValueDecoder> rowValueDecoders, SRowAggregators aggrs) {
+        if (context.isTopNEnabled() == false)
+            return null;
+
+        MeasureDesc measure = context.getSortMeasures().get(0);
+        boolean descending = context.getSortOrders().get(0) == OrderEnum.DESCENDING;
+        boolean requireNonNegative = measure.getFunction().isSum() || measure.getFunction().isCount();
+        for (RowValueDecoder decoder : rowValueDecoders) {
+            MeasureDesc[] measures = decoder.getMeasures();
+            for (int i = 0; i < measures.length; i++) {
+                if (measures[i].equals(measure)) {
+                    HBaseColumnDesc hbaseColumn = decoder.getHBaseColumn();
+                    int index = aggrs.getBufferIndex(Bytes.toBytes(hbaseColumn.getColumnFamilyName()), Bytes.toBytes(hbaseColumn.getQualifier()), i);
+                    return index < 0 ? null : new SRowTopN(index, descending, requireNonNegative, context.getTopN());
+                }
+            }
+        }
+        return null;
+    }
+
     public static void enableCoprocessorIfBeneficial(CubeInstance cube, Collection<TblColRef> groupBy, Collection<RowValueDecoder> rowValueDecoders, StorageContext context) {
         if (isCoprocessorBeneficial(cube, groupBy, rowValueDecoders, context)) {
             context.enableCoprocessor();
@@ -101,7 +146,9 @@ public class CoprocessorEnabler {
             return cubeOverride.booleanValue();
         }
 
-        if (RowValueDecoder.hasMemHungryCountDistinct(rowValueDecoders)) {
+        // when the query server cannot hold all the rows, aggregating on
+        // region servers first is worth their memory
+        if (RowValueDecoder.hasMemHungryCountDistinct(rowValueDecoders) && context.isMemoryShort() == false) {
             logger.info("Coprocessor is disabled because there is memory hungry count distinct");
             return false;
         }
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.observer;
+
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+
+/**
+ * Thrown by the coprocessor when aggregating a scan takes longer than the
+ * query server is willing to wait. Not retried, as a retry would only redo
+ * the same work.
+ */
+public class CoprocessorTimeoutException extends DoNotRetryIOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CoprocessorTimeoutException(String message) {
+        super(message);
+    }
+
+}
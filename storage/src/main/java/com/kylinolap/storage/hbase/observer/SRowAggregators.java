@@ -212,6 +212,20 @@ public class SRowAggregators {
         return result;
     }
 
+    /**
+     * index in the aggregation buffer of the i-th measure of given HBase
+     * column, -1 if not found
+     */
+    public int getBufferIndex(byte[] family, byte[] qualifier, int i) {
+        int offset = 0;
+        for (HCol col : hcols) {
+            if (Bytes.equals(col.family, family) && Bytes.equals(col.qualifier, qualifier))
+                return i < col.nMeasures ? offset + i : -1;
+            offset += col.nMeasures;
+        }
+        return -1;
+    }
+
     public ByteBuffer[] getHColValues(MeasureAggregator[] aggrs) {
         int i = 0;
         for (int ci = 0; ci < nHCols; ci++) {
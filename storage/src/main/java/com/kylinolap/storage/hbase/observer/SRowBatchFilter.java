@@ -0,0 +1,529 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.observer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.storage.filter.CompareTupleFilter;
+import com.kylinolap.storage.filter.ConstantTupleFilter;
+import com.kylinolap.storage.filter.LogicalTupleFilter;
+import com.kylinolap.storage.filter.TupleFilter;
+import com.kylinolap.storage.filter.TupleFilter.FilterOperatorEnum;
+
+/**
+ * A TupleFilter compiled against a row type, evaluated a batch of row keys at
+ * a time. Compare filters work directly on the dictionary IDs in the row key:
+ * EQ and range operators become ID range checks, IN becomes a bitset or sorted
+ * ID lookup. Each node narrows a selection vector of row indexes, so AND is
+ * simply applying its children in sequence. Filters that cannot be compiled
+ * fall back to per row evaluation on an SRowTuple.
+ * 
+ * Not thread safe, the nodes keep scratch buffers; compile one per scanner.
+ */
+public class SRowBatchFilter {
+
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    // IN lists with IDs below this limit are looked up in a bitset
+    private static final long BITSET_ID_LIMIT = 1L << 20;
+
+    // IDs up to 7 bytes fit in a non-negative long
+    private static final int MAX_LONG_ID_SIZE = 7;
+
+    public static SRowBatchFilter compile(SRowType type, TupleFilter filter) {
+        if (filter == null)
+            return null;
+        return new SRowBatchFilter(type, filter);
+    }
+
+    // ============================================================================
+
+    private final SRowType type;
+    private final Node root;
+
+    private SRowBatchFilter(SRowType type, TupleFilter filter) {
+        this.type = type;
+        this.root = compileNode(filter);
+    }
+
+    public boolean isAlwaysTrue() {
+        return root == TRUE;
+    }
+
+    /**
+     * Evaluate the first n rows, whose keys start at rows[i][offsets[i]]. The
+     * indexes of the rows passing the filter are written to selection in
+     * ascending order, and their count is returned.
+     */
+    public int evaluate(byte[][] rows, int[] offsets, int n, int[] selection) {
+        for (int i = 0; i < n; i++) {
+            selection[i] = i;
+        }
+        return root.filter(rows, offsets, selection, n);
+    }
+
+    private Node compileNode(TupleFilter filter) {
+        if (filter instanceof ConstantTupleFilter) {
+            return filter.getValues().isEmpty() ? FALSE : TRUE;
+        }
+
+        if (filter instanceof LogicalTupleFilter) {
+            List<? extends TupleFilter> children = filter.getChildren();
+            Node[] nodes = new Node[children.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = compileNode(children.get(i));
+            }
+            switch (filter.getOperator()) {
+            case AND:
+                return new AndNode(nodes);
+            case OR:
+                return new OrNode(nodes);
+            case NOT:
+                return new NotNode(nodes[0]);
+            default:
+                return FALSE;
+            }
+        }
+
+        if (filter instanceof CompareTupleFilter) {
+            Node node = compileCompare((CompareTupleFilter) filter);
+            if (node != null)
+                return node;
+        }
+
+        return new FallbackNode(filter);
+    }
+
+    private Node compileCompare(CompareTupleFilter compf) {
+        TblColRef col = compf.getColumn();
+        if (col == null || compf.getVariables().isEmpty() == false)
+            return null;
+
+        // column not in this row type, let the row pass
+        Integer idx = type.columnIdxMap.get(col);
+        if (idx == null)
+            return TRUE;
+
+        int offset = type.columnOffsets[idx];
+        int size = type.columnSizes[idx];
+        String nullString = compf.getNullString();
+        if (nullString != null && nullString.length() != size)
+            nullString = null; // can never match a value of this column
+
+        FilterOperatorEnum op = compf.getOperator();
+        if (op == FilterOperatorEnum.ISNULL || op == FilterOperatorEnum.ISNOTNULL) {
+            if (size > MAX_LONG_ID_SIZE)
+                return null;
+            return new NullCheckNode(offset, size, toId(nullString, size), op == FilterOperatorEnum.ISNULL);
+        }
+
+        String first = compf.getFirstValue();
+        if (first == null)
+            return null;
+        // always false if compare to null
+        if (first.equals(nullString))
+            return FALSE;
+
+        Collection<String> values = compf.getValues();
+        for (String v : values) {
+            if (v.length() != size)
+                return null;
+        }
+
+        if (size > MAX_LONG_ID_SIZE) {
+            return new BytesCompareNode(offset, size, op, toBytes(first), nullString == null ? null : toBytes(nullString), values);
+        }
+
+        long nullId = toId(nullString, size);
+        long id = toId(first, size);
+        switch (op) {
+        case EQ:
+            return new RangeNode(offset, size, nullId, id, id, false);
+        case NEQ:
+            return new RangeNode(offset, size, nullId, id, id, true);
+        case LT:
+            return new RangeNode(offset, size, nullId, 0, id - 1, false);
+        case LTE:
+            return new RangeNode(offset, size, nullId, 0, id, false);
+        case GT:
+            return new RangeNode(offset, size, nullId, id + 1, Long.MAX_VALUE, false);
+        case GTE:
+            return new RangeNode(offset, size, nullId, id, Long.MAX_VALUE, false);
+        case IN:
+        case NOTIN:
+            long[] ids = new long[values.size()];
+            int i = 0;
+            for (String v : values) {
+                ids[i++] = toId(v, size);
+            }
+            return new InNode(offset, size, nullId, ids, op == FilterOperatorEnum.NOTIN);
+        default:
+            return null;
+        }
+    }
+
+    private static long toId(String s, int size) {
+        if (s == null)
+            return -1;
+        long id = 0;
+        for (int i = 0; i < size; i++) {
+            id = (id << 8) | (s.charAt(i) & 0xff);
+        }
+        return id;
+    }
+
+    private static byte[] toBytes(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+
+    private static long readId(byte[] row, int offset, int size) {
+        long id = 0;
+        for (int i = 0; i < size; i++) {
+            id = (id << 8) | (row[offset + i] & 0xff);
+        }
+        return id;
+    }
+
+    // ============================================================================
+
+    private static abstract class Node {
+        /** narrow down the selected rows in place, return the new count */
+        abstract int filter(byte[][] rows, int[] offsets, int[] sel, int n);
+    }
+
+    private static final Node TRUE = new Node() {
+        @Override
+        int filter(byte[][] rows, int[] offsets, int[] sel, int n) {
+            return n;
+        }
+    };
+
+    private static final Node FALSE = new Node() {
+        @Override
+        int filter(byte[][] rows, int[] offsets, int[] sel, int n) {
+            return 0;
+        }
+    };
+
+    private static class AndNode extends Node {
+        final Node[] children;
+
+        AndNode(Node[] children) {
+            this.children = children;
+        }
+
+        @Override
+        int filter(byte[][] rows, int[] offsets, int[] sel, int n) {
+            for (int i = 0; i < children.length && n > 0; i++) {
+                n = children[i].filter(rows, offsets, sel, n);
+            }
+            return n;
+        }
+    }
+
+    /** base of nodes that need to remember which rows a child selected */
+    private static abstract class MarkingNode extends Node {
+        int[] scratch = new int[0];
+        boolean[] marks = new boolean[0];
+
+        void ensureCapacity(int size) {
+            if (scratch.length < size) {
+                scratch = new int[size];
+                marks = new boolean[size];
+            }
+        }
+
+        // keep the rows in sel whose mark equals the given value, and reset marks
+        int keep(int[] sel, int n, boolean marked) {
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                if (marks[r] == marked)
+                    sel[m++] = r;
+                marks[r] = false;
+            }
+            return m;
+        }
+    }
+
+    private static class OrNode extends MarkingNode {
+        final Node[] children;
+        int[] remain = new int[0];
+
+        OrNode(Node[] children) {
+            this.children = children;
+        }
+
+        @Override
+        int filter(byte[][] rows, int[] offsets, int[] sel, int n) {
+            ensureCapacity(rows.length);
+            if (remain.length < rows.length)
+                remain = new int[rows.length];
+
+            System.arraycopy(sel, 0, remain, 0, n);
+            int nRemain = n;
+            for (int c = 0; c < children.length && nRemain > 0; c++) {
+                System.arraycopy(remain, 0, scratch, 0, nRemain);
+                int m = children[c].filter(rows, offsets, scratch, nRemain);
+                for (int i = 0; i < m; i++) {
+                    marks[scratch[i]] = true;
+                }
+                // only rows not selected yet go on to the next child
+                int k = 0;
+                for (int i = 0; i < nRemain; i++) {
+                    if (marks[remain[i]] == false)
+                        remain[k++] = remain[i];
+                }
+                nRemain = k;
+            }
+            return keep(sel, n, true);
+        }
+    }
+
+    private static class NotNode extends MarkingNode {
+        final Node child;
+
+        NotNode(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        int filter(byte[][] rows, int[] offsets, int[] sel, int n) {
+            ensureCapacity(rows.length);
+            System.arraycopy(sel, 0, scratch, 0, n);
+            int m = child.filter(rows, offsets, scratch, n);
+            for (int i = 0; i < m; i++) {
+                marks[scratch[i]] = true;
+            }
+            return keep(sel, n, false);
+        }
+    }
+
+    /** value in [lo, hi] (or not in, if negate), null never passes */
+    private static class RangeNode extends Node {
+        final int offset;
+        final int size;
+        final long nullId;
+        final long lo;
+        final long hi;
+        final boolean negate;
+
+        RangeNode(int offset, int size, long nullId, long lo, long hi, boolean negate) {
+            this.offset = offset;
+            this.size = size;
+            this.nullId = nullId;
+            this.lo = lo;
+            this.hi = hi;
+            this.negate = negate;
+        }
+
+        @Override
+        int filter(byte[][] rows, int[] offsets, int[] sel, int n) {
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                long id = readId(rows[r], offsets[r] + offset, size);
+                if (id != nullId && ((id >= lo && id <= hi) != negate))
+                    sel[m++] = r;
+            }
+            return m;
+        }
+    }
+
+    private static class InNode extends Node {
+        final int offset;
+        final int size;
+        final long nullId;
+        final boolean negate;
+        final BitSet bits;
+        final long[] sorted;
+
+        InNode(int offset, int size, long nullId, long[] ids, boolean negate) {
+            this.offset = offset;
+            this.size = size;
+            this.nullId = nullId;
+            this.negate = negate;
+
+            long max = -1;
+            for (long id : ids) {
+                max = Math.max(max, id);
+            }
+            if (max < BITSET_ID_LIMIT) {
+                this.bits = new BitSet((int) max + 1);
+                for (long id : ids) {
+                    bits.set((int) id);
+                }
+                this.sorted = null;
+            } else {
+                this.bits = null;
+                this.sorted = Arrays.copyOf(ids, ids.length);
+                Arrays.sort(sorted);
+            }
+        }
+
+        @Override
+        int filter(byte[][] rows, int[] offsets, int[] sel, int n) {
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                long id = readId(rows[r], offsets[r] + offset, size);
+                if (id == nullId)
+                    continue;
+                boolean in = bits != null ? (id < BITSET_ID_LIMIT && bits.get((int) id)) : Arrays.binarySearch(sorted, id) >= 0;
+                if (in != negate)
+                    sel[m++] = r;
+            }
+            return m;
+        }
+    }
+
+    private static class NullCheckNode extends Node {
+        final int offset;
+        final int size;
+        final long nullId;
+        final boolean isNull;
+
+        NullCheckNode(int offset, int size, long nullId, boolean isNull) {
+            this.offset = offset;
+            this.size = size;
+            this.nullId = nullId;
+            this.isNull = isNull;
+        }
+
+        @Override
+        int filter(byte[][] rows, int[] offsets, int[] sel, int n) {
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                if ((readId(rows[r], offsets[r] + offset, size) == nullId) == isNull)
+                    sel[m++] = r;
+            }
+            return m;
+        }
+    }
+
+    /** for IDs too long to fit a long, compare unsigned bytes */
+    private static class BytesCompareNode extends Node {
+        final int offset;
+        final int size;
+        final FilterOperatorEnum op;
+        final byte[] value;
+        final byte[] nullValue;
+        final byte[][] sortedValues;
+
+        BytesCompareNode(int offset, int size, FilterOperatorEnum op, byte[] value, byte[] nullValue, Collection<String> values) {
+            this.offset = offset;
+            this.size = size;
+            this.op = op;
+            this.value = value;
+            this.nullValue = nullValue;
+            this.sortedValues = new byte[values.size()][];
+            int i = 0;
+            for (String v : values) {
+                sortedValues[i++] = toBytes(v);
+            }
+            Arrays.sort(sortedValues, Bytes.BYTES_COMPARATOR);
+        }
+
+        @Override
+        int filter(byte[][] rows, int[] offsets, int[] sel, int n) {
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                byte[] row = rows[r];
+                int o = offsets[r] + offset;
+                if (nullValue != null && Bytes.compareTo(row, o, size, nullValue, 0, size) == 0)
+                    continue;
+                if (accept(row, o))
+                    sel[m++] = r;
+            }
+            return m;
+        }
+
+        private boolean accept(byte[] row, int o) {
+            int comp = Bytes.compareTo(row, o, size, value, 0, size);
+            switch (op) {
+            case EQ:
+                return comp == 0;
+            case NEQ:
+                return comp != 0;
+            case LT:
+                return comp < 0;
+            case LTE:
+                return comp <= 0;
+            case GT:
+                return comp > 0;
+            case GTE:
+                return comp >= 0;
+            case IN:
+                return contains(row, o);
+            case NOTIN:
+                return contains(row, o) == false;
+            default:
+                return false;
+            }
+        }
+
+        private boolean contains(byte[] row, int o) {
+            int lo = 0, hi = sortedValues.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int comp = Bytes.compareTo(sortedValues[mid], 0, size, row, o, size);
+                if (comp < 0)
+                    lo = mid + 1;
+                else if (comp > 0)
+                    hi = mid - 1;
+                else
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /** evaluates the original filter row by row */
+    private class FallbackNode extends Node {
+        final TupleFilter filter;
+        final SRowTuple tuple;
+
+        FallbackNode(TupleFilter filter) {
+            this.filter = filter;
+            this.tuple = new SRowTuple(type);
+        }
+
+        @Override
+        int filter(byte[][] rows, int[] offsets, int[] sel, int n) {
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                tuple.setUnderlying(rows[r], offsets[r], rows[r].length - offsets[r]);
+                if (filter.evaluate(tuple))
+                    sel[m++] = r;
+            }
+            return m;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.observer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.kylinolap.common.util.BytesUtil;
+import com.ning.compress.lzf.LZFDecoder;
+import com.ning.compress.lzf.LZFEncoder;
+
+/**
+ * Compact coprocessor response, many aggregated rows packed into the value of
+ * one cell, instead of one KeyValue per row and HBase column. Row keys are
+ * prefix compressed against the previous key, column values are length
+ * prefixed, and the block is LZF compressed when big enough.
+ * 
+ * <pre>
+ * block   = flag(1 byte, RAW or LZF) payload
+ * payload = vint(nCols) (bytes(family) bytes(qualifier)){nCols}
+ *           vint(nRows) (vint(shared) vint(suffixLen) suffix (vint(len) value){nCols}){nRows}
+ * </pre>
+ */
+public class SRowBlock {
+
+    public static final byte[] FAMILY = Bytes.toBytes("_Block");
+    public static final byte[] QUALIFIER = Bytes.toBytes("_B");
+
+    public static final int MAX_ROWS = 1024;
+    public static final int MAX_BYTES = 256 * 1024;
+    static final int COMPRESSION_THRESHOLD = 512; // bytes
+
+    static final byte RAW = 0;
+    static final byte LZF = 1;
+
+    // ============================================================================
+
+    public static class Writer {
+        private final byte[][] families;
+        private final byte[][] qualifiers;
+        private ByteBuffer buf;
+        private byte[] lastKey;
+        private int count;
+
+        public Writer(byte[][] families, byte[][] qualifiers) {
+            this.families = families;
+            this.qualifiers = qualifiers;
+            this.buf = ByteBuffer.allocate(64 * 1024);
+        }
+
+        /** values are read from 0 to their position */
+        public void add(byte[] key, int offset, int length, ByteBuffer[] values) {
+            int shared = 0;
+            if (lastKey != null) {
+                int max = Math.min(lastKey.length, length);
+                while (shared < max && lastKey[shared] == key[offset + shared])
+                    shared++;
+            }
+
+            int nCols = families.length;
+            int size = 10 + length - shared;
+            for (int i = 0; i < nCols; i++)
+                size += 5 + values[i].position();
+            ensureCapacity(size);
+
+            BytesUtil.writeVInt(shared, buf);
+            BytesUtil.writeVInt(length - shared, buf);
+            buf.put(key, offset + shared, length - shared);
+            for (int i = 0; i < nCols; i++) {
+                BytesUtil.writeVInt(values[i].position(), buf);
+                buf.put(values[i].array(), 0, values[i].position());
+            }
+
+            lastKey = Arrays.copyOfRange(key, offset, offset + length);
+            count++;
+        }
+
+        private void ensureCapacity(int size) {
+            if (buf.remaining() >= size)
+                return;
+            ByteBuffer newBuf = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + size));
+            buf.flip();
+            newBuf.put(buf);
+            buf = newBuf;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getByteSize() {
+            return buf.position();
+        }
+
+        public boolean isFull() {
+            return count >= MAX_ROWS || buf.position() >= MAX_BYTES;
+        }
+
+        public byte[] toBytes() {
+            int headerSize = 10;
+            for (int i = 0; i < families.length; i++)
+                headerSize += 10 + families[i].length + qualifiers[i].length;
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            BytesUtil.writeVInt(families.length, header);
+            for (int i = 0; i < families.length; i++) {
+                BytesUtil.writeByteArray(families[i], header);
+                BytesUtil.writeByteArray(qualifiers[i], header);
+            }
+            BytesUtil.writeVInt(count, header);
+
+            byte[] payload = new byte[header.position() + buf.position()];
+            System.arraycopy(header.array(), 0, payload, 0, header.position());
+            System.arraycopy(buf.array(), 0, payload, header.position(), buf.position());
+
+            byte flag = RAW;
+            if (payload.length >= COMPRESSION_THRESHOLD) {
+                try {
+                    payload = LZFEncoder.encode(payload, 0, payload.length);
+                } catch (Exception e) {
+                    throw new RuntimeException("LZF encode failure", e);
+                }
+                flag = LZF;
+            }
+
+            byte[] result = new byte[1 + payload.length];
+            result[0] = flag;
+            System.arraycopy(payload, 0, result, 1, payload.length);
+            return result;
+        }
+
+        public void reset() {
+            buf.clear();
+            lastKey = null;
+            count = 0;
+        }
+    }
+
+    // ============================================================================
+
+    public static class Reader {
+        private final byte[][] families;
+        private final byte[][] qualifiers;
+        private final ByteBuffer buf;
+        private final int count;
+
+        private int read;
+        private byte[] key = BytesUtil.EMPTY_BYTE_ARRAY;
+        private final byte[][] values;
+
+        /** null if the result is not a block */
+        public static Reader fromResult(Result result) {
+            Cell cell = result.getColumnLatestCell(FAMILY, QUALIFIER);
+            if (cell == null)
+                return null;
+            return new Reader(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        public Reader(byte[] bytes, int offset, int length) {
+            byte[] payload;
+            if (bytes[offset] == LZF) {
+                try {
+                    payload = LZFDecoder.decode(bytes, offset + 1, length - 1);
+                } catch (IOException e) {
+                    throw new RuntimeException("LZF decode failure", e);
+                }
+            } else {
+                payload = Arrays.copyOfRange(bytes, offset + 1, offset + length);
+            }
+
+            this.buf = ByteBuffer.wrap(payload);
+            int nCols = BytesUtil.readVInt(buf);
+            this.families = new byte[nCols][];
+            this.qualifiers = new byte[nCols][];
+            for (int i = 0; i < nCols; i++) {
+                families[i] = BytesUtil.readByteArray(buf);
+                qualifiers[i] = BytesUtil.readByteArray(buf);
+            }
+            this.count = BytesUtil.readVInt(buf);
+            this.values = new byte[nCols][];
+        }
+
+        /** index of the column in this block, -1 if absent */
+        public int getColumnIndex(byte[] family, byte[] qualifier) {
+            for (int i = 0; i < families.length; i++) {
+                if (Bytes.equals(families[i], family) && Bytes.equals(qualifiers[i], qualifier))
+                    return i;
+            }
+            return -1;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public boolean hasNext() {
+            return read < count;
+        }
+
+        /** moves to the next row, keys and values returned are not reused */
+        public void next() {
+            int shared = BytesUtil.readVInt(buf);
+            int suffix = BytesUtil.readVInt(buf);
+            byte[] newKey = new byte[shared + suffix];
+            System.arraycopy(key, 0, newKey, 0, shared);
+            buf.get(newKey, shared, suffix);
+            key = newKey;
+
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new byte[BytesUtil.readVInt(buf)];
+                buf.get(values[i]);
+            }
+            read++;
+        }
+
+        public byte[] getKey() {
+            return key;
+        }
+
+        public byte[] getValue(int column) {
+            return values[column];
+        }
+    }
+}
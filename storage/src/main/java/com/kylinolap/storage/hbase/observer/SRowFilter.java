@@ -42,10 +42,44 @@ import com.kylinolap.storage.tuple.ITuple;
  */
 public class SRowFilter {
 
+    /**
+     * Translates column constants into dictionary IDs
+     */
+    public static interface DictIdTranslator {
+
+        /** return false if filters on the column cannot be evaluated over dictionary IDs */
+        boolean isTranslatable(TblColRef column);
+
+        int getColumnLength(TblColRef column);
+
+        /** write the ID of given value into id[], or NULL bytes if not found after rounding */
+        void translate(TblColRef column, String value, int roundingFlag, byte[] id);
+    }
+
     public static SRowFilter fromFilter(final CubeSegment seg, TupleFilter rootFilter) {
+        final RowKeyColumnIO columnIO = new RowKeyColumnIO(seg);
+        return fromFilter(rootFilter, new DictIdTranslator() {
+            @Override
+            public boolean isTranslatable(TblColRef column) {
+                return true;
+            }
+
+            @Override
+            public int getColumnLength(TblColRef column) {
+                return columnIO.getColumnLength(column);
+            }
+
+            @Override
+            public void translate(TblColRef column, String value, int roundingFlag, byte[] id) {
+                byte[] bytes = Bytes.toBytes(value);
+                columnIO.writeColumn(column, bytes, bytes.length, roundingFlag, Dictionary.NULL, id, 0);
+            }
+        });
+    }
+
+    public static SRowFilter fromFilter(TupleFilter rootFilter, final DictIdTranslator translator) {
         // translate constants into dictionary IDs via a serialize copy
         byte[] bytes = TupleFilterSerializer.serialize(rootFilter, new Decorator() {
-            RowKeyColumnIO columnIO = new RowKeyColumnIO(seg);
 
             @Override
             public TupleFilter onSerialize(TupleFilter filter) {
@@ -67,6 +101,9 @@ public class SRowFilter {
                 if (col == null) {
                     return filter;
                 }
+                if (translator.isTranslatable(col) == false) {
+                    return ConstantTupleFilter.TRUE;
+                }
                 String nullString = nullString(col);
                 Collection<String> constValues = compf.getValues();
                 if (constValues == null || constValues.isEmpty()) {
@@ -150,7 +187,7 @@ public class SRowFilter {
             }
 
             private String nullString(TblColRef column) {
-                byte[] id = new byte[columnIO.getColumnLength(column)];
+                byte[] id = new byte[translator.getColumnLength(column)];
                 for (int i = 0; i < id.length; i++) {
                     id[i] = Dictionary.NULL;
                 }
@@ -158,9 +195,8 @@ public class SRowFilter {
             }
 
             private String translate(TblColRef column, String v, int roundingFlag) {
-                byte[] value = Bytes.toBytes(v);
-                byte[] id = new byte[columnIO.getColumnLength(column)];
-                columnIO.writeColumn(column, value, value.length, roundingFlag, Dictionary.NULL, id, 0);
+                byte[] id = new byte[translator.getColumnLength(column)];
+                translator.translate(column, v, roundingFlag, id);
                 return Dictionary.dictIdToString(id, 0, id.length);
             }
 
@@ -188,6 +224,10 @@ public class SRowFilter {
         this.filter = filter;
     }
 
+    public TupleFilter getFilter() {
+        return filter;
+    }
+
     public boolean evaluate(ITuple tuple) {
         if (filter == null)
             return true;
@@ -195,4 +235,12 @@ public class SRowFilter {
             return filter.evaluate(tuple);
     }
 
+    /**
+     * compile the filter for batch evaluation over row keys of given type,
+     * null if there is no filter
+     */
+    public SRowBatchFilter compile(SRowType type) {
+        return SRowBatchFilter.compile(type, filter);
+    }
+
 }
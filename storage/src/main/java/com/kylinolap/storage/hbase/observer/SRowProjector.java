@@ -27,6 +27,7 @@ import com.kylinolap.common.util.BytesSerializer;
 import com.kylinolap.common.util.BytesUtil;
 import com.kylinolap.cube.CubeSegment;
 import com.kylinolap.cube.cuboid.Cuboid;
+import com.kylinolap.cube.kv.RowConstants;
 import com.kylinolap.cube.kv.RowKeyEncoder;
 import com.kylinolap.metadata.model.cube.TblColRef;
 
@@ -41,12 +42,19 @@ public class SRowProjector {
         RowKeyEncoder rowKeyMaskEncoder = new RowKeyEncoder(cubeSegment, cuboid) {
             @Override
             protected int fillHeader(byte[] bytes, byte[][] values) {
-                Arrays.fill(bytes, 0, this.headerLength, (byte) 0xff);
+                // shards of the same group are aggregated together, keep cuboid ID only
+                int cuboidStart = this.headerLength - RowConstants.ROWKEY_CUBOIDID_LEN;
+                Arrays.fill(bytes, 0, cuboidStart, (byte) 0x00);
+                Arrays.fill(bytes, cuboidStart, this.headerLength, (byte) 0xff);
                 return this.headerLength;
             }
 
             @Override
-            protected void fillColumnValue(TblColRef column, int columnLen, byte[] value, int valueLen, byte[] outputValue, int outputValueOffset) {
+            protected void fillShard(byte[] bytes) {
+            }
+
+            @Override
+            protected void fillColumnValue(TblColRef column, int columnLen, byte[] value, int valueLen, byte blankByte, byte[] outputValue, int outputValueOffset) {
                 byte bits = dimensionColumns.contains(column) ? (byte) 0xff : 0x00;
                 Arrays.fill(outputValue, outputValueOffset, outputValueOffset + columnLen, bits);
             }
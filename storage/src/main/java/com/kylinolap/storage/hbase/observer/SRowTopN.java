@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.observer;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+
+import com.kylinolap.common.util.BytesSerializer;
+import com.kylinolap.common.util.BytesUtil;
+import com.kylinolap.cube.measure.MeasureAggregator;
+
+/**
+ * TopN by one measure, applied by the coprocessor after aggregation. Each
+ * region keeps only the top N groups, and marks every row it returns with the
+ * region's {@link Mark}, so the client can tell whether the merged result is
+ * provably the global top N.
+ */
+@SuppressWarnings("rawtypes")
+public class SRowTopN {
+
+    public static final byte[] MARK_FAMILY = Bytes.toBytes("_TopN");
+    public static final byte[] MARK_QUALIFIER = Bytes.toBytes("_Mark");
+
+    public static byte[] serialize(SRowTopN o) {
+        ByteBuffer buf = ByteBuffer.allocate(CoprocessorEnabler.SERIALIZE_BUFFER_SIZE);
+        serializer.serialize(o, buf);
+        byte[] result = new byte[buf.position()];
+        System.arraycopy(buf.array(), 0, result, 0, buf.position());
+        return result;
+    }
+
+    public static SRowTopN deserialize(byte[] bytes) {
+        if (bytes == null || bytes.length == 0)
+            return null;
+        return serializer.deserialize(ByteBuffer.wrap(bytes));
+    }
+
+    private static final Serializer serializer = new Serializer();
+
+    private static class Serializer implements BytesSerializer<SRowTopN> {
+
+        @Override
+        public void serialize(SRowTopN value, ByteBuffer out) {
+            BytesUtil.writeVInt(value.measureIndex, out);
+            BytesUtil.writeVInt(value.descending ? 1 : 0, out);
+            BytesUtil.writeVInt(value.requireNonNegative ? 1 : 0, out);
+            BytesUtil.writeVInt(value.n, out);
+        }
+
+        @Override
+        public SRowTopN deserialize(ByteBuffer in) {
+            int measureIndex = BytesUtil.readVInt(in);
+            boolean descending = BytesUtil.readVInt(in) != 0;
+            boolean requireNonNegative = BytesUtil.readVInt(in) != 0;
+            int n = BytesUtil.readVInt(in);
+            return new SRowTopN(measureIndex, descending, requireNonNegative, n);
+        }
+    }
+
+    // ============================================================================
+
+    final int measureIndex; // in the aggregation buffer
+    final boolean descending;
+    final boolean requireNonNegative; // for SUM, see Mark.safe
+    final int n;
+
+    public SRowTopN(int measureIndex, boolean descending, boolean requireNonNegative, int n) {
+        this.measureIndex = measureIndex;
+        this.descending = descending;
+        this.requireNonNegative = requireNonNegative;
+        this.n = n;
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    /** the sort measure of an aggregation buffer, null if it has no value */
+    BigDecimal valueOf(MeasureAggregator[] aggBuf) {
+        Object state = aggBuf[measureIndex].getState();
+        if (state instanceof BigDecimal)
+            return (BigDecimal) state;
+        if (state instanceof LongWritable)
+            return BigDecimal.valueOf(((LongWritable) state).get());
+        if (state instanceof DoubleWritable) {
+            double d = ((DoubleWritable) state).get();
+            return Double.isNaN(d) || Double.isInfinite(d) ? null : BigDecimal.valueOf(d);
+        }
+        return null;
+    }
+
+    /** orders better values first, nulls last */
+    int compare(BigDecimal v1, BigDecimal v2) {
+        if (v1 == null || v2 == null)
+            return (v1 == null ? 1 : 0) - (v2 == null ? 1 : 0);
+        return descending ? v2.compareTo(v1) : v1.compareTo(v2);
+    }
+
+    // ============================================================================
+
+    /**
+     * What a region tells about the groups it returned under TopN.
+     * <ul>
+     * <li>partition: identifies the region scan</li>
+     * <li>safe: false if some group had no value, or (for SUM) a negative one;
+     * bounds cannot be reasoned about then</li>
+     * <li>threshold: the best value among the groups cut off, null if none
+     * was</li>
+     * </ul>
+     */
+    public static class Mark {
+        public final long partition;
+        public final boolean safe;
+        public final BigDecimal threshold;
+
+        public Mark(long partition, boolean safe, BigDecimal threshold) {
+            this.partition = partition;
+            this.safe = safe;
+            this.threshold = threshold;
+        }
+
+        public byte[] toBytes() {
+            byte[] t = threshold == null ? BytesUtil.EMPTY_BYTE_ARRAY : Bytes.toBytes(threshold.toString());
+            ByteBuffer buf = ByteBuffer.allocate(9 + t.length);
+            buf.putLong(partition);
+            buf.put((byte) (safe ? 1 : 0));
+            buf.put(t);
+            return buf.array();
+        }
+
+        public static Mark fromBytes(byte[] bytes, int offset, int length) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes, offset, length);
+            long partition = buf.getLong();
+            boolean safe = buf.get() != 0;
+            BigDecimal threshold = length > 9 ? new BigDecimal(Bytes.toString(bytes, offset + 9, length - 9)) : null;
+            return new Mark(partition, safe, threshold);
+        }
+
+        /** the mark of a row returned by a TopN region scan, or null */
+        public static Mark fromResult(Result result) {
+            return fromCells(result.listCells());
+        }
+
+        static Mark fromCells(List<Cell> cells) {
+            if (cells == null)
+                return null;
+            for (int i = cells.size() - 1; i >= 0; i--) {
+                Cell cell = cells.get(i);
+                if (Bytes.equals(MARK_FAMILY, 0, MARK_FAMILY.length, cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength()) //
+                        && Bytes.equals(MARK_QUALIFIER, 0, MARK_QUALIFIER.length, cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength())) {
+                    return fromBytes(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+                }
+            }
+            return null;
+        }
+    }
+}
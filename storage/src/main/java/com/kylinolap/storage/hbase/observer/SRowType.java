@@ -26,6 +26,7 @@ import com.kylinolap.common.util.BytesSerializer;
 import com.kylinolap.common.util.BytesUtil;
 import com.kylinolap.cube.CubeSegment;
 import com.kylinolap.cube.cuboid.Cuboid;
+import com.kylinolap.cube.invertedindex.TableRecordInfo;
 import com.kylinolap.cube.kv.RowConstants;
 import com.kylinolap.cube.kv.RowKeyColumnIO;
 import com.kylinolap.metadata.model.cube.TblColRef;
@@ -46,7 +47,20 @@ public class SRowType {
         for (int i = 0; i < cols.length; i++) {
             colSizes[i] = colIO.getColumnLength(cols[i]);
         }
-        return new SRowType(cols, colSizes);
+        return new SRowType(seg.getRowkeyShardLength() + RowConstants.ROWKEY_CUBOIDID_LEN, cols, colSizes);
+    }
+
+    public static SRowType fromTableRecordInfo(TableRecordInfo info) {
+        ColumnDesc[] columns = info.getColumns();
+        TblColRef[] cols = new TblColRef[columns.length];
+        int[] colSizes = new int[columns.length];
+        for (ColumnDesc col : columns) {
+            int i = col.getZeroBasedIndex();
+            cols[i] = new TblColRef(col);
+            colSizes[i] = info.length(i);
+        }
+        // a record of inverted index has no header
+        return new SRowType(0, cols, colSizes);
     }
 
     public static byte[] serialize(SRowType o) {
@@ -63,11 +77,19 @@ public class SRowType {
 
     private static final Serializer serializer = new Serializer();
 
+    // the layout before versioning starts with the column count, which is
+    // never negative, so a leading -1 marks a versioned layout
+    private static final byte VERSION_MARKER = -1;
+    private static final byte VERSION = 1; // adds header length
+
     private static class Serializer implements BytesSerializer<SRowType> {
 
         @Override
         public void serialize(SRowType o, ByteBuffer out) {
             int n = o.columns.length;
+            out.put(VERSION_MARKER);
+            out.put(VERSION);
+            BytesUtil.writeVInt(o.headerLength, out);
             BytesUtil.writeVInt(o.columns.length, out);
             for (int i = 0; i < n; i++) {
                 BytesUtil.writeAsciiString(o.columns[i].getTable(), out);
@@ -78,6 +100,14 @@ public class SRowType {
 
         @Override
         public SRowType deserialize(ByteBuffer in) {
+            int headerLength = RowConstants.ROWKEY_CUBOIDID_LEN;
+            if (in.get(in.position()) == VERSION_MARKER) {
+                in.get();
+                byte version = in.get();
+                if (version != VERSION)
+                    throw new IllegalStateException("Unknown SRowType version " + version + ", expect " + VERSION + ", is the coprocessor jar in sync with the query server?");
+                headerLength = BytesUtil.readVInt(in);
+            }
             int n = BytesUtil.readVInt(in);
             TblColRef[] cols = new TblColRef[n];
             int[] colSizes = new int[n];
@@ -94,12 +124,13 @@ public class SRowType {
                 int colSize = BytesUtil.readVInt(in);
                 colSizes[i] = colSize;
             }
-            return new SRowType(cols, colSizes);
+            return new SRowType(headerLength, cols, colSizes);
         }
     }
 
     // ============================================================================
 
+    int headerLength; // shard and cuboid ID
     TblColRef[] columns;
     int[] columnSizes;
 
@@ -108,6 +139,11 @@ public class SRowType {
     HashMap<TblColRef, Integer> columnIdxMap;
 
     public SRowType(TblColRef[] columns, int[] columnSizes) {
+        this(RowConstants.ROWKEY_CUBOIDID_LEN, columns, columnSizes);
+    }
+
+    public SRowType(int headerLength, TblColRef[] columns, int[] columnSizes) {
+        this.headerLength = headerLength;
         this.columns = columns;
         this.columnSizes = columnSizes;
         init();
@@ -115,7 +151,7 @@ public class SRowType {
 
     private void init() {
         int[] offsets = new int[columns.length];
-        int o = RowConstants.ROWKEY_CUBOIDID_LEN;
+        int o = headerLength;
         for (int i = 0; i < columns.length; i++) {
             offsets[i] = o;
             o += columnSizes[i];
@@ -135,4 +171,12 @@ public class SRowType {
         return columns.length;
     }
 
+    /**
+     * @return index of the column, or -1 if not found
+     */
+    public int getColumnIndex(TblColRef column) {
+        Integer i = columnIdxMap.get(column);
+        return i == null ? -1 : i;
+    }
+
 }
@@ -81,6 +81,14 @@ public class Tuple implements ITuple {
         setFieldObjectValue(fieldName, objectValue);
     }
 
+    /**
+     * set a dimension value already converted by convertOptiqCellValue(), for
+     * callers that cache the conversion
+     */
+    public void setDimensionObjectValue(String fieldName, Object fieldValue) {
+        setFieldObjectValue(fieldName, fieldValue);
+    }
+
     public void setMeasureValue(String fieldName, Object fieldValue) {
         String dataType = info.getDataType(fieldName);
         // special handling for BigDecimal, allow double be aggregated as
@@ -97,6 +105,13 @@ public class Tuple implements ITuple {
         return info.hasColumn(column);
     }
 
+    /** a detached copy, for iterators that reuse their tuple */
+    public Tuple copy() {
+        Tuple copy = new Tuple(info);
+        System.arraycopy(values, 0, copy.values, 0, values.length);
+        return copy;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
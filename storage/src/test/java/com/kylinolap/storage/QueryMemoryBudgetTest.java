@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class QueryMemoryBudgetTest {
+
+    static final long MB = 1024L * 1024;
+
+    @Test
+    public void testReserveAndRelease() {
+        QueryMemoryBudget budget = new QueryMemoryBudget(1024 * MB, 0.5, 100);
+
+        QueryMemoryBudget.Account a = budget.newAccount(false);
+        assertEquals(800 * MB, a.reserve(800 * MB));
+        // partial grant when the budget is tight
+        assertEquals(224 * MB, a.reserve(500 * MB));
+        assertEquals(1024 * MB, a.getReserved());
+        assertEquals(0, budget.getAvailable());
+
+        a.releaseAll();
+        assertEquals(0, a.getReserved());
+        assertEquals(1024 * MB, budget.getAvailable());
+    }
+
+    @Test
+    public void testExportShare() {
+        QueryMemoryBudget budget = new QueryMemoryBudget(1024 * MB, 0.5, 100);
+
+        QueryMemoryBudget.Account export = budget.newAccount(true);
+        assertEquals(512 * MB, export.reserve(800 * MB));
+        try {
+            budget.newAccount(true).reserve(100 * MB);
+            fail("export share exceeded");
+        } catch (QueryRejectedException e) {
+            // expected
+        }
+
+        // interactive queries still get the rest
+        assertEquals(512 * MB, budget.newAccount(false).reserve(800 * MB));
+    }
+
+    @Test
+    public void testCharge() {
+        QueryMemoryBudget budget = new QueryMemoryBudget(1024 * MB, 0.5, 100);
+
+        // charges within the reservation take nothing more
+        QueryMemoryBudget.Account a = budget.newAccount(false);
+        assertEquals(100 * MB, a.reserve(100 * MB));
+        a.charge(60 * MB);
+        a.charge(40 * MB);
+        assertEquals(100 * MB, a.getReserved());
+
+        // beyond it, the reservation is topped up at least a step at a time
+        a.charge(1 * MB);
+        assertEquals(100 * MB + QueryMemoryBudget.CHARGE_STEP, a.getReserved());
+        a.charge(500 * MB);
+        assertEquals(601 * MB, a.getReserved());
+
+        // until the budget runs out
+        budget.newAccount(false).reserve(400 * MB);
+        try {
+            a.charge(100 * MB);
+            fail("charge beyond the budget");
+        } catch (QueryRejectedException e) {
+            // expected
+        }
+        assertEquals(0, budget.getAvailable());
+
+        a.releaseAll();
+        assertEquals(0, a.getCharged());
+        assertEquals(624 * MB, budget.getAvailable());
+    }
+
+    @Test
+    public void testWaitForRelease() throws Exception {
+        QueryMemoryBudget budget = new QueryMemoryBudget(1024 * MB, 0.5, 10000);
+        final QueryMemoryBudget.Account a = budget.newAccount(false);
+        a.reserve(1024 * MB);
+
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                a.releaseAll();
+            }
+        };
+        releaser.start();
+
+        assertEquals(100 * MB, budget.newAccount(false).reserve(100 * MB));
+        releaser.join();
+    }
+}
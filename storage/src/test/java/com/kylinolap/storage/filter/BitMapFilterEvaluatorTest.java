@@ -87,6 +87,9 @@ public class BitMapFilterEvaluatorTest {
         basicFilters.add(compare(colA, FilterOperatorEnum.IN, 0, 5));
         basicResults.add(set(0, 5));
         
+        basicFilters.add(compare(colA, FilterOperatorEnum.IN, 1, 3, 4, 8));
+        basicResults.add(set(1, 3, 4, 8));
+        
         basicFilters.add(compare(colA, FilterOperatorEnum.NOTIN, 0, 5));
         basicResults.add(set(1, 2, 3, 4, 6, 7, 8));
         
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+import com.kylinolap.common.util.BytesUtil;
+import com.kylinolap.common.util.LocalFileMetadataTestCase;
+import com.kylinolap.cube.CubeInstance;
+import com.kylinolap.cube.CubeManager;
+import com.kylinolap.cube.CubeSegment;
+import com.kylinolap.cube.invertedindex.TableRecord;
+import com.kylinolap.cube.invertedindex.TableRecordInfo;
+import com.kylinolap.dict.DateStrDictionary;
+import com.kylinolap.metadata.model.cube.FunctionDesc;
+import com.kylinolap.metadata.model.cube.ParameterDesc;
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.storage.StorageContext;
+import com.kylinolap.storage.filter.ColumnTupleFilter;
+import com.kylinolap.storage.filter.CompareTupleFilter;
+import com.kylinolap.storage.filter.ConstantTupleFilter;
+import com.kylinolap.storage.filter.LogicalTupleFilter;
+import com.kylinolap.storage.filter.TupleFilter;
+import com.kylinolap.storage.filter.TupleFilter.FilterOperatorEnum;
+import com.kylinolap.storage.hbase.coprocessor.EndpointAggregators;
+import com.kylinolap.storage.tuple.Tuple;
+
+public class InvertedIndexStorageEngineTest extends LocalFileMetadataTestCase {
+
+    InvertedIndexStorageEngine engine;
+    TableRecordInfo info;
+    TblColRef calDt;
+    TblColRef format;
+    TblColRef price;
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        CubeInstance cube = CubeManager.getInstance(getTestConfig()).getCube("test_kylin_cube_ii");
+        this.engine = new InvertedIndexStorageEngine(cube);
+        this.info = new TableRecordInfo(cube.getFirstSegment());
+        this.calDt = column("CAL_DT");
+        this.format = column("LSTG_FORMAT_NAME");
+        this.price = column("PRICE");
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testDeriveTimeRange() {
+        long jan = DateStrDictionary.stringToMillis("2013-01-01");
+        long feb = DateStrDictionary.stringToMillis("2013-02-01");
+        long mar = DateStrDictionary.stringToMillis("2013-03-01");
+
+        assertArrayEquals(new long[] { Long.MIN_VALUE, Long.MAX_VALUE }, InvertedIndexStorageEngine.deriveTimeRange(null, calDt));
+        assertArrayEquals(new long[] { Long.MIN_VALUE, Long.MAX_VALUE }, InvertedIndexStorageEngine.deriveTimeRange(compare(format, FilterOperatorEnum.EQ, "FP-GTC"), calDt));
+
+        TupleFilter and = logical(FilterOperatorEnum.AND, compare(calDt, FilterOperatorEnum.GTE, "2013-01-01"), compare(calDt, FilterOperatorEnum.LT, "2013-02-01"));
+        assertArrayEquals(new long[] { jan, feb - 1 }, InvertedIndexStorageEngine.deriveTimeRange(and, calDt));
+
+        TupleFilter or = logical(FilterOperatorEnum.OR, compare(calDt, FilterOperatorEnum.EQ, "2013-01-01"), compare(calDt, FilterOperatorEnum.EQ, "2013-03-01"));
+        assertArrayEquals(new long[] { jan, mar }, InvertedIndexStorageEngine.deriveTimeRange(or, calDt));
+
+        TupleFilter disjoint = logical(FilterOperatorEnum.AND, compare(calDt, FilterOperatorEnum.LT, "2013-01-01"), compare(calDt, FilterOperatorEnum.GT, "2013-02-01"));
+        assertNull(InvertedIndexStorageEngine.deriveTimeRange(disjoint, calDt));
+    }
+
+    @Test
+    public void testPushDownDecision() {
+        FunctionDesc sum = function(FunctionDesc.FUNC_SUM, price);
+
+        InvertedIndexStorageEngine.IISegmentTupleIterator it = iterator(Arrays.asList(format), null, Arrays.asList(sum), new StorageContext());
+        it.prepareSegment(info);
+        assertNotNull(it.aggregators);
+        assertArrayEquals(new int[] { index(format) }, it.projector.getColumns());
+
+        // grouped by a metrics column
+        it = iterator(Arrays.asList(format, price), null, Arrays.asList(sum), new StorageContext());
+        it.prepareSegment(info);
+        assertNull(it.aggregators);
+
+        // cannot be aggregated on region server
+        it = iterator(Arrays.asList(format), null, Arrays.asList(function(FunctionDesc.FUNC_COUNT_DISTINCT, price)), new StorageContext());
+        it.prepareSegment(info);
+        assertNull(it.aggregators);
+
+        StorageContext avoid = new StorageContext();
+        avoid.markAvoidAggregation();
+        it = iterator(Arrays.asList(format), null, Arrays.asList(sum), avoid);
+        it.prepareSegment(info);
+        assertNull(it.aggregators);
+    }
+
+    @Test
+    public void testSumWithFilterOnSameMetrics() {
+        // SELECT SUM(PRICE) ... WHERE PRICE > 1
+        TupleFilter filter = compare(price, FilterOperatorEnum.GT, "1");
+        InvertedIndexStorageEngine.IISegmentTupleIterator it = iterator(Arrays.asList(format), filter, Arrays.asList(function(FunctionDesc.FUNC_SUM, price)), new StorageContext());
+        it.prepareSegment(info);
+        assertNull(it.aggregators);
+
+        TableRecord rec = new TableRecord(info);
+        rec.setValueString(index(format), info.dict(index(format)).getValueFromId(info.dict(index(format)).getMinId()));
+        rec.setValueString(index(price), "12.5");
+        Tuple tuple = it.toTuple(ByteString.copyFrom(rec.getBytes()));
+
+        assertEquals(0, new BigDecimal("12.5").compareTo((BigDecimal) tuple.getValue(price)));
+        assertTrue(filter.evaluate(tuple));
+    }
+
+    @Test
+    public void testAggregatedTuple() {
+        FunctionDesc sum = function(FunctionDesc.FUNC_SUM, price);
+        FunctionDesc count = function(FunctionDesc.FUNC_COUNT, null);
+        InvertedIndexStorageEngine.IISegmentTupleIterator it = iterator(Arrays.asList(format), null, Arrays.asList(sum, count), new StorageContext());
+        it.prepareSegment(info);
+        assertNotNull(it.aggregators);
+
+        String formatValue = info.dict(index(format)).getValueFromId(info.dict(index(format)).getMinId());
+        TableRecord rec = new TableRecord(info);
+        rec.setValueString(index(format), formatValue);
+        rec.setValueString(index(price), "12.5");
+        long priceValue = BytesUtil.readLong(rec.getBytes(), info.offset(index(price)), EndpointAggregators.METRIC_LEN);
+
+        // group key followed by SUM and COUNT, as the endpoint returns
+        int keyLength = it.projector.getKeyLength();
+        byte[] row = new byte[keyLength + it.aggregators.getSerializedLength()];
+        it.projector.getKey(rec.getBytes(), row);
+        it.aggregators.write(new long[] { priceValue * 2, 2 }, row, keyLength);
+
+        Tuple tuple = it.toTuple(ByteString.copyFrom(row));
+        assertEquals(formatValue, tuple.getValue(format));
+        assertEquals(0, new BigDecimal("25").compareTo((BigDecimal) tuple.getValue(sum.getRewriteFieldName())));
+        assertEquals(2L, tuple.getValue(count.getRewriteFieldName()));
+    }
+
+    private InvertedIndexStorageEngine.IISegmentTupleIterator iterator(Collection<TblColRef> dimensions, TupleFilter filter, Collection<FunctionDesc> metrics, StorageContext context) {
+        List<CubeSegment> segments = Collections.emptyList();
+        List<TblColRef> groups = Collections.emptyList();
+        return engine.new IISegmentTupleIterator(segments, dimensions, filter, groups, metrics, context);
+    }
+
+    private TblColRef column(String name) {
+        return new TblColRef(info.getColumns()[indexOf(name)]);
+    }
+
+    private int index(TblColRef column) {
+        return indexOf(column.getName());
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < info.getColumnCount(); i++) {
+            if (info.getColumns()[i].getName().equals(name))
+                return i;
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private FunctionDesc function(String expression, TblColRef column) {
+        FunctionDesc func = new FunctionDesc();
+        func.setExpression(expression);
+        ParameterDesc param = new ParameterDesc();
+        if (column == null) {
+            param.setType(FunctionDesc.PARAMTER_TYPE_CONSTANT);
+            param.setValue("1");
+            func.setReturnType("bigint");
+        } else {
+            param.setType(FunctionDesc.PARAMETER_TYPE_COLUMN);
+            param.setValue(column.getName());
+            param.setColRefs(Arrays.asList(column));
+            func.setReturnType("decimal");
+        }
+        func.setParameter(param);
+        return func;
+    }
+
+    private CompareTupleFilter compare(TblColRef column, FilterOperatorEnum op, String value) {
+        CompareTupleFilter filter = new CompareTupleFilter(op);
+        filter.addChild(new ColumnTupleFilter(column));
+        filter.addChild(new ConstantTupleFilter(value));
+        return filter;
+    }
+
+    private LogicalTupleFilter logical(FilterOperatorEnum op, TupleFilter... children) {
+        LogicalTupleFilter filter = new LogicalTupleFilter(op);
+        for (TupleFilter child : children)
+            filter.addChild(child);
+        return filter;
+    }
+
+}
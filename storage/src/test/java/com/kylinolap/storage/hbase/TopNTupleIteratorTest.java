@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.kylinolap.storage.hbase.TopNTupleIterator.Verifier;
+import com.kylinolap.storage.hbase.observer.SRowTopN.Mark;
+
+public class TopNTupleIteratorTest {
+
+    @Test
+    public void testNoCut() {
+        Verifier v = new Verifier(2, true, false);
+        v.add(key("a"), dec(10), new Mark(1, true, null));
+        v.add(key("b"), dec(5), new Mark(2, true, null));
+        assertTrue(v.verify());
+    }
+
+    @Test
+    public void testProven() {
+        // region 1 cut groups of at most 3, region 2 cut groups of at most 2
+        Verifier v = new Verifier(2, true, false);
+        Mark m1 = new Mark(1, true, dec(3));
+        Mark m2 = new Mark(2, true, dec(2));
+        v.add(key("a"), dec(50), m1);
+        v.add(key("b"), dec(40), m1);
+        v.add(key("a"), dec(30), m2);
+        v.add(key("b"), dec(20), m2);
+        assertTrue(v.verify());
+    }
+
+    @Test
+    public void testUnderCounted() {
+        // "c" is missing in region 2 and may be as big as 40 + 2 > 30
+        Verifier v = new Verifier(2, true, false);
+        Mark m1 = new Mark(1, true, dec(3));
+        Mark m2 = new Mark(2, true, dec(2));
+        v.add(key("a"), dec(50), m1);
+        v.add(key("c"), dec(40), m1);
+        v.add(key("a"), dec(30), m2);
+        v.add(key("b"), dec(30), m2);
+        assertFalse(v.verify());
+    }
+
+    @Test
+    public void testUnseenGroup() {
+        Verifier v = new Verifier(1, true, false);
+        Mark m1 = new Mark(1, true, dec(6));
+        Mark m2 = new Mark(2, true, dec(6));
+        v.add(key("a"), dec(10), m1);
+        v.add(key("a"), dec(10), m2);
+        assertTrue(v.verify());
+
+        // an unseen group may sum up to 6 + 6 > 10
+        v = new Verifier(1, true, false);
+        v.add(key("a"), dec(10), m1);
+        v.add(key("b"), dec(10), m2);
+        assertFalse(v.verify());
+    }
+
+    @Test
+    public void testUnsafe() {
+        Verifier v = new Verifier(1, true, false);
+        v.add(key("a"), dec(10), new Mark(1, false, dec(1)));
+        assertFalse(v.verify());
+
+        v = new Verifier(1, true, true);
+        v.add(key("a"), null, null);
+        assertFalse(v.verify());
+    }
+
+    @Test
+    public void testExact() {
+        Verifier v = new Verifier(1, true, true);
+        v.add(key("a"), dec(10), new Mark(1, true, dec(9)));
+        v.add(key("b"), dec(9), new Mark(2, true, dec(8)));
+        assertTrue(v.verify());
+    }
+
+    private static List<Object> key(Object... values) {
+        return Arrays.asList(values);
+    }
+
+    private static BigDecimal dec(long v) {
+        return BigDecimal.valueOf(v);
+    }
+}
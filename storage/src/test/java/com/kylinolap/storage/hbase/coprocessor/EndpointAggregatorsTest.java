@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.coprocessor;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import com.kylinolap.common.util.BytesUtil;
+
+public class EndpointAggregatorsTest {
+
+    // record layout: dim A (1 byte), dim B (2 bytes), metric M (8 bytes)
+    static final int[] OFFSETS = { 0, 1, 3 };
+    static final int RECORD_LEN = 11;
+
+    @Test
+    public void testAggregate() {
+        EndpointAggregators aggrs = newAggregators();
+        long[] result = aggrs.newAggregations();
+        for (int m = -5; m <= 5; m++) {
+            aggrs.aggregate(result, record(1, 2, m));
+        }
+        assertArrayEquals(new long[] { 0, -5, 5, 11 }, result);
+    }
+
+    @Test
+    public void testMergeAndSerialize() {
+        EndpointAggregators aggrs = EndpointAggregators.deserialize(EndpointAggregators.serialize(newAggregators()));
+
+        long[] a = aggrs.newAggregations();
+        aggrs.aggregate(a, record(1, 2, 10));
+        long[] b = aggrs.newAggregations();
+        aggrs.aggregate(b, record(1, 2, -3));
+        aggrs.aggregate(b, record(1, 2, 7));
+
+        byte[] buf = new byte[aggrs.getSerializedLength() + 1];
+        aggrs.write(b, buf, 1);
+        long[] copy = aggrs.read(buf, 1);
+        assertArrayEquals(b, copy);
+
+        aggrs.merge(a, copy);
+        assertArrayEquals(new long[] { 14, -3, 10, 3 }, a);
+
+        BitSet cols = new BitSet();
+        aggrs.collectColumns(cols);
+        assertEquals(1, cols.cardinality());
+        assertTrue(cols.get(2));
+        assertEquals(2, aggrs.getColumn(0));
+        assertEquals(-1, aggrs.getColumn(3));
+    }
+
+    @Test
+    public void testProjector() {
+        EndpointProjector projector = new EndpointProjector(new int[] { 1, 0 }, new int[] { OFFSETS[1], OFFSETS[0] }, new int[] { 2, 1 });
+        projector = EndpointProjector.deserialize(EndpointProjector.serialize(projector));
+        assertEquals(3, projector.getKeyLength());
+
+        byte[] key = new byte[projector.getKeyLength()];
+        projector.getKey(record(7, 300, 99), key);
+        assertEquals(300, BytesUtil.readUnsigned(key, 0, 2));
+        assertEquals(7, BytesUtil.readUnsigned(key, 2, 1));
+
+        byte[] rec = record(0, 0, 99);
+        projector.setKey(key, rec);
+        assertArrayEquals(record(7, 300, 99), rec);
+        assertArrayEquals(new int[] { 1, 0 }, projector.getColumns());
+    }
+
+    private EndpointAggregators newAggregators() {
+        int[] funcs = { EndpointAggregators.SUM, EndpointAggregators.MIN, EndpointAggregators.MAX, EndpointAggregators.COUNT };
+        int[] columns = { 2, 2, 2, -1 };
+        int[] offsets = { OFFSETS[2], OFFSETS[2], OFFSETS[2], -1 };
+        return new EndpointAggregators(funcs, columns, offsets);
+    }
+
+    private byte[] record(int a, int b, long m) {
+        byte[] rec = new byte[RECORD_LEN];
+        BytesUtil.writeUnsigned(a, rec, OFFSETS[0], 1);
+        BytesUtil.writeUnsigned(b, rec, OFFSETS[1], 2);
+        BytesUtil.writeLong(m, rec, OFFSETS[2], EndpointAggregators.METRIC_LEN);
+        return rec;
+    }
+
+}
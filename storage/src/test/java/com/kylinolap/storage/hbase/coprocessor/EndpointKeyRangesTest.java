@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.coprocessor;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.kylinolap.common.util.BytesUtil;
+
+public class EndpointKeyRangesTest {
+
+    @Test
+    public void testTimeRange() {
+        EndpointKeyRanges ranges = EndpointKeyRanges.deserialize(EndpointKeyRanges.serialize(EndpointKeyRanges.fromTimeRange(3, 1000, 2000)));
+        assertEquals(3, ranges.size());
+        for (int shard = 0; shard < 3; shard++) {
+            byte[] start = ranges.getStartKey(shard);
+            byte[] stop = ranges.getStopKey(shard);
+            assertEquals(10, start.length);
+            assertEquals(shard, BytesUtil.readUnsigned(start, 0, 2));
+            assertEquals(1000, BytesUtil.readLong(start, 2, 8));
+            assertEquals(shard, BytesUtil.readUnsigned(stop, 0, 2));
+            assertEquals(2002, BytesUtil.readLong(stop, 2, 8));
+        }
+    }
+
+    @Test
+    public void testUnbounded() {
+        EndpointKeyRanges ranges = EndpointKeyRanges.fromTimeRange(2, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(2, ranges.size());
+        assertArrayEquals(new byte[] { 0, 0 }, ranges.getStartKey(0));
+        assertArrayEquals(new byte[] { 0, 1 }, ranges.getStopKey(0));
+        assertArrayEquals(new byte[] { 0, 1 }, ranges.getStartKey(1));
+        assertArrayEquals(new byte[] { 0, 2 }, ranges.getStopKey(1));
+        assertArrayEquals(new byte[] { 0, 0 }, ranges.getFirstStartKey());
+        assertArrayEquals(new byte[] { 0, 2 }, ranges.getLastStopKey());
+    }
+
+}
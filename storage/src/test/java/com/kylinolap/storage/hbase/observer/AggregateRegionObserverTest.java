@@ -155,6 +155,45 @@ public class AggregateRegionObserverTest {
         aggrScanner.close();
     }
 
+    @Test
+    public void testCompact() throws IOException {
+
+        SRowType rowType = newRowType();
+        SRowProjector projector = new SRowProjector(mask);
+        SRowAggregators aggregators = new SRowAggregators(new HCol[] { c1, c2 });
+        SRowFilter filter = SRowFilter.deserialize(null);
+
+        MockupRegionScanner innerScanner = new MockupRegionScanner(cellsInput);
+
+        RegionScanner aggrScanner = new AggregationScanner(rowType, filter, projector, aggregators, null, true, innerScanner);
+        ArrayList<Cell> result = Lists.newArrayList();
+        boolean hasMore = aggrScanner.next(result);
+        assertFalse(hasMore);
+        assertEquals(1, result.size());
+
+        // all groups in one block
+        Cell cell = result.get(0);
+        SRowBlock.Reader block = new SRowBlock.Reader(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+        assertEquals(2, block.getCount());
+        int i1 = block.getColumnIndex(family, q1);
+        int i2 = block.getColumnIndex(family, q2);
+
+        block.next();
+        assertEquals("\\x01\\x01\\x00\\x00", toString(block.getKey(), 0, (short) 4, mask));
+        c1.measureCodec.decode(ByteBuffer.wrap(block.getValue(i1)), c1.measureValues);
+        assertEquals("[22.0, 3]", Arrays.toString(c1.measureValues));
+        c2.measureCodec.decode(ByteBuffer.wrap(block.getValue(i2)), c2.measureValues);
+        assertEquals("[44.0]", Arrays.toString(c2.measureValues));
+
+        block.next();
+        assertEquals("\\x02\\x02\\x00\\x00", toString(block.getKey(), 0, (short) 4, mask));
+        c1.measureCodec.decode(ByteBuffer.wrap(block.getValue(i1)), c1.measureValues);
+        assertEquals("[26.0, 7]", Arrays.toString(c1.measureValues));
+        assertFalse(block.hasNext());
+
+        aggrScanner.close();
+    }
+
     @Test
     public void testNoMeasure() throws IOException {
 
@@ -189,6 +228,37 @@ public class AggregateRegionObserverTest {
         aggrScanner.close();
     }
 
+    @Test
+    public void testTimeout() throws IOException {
+        SRowType rowType = newRowType();
+        SRowProjector projector = new SRowProjector(mask);
+        SRowAggregators aggregators = new SRowAggregators(new HCol[] { c1, c2 });
+        SRowFilter filter = SRowFilter.deserialize(null);
+
+        // a deadline already passed gives up after the first batch
+        MockupRegionScanner innerScanner = new MockupRegionScanner(cellsInput);
+        try {
+            new AggregationScanner(rowType, filter, projector, aggregators, null, false, System.currentTimeMillis() - 1, innerScanner);
+            fail("aggregation should time out");
+        } catch (CoprocessorTimeoutException e) {
+            // expected
+        }
+
+        // a deadline ahead does not get in the way
+        innerScanner = new MockupRegionScanner(cellsInput);
+        RegionScanner aggrScanner = new AggregationScanner(rowType, filter, projector, aggregators, null, false, System.currentTimeMillis() + 60000, innerScanner);
+        ArrayList<Cell> result = Lists.newArrayList();
+        int count = 0;
+        boolean hasMore = true;
+        while (hasMore) {
+            result.clear();
+            hasMore = aggrScanner.next(result);
+            count += result.size();
+        }
+        aggrScanner.close();
+        assertEquals(4, count);
+    }
+
     private String toString(byte[] array, int offset, short length, byte[] mask) {
         StringBuilder result = new StringBuilder();
         for (int i = 0; i < length; i++) {
@@ -18,16 +18,19 @@ package com.kylinolap.storage.hbase.observer;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.kylinolap.common.util.BytesUtil;
 import com.kylinolap.common.util.LocalFileMetadataTestCase;
 import com.kylinolap.cube.CubeInstance;
 import com.kylinolap.cube.CubeManager;
 import com.kylinolap.cube.cuboid.Cuboid;
+import com.kylinolap.cube.kv.RowConstants;
 import com.kylinolap.metadata.model.cube.CubeDesc;
 import com.kylinolap.storage.hbase.observer.SRowType;
 
@@ -59,7 +62,34 @@ public class RowTypeTest extends LocalFileMetadataTestCase {
         byte[] bytes = SRowType.serialize(rowType);
         SRowType copy = SRowType.deserialize(bytes);
 
+        assertEquals(rowType.headerLength, copy.headerLength);
         assertTrue(Arrays.equals(rowType.columns, copy.columns));
         assertTrue(Arrays.equals(rowType.columnSizes, copy.columnSizes));
     }
+
+    @Test
+    public void testUnversionedLayout() {
+        // as written before the layout was versioned, no header length
+        ByteBuffer buf = ByteBuffer.allocate(1024);
+        BytesUtil.writeVInt(1, buf);
+        BytesUtil.writeAsciiString("TEST_KYLIN_FACT", buf);
+        BytesUtil.writeAsciiString("CAL_DT", buf);
+        BytesUtil.writeVInt(4, buf);
+
+        SRowType copy = SRowType.deserialize(Arrays.copyOf(buf.array(), buf.position()));
+        assertEquals(RowConstants.ROWKEY_CUBOIDID_LEN, copy.headerLength);
+        assertEquals("CAL_DT", copy.columns[0].getName());
+        assertEquals(4, copy.columnSizes[0]);
+    }
+
+    @Test
+    public void testUnknownVersion() {
+        byte[] bytes = new byte[] { -1, 99, 0, 0 };
+        try {
+            SRowType.deserialize(bytes);
+            fail("unknown version should be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
 }
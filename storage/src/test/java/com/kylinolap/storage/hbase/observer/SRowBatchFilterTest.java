@@ -0,0 +1,220 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.observer;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.kylinolap.cube.kv.RowConstants;
+import com.kylinolap.dict.Dictionary;
+import com.kylinolap.metadata.model.cube.TblColRef;
+import com.kylinolap.metadata.model.schema.ColumnDesc;
+import com.kylinolap.metadata.model.schema.TableDesc;
+import com.kylinolap.storage.filter.ColumnTupleFilter;
+import com.kylinolap.storage.filter.CompareTupleFilter;
+import com.kylinolap.storage.filter.ConstantTupleFilter;
+import com.kylinolap.storage.filter.LogicalTupleFilter;
+import com.kylinolap.storage.filter.TupleFilter;
+import com.kylinolap.storage.filter.TupleFilter.FilterOperatorEnum;
+
+/**
+ * Checks batch evaluation gives the same result as evaluating the filter on
+ * SRowTuple row by row.
+ */
+public class SRowBatchFilterTest {
+
+    static final int ROWS = 3000; // more than one batch
+
+    // A and B are short IDs, D exceeds the bitset limit, C is too long for a
+    // long ID
+    TblColRef a, b, c, d;
+    SRowType type;
+    byte[][] rows;
+    int[] offsets;
+
+    public SRowBatchFilterTest() {
+        TableDesc t = new TableDesc();
+        t.setName("TABLE");
+        a = newCol("A", t);
+        b = newCol("B", t);
+        c = newCol("C", t);
+        d = newCol("D", t);
+        type = new SRowType(new TblColRef[] { a, b, c, d }, new int[] { 1, 2, 9, 3 });
+
+        Random rand = new Random(7);
+        byte[] choices = new byte[] { 0, 1, 2, 3, 5, 0x20, (byte) 0xfe, (byte) 0xff };
+        int len = RowConstants.ROWKEY_CUBOIDID_LEN + 1 + 2 + 9 + 3;
+        rows = new byte[ROWS][];
+        offsets = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            // rows in a shared buffer at non-zero offsets, like cells do
+            int pad = i % 3;
+            rows[i] = new byte[pad + len];
+            offsets[i] = pad;
+            for (int j = RowConstants.ROWKEY_CUBOIDID_LEN; j < len; j++) {
+                rows[i][pad + j] = choices[rand.nextInt(choices.length)];
+            }
+            // a good share of nulls in column A
+            if (i % 5 == 0)
+                rows[i][pad + RowConstants.ROWKEY_CUBOIDID_LEN] = Dictionary.NULL;
+        }
+    }
+
+    @Test
+    public void testCompare() {
+        for (FilterOperatorEnum op : new FilterOperatorEnum[] { FilterOperatorEnum.EQ, FilterOperatorEnum.NEQ, FilterOperatorEnum.LT, FilterOperatorEnum.LTE, FilterOperatorEnum.GT, FilterOperatorEnum.GTE }) {
+            verify(compare(a, op, id(2)));
+            verify(compare(a, op, id(0)));
+            verify(compare(b, op, id(3, 0x20)));
+            verify(compare(c, op, id(1, 2, 3, 5, 0, 0, 1, 2, 3)));
+            verify(compare(d, op, id(0x20, 5, 0xfe)));
+        }
+    }
+
+    @Test
+    public void testIn() {
+        verify(compare(a, FilterOperatorEnum.IN, id(1), id(3), id(0xfe)));
+        verify(compare(a, FilterOperatorEnum.NOTIN, id(1), id(3), id(0xfe)));
+        verify(compare(b, FilterOperatorEnum.IN, id(0, 0), id(3, 0x20), id(0xfe, 5)));
+        verify(compare(d, FilterOperatorEnum.IN, id(0x20, 0x20, 0x20), id(0xfe, 0, 1), id(0, 0, 0)));
+        verify(compare(d, FilterOperatorEnum.NOTIN, id(0x20, 0x20, 0x20), id(0xfe, 0, 1)));
+        verify(compare(c, FilterOperatorEnum.IN, id(1, 2, 3, 5, 0, 0, 1, 2, 3), id(0, 0, 0, 0, 0, 0, 0, 0, 0)));
+    }
+
+    @Test
+    public void testNull() {
+        // compare to null is always false
+        verify(compare(a, FilterOperatorEnum.EQ, id(0xff)));
+        verify(compare(a, FilterOperatorEnum.NEQ, id(0xff)));
+
+        CompareTupleFilter isNull = new CompareTupleFilter(FilterOperatorEnum.ISNULL);
+        isNull.setNullString(id(0xff));
+        isNull.addChild(new ColumnTupleFilter(a));
+        CompareTupleFilter isNotNull = new CompareTupleFilter(FilterOperatorEnum.ISNOTNULL);
+        isNotNull.setNullString(id(0xff));
+        isNotNull.addChild(new ColumnTupleFilter(a));
+
+        int nulls = 0;
+        for (int i = 0; i < ROWS; i++) {
+            if (rows[i][offsets[i] + RowConstants.ROWKEY_CUBOIDID_LEN] == Dictionary.NULL)
+                nulls++;
+        }
+        assertEquals(nulls, batchEvaluate(isNull).length);
+        assertEquals(ROWS - nulls, batchEvaluate(isNotNull).length);
+    }
+
+    @Test
+    public void testLogical() {
+        TupleFilter eqA = compare(a, FilterOperatorEnum.EQ, id(2));
+        TupleFilter gtB = compare(b, FilterOperatorEnum.GT, id(2, 0));
+        TupleFilter inD = compare(d, FilterOperatorEnum.IN, id(0x20, 0x20, 0x20), id(0, 1, 2));
+        TupleFilter ltC = compare(c, FilterOperatorEnum.LT, id(3, 3, 3, 3, 3, 3, 3, 3, 3));
+
+        verify(logical(FilterOperatorEnum.AND, eqA, gtB));
+        verify(logical(FilterOperatorEnum.OR, eqA, gtB, inD));
+        verify(logical(FilterOperatorEnum.NOT, logical(FilterOperatorEnum.OR, eqA, ltC)));
+        verify(logical(FilterOperatorEnum.AND, logical(FilterOperatorEnum.NOT, eqA), logical(FilterOperatorEnum.OR, gtB, logical(FilterOperatorEnum.AND, inD, ltC))));
+        verify(logical(FilterOperatorEnum.OR, ConstantTupleFilter.FALSE, logical(FilterOperatorEnum.AND, ConstantTupleFilter.TRUE, gtB)));
+    }
+
+    @Test
+    public void testFallback() {
+        // a constant not of the column length cannot be compiled
+        verify(compare(b, FilterOperatorEnum.GT, id(2)));
+        verify(logical(FilterOperatorEnum.AND, compare(b, FilterOperatorEnum.LT, id(3)), compare(a, FilterOperatorEnum.GTE, id(1))));
+    }
+
+    @Test
+    public void testAlwaysTrue() {
+        assertNull(SRowBatchFilter.compile(type, null));
+        assertTrue(SRowBatchFilter.compile(type, ConstantTupleFilter.TRUE).isAlwaysTrue());
+        assertFalse(SRowBatchFilter.compile(type, compare(a, FilterOperatorEnum.EQ, id(1))).isAlwaysTrue());
+    }
+
+    private void verify(TupleFilter filter) {
+        SRowTuple tuple = new SRowTuple(type);
+        int[] expected = new int[ROWS];
+        int n = 0;
+        for (int i = 0; i < ROWS; i++) {
+            tuple.setUnderlying(rows[i], offsets[i], rows[i].length - offsets[i]);
+            if (filter.evaluate(tuple))
+                expected[n++] = i;
+        }
+        assertArrayEquals(filter.toString(), Arrays.copyOf(expected, n), batchEvaluate(filter));
+    }
+
+    private int[] batchEvaluate(TupleFilter filter) {
+        SRowBatchFilter batchFilter = SRowBatchFilter.compile(type, filter);
+        int batchSize = SRowBatchFilter.DEFAULT_BATCH_SIZE;
+        byte[][] batchRows = new byte[batchSize][];
+        int[] batchOffsets = new int[batchSize];
+        int[] selection = new int[batchSize];
+        int[] result = new int[ROWS];
+        int n = 0;
+        for (int start = 0; start < ROWS; start += batchSize) {
+            int size = Math.min(batchSize, ROWS - start);
+            System.arraycopy(rows, start, batchRows, 0, size);
+            System.arraycopy(offsets, start, batchOffsets, 0, size);
+            int selected = batchFilter.evaluate(batchRows, batchOffsets, size, selection);
+            for (int i = 0; i < selected; i++) {
+                result[n++] = start + selection[i];
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private CompareTupleFilter compare(TblColRef col, FilterOperatorEnum op, String... values) {
+        CompareTupleFilter f = new CompareTupleFilter(op);
+        f.setNullString(nullString(type.columnSizes[type.columnIdxMap.get(col)]));
+        f.addChild(new ColumnTupleFilter(col));
+        f.addChild(new ConstantTupleFilter(Arrays.asList(values)));
+        return f;
+    }
+
+    private LogicalTupleFilter logical(FilterOperatorEnum op, TupleFilter... children) {
+        LogicalTupleFilter f = new LogicalTupleFilter(op);
+        for (TupleFilter child : children) {
+            f.addChild(child);
+        }
+        return f;
+    }
+
+    private String id(int... bytes) {
+        byte[] b = new byte[bytes.length];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) bytes[i];
+        }
+        return Dictionary.dictIdToString(b, 0, b.length);
+    }
+
+    private String nullString(int size) {
+        byte[] b = new byte[size];
+        Arrays.fill(b, Dictionary.NULL);
+        return Dictionary.dictIdToString(b, 0, size);
+    }
+
+    private TblColRef newCol(String name, TableDesc t) {
+        ColumnDesc col = new ColumnDesc();
+        col.setName(name);
+        col.setTable(t);
+        return new TblColRef(col);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013-2014 eBay Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kylinolap.storage.hbase.observer;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class SRowBlockTest {
+
+    byte[][] families = new byte[][] { Bytes.toBytes("f"), Bytes.toBytes("f") };
+    byte[][] qualifiers = new byte[][] { Bytes.toBytes("q1"), Bytes.toBytes("q2") };
+
+    @Test
+    public void testRoundTrip() {
+        int n = 1000; // big enough to be compressed
+        SRowBlock.Writer writer = new SRowBlock.Writer(families, qualifiers);
+        for (int i = 0; i < n; i++) {
+            writer.add(key(i), 0, 8, values(i));
+        }
+        assertEquals(n, writer.getCount());
+
+        byte[] bytes = writer.toBytes();
+        assertEquals(SRowBlock.LZF, bytes[0]);
+        verify(bytes, n);
+    }
+
+    @Test
+    public void testSmallBlock() {
+        SRowBlock.Writer writer = new SRowBlock.Writer(families, qualifiers);
+        writer.add(key(0), 0, 8, values(0));
+        writer.add(key(1), 0, 8, values(1));
+        byte[] bytes = writer.toBytes();
+        assertEquals(SRowBlock.RAW, bytes[0]);
+        verify(bytes, 2);
+
+        // reset for the next block
+        writer.reset();
+        assertEquals(0, writer.getCount());
+        writer.add(key(7), 0, 8, values(7));
+        bytes = writer.toBytes();
+        SRowBlock.Reader reader = new SRowBlock.Reader(bytes, 0, bytes.length);
+        reader.next();
+        assertArrayEquals(key(7), reader.getKey());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testColumnIndex() {
+        SRowBlock.Writer writer = new SRowBlock.Writer(families, qualifiers);
+        byte[] bytes = writer.toBytes();
+        SRowBlock.Reader reader = new SRowBlock.Reader(bytes, 0, bytes.length);
+        assertEquals(0, reader.getCount());
+        assertEquals(1, reader.getColumnIndex(Bytes.toBytes("f"), Bytes.toBytes("q2")));
+        assertEquals(-1, reader.getColumnIndex(Bytes.toBytes("f"), Bytes.toBytes("q3")));
+    }
+
+    private void verify(byte[] bytes, int n) {
+        SRowBlock.Reader reader = new SRowBlock.Reader(bytes, 0, bytes.length);
+        assertEquals(n, reader.getCount());
+        int q1 = reader.getColumnIndex(Bytes.toBytes("f"), Bytes.toBytes("q1"));
+        int q2 = reader.getColumnIndex(Bytes.toBytes("f"), Bytes.toBytes("q2"));
+        for (int i = 0; i < n; i++) {
+            assertTrue(reader.hasNext());
+            reader.next();
+            assertArrayEquals(key(i), reader.getKey());
+            assertEquals("v" + i, Bytes.toString(reader.getValue(q1)));
+            assertEquals("w" + (i * 3), Bytes.toString(reader.getValue(q2)));
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    private byte[] key(int i) {
+        // keys sharing a long prefix, like rows of one cuboid
+        return new byte[] { 0, 0, 0, 0, 0, 1, (byte) (i >> 8), (byte) i };
+    }
+
+    private ByteBuffer[] values(int i) {
+        ByteBuffer v1 = ByteBuffer.allocate(16);
+        v1.put(Bytes.toBytes("v" + i));
+        ByteBuffer v2 = ByteBuffer.allocate(16);
+        v2.put(Bytes.toBytes("w" + (i * 3)));
+        return new ByteBuffer[] { v1, v2 };
+    }
+}
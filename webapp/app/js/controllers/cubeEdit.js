@@ -150,8 +150,12 @@ KylinApp.controller('CubeEditCtrl', function ($scope, $q, $routeParams, $locatio
     };
 
     $scope.prepareCube = function () {
-        // generate column family
-        generateColumnFamily();
+        // generate column family; an existing cube keeps its layout as long as it
+        // still maps exactly the cube's measures, otherwise built segments would
+        // be read with a column layout they were not written with
+        if (!$scope.isEdit || !isColumnFamilyUpToDate()) {
+            generateColumnFamily();
+        }
 
         // Clean up objects used in cube creation
         angular.forEach($scope.cubeMetaFrame.dimensions, function (dimension, index) {
@@ -469,6 +473,34 @@ KylinApp.controller('CubeEditCtrl', function ($scope, $q, $routeParams, $locatio
 
 
     // ~ private methods
+    function isColumnFamilyUpToDate() {
+        var mapping = $scope.cubeMetaFrame.hbase_mapping;
+        if (!mapping || !mapping.column_family || mapping.column_family.length == 0) {
+            return false;
+        }
+        var mapped = {}, mappedCount = 0;
+        angular.forEach(mapping.column_family, function (cf, index) {
+            angular.forEach(cf.columns, function (column, index) {
+                angular.forEach(column.measure_refs, function (ref, index) {
+                    if (!mapped[ref]) {
+                        mapped[ref] = true;
+                        mappedCount++;
+                    }
+                });
+            });
+        });
+        var measures = $scope.cubeMetaFrame.measures || [];
+        if (measures.length != mappedCount) {
+            return false;
+        }
+        for (var i = 0; i < measures.length; i++) {
+            if (!mapped[measures[i].name]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     function generateColumnFamily() {
         $scope.cubeMetaFrame.hbase_mapping.column_family = [];
         var colFamily = ColFamily();
@@ -488,10 +520,16 @@ KylinApp.controller('CubeEditCtrl', function ($scope, $q, $routeParams, $locatio
             $scope.cubeMetaFrame.hbase_mapping.column_family.push(nmcf);
         }
 
+        // each distinct count (HLL counter) gets a column of its own, so a query
+        // reads and decodes only the counters it asks for
         if (distinctCountMeasures.length > 0){
             var dccf = colFamily();
+            dccf.columns = [];
             angular.forEach(distinctCountMeasures, function(dcm, index){
-                dccf.columns[0].measure_refs.push(dcm.name);
+                dccf.columns.push({
+                    "qualifier": distinctCountMeasures.length == 1 ? "m" : "m" + (index + 1),
+                    "measure_refs": [dcm.name]
+                });
             });
             $scope.cubeMetaFrame.hbase_mapping.column_family.push(dccf);
         }